@@ -0,0 +1,36 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options. The GC profiler
+ * is always added, thus the allocation rate is reported next to throughput
+ * and latency.
+ *
+ * @author MM
+ *
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args
+	 *            JMH command line options, e.g. a regular expression for the
+	 *            benchmarks to run.
+	 * @throws CommandLineOptionException
+	 *             If the options are invalid.
+	 * @throws RunnerException
+	 *             If a benchmark fails.
+	 */
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
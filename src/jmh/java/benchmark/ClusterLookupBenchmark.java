@@ -0,0 +1,115 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clustering.ClusterLookup;
+import database.DatabaseAccess;
+import etl.BatchLoad;
+import representation.Suffix;
+
+/**
+ * Benchmark of the cluster of a toponym. The toponyms are looked up one after
+ * the other, i.e. each toponym is looked up again after all others; a
+ * capacity of 0 walks the suffix tree on each lookup.
+ *
+ * @author MM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterLookupBenchmark {
+
+	/** Number of synthetic city names. */
+	@Param({ "10000" })
+	public int size;
+
+	/** Number of cached toponyms. */
+	@Param({ "0", "100000" })
+	public int capacity;
+
+	/** Temporary database. */
+	private GraphDatabaseService graphDb;
+	/** The lookup under test. */
+	private ClusterLookup lookup;
+	/** Toponyms to look up. */
+	private String[] toponyms;
+	/** Next toponym to look up. */
+	private int next;
+
+	/**
+	 * Loads the cities to a temporary database, each suffix of length two is a
+	 * cluster candidate.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File storeDir = Files.createTempDirectory("toponym-bench").toFile();
+		System.setProperty(DatabaseAccess.DB_PATH_PROPERTY, storeDir.getPath());
+		DatabaseAccess.dropDatabase();
+
+		List<Map<String, String>> data = new ToponymGenerator(42).generate(this.size);
+		BatchLoad.loadCityAndSuffix(storeDir.getPath(), data);
+		this.toponyms = new String[data.size()];
+		for (int i = 0; i < this.toponyms.length; i++)
+			this.toponyms[i] = data.get(i).get("city");
+
+		this.graphDb = DatabaseAccess.getGraphDb();
+		try (Transaction tx = this.graphDb.beginTx();
+				ResourceIterator<Node> suffixes = this.graphDb.findNodes(Suffix.LABEL)) {
+			while (suffixes.hasNext()) {
+				Node suffix = suffixes.next();
+				if (((String) suffix.getProperty(Suffix.KEY_STR)).length() == 2)
+					suffix.setProperty(Suffix.KEY_CLUSTER, true);
+			}
+			tx.success();
+		}
+		this.lookup = ClusterLookup.register(this.graphDb, this.capacity);
+		this.next = 0;
+	}
+
+	/** Drops the temporary database. */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		this.lookup.close();
+		DatabaseAccess.dropDatabase();
+	}
+
+	/**
+	 * Looks up one toponym after the other.
+	 *
+	 * @return Cluster of the toponym.
+	 */
+	@Benchmark
+	public ClusterLookup.Membership lookup() {
+		int i = this.next;
+		this.next = (i + 1 == this.toponyms.length) ? 0 : i + 1;
+		return this.lookup.lookup(this.toponyms[i]);
+	}
+
+}
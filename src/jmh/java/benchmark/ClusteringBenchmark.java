@@ -0,0 +1,105 @@
+package benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clustering.Statistics;
+import clustering.SuffixClustering;
+import representation.SuffixTrie;
+
+/**
+ * Benchmarks of the significance test per suffix node and of the whole
+ * clustering by n-grams.
+ *
+ * @author MM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ClusteringBenchmark {
+
+	/** Number of synthetic city names. */
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	/** Suffix trie of the synthetic names. */
+	private SuffixTrie trie;
+	/** Clustering with background knowledge of the synthetic names. */
+	private SuffixClustering clustering;
+
+	/** Suffix of each non-root node. */
+	private String[] strChild;
+	/** Subsumed cities of each non-root node. */
+	private int[] subsCitiesChild;
+	/** Subsumed cities of the parent of each non-root node. */
+	private int[] subsCitiesParent;
+	/** Next node to score. */
+	private int next;
+
+	/** Builds the trie and the statistics. */
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.trie = SuffixTrie.build(new ToponymGenerator(42).generate(this.size));
+		Statistics statistics = new Statistics(this.trie);
+		statistics.getModel();
+		this.clustering = new SuffixClustering(statistics, 0f, 0f, 0f);
+
+		int countNodes = this.trie.getCountSuffixNodes() - this.trie.getRoots().length;
+		this.strChild = new String[countNodes];
+		this.subsCitiesChild = new int[countNodes];
+		this.subsCitiesParent = new int[countNodes];
+		int i = 0;
+		for (int node = 0; node < this.trie.getCountSuffixNodes(); node++) {
+			int parent = this.trie.getParent(node);
+			if (parent == -1)
+				continue;
+			this.strChild[i] = this.trie.getStr(node);
+			this.subsCitiesChild[i] = this.trie.getSubsumedCities(node);
+			this.subsCitiesParent[i] = this.trie.getSubsumedCities(parent);
+			i++;
+		}
+		this.next = 0;
+	}
+
+	/**
+	 * Scores one suffix node after the other.
+	 *
+	 * @return Significance of the node.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public boolean calculateSignificance() {
+		int i = this.next;
+		this.next = (i + 1 == this.strChild.length) ? 0 : i + 1;
+		return this.clustering.calculateSignificance(this.strChild[i], this.subsCitiesChild[i],
+				this.subsCitiesParent[i]);
+	}
+
+	/**
+	 * Clusters the whole trie.
+	 *
+	 * @return Cluster candidates.
+	 */
+	@Benchmark
+	public Set<Integer> determineClusterCandidatesByNGrams() {
+		return this.clustering.determineClusterCandidatesByNGrams(this.trie);
+	}
+
+}
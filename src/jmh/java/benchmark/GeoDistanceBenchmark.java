@@ -0,0 +1,119 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clustering.Dispersion;
+import clustering.GeoDistance;
+import clustering.GeoMetric;
+import database.DatabaseAccess;
+import etl.BatchLoad;
+import representation.EdgeTypes;
+import representation.Suffix;
+
+/**
+ * Benchmark of the geo-statistics of one cluster. The cities of the cluster
+ * are loaded to a temporary database.
+ *
+ * @author MM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GeoDistanceBenchmark {
+
+	/** Number of cities of the cluster. */
+	@Param({ "100", "300", "1000" })
+	public int clusterSize;
+
+	/** How the pairwise distances are aggregated. */
+	@Param({ "EXACT", "STREAMING", "APPROXIMATE" })
+	public Dispersion.Mode mode;
+
+	/** How the distance between two cities is measured. */
+	@Param({ "EUCLIDEAN", "EQUIRECTANGULAR", "HAVERSINE" })
+	public GeoMetric metric;
+
+	/** Temporary database. */
+	private GraphDatabaseService graphDb;
+	/** The cluster, i.e. suffix "dorf". */
+	private Suffix cluster;
+	/** Geo distance measure. */
+	private GeoDistance geoDistance;
+
+	/** Loads the cities of the cluster to a temporary database. */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File storeDir = Files.createTempDirectory("toponym-bench").toFile();
+		System.setProperty(DatabaseAccess.DB_PATH_PROPERTY, storeDir.getPath());
+		DatabaseAccess.dropDatabase();
+
+		List<Map<String, String>> data = new ToponymGenerator(42).generate(this.clusterSize);
+		for (Map<String, String> row : data)
+			row.put("city", row.get("city") + "dorf");
+		BatchLoad.loadCityAndSuffix(storeDir.getPath(), data);
+
+		this.graphDb = DatabaseAccess.getGraphDb();
+		try (Transaction tx = this.graphDb.beginTx()) {
+			this.cluster = new Suffix(this.graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, "dorf"));
+		}
+		this.geoDistance = new GeoDistance(this.graphDb, this.mode, null, this.metric);
+	}
+
+	/** Removes the stored geo-statistics such that they are calculated again. */
+	@TearDown(Level.Invocation)
+	public void removeGeoStatistics() {
+		try (Transaction tx = this.graphDb.beginTx()) {
+			for (Relationship edge : this.cluster.getUnderlyingNode().getRelationships(EdgeTypes.EUCLIDEAN_DIST)) {
+				Node statistics = edge.getOtherNode(this.cluster.getUnderlyingNode());
+				edge.delete();
+				statistics.delete();
+			}
+			tx.success();
+		}
+	}
+
+	/** Drops the temporary database. */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		DatabaseAccess.dropDatabase();
+	}
+
+	/**
+	 * Calculates the geo-statistics of the cluster.
+	 *
+	 * @return Geo distance measure.
+	 */
+	@Benchmark
+	public GeoDistance calcAvgEuclideanDist() {
+		this.geoDistance.calcAvgEuclideanDist(this.cluster);
+		return this.geoDistance;
+	}
+
+}
@@ -0,0 +1,136 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.io.fs.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import etl.BatchLoad;
+import etl.Load;
+
+/**
+ * Benchmarks of loading the cities to a fresh database, transactional and
+ * offline. Each operation is a whole load, thus the operations are measured
+ * one by one.
+ *
+ * @author MM
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+
+	/**
+	 * Synthetic data and a fresh store per operation.
+	 */
+	public abstract static class Data {
+
+		/** Synthetic city data. */
+		List<Map<String, String>> data;
+		/** Store of the current operation. */
+		File storeDir;
+
+		/**
+		 * Returns the number of synthetic city names.
+		 * 
+		 * @return Number of city names.
+		 */
+		abstract int getSize();
+
+		/** Generates the data. */
+		@Setup(Level.Trial)
+		public void generate() {
+			this.data = new ToponymGenerator(42).generate(getSize());
+		}
+
+		/** Creates a fresh store. */
+		@Setup(Level.Iteration)
+		public void createStore() throws IOException {
+			this.storeDir = Files.createTempDirectory("toponym-bench").toFile();
+		}
+
+		/** Deletes the store. */
+		@TearDown(Level.Iteration)
+		public void deleteStore() throws IOException {
+			FileUtils.deleteRecursively(this.storeDir);
+		}
+	}
+
+	/** Sizes for the transactional load, which takes hours for 1M names. */
+	@State(Scope.Benchmark)
+	public static class TransactionalData extends Data {
+		/** Number of synthetic city names. */
+		@Param({ "10000", "100000" })
+		public int size;
+
+		@Override
+		int getSize() {
+			return this.size;
+		}
+	}
+
+	/** Sizes for the offline load. */
+	@State(Scope.Benchmark)
+	public static class BatchData extends Data {
+		/** Number of synthetic city names. */
+		@Param({ "10000", "100000", "1000000" })
+		public int size;
+
+		@Override
+		int getSize() {
+			return this.size;
+		}
+	}
+
+	/**
+	 * Loads the cities transaction by transaction.
+	 * 
+	 * @param d
+	 *            Data and store.
+	 */
+	@Benchmark
+	public void loadCityAndSuffix(TransactionalData d) {
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(d.storeDir);
+		try {
+			Load.loadCityAndSuffix(graphDb, d.data);
+		} finally {
+			graphDb.shutdown();
+		}
+	}
+
+	/**
+	 * Loads the cities by using the batch inserter.
+	 * 
+	 * @param d
+	 *            Data and store.
+	 * @throws IOException
+	 *             If the store cannot be opened.
+	 */
+	@Benchmark
+	public void batchLoadCityAndSuffix(BatchData d) throws IOException {
+		BatchLoad.loadCityAndSuffix(d.storeDir.getPath(), d.data);
+	}
+
+}
@@ -0,0 +1,122 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clustering.InterpolatedScorer;
+import clustering.NGramModel;
+import clustering.SignificanceScorer;
+import clustering.Statistics;
+import clustering.WittenBellScorer;
+import representation.SuffixTrie;
+
+/**
+ * Benchmark of the significance scorers per suffix node. 'direct' calculates
+ * the interpolated probability from the n-gram counts on each call like
+ * before the scorers were precomputed.
+ *
+ * @author MM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SignificanceBenchmark {
+
+	/** Number of synthetic city names. */
+	@Param({ "100000" })
+	public int size;
+
+	/** The scorer. */
+	@Param({ "direct", "interpolated", "witten-bell" })
+	public String scorer;
+
+	/** The scorer under test. */
+	private SignificanceScorer significanceScorer;
+
+	/** First three letters of each non-root node, three per node. */
+	private char[] letters;
+	/** Subsumed cities of each non-root node. */
+	private int[] subsCitiesChild;
+	/** Subsumed cities of the parent of each non-root node. */
+	private int[] subsCitiesParent;
+	/** Next node to score. */
+	private int next;
+
+	/** Builds the trie, the model, and the scorer. */
+	@Setup(Level.Trial)
+	public void setUp() {
+		SuffixTrie trie = SuffixTrie.build(new ToponymGenerator(42).generate(this.size));
+		final NGramModel model = new Statistics(trie).getModel();
+		if (this.scorer.equals("interpolated"))
+			this.significanceScorer = new InterpolatedScorer(model);
+		else if (this.scorer.equals("witten-bell"))
+			this.significanceScorer = new WittenBellScorer(model);
+		else
+			this.significanceScorer = new SignificanceScorer() {
+				@Override
+				public float getProbability(char letter, char context1, char context2) {
+					float p0 = model.getLetterProbability(letter);
+					float p1 = model.getBigramProbability(letter, context1) / model.getLetterProbability(context1);
+					float p2 = model.getTrigramProbability(letter, context1, context2)
+							/ model.getBigramProbability(context1, context2);
+					return 0.2f * p0 + 0.3f * p1 + 0.5f * p2;
+				}
+
+				@Override
+				public boolean isSignificant(char letter, char context1, char context2, int subsCitiesChild,
+						int subsCitiesParent) {
+					return 1f * subsCitiesChild / subsCitiesParent > getProbability(letter, context1, context2)
+							* 1.5f;
+				}
+			};
+
+		int countNodes = trie.getCountSuffixNodes() - trie.getRoots().length;
+		this.letters = new char[3 * countNodes];
+		this.subsCitiesChild = new int[countNodes];
+		this.subsCitiesParent = new int[countNodes];
+		int i = 0;
+		for (int node = 0; node < trie.getCountSuffixNodes(); node++) {
+			int parent = trie.getParent(node);
+			if (parent == -1)
+				continue;
+			String str = trie.getStr(node);
+			this.letters[3 * i] = str.charAt(0);
+			this.letters[3 * i + 1] = (str.length() > 1) ? str.charAt(1) : NGramModel.EOW;
+			this.letters[3 * i + 2] = (str.length() > 2) ? str.charAt(2) : NGramModel.EOW;
+			this.subsCitiesChild[i] = trie.getSubsumedCities(node);
+			this.subsCitiesParent[i] = trie.getSubsumedCities(parent);
+			i++;
+		}
+		this.next = 0;
+	}
+
+	/**
+	 * Scores one suffix node after the other.
+	 *
+	 * @return Significance of the node.
+	 */
+	@Benchmark
+	public boolean isSignificant() {
+		int i = this.next;
+		this.next = (i + 1 == this.subsCitiesChild.length) ? 0 : i + 1;
+		return this.significanceScorer.isSignificant(this.letters[3 * i], this.letters[3 * i + 1],
+				this.letters[3 * i + 2], this.subsCitiesChild[i], this.subsCitiesParent[i]);
+	}
+
+}
@@ -0,0 +1,59 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clustering.Statistics;
+import representation.SuffixTrie;
+
+/**
+ * Benchmark of the calculation of the letter, bigram, and trigram
+ * distributions.
+ *
+ * @author MM
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatisticsBenchmark {
+
+	/** Number of synthetic city names. */
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	/** Suffix trie of the synthetic names. */
+	private SuffixTrie trie;
+
+	/** Builds the trie. */
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.trie = SuffixTrie.build(new ToponymGenerator(42).generate(this.size));
+	}
+
+	/**
+	 * Calculates the n-grams of all city names.
+	 *
+	 * @return Number of trigram tokens.
+	 */
+	@Benchmark
+	public int calculateNGrams() {
+		return new Statistics(this.trie).getNumberTrigramTokens();
+	}
+
+}
@@ -0,0 +1,82 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic German-like city names with coordinates. The endings
+ * follow a skewed distribution like real toponyms, i.e. a few endings ("-en",
+ * "-dorf", "-hausen", ... ) dominate. The output is deterministic for a given
+ * seed.
+ *
+ * @author MM
+ *
+ */
+public class ToponymGenerator {
+
+	/** Syllables for the beginning of a name. */
+	private static final String[] SYLLABLES = { "al", "alt", "ber", "bra", "burg", "dah", "eich", "el", "falk",
+			"fried", "gar", "gross", "ha", "her", "hil", "hoh", "kal", "klein", "kir", "lan", "lei", "lin", "ma",
+			"neu", "nie", "ober", "ol", "pel", "ra", "ros", "sa", "schoen", "sie", "stein", "tal", "un", "vo", "wal",
+			"wei", "wil", "zell", "zie" };
+
+	/** Endings of a name, most frequent first. */
+	private static final String[] ENDINGS = { "en", "dorf", "hausen", "ingen", "heim", "bach", "feld", "berg",
+			"burg", "stedt", "hof", "au", "rode", "stein", "tal", "witz", "ow", "itz", "leben", "brueck", "furt",
+			"hagen", "kirchen", "a", "e", "i", "o", "er", "el", "zig" };
+
+	/** Random number generator. */
+	private final Random random;
+
+	/**
+	 * Creates a generator.
+	 *
+	 * @param seed
+	 *            Seed of the random numbers.
+	 */
+	public ToponymGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Generates a city name.
+	 *
+	 * @return A city name.
+	 */
+	public String nextName() {
+		StringBuilder name = new StringBuilder();
+		int syllables = 1 + this.random.nextInt(3);
+		for (int i = 0; i < syllables; i++)
+			name.append(SYLLABLES[this.random.nextInt(SYLLABLES.length)]);
+		// skewed choice of the ending: P(i) ~ 1/(i+1)
+		int ending = (int) Math.floor(Math.pow(ENDINGS.length + 1, this.random.nextDouble())) - 1;
+		name.append(ENDINGS[Math.min(ending, ENDINGS.length - 1)]);
+		return name.toString();
+	}
+
+	/**
+	 * Generates rows like the output of the extraction, i.e. with the keys
+	 * 'id', 'city', 'latitude', and 'longitude'. The coordinates lie within
+	 * Germany.
+	 *
+	 * @param size
+	 *            Number of cities.
+	 * @return Synthetic city data.
+	 */
+	public List<Map<String, String>> generate(int size) {
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>(size);
+		for (int i = 0; i < size; i++) {
+			Map<String, String> row = new HashMap<String, String>();
+			row.put("id", Integer.toString(i + 1));
+			row.put("city", nextName());
+			row.put("latitude", Float.toString(47.3f + 7.7f * this.random.nextFloat()));
+			row.put("longitude", Float.toString(5.9f + 9.1f * this.random.nextFloat()));
+			data.add(row);
+		}
+		return data;
+	}
+
+}
@@ -0,0 +1,197 @@
+package clustering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import representation.GeoStatistics;
+
+/**
+ * Writes clusters in a compact binary format, e.g. for large exports with
+ * member cities. The format is a header (magic "TCLU", format version)
+ * followed by tagged records in big-endian order:
+ * <ul>
+ * <li>cluster: tag 1, suffix (modified UTF-8 like
+ * {@link DataOutputStream#writeUTF(String)}), subsumed cities (int), whether
+ * geo-statistics follow (boolean), min, max, avg, dev (double each), name of
+ * their metric (modified UTF-8, empty if unknown),</li>
+ * <li>city: tag 2, name (modified UTF-8), latitude, longitude (float
+ * each),</li>
+ * <li>end of cluster: tag 3,</li>
+ * <li>end of stream: tag 0, written by {@link #finish()} only, thus
+ * truncated files and aborted exports are detected.</li>
+ * </ul>
+ * A file is read by {@link #read(InputStream, ClusterWriter)}, e.g. to
+ * convert it to JSON Lines.
+ *
+ * @author MM
+ *
+ */
+public class BinaryClusterWriter implements ClusterWriter {
+
+	/** Magic number at the start of the format, "TCLU". */
+	static final int MAGIC = 0x54434C55;
+	/** Version of the format. */
+	static final int FORMAT = 1;
+
+	/** Tag of the end of stream. */
+	private static final int TAG_END_OF_STREAM = 0;
+	/** Tag of a cluster. */
+	private static final int TAG_CLUSTER = 1;
+	/** Tag of a city. */
+	private static final int TAG_CITY = 2;
+	/** Tag of the end of a cluster. */
+	private static final int TAG_END_OF_CLUSTER = 3;
+
+	/** Size of the buffer in bytes. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The buffered output. */
+	private final DataOutputStream out;
+
+	/** 'true' iff a cluster is started. */
+	private boolean isInCluster;
+
+	/** 'true' iff the end of stream is written. */
+	private boolean isFinished;
+
+	/**
+	 * Creates a writer and writes the header.
+	 *
+	 * @param out
+	 *            Receives the clusters, closed by {@link #close()}.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public BinaryClusterWriter(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(FORMAT);
+	}
+
+	@Override
+	public void beginCluster(String str, int subsumedCities, GeoStatistics geoStatistics) throws IOException {
+		if (this.isInCluster)
+			throw new IllegalStateException("The previous cluster is not ended.");
+		if (this.isFinished)
+			throw new IllegalStateException("The output is finished.");
+		this.isInCluster = true;
+		this.out.writeByte(TAG_CLUSTER);
+		this.out.writeUTF(str);
+		this.out.writeInt(subsumedCities);
+		this.out.writeBoolean(geoStatistics != null);
+		if (geoStatistics != null) {
+			this.out.writeDouble(geoStatistics.getMin());
+			this.out.writeDouble(geoStatistics.getMax());
+			this.out.writeDouble(geoStatistics.getAvg());
+			this.out.writeDouble(geoStatistics.getDev());
+			this.out.writeUTF((geoStatistics.getMetric() == null) ? "" : geoStatistics.getMetric());
+		}
+	}
+
+	@Override
+	public void writeCity(String name, float latitude, float longitude) throws IOException {
+		if (!this.isInCluster)
+			throw new IllegalStateException("No cluster is started.");
+		this.out.writeByte(TAG_CITY);
+		this.out.writeUTF(name);
+		this.out.writeFloat(latitude);
+		this.out.writeFloat(longitude);
+	}
+
+	@Override
+	public void endCluster() throws IOException {
+		if (!this.isInCluster)
+			throw new IllegalStateException("No cluster is started.");
+		this.isInCluster = false;
+		this.out.writeByte(TAG_END_OF_CLUSTER);
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (this.isInCluster)
+			throw new IllegalStateException("The last cluster is not ended.");
+		if (!this.isFinished) {
+			this.isFinished = true;
+			this.out.writeByte(TAG_END_OF_STREAM);
+			this.out.flush();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	/**
+	 * Closes the output. Without {@link #finish()} the end of stream is
+	 * missing, thus the output is rejected as truncated.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+	/**
+	 * Reads clusters of the binary format and passes them to another writer
+	 * one by one. The other writer is finished at the end of stream.
+	 *
+	 * @param in
+	 *            The binary clusters, not closed.
+	 * @param target
+	 *            Receives the clusters, not closed.
+	 * @return Number of clusters.
+	 * @throws IOException
+	 *             If reading fails, or the input is not in the binary format
+	 *             or truncated.
+	 */
+	public static int read(InputStream in, ClusterWriter target) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+		try {
+			if (data.readInt() != MAGIC)
+				throw new IOException("The input is not in the binary cluster format.");
+			int format = data.readInt();
+			if (format != FORMAT)
+				throw new IOException("Unsupported format version " + format + ", expected " + FORMAT + ".");
+
+			int count = 0;
+			while (true) {
+				int tag = data.readUnsignedByte();
+				switch (tag) {
+				case TAG_END_OF_STREAM:
+					target.finish();
+					return count;
+				case TAG_CLUSTER:
+					String str = data.readUTF();
+					int subsumedCities = data.readInt();
+					GeoStatistics geoStatistics = null;
+					if (data.readBoolean()) {
+						double min = data.readDouble(), max = data.readDouble(), avg = data.readDouble(),
+								dev = data.readDouble();
+						String metric = data.readUTF();
+						geoStatistics = new GeoStatistics(null, min, max, avg, dev, metric.isEmpty() ? null : metric);
+					}
+					target.beginCluster(str, subsumedCities, geoStatistics);
+					break;
+				case TAG_CITY:
+					target.writeCity(data.readUTF(), data.readFloat(), data.readFloat());
+					break;
+				case TAG_END_OF_CLUSTER:
+					target.endCluster();
+					count++;
+					break;
+				default:
+					throw new IOException("Unknown record tag " + tag + ".");
+				}
+			}
+		} catch (EOFException e) {
+			throw new IOException("The binary clusters are truncated.", e);
+		}
+	}
+
+}
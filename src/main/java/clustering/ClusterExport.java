@@ -0,0 +1,255 @@
+package clustering;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import process_control.ClusterProcess;
+import representation.City;
+import representation.EdgeTypes;
+import representation.EntityAccess;
+import representation.EntityAccess.SuffixData;
+import representation.GeoStatistics;
+import representation.Suffix;
+
+/**
+ * Exports clusters together with their geo-statistics as JSON. The
+ * geo-statistics of the clusters are calculated in parallel, the clusters are
+ * written in the order of their suffixes, thus the output does not depend on
+ * the number of threads. Besides, the clusters and their member cities can be
+ * streamed to a {@link ClusterWriter}, e.g. as JSON Lines or binary.
+ *
+ * @author MM
+ *
+ */
+public class ClusterExport {
+
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+
+	/** Number of exported clusters after which the progress is logged. */
+	private static final int LOG_INTERVAL = 1000;
+
+	/** Graph database. */
+	private final GraphDatabaseService graphDb;
+
+	/** Distance measure, used by all threads. */
+	private final GeoDistance geoDistance;
+
+	/** Number of worker threads. */
+	private final int threads;
+
+	/**
+	 * Creates a cluster export.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @param geoDistance
+	 *            Distance measure.
+	 * @param threads
+	 *            Number of worker threads.
+	 */
+	public ClusterExport(GraphDatabaseService graphDb, GeoDistance geoDistance, int threads) {
+		this.graphDb = graphDb;
+		this.geoDistance = geoDistance;
+		this.threads = threads;
+	}
+
+	/**
+	 * Writes the clusters as JSON, i.e. {"clusters": [{"suffix": {...},
+	 * "geoStatistics": {...}}, ... ]}. At most two clusters per thread are
+	 * held in memory.
+	 *
+	 * @param clusters
+	 *            Clusters, i.e. cluster candidates.
+	 * @param out
+	 *            Receives the JSON.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public void export(Collection<Suffix> clusters, Writer out) throws IOException {
+		out.write("{\"clusters\": [\n");
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		try {
+			Queue<Future<String>> pending = new ArrayDeque<Future<String>>();
+			int count = 0;
+			for (final Suffix c : sort(clusters)) {
+				if (pending.size() == 2 * this.threads)
+					count = write(out, await(pending.remove()), count);
+				pending.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return toJson(c);
+					}
+				}));
+			}
+			while (!pending.isEmpty())
+				count = write(out, await(pending.remove()), count);
+		} finally {
+			executor.shutdownNow();
+		}
+		out.write("\n]}\n");
+		out.flush();
+	}
+
+	/**
+	 * Streams the clusters to a writer, e.g. as JSON Lines or binary, in the
+	 * order of their suffixes. The geo-statistics are calculated in parallel
+	 * like {@link #export(Collection, Writer)}; the member cities are read
+	 * while writing, thus they are not held in memory.
+	 *
+	 * @param clusters
+	 *            Clusters, i.e. cluster candidates.
+	 * @param out
+	 *            Receives the clusters, neither finished nor closed.
+	 * @param isWithCities
+	 *            'true' iff the name and location of each member city are
+	 *            written.
+	 * @return Number of written clusters.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public int export(Collection<Suffix> clusters, ClusterWriter out, boolean isWithCities) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		int count = 0;
+		try {
+			Queue<Suffix> order = new ArrayDeque<Suffix>();
+			Queue<Future<GeoStatistics>> pending = new ArrayDeque<Future<GeoStatistics>>();
+			for (final Suffix c : sort(clusters)) {
+				if (pending.size() == 2 * this.threads)
+					count = write(out, order.remove(), await(pending.remove()), isWithCities, count);
+				order.add(c);
+				pending.add(executor.submit(new Callable<GeoStatistics>() {
+					@Override
+					public GeoStatistics call() {
+						return geoDistance.calcGeoStatistics(c);
+					}
+				}));
+			}
+			while (!pending.isEmpty())
+				count = write(out, order.remove(), await(pending.remove()), isWithCities, count);
+		} finally {
+			executor.shutdownNow();
+		}
+		out.flush();
+		return count;
+	}
+
+	/**
+	 * Writes a cluster and its member cities, each named by the suffix node
+	 * with the edge to the city.
+	 *
+	 * @return Number of written clusters.
+	 */
+	private int write(ClusterWriter out, Suffix c, GeoStatistics geoStat, boolean isWithCities, int count)
+			throws IOException {
+		try (Transaction tx = this.graphDb.beginTx()) {
+			SuffixData suffix = new EntityAccess().readSuffix(c.getUnderlyingNode());
+			out.beginCluster(suffix.getStr(), suffix.getSubsumedCities(), geoStat);
+			if (isWithCities) {
+				Deque<Node> stack = new ArrayDeque<Node>();
+				stack.push(c.getUnderlyingNode());
+				while (!stack.isEmpty()) {
+					Node node = stack.pop();
+					String name = null;
+					for (Relationship edge : node.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF,
+							EdgeTypes.IS_NAME_OF)) {
+						if (edge.isType(EdgeTypes.IS_SUFFIX_OF)) {
+							stack.push(edge.getEndNode());
+							continue;
+						}
+						if (name == null)
+							name = (String) node.getProperty(Suffix.KEY_STR);
+						Node city = edge.getEndNode();
+						out.writeCity(name, ((Number) city.getProperty(City.LATITUDE)).floatValue(),
+								((Number) city.getProperty(City.LONGITUDE)).floatValue());
+					}
+				}
+			}
+			out.endCluster();
+		}
+		count++;
+		if (count % LOG_INTERVAL == 0)
+			log.info("exported " + count + " clusters");
+		return count;
+	}
+
+	/**
+	 * Sorts clusters by suffix, thus the order of the export is stable.
+	 */
+	private Collection<Suffix> sort(Collection<Suffix> clusters) {
+		Map<String, Suffix> sorted = new TreeMap<String, Suffix>();
+		try (Transaction tx = this.graphDb.beginTx()) {
+			EntityAccess access = new EntityAccess();
+			for (Suffix c : clusters)
+				sorted.put(access.readSuffix(c.getUnderlyingNode()).getStr(), c);
+		}
+		return sorted.values();
+	}
+
+	/**
+	 * Calculates the geo-statistics of a cluster and returns its JSON
+	 * representation.
+	 *
+	 * @param c
+	 *            A cluster.
+	 * @return JSON representation of the cluster.
+	 */
+	String toJson(Suffix c) {
+		GeoStatistics geoStat = this.geoDistance.calcGeoStatistics(c);
+		SuffixData suffix;
+		try (Transaction tx = this.graphDb.beginTx()) {
+			suffix = new EntityAccess().readSuffix(c.getUnderlyingNode());
+		}
+		return "{" + suffix.toString() + ", " + geoStat.toString() + "}";
+	}
+
+	/**
+	 * Writes a cluster.
+	 *
+	 * @return Number of written clusters.
+	 */
+	private static int write(Writer out, String json, int count) throws IOException {
+		if (count > 0)
+			out.write(",\n");
+		out.write(json);
+		count++;
+		if (count % LOG_INTERVAL == 0)
+			log.info("exported " + count + " clusters");
+		return count;
+	}
+
+	/**
+	 * Waits for the JSON representation or the geo-statistics of a cluster.
+	 */
+	private static <T> T await(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Export was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+}
@@ -0,0 +1,405 @@
+package clustering;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import representation.EdgeTypes;
+import representation.EntityAccess;
+import representation.GeoStatistics;
+import representation.Suffix;
+
+/**
+ * Answers which cluster a toponym belongs to, e.g. for batch geocoding. The
+ * reversed toponym is walked down its suffix tree from the root, i.e. the
+ * last letter, and the deepest cluster candidate on the path is the cluster.
+ * <p>
+ * The answers are kept in a bounded LRU cache, including toponyms without
+ * cluster. The cache is split into segments with a lock each, thus threads
+ * rarely wait for each other, and the least recently used toponym of a
+ * segment is evicted first. A transaction event handler clears the cache as
+ * soon as a commit changes the suffix trees, the cluster candidates, or the
+ * geo-statistics, e.g. by a new clustering; answers of lookups which ran
+ * concurrently to such a commit are not cached.
+ *
+ * @author MM
+ *
+ */
+public class ClusterLookup implements TransactionEventHandler<Void>, AutoCloseable {
+
+	/** Default number of cached toponyms. */
+	public static final int DEFAULT_CAPACITY = 100000;
+
+	/** Number of segments of the cache, a power of two. */
+	private static final int SEGMENTS = 16;
+
+	/** Cached answer of a toponym without cluster. */
+	private static final Membership NONE = new Membership(-1, null, 0, null, null);
+
+	/** Graph database. */
+	private final GraphDatabaseService graphDb;
+
+	/** The segments of the cache. */
+	private final Segment[] segments;
+
+	/** Incremented by each commit which clears the cache. */
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Number of answers from the cache. */
+	private final AtomicLong hits = new AtomicLong();
+	/** Number of answers from the graph. */
+	private final AtomicLong misses = new AtomicLong();
+	/** Number of toponyms removed from the cache due to its capacity. */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a lookup.
+	 */
+	private ClusterLookup(GraphDatabaseService graphDb, int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("The capacity must not be negative.");
+		this.graphDb = graphDb;
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+			this.segments[i] = new Segment((capacity + SEGMENTS - 1 - i) / SEGMENTS);
+	}
+
+	/**
+	 * Creates a lookup and keeps its cache in sync with the graph until it is
+	 * closed.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @param capacity
+	 *            Maximal number of cached toponyms, 0 disables the cache.
+	 * @return The lookup.
+	 */
+	public static ClusterLookup register(GraphDatabaseService graphDb, int capacity) {
+		ClusterLookup lookup = new ClusterLookup(graphDb, capacity);
+		graphDb.registerTransactionEventHandler(lookup);
+		return lookup;
+	}
+
+	/**
+	 * Returns the cluster of a toponym.
+	 *
+	 * @param toponym
+	 *            Name of a city, e.g. "altdorf".
+	 * @return The deepest cluster candidate whose suffix ends the toponym, or
+	 *         'null' if there is none.
+	 */
+	public Membership lookup(String toponym) {
+		Segment segment = this.segments[segment(toponym)];
+		Membership membership = segment.get(toponym);
+		if (membership != null) {
+			this.hits.incrementAndGet();
+			return (membership == NONE) ? null : membership;
+		}
+		this.misses.incrementAndGet();
+
+		long generation = this.generation.get();
+		membership = walk(toponym);
+		if (segment.put(toponym, membership, this.generation, generation))
+			this.evictions.incrementAndGet();
+		return (membership == NONE) ? null : membership;
+	}
+
+	/**
+	 * Walks the reversed toponym down its suffix tree.
+	 */
+	private Membership walk(String toponym) {
+		int length = toponym.length();
+		if (length == 0)
+			return NONE;
+		try (Transaction tx = this.graphDb.beginTx()) {
+			Node node = this.graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, toponym.substring(length - 1));
+			Node cluster = null;
+			for (int depth = 1; node != null; depth++) {
+				if (Boolean.TRUE.equals(node.getProperty(Suffix.KEY_CLUSTER, null)))
+					cluster = node;
+				if (depth == length)
+					break;
+				node = getChild(node, toponym.charAt(length - depth - 1));
+			}
+			if (cluster == null)
+				return NONE;
+
+			EntityAccess access = new EntityAccess();
+			Suffix suffix = new Suffix(cluster);
+			EntityAccess.SuffixData data = access.readSuffix(cluster);
+			return new Membership(cluster.getId(), data.getStr(), data.getSubsumedCities(),
+					access.readGeoStatistics(suffix), (Boolean) cluster.getProperty(Suffix.KEY_GEO_SIGNIFICANT, null));
+		}
+	}
+
+	/**
+	 * Returns the child of a suffix node which adds a letter in front.
+	 */
+	private static Node getChild(Node node, char letter) {
+		for (Relationship edge : node.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF)) {
+			Node child = edge.getEndNode();
+			if (((String) child.getProperty(Suffix.KEY_STR)).charAt(0) == letter)
+				return child;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the segment of a toponym.
+	 */
+	private static int segment(String toponym) {
+		int h = toponym.hashCode();
+		return (h ^ (h >>> 16)) & (SEGMENTS - 1);
+	}
+
+	/**
+	 * Returns the number of answers from the cache.
+	 *
+	 * @return Number of cache hits.
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Returns the number of answers from the graph.
+	 *
+	 * @return Number of cache misses.
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Returns the number of toponyms removed from the cache as it was full.
+	 *
+	 * @return Number of evictions.
+	 */
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * Returns the share of answers from the cache.
+	 *
+	 * @return Hit rate, 0 if nothing was looked up.
+	 */
+	public double getHitRate() {
+		long hits = getHits(), total = hits + getMisses();
+		return (total == 0) ? 0 : 1.0 * hits / total;
+	}
+
+	/**
+	 * Returns the number of cached toponyms.
+	 *
+	 * @return Size of the cache.
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments)
+			size += segment.size();
+		return size;
+	}
+
+	/**
+	 * Removes all toponyms from the cache, the metrics are kept.
+	 */
+	public void clear() {
+		// first: lookups running concurrently cannot cache their answers
+		this.generation.incrementAndGet();
+		for (Segment segment : this.segments)
+			segment.clear();
+	}
+
+	@Override
+	public Void beforeCommit(TransactionData data) throws Exception {
+		return null;
+	}
+
+	@Override
+	public void afterCommit(TransactionData data, Void state) {
+		if (isRelevant(data))
+			clear();
+	}
+
+	/**
+	 * Checks whether a commit may change answers: changed relationships, e.g.
+	 * suffix edges or geo-statistics, changed suffix labels, or changed
+	 * cluster properties.
+	 */
+	private static boolean isRelevant(TransactionData data) {
+		if (data.createdRelationships().iterator().hasNext() || data.deletedRelationships().iterator().hasNext())
+			return true;
+		for (LabelEntry entry : data.assignedLabels())
+			if (entry.label().equals(Suffix.LABEL))
+				return true;
+		for (LabelEntry entry : data.removedLabels())
+			if (entry.label().equals(Suffix.LABEL))
+				return true;
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties())
+			if (isRelevant(entry.key()))
+				return true;
+		for (PropertyEntry<Node> entry : data.removedNodeProperties())
+			if (isRelevant(entry.key()))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks whether a property is part of an answer.
+	 */
+	private static boolean isRelevant(String key) {
+		return key.equals(Suffix.KEY_CLUSTER) || key.equals(Suffix.KEY_STR) || key.equals(Suffix.KEY_SUBSCITIES)
+				|| key.equals(Suffix.KEY_GEO_SIGNIFICANT) || key.equals(GeoStatistics.KEY_MIN)
+				|| key.equals(GeoStatistics.KEY_MAX) || key.equals(GeoStatistics.KEY_AVG)
+				|| key.equals(GeoStatistics.KEY_DEV);
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, Void state) {
+		// nothing changed
+	}
+
+	/**
+	 * Stops keeping the cache in sync with the graph.
+	 */
+	@Override
+	public void close() {
+		this.graphDb.unregisterTransactionEventHandler(this);
+	}
+
+	/**
+	 * A segment of the cache, in access order.
+	 */
+	private static final class Segment {
+
+		/** Maximal number of toponyms. */
+		private final int capacity;
+
+		/** Answers by toponym, the least recently used first. */
+		private final LinkedHashMap<String, Membership> map;
+
+		Segment(int capacity) {
+			this.capacity = capacity;
+			this.map = new LinkedHashMap<String, Membership>(16, 0.75f, true);
+		}
+
+		synchronized Membership get(String toponym) {
+			return this.map.get(toponym);
+		}
+
+		/**
+		 * Caches an answer unless the cache was cleared since the answer was
+		 * looked up. The generation is checked under the lock of the segment,
+		 * which {@link #clear()} takes after incrementing it, thus a stale
+		 * answer is either rejected or removed by the clear.
+		 *
+		 * @param generation
+		 *            Current generation of the cache.
+		 * @param expected
+		 *            Generation before the answer was looked up.
+		 * @return 'true' iff another toponym was evicted.
+		 */
+		synchronized boolean put(String toponym, Membership membership, AtomicLong generation, long expected) {
+			if (this.capacity == 0 || generation.get() != expected)
+				return false;
+			this.map.put(toponym, membership);
+			if (this.map.size() <= this.capacity)
+				return false;
+			// the eldest entry is the least recently used one
+			Map.Entry<String, Membership> eldest = this.map.entrySet().iterator().next();
+			this.map.remove(eldest.getKey());
+			return true;
+		}
+
+		synchronized int size() {
+			return this.map.size();
+		}
+
+		synchronized void clear() {
+			this.map.clear();
+		}
+	}
+
+	/**
+	 * The cluster of a toponym. Its getters do not access the database.
+	 *
+	 * @author MM
+	 *
+	 */
+	public static final class Membership {
+
+		/** Id of the suffix node of the cluster. */
+		private final long suffixId;
+		/** Suffix of the cluster. */
+		private final String str;
+		/** Number of subsumed cities of the cluster. */
+		private final int subsumedCities;
+		/** Geo-statistics of the cluster, 'null' if not calculated. */
+		private final GeoStatistics geoStatistics;
+		/** Spatial coherence of the cluster, 'null' if not tested. */
+		private final Boolean geoSignificant;
+
+		Membership(long suffixId, String str, int subsumedCities, GeoStatistics geoStatistics,
+				Boolean geoSignificant) {
+			this.suffixId = suffixId;
+			this.str = str;
+			this.subsumedCities = subsumedCities;
+			this.geoStatistics = geoStatistics;
+			this.geoSignificant = geoSignificant;
+		}
+
+		/**
+		 * @return Id of the suffix node of the cluster.
+		 */
+		public long getSuffixId() {
+			return this.suffixId;
+		}
+
+		public String getStr() {
+			return this.str;
+		}
+
+		public int getSubsumedCities() {
+			return this.subsumedCities;
+		}
+
+		/**
+		 * @return Geo-statistics of the cluster, 'null' if not calculated. They
+		 *         are measured by the metric of
+		 *         {@link GeoStatistics#getMetric()}.
+		 */
+		public GeoStatistics getGeoStatistics() {
+			return this.geoStatistics;
+		}
+
+		/**
+		 * @return Whether the cities of the cluster are spatially coherent,
+		 *         'null' if not tested.
+		 */
+		public Boolean getGeoSignificant() {
+			return this.geoSignificant;
+		}
+
+		/**
+		 * Returns the same JSON representation as {@link Suffix#toString()}
+		 * plus the geo-statistics if calculated.
+		 */
+		@Override
+		public String toString() {
+			return Suffix.toString(this.str, this.subsumedCities)
+					+ ((this.geoStatistics == null) ? "" : ", " + this.geoStatistics.toString());
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package clustering;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+import representation.GeoStatistics;
+
+/**
+ * Streams clusters to an output, one after the other. A cluster is written
+ * by {@link #beginCluster(String, int, GeoStatistics)}, any number of
+ * {@link #writeCity(String, float, float)} for its member cities, and
+ * {@link #endCluster()}, thus the members need not be held in memory. After
+ * the last cluster the output is completed by {@link #finish()}; an output
+ * which is closed without being finished, e.g. after a failed export, is
+ * incomplete.
+ *
+ * @author MM
+ *
+ */
+public interface ClusterWriter extends Closeable, Flushable {
+
+	/**
+	 * Starts a cluster.
+	 *
+	 * @param str
+	 *            The suffix of the cluster.
+	 * @param subsumedCities
+	 *            Number of subsumed cities.
+	 * @param geoStatistics
+	 *            Geo-statistics of the cluster, or 'null' if not calculated.
+	 * @throws IOException
+	 *             If writing fails.
+	 * @throws IllegalStateException
+	 *             If the previous cluster is not ended.
+	 */
+	void beginCluster(String str, int subsumedCities, GeoStatistics geoStatistics) throws IOException;
+
+	/**
+	 * Writes a member city of the current cluster.
+	 *
+	 * @param name
+	 *            Name of the city.
+	 * @param latitude
+	 *            Latitude of the city.
+	 * @param longitude
+	 *            Longitude of the city.
+	 * @throws IOException
+	 *             If writing fails.
+	 * @throws IllegalStateException
+	 *             If no cluster is started.
+	 */
+	void writeCity(String name, float latitude, float longitude) throws IOException;
+
+	/**
+	 * Ends the current cluster.
+	 *
+	 * @throws IOException
+	 *             If writing fails.
+	 * @throws IllegalStateException
+	 *             If no cluster is started.
+	 */
+	void endCluster() throws IOException;
+
+	/**
+	 * Completes the output after the last cluster, e.g. writes an end marker.
+	 * No cluster can be written afterwards.
+	 *
+	 * @throws IOException
+	 *             If writing fails.
+	 * @throws IllegalStateException
+	 *             If a cluster is started.
+	 */
+	void finish() throws IOException;
+
+}
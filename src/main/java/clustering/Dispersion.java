@@ -0,0 +1,375 @@
+package clustering;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+/**
+ * Statistics (min, max, avg, dev) of the pairwise distances between the
+ * locations of cities. The distances are computed from latitude and longitude
+ * by a {@link GeoMetric}, by default {@link GeoMetric#EUCLIDEAN}.
+ * <ul>
+ * <li>{@link Mode#EXACT}: all distances are stored, O(n^2) time and memory.
+ * <li>{@link Mode#STREAMING}: all distances are computed, but only their
+ * running moments are kept, O(n^2) time and O(1) memory. Same result as
+ * {@link Mode#EXACT}.
+ * <li>{@link Mode#APPROXIMATE}: min and max are exact, i.e. the closest pair
+ * found by a sweep over the locations sorted by latitude and the diameter of
+ * the convex hull. For the metrics in kilometres, the closest pair is found by
+ * a {@link KdTree} and the diameter among the vertices of the hull of the
+ * locations projected equirectangularly, which is exact up to the projection
+ * error within a country. Avg and dev are estimated from a fixed number of random
+ * pairs, thus the standard error of the avg is dev/sqrt({@link #SAMPLE_PAIRS}).
+ * Small clusters with at most {@link #SAMPLE_PAIRS} pairs are computed like by
+ * {@link Mode#STREAMING}.
+ * </ul>
+ * The mean of Euclidean (not squared) distances has no closed form in the
+ * moments of the coordinates, thus it is either summed up or sampled.
+ *
+ * @author MM
+ *
+ */
+public final class Dispersion {
+
+	/** How the distances are aggregated. */
+	public enum Mode {
+		/** All distances are stored. */
+		EXACT,
+		/** All distances are computed, only running moments are stored. */
+		STREAMING,
+		/** Exact min and max, sampled avg and dev. */
+		APPROXIMATE;
+
+		/**
+		 * Returns whether all distances are aggregated, thus the statistics
+		 * do not depend on the mode.
+		 *
+		 * @return 'true' iff the statistics are exact.
+		 */
+		public boolean isExact() {
+			return this != APPROXIMATE;
+		}
+	}
+
+	/** Number of sampled pairs in the approximate mode. */
+	public static final int SAMPLE_PAIRS = 100000;
+
+	private final double min;
+	private final double max;
+	private final double avg;
+	private final double dev;
+
+	/**
+	 * Creates dispersion statistics.
+	 */
+	private Dispersion(double min, double max, double avg, double dev) {
+		this.min = min;
+		this.max = max;
+		this.avg = avg;
+		this.dev = dev;
+	}
+
+	/**
+	 * Creates dispersion statistics from a summary of distances.
+	 */
+	private Dispersion(StatisticalSummary summary) {
+		this(summary.getMin(), summary.getMax(), summary.getMean(), summary.getStandardDeviation());
+	}
+
+	public double getMin() {
+		return this.min;
+	}
+
+	public double getMax() {
+		return this.max;
+	}
+
+	public double getAvg() {
+		return this.avg;
+	}
+
+	public double getDev() {
+		return this.dev;
+	}
+
+	/**
+	 * Calculates the statistics of the pairwise Euclidean distances between
+	 * locations. Without any pair, each value is NaN.
+	 *
+	 * @param latitudes
+	 *            Latitudes of the cities.
+	 * @param longitudes
+	 *            Longitudes of the cities, same length as the latitudes.
+	 * @param mode
+	 *            How the distances are aggregated.
+	 * @return Statistics of the distances.
+	 */
+	public static Dispersion calculate(double[] latitudes, double[] longitudes, Mode mode) {
+		return calculate(latitudes, longitudes, mode, GeoMetric.EUCLIDEAN);
+	}
+
+	/**
+	 * Calculates the statistics of the pairwise distances between locations.
+	 * Without any pair, each value is NaN.
+	 *
+	 * @param latitudes
+	 *            Latitudes of the cities.
+	 * @param longitudes
+	 *            Longitudes of the cities, same length as the latitudes.
+	 * @param mode
+	 *            How the distances are aggregated.
+	 * @param metric
+	 *            Distance between two cities.
+	 * @return Statistics of the distances.
+	 */
+	public static Dispersion calculate(double[] latitudes, double[] longitudes, Mode mode, GeoMetric metric) {
+		if (latitudes.length != longitudes.length)
+			throw new IllegalArgumentException("Each city needs a latitude and a longitude.");
+		int n = latitudes.length;
+		long countPairs = (long) n * (n - 1) / 2;
+
+		switch (mode) {
+		case EXACT:
+			DescriptiveStatistics exact = new DescriptiveStatistics();
+			for (int i = 0; i < n - 1; i++)
+				for (int j = i + 1; j < n; j++)
+					exact.addValue(distance(metric, latitudes, longitudes, i, j));
+			return new Dispersion(exact);
+		case APPROXIMATE:
+			if (countPairs > SAMPLE_PAIRS)
+				return approximate(latitudes, longitudes, metric);
+			// small cluster: streaming is cheap enough
+			return streaming(latitudes, longitudes, metric);
+		case STREAMING:
+		default:
+			return streaming(latitudes, longitudes, metric);
+		}
+	}
+
+	/**
+	 * Aggregates all pairwise distances without storing them.
+	 */
+	private static Dispersion streaming(double[] latitudes, double[] longitudes, GeoMetric metric) {
+		int n = latitudes.length;
+		SummaryStatistics streaming = new SummaryStatistics();
+		for (int i = 0; i < n - 1; i++)
+			for (int j = i + 1; j < n; j++)
+				streaming.addValue(distance(metric, latitudes, longitudes, i, j));
+		return new Dispersion(streaming);
+	}
+
+	/**
+	 * Samples avg and dev and calculates the exact min and max.
+	 */
+	private static Dispersion approximate(double[] latitudes, double[] longitudes, GeoMetric metric) {
+		int n = latitudes.length;
+		// fixed seed: the same cities give the same statistics
+		Random random = new Random(n);
+		SummaryStatistics sample = new SummaryStatistics();
+		for (int k = 0; k < SAMPLE_PAIRS; k++) {
+			int i = random.nextInt(n);
+			int j = random.nextInt(n - 1);
+			if (j >= i)
+				j++;
+			sample.addValue(distance(metric, latitudes, longitudes, i, j));
+		}
+
+		if (metric == GeoMetric.EUCLIDEAN)
+			return new Dispersion(closestPair(latitudes, longitudes), diameter(latitudes, longitudes),
+					sample.getMean(), sample.getStandardDeviation());
+		return new Dispersion(closestPair(latitudes, longitudes, metric), diameter(latitudes, longitudes, metric),
+				sample.getMean(), sample.getStandardDeviation());
+	}
+
+	/**
+	 * Distance between two cities.
+	 */
+	private static double distance(GeoMetric metric, double[] latitudes, double[] longitudes, int i, int j) {
+		return metric.distance(latitudes[i], longitudes[i], latitudes[j], longitudes[j]);
+	}
+
+	/**
+	 * Euclidean distance between two cities.
+	 */
+	private static double distance(double[] latitudes, double[] longitudes, int i, int j) {
+		return GeoMetric.EUCLIDEAN.distance(latitudes[i], longitudes[i], latitudes[j], longitudes[j]);
+	}
+
+	/**
+	 * Calculates the minimal distance between two cities by their nearest
+	 * neighbours within a {@link KdTree}, O(n log n). The neighbours are
+	 * nearest by great-circle distance and measured by the metric.
+	 *
+	 * @param latitudes
+	 *            Latitudes of at least two cities.
+	 * @param longitudes
+	 *            Longitudes of the cities.
+	 * @param metric
+	 *            Distance between two cities.
+	 * @return The minimal distance.
+	 */
+	static double closestPair(double[] latitudes, double[] longitudes, GeoMetric metric) {
+		KdTree tree = new KdTree(latitudes, longitudes);
+		double best = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < latitudes.length; i++)
+			best = Math.min(best, distance(metric, latitudes, longitudes, i, tree.nearest(i)));
+		return best;
+	}
+
+	/**
+	 * Calculates the maximal distance between two cities among the vertices
+	 * of the convex hull of their equirectangular projection, i.e. the
+	 * longitudes are scaled by the cosine of the mean latitude.
+	 *
+	 * @param latitudes
+	 *            Latitudes of at least two cities.
+	 * @param longitudes
+	 *            Longitudes of the cities.
+	 * @param metric
+	 *            Distance between two cities.
+	 * @return The maximal distance.
+	 */
+	static double diameter(double[] latitudes, double[] longitudes, GeoMetric metric) {
+		double meanLatitude = 0;
+		for (double latitude : latitudes)
+			meanLatitude += latitude / latitudes.length;
+		double scale = Math.cos(Math.toRadians(meanLatitude));
+		double[] projected = new double[longitudes.length];
+		for (int i = 0; i < projected.length; i++)
+			projected[i] = longitudes[i] * scale;
+
+		int[] hull = hull(latitudes, projected);
+		double best = 0;
+		for (int a = 0; a < hull.length; a++)
+			for (int b = a + 1; b < hull.length; b++)
+				best = Math.max(best, distance(metric, latitudes, longitudes, hull[a], hull[b]));
+		return best;
+	}
+
+	/**
+	 * Calculates the minimal distance between two cities by a sweep over the
+	 * cities sorted by latitude. Only cities within the current minimal
+	 * distance are kept in a set sorted by longitude, O(n log n).
+	 *
+	 * @param latitudes
+	 *            Latitudes of at least two cities.
+	 * @param longitudes
+	 *            Longitudes of the cities.
+	 * @return The minimal distance.
+	 */
+	static double closestPair(final double[] latitudes, final double[] longitudes) {
+		int n = latitudes.length;
+		Integer[] byLatitude = sortedIndices(latitudes, longitudes);
+
+		// longitudes of the cities and of two probes (n, n+1) bounding a range query
+		final double[] keys = Arrays.copyOf(longitudes, n + 2);
+		final int lowerProbe = n, upperProbe = n + 1;
+		TreeSet<Integer> active = new TreeSet<Integer>(new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				int z = Double.compare(keys[i], keys[j]);
+				return (z != 0) ? z : Integer.compare(rank(i), rank(j));
+			}
+
+			private int rank(int i) {
+				return (i == lowerProbe) ? -1 : (i == upperProbe) ? Integer.MAX_VALUE : i;
+			}
+		});
+
+		double best = Double.POSITIVE_INFINITY;
+		int tail = 0;
+		for (int k = 0; k < n; k++) {
+			int i = byLatitude[k];
+			// remove cities which are too far away w.r.t. latitude
+			while (latitudes[i] - latitudes[byLatitude[tail]] > best)
+				active.remove(byLatitude[tail++]);
+
+			// compare with the cities within the longitude range
+			if (!active.isEmpty()) {
+				keys[lowerProbe] = longitudes[i] - best;
+				keys[upperProbe] = longitudes[i] + best;
+				for (int j : active.subSet(lowerProbe, true, upperProbe, true))
+					best = Math.min(best, distance(latitudes, longitudes, i, j));
+			}
+			active.add(i);
+		}
+		return best;
+	}
+
+	/**
+	 * Calculates the maximal distance between two cities, i.e. the diameter
+	 * of their convex hull. The hull is built by the monotone chain algorithm,
+	 * then its vertices are compared pairwise.
+	 *
+	 * @param latitudes
+	 *            Latitudes of at least two cities.
+	 * @param longitudes
+	 *            Longitudes of the cities.
+	 * @return The maximal distance.
+	 */
+	static double diameter(double[] latitudes, double[] longitudes) {
+		int[] hull = hull(latitudes, longitudes);
+		double best = 0;
+		for (int a = 0; a < hull.length; a++)
+			for (int b = a + 1; b < hull.length; b++)
+				best = Math.max(best, distance(latitudes, longitudes, hull[a], hull[b]));
+		return best;
+	}
+
+	/**
+	 * Returns the vertices of the convex hull of the cities by the monotone
+	 * chain algorithm.
+	 */
+	private static int[] hull(double[] latitudes, double[] longitudes) {
+		int n = latitudes.length;
+		Integer[] sorted = sortedIndices(latitudes, longitudes);
+
+		// lower and upper hull
+		int[] hull = new int[2 * n];
+		int size = 0;
+		for (int k = 0; k < n; k++) {
+			int i = sorted[k];
+			while (size >= 2 && cross(latitudes, longitudes, hull[size - 2], hull[size - 1], i) <= 0)
+				size--;
+			hull[size++] = i;
+		}
+		for (int k = n - 2, lower = size + 1; k >= 0; k--) {
+			int i = sorted[k];
+			while (size >= lower && cross(latitudes, longitudes, hull[size - 2], hull[size - 1], i) <= 0)
+				size--;
+			hull[size++] = i;
+		}
+		return Arrays.copyOf(hull, size);
+	}
+
+	/**
+	 * Cross product of the vectors o->a and o->b.
+	 */
+	private static double cross(double[] latitudes, double[] longitudes, int o, int a, int b) {
+		return (latitudes[a] - latitudes[o]) * (longitudes[b] - longitudes[o])
+				- (longitudes[a] - longitudes[o]) * (latitudes[b] - latitudes[o]);
+	}
+
+	/**
+	 * Sorts the cities by latitude, then by longitude.
+	 */
+	private static Integer[] sortedIndices(final double[] latitudes, final double[] longitudes) {
+		Integer[] indices = new Integer[latitudes.length];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = i;
+		Arrays.sort(indices, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				int z = Double.compare(latitudes[i], latitudes[j]);
+				return (z != 0) ? z : Double.compare(longitudes[i], longitudes[j]);
+			}
+		});
+		return indices;
+	}
+
+}
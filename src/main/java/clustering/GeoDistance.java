@@ -2,21 +2,24 @@ package clustering;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
-import org.apache.commons.math3.ml.distance.EuclideanDistance;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 
 import representation.City;
+import representation.CityIndex;
 import representation.EdgeTypes;
 import representation.GeoStatistics;
 import representation.Suffix;
 
 /**
- * Distance measure due to longitude and latitude of the cities.
+ * Distance measure due to longitude and latitude of the cities. The distances
+ * are measured by a {@link GeoMetric}; stored statistics of another metric,
+ * or sampled ones if exact ones are asked for and vice versa, are
+ * recalculated.
  * 
  * @author MM
  *
@@ -26,19 +29,79 @@ public class GeoDistance {
 	/** Graph database. */
 	private GraphDatabaseService graphDb;
 	
+	/** How the pairwise distances are aggregated. */
+	private final Dispersion.Mode mode;
+	
+	/** Distance between two cities. */
+	private final GeoMetric metric;
+	
+	/** Locations of the cities below each suffix, 'null' to read them from the graph. */
+	private final CityIndex cityIndex;
+	
 	/** Geo-statistics of the current suffix node. */
 	private GeoStatistics currGeoStat = null;
 
 	/**
-	 * Constructor. Creates a new instance of geo distance measuring.
+	 * Constructor. Creates a new instance of geo distance measuring which
+	 * stores all pairwise distances ({@link Dispersion.Mode#EXACT}).
 	 * 
 	 * @param graphDb
 	 *            A graph database.
 	 */
 	public GeoDistance(GraphDatabaseService graphDb) {
+		this(graphDb, Dispersion.Mode.EXACT);
+	}
+	
+	/**
+	 * Constructor. Creates a new instance of geo distance measuring.
+	 * 
+	 * @param graphDb
+	 *            A graph database.
+	 * @param mode
+	 *            How the pairwise distances are aggregated.
+	 */
+	public GeoDistance(GraphDatabaseService graphDb, Dispersion.Mode mode) {
+		this(graphDb, mode, (CityIndex) null);
+	}
+	
+	/**
+	 * Constructor. Creates a new instance of geo distance measuring which
+	 * reads the locations of the cities from an index. Suffixes which are not
+	 * part of the index are read from the graph.
+	 * 
+	 * @param graphDb
+	 *            A graph database.
+	 * @param mode
+	 *            How the pairwise distances are aggregated.
+	 * @param cityIndex
+	 *            Locations of the cities below each suffix.
+	 */
+	public GeoDistance(GraphDatabaseService graphDb, Dispersion.Mode mode, CityIndex cityIndex) {
+		this(graphDb, mode, cityIndex, GeoMetric.EUCLIDEAN);
+	}
+	
+	/**
+	 * Constructor. Creates a new instance of geo distance measuring which
+	 * reads the locations of the cities from an index, if any, and measures
+	 * the distances by the given metric.
+	 * 
+	 * @param graphDb
+	 *            A graph database.
+	 * @param mode
+	 *            How the pairwise distances are aggregated.
+	 * @param cityIndex
+	 *            Locations of the cities below each suffix, or 'null'.
+	 * @param metric
+	 *            Distance between two cities, e.g. in kilometres.
+	 */
+	public GeoDistance(GraphDatabaseService graphDb, Dispersion.Mode mode, CityIndex cityIndex, GeoMetric metric) {
 		this.graphDb = graphDb;
+		this.mode = mode;
+		this.metric = metric;
+		this.cityIndex = cityIndex;
 	}
 	
+	
 	/**
 	 * Returns the geo-statistics of the current suffix node.
 	 * 
@@ -51,66 +114,88 @@ public class GeoDistance {
 
 	/**
 	 * Calculates the average Euclidean distance between the cities of one
-	 * suffix and cluster candidate, respectively.
+	 * suffix and cluster candidate, respectively. The result is available by
+	 * {@link #getCurrGeoStatistics()}.
 	 * 
 	 * @param s
 	 *            A suffix node, represents a cluster.
 	 */
 	public void calcAvgEuclideanDist(Suffix s) {
-		// 0: check whether euclidean distance statistics is already calculated
+		this.currGeoStat = calcGeoStatistics(s);
+	}
+
+	/**
+	 * Calculates the statistics of the distances between the cities of one
+	 * suffix and cluster candidate, respectively, and stores them in the
+	 * graph. Already stored statistics of the same metric and as exact as
+	 * asked for are read only. This method does not change the state of this
+	 * object, thus it can be called by several threads for distinct suffixes.
+	 * 
+	 * @param s
+	 *            A suffix node, represents a cluster.
+	 * @return Geo-statistics (min, max, avg, dev) which do not access the
+	 *         database any more.
+	 */
+	public GeoStatistics calcGeoStatistics(Suffix s) {
+		Node suffixNode = s.getUnderlyingNode();
+		double[] latitudes, longitudes;
+		List<Relationship> stale = new ArrayList<Relationship>();
 		try (Transaction tx = this.graphDb.beginTx()) {
-			boolean hasEuclideanDist = s.getUnderlyingNode().hasRelationship(EdgeTypes.EUCLIDEAN_DIST);
-			if (hasEuclideanDist) {
-				Node node = s.getUnderlyingNode().getRelationships(EdgeTypes.EUCLIDEAN_DIST)
-						.iterator().next().getOtherNode(s.getUnderlyingNode());
-				this.currGeoStat = new GeoStatistics(node);
-				return;
+			// 0: check whether distance statistics is already calculated
+			for (Relationship edge : suffixNode.getRelationships(Direction.INCOMING, EdgeTypes.EUCLIDEAN_DIST)) {
+				Node node = edge.getOtherNode(suffixNode);
+				GeoStatistics stored = GeoStatistics.read(node);
+				Dispersion.Mode mode = Dispersion.Mode.valueOf(
+						(String) node.getProperty(GeoStatistics.KEY_DISPERSION, GeoStatistics.DEFAULT_DISPERSION));
+				if (this.metric.name().equals(stored.getMetric()) && mode.isExact() == this.mode.isExact())
+					return stored;
+				// measured by another metric or sampled instead of exact, or vice versa
+				stale.add(edge);
 			}
-		}		
-		
-		
-		// 1: calculate Euclidean distance statistics
-		final Set<City> cities = s.getAssocCityLocations(this.graphDb);
-		final List<City> cityList = new ArrayList<City>(cities);
-		EuclideanDistance euclDist = new EuclideanDistance();
-		
-		DescriptiveStatistics stat = new DescriptiveStatistics();
-		
-		// get location of each city associated with the given suffix
-		for (int i = 0; i < cityList.size() - 1; i++)
-			for (int j = i+1; j < cityList.size(); j++) {
-				City city1 = cityList.get(i);
-				City city2 = cityList.get(j);
-				double lat1 = ((Number) city1.getLatitude()).doubleValue();
-				double lon1 = ((Number) city1.getLongitude()).doubleValue();
-				double lat2 = ((Number) city2.getLatitude()).doubleValue();
-				double lon2 = ((Number) city2.getLongitude()).doubleValue();
-				double[] location1 = {lat1, lon1};
-				double[] location2 = {lat2, lon2};
-				
-				double d = euclDist.compute(location1, location2);
-				stat.addValue(d);
-			}		
+			
+			// get location of each city associated with the given suffix
+			if (this.cityIndex != null && this.cityIndex.contains(s)) {
+				latitudes = this.cityIndex.getLatitudes(s);
+				longitudes = this.cityIndex.getLongitudes(s);
+			} else {
+				List<Node> cities = Suffix.getAssocCityNodes(suffixNode);
+				latitudes = new double[cities.size()];
+				longitudes = new double[cities.size()];
+				for (int i = 0; i < cities.size(); i++) {
+					Node city = cities.get(i);
+					latitudes[i] = ((Number) city.getProperty(City.LATITUDE)).doubleValue();
+					longitudes[i] = ((Number) city.getProperty(City.LONGITUDE)).doubleValue();
+				}
+			}
+		}
 		
-		double avg = stat.getMean();
-		double max = stat.getMax();
-		double min = stat.getMin();
-		double dev = stat.getStandardDeviation();
+		// 1: calculate distance statistics
+		Dispersion dispersion = Dispersion.calculate(latitudes, longitudes, this.mode, this.metric);
+		double avg = dispersion.getAvg();
+		double max = dispersion.getMax();
+		double min = dispersion.getMin();
+		double dev = dispersion.getDev();
 		
 		// write result to database
 		try (Transaction tx = this.graphDb.beginTx()) {
+			for (Relationship edge : stale) {
+				Node stored = edge.getStartNode();
+				edge.delete();
+				stored.delete();
+			}
 			// create new statistics node and connect it to the given suffix
 			Node node = this.graphDb.createNode(GeoStatistics.LABEL);
-			node.createRelationshipTo(s.getUnderlyingNode(), EdgeTypes.EUCLIDEAN_DIST);
+			node.createRelationshipTo(suffixNode, EdgeTypes.EUCLIDEAN_DIST);
 			// add properties
 			node.setProperty(GeoStatistics.KEY_MIN, min);
 			node.setProperty(GeoStatistics.KEY_MAX, max);
 			node.setProperty(GeoStatistics.KEY_AVG, avg);
 			node.setProperty(GeoStatistics.KEY_DEV, dev);
-			
-			this.currGeoStat = new GeoStatistics(node);
+			node.setProperty(GeoStatistics.KEY_METRIC, this.metric.name());
+			node.setProperty(GeoStatistics.KEY_DISPERSION, this.mode.name());
 			
 			tx.success();
+			return new GeoStatistics(node, min, max, avg, dev, this.metric.name());
 		}		
 	}
 
@@ -0,0 +1,72 @@
+package clustering;
+
+/**
+ * Distance between two locations given by latitude and longitude in degrees.
+ * The metrics work on primitive coordinates, thus comparing pairs allocates
+ * nothing.
+ *
+ * @author MM
+ *
+ */
+public enum GeoMetric {
+
+	/**
+	 * Euclidean distance of the raw degrees, i.e. neither in kilometres nor
+	 * correct away from the equator. Kept for statistics stored before the
+	 * other metrics existed, whose metric is
+	 * {@link representation.GeoStatistics#DEFAULT_METRIC}.
+	 */
+	EUCLIDEAN {
+		@Override
+		public double distance(double lat1, double lon1, double lat2, double lon2) {
+			double dLat = lat1 - lat2;
+			double dLon = lon1 - lon2;
+			return Math.sqrt(dLat * dLat + dLon * dLon);
+		}
+	},
+
+	/**
+	 * Equirectangular projection in kilometres: the difference of the
+	 * longitudes is scaled by the cosine of the mean latitude. Accurate for
+	 * the distances within a country and cheaper than {@link #HAVERSINE}.
+	 */
+	EQUIRECTANGULAR {
+		@Override
+		public double distance(double lat1, double lon1, double lat2, double lon2) {
+			double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians(lat1 + lat2) / 2);
+			double y = Math.toRadians(lat2 - lat1);
+			return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+		}
+	},
+
+	/** Great-circle distance in kilometres by the haversine formula. */
+	HAVERSINE {
+		@Override
+		public double distance(double lat1, double lon1, double lat2, double lon2) {
+			double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+			double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+			double a = sinLat * sinLat
+					+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+			return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+		}
+	};
+
+	/** Mean radius of the earth in kilometres. */
+	public static final double EARTH_RADIUS = 6371.0088;
+
+	/**
+	 * Returns the distance between two locations.
+	 *
+	 * @param lat1
+	 *            Latitude of the first location.
+	 * @param lon1
+	 *            Longitude of the first location.
+	 * @param lat2
+	 *            Latitude of the second location.
+	 * @param lon2
+	 *            Longitude of the second location.
+	 * @return The distance, in kilometres except for {@link #EUCLIDEAN}.
+	 */
+	public abstract double distance(double lat1, double lon1, double lat2, double lon2);
+
+}
@@ -1,7 +1,11 @@
 package clustering;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -50,6 +54,9 @@ public class GraphProperties {
 	/** Suffixes which are suffix of 16 or more (direct) suffixes. */
 	private Set<Suffix> veryFrequentSuffixes;
 
+	/** Number of property writes per transaction. */
+	private static final int BATCH_SIZE = 10000;
+
 	/** for testing ... */
 	private long propertyAssignedNodes = 0;
 
@@ -71,6 +78,15 @@ public class GraphProperties {
 		this.veryFrequentSuffixes = null;
 	}
 
+	/**
+	 * Returns the graph database.
+	 * 
+	 * @return Graph database.
+	 */
+	GraphDatabaseService getGraphDb() {
+		return this.graphDb;
+	}
+
 	/**
 	 * Returns the count of all nodes.
 	 * 
@@ -224,7 +240,9 @@ public class GraphProperties {
 
 	/**
 	 * Adds the property 'subsumed cities' and its value to the graph. That
-	 * property specifies how many cities ends with the current node.
+	 * property specifies how many cities ends with the current node. Each tree
+	 * is traversed once in post-order, i.e. each node is written exactly once
+	 * after all of its children, and the writes are committed in batches.
 	 */
 	public void addPropertySubsumedCities() {
 		// check whether property is already present
@@ -238,100 +256,75 @@ public class GraphProperties {
 		if (isComplete)
 			return;
 
-		// add property to each suffix node from bottom to top
-		Set<Suffix> bottomLayer = getCityNames();
-		while (bottomLayer.size() > 0) {
-			log.info("bottomLayer.size(): "+bottomLayer.size());
-			bottomLayer = countSubsumedCities(bottomLayer);
-		}
-	}
-
-	/**
-	 * Counts the cities which belongs to each node of the current layer. That
-	 * value is computed by summing up the subsumed city count of the child
-	 * nodes. IMPORTANT: Does not work correctly if you have cities whose name
-	 * is suffix of another city's name!
-	 * 
-	 * @param bottomLayer
-	 *            The current layer. For that layer the property will be added.
-	 * @return The layer above the current layer, i.e. a set of parent nodes.
-	 */
-	private Set<Suffix> countSubsumedCities(Set<Suffix> bottomLayer) {
-		Set<Suffix> nextLayer = new HashSet<Suffix>();
-
-		// iterate over each suffix node of the current layer
-		for (Suffix s : bottomLayer) {
-			// 1: get suffix node and outgoing edges
-			Node currentSuffix = null;
-			Iterator<Relationship> iterator = null;
-			int value = 0;
-			try (Transaction tx = this.graphDb.beginTx()) {
-				currentSuffix = s.getUnderlyingNode();
-				
-				// suffix already has the property, e.g., because of canceled previous execution				
-				if (currentSuffix.hasProperty(Suffix.KEY_SUBSCITIES)) {
-					// determine nodes for the next layer
-					iterator = currentSuffix.getRelationships(Direction.INCOMING).iterator();
-					while (iterator.hasNext()) {
-						Relationship edge = iterator.next();
-						Suffix node = new Suffix(edge.getStartNode());
-						nextLayer.add(node);
-					}
-					continue; // you are done with this suffix
-				} 
-				
-				// get outgoing edges
-				iterator = currentSuffix.getRelationships(Direction.OUTGOING).iterator();				
-			}
-			
-			// 2: iterate over each edge of the current suffix node
-			while (iterator.hasNext()) {
-				Relationship edge = iterator.next();
-				try (Transaction tx = this.graphDb.beginTx()) {
-					if (edge.isType(EdgeTypes.IS_NAME_OF)) {
-						// basic bottom layer: suffix = city name
-						// this is the the case only for the first layer
-						value = currentSuffix.getDegree(EdgeTypes.IS_NAME_OF);
-						break;
-					} else {
-						// for all other nodes which are not direct parent of cities
-						if (edge.getEndNode().hasProperty(Suffix.KEY_SUBSCITIES)) {
-							// sum up all subsumedCities-values of the parents
-							value += (Integer) edge.getEndNode().getProperty(Suffix.KEY_SUBSCITIES);
+		// add property to each suffix node in one depth-first post-order pass per root
+		Transaction tx = this.graphDb.beginTx();
+		try {
+			for (Suffix root : getRootNodes()) {
+				if (root.getUnderlyingNode().hasProperty(Suffix.KEY_SUBSCITIES))
+					continue; // tree already done
+				Deque<SubtreeCount> stack = new ArrayDeque<SubtreeCount>();
+				stack.push(new SubtreeCount(root.getUnderlyingNode()));
+				while (!stack.isEmpty()) {
+					SubtreeCount top = stack.peek();
+					if (top.nextChild < top.children.length) {
+						Node child = top.children[top.nextChild++];
+						if (child.hasProperty(Suffix.KEY_SUBSCITIES)) {
+							// subtree already done, e.g., because of canceled previous execution
+							top.value += ((Number) child.getProperty(Suffix.KEY_SUBSCITIES)).intValue();
 						} else {
-							// if at least one parent does not have a proper subsumedCities-value yet
-							value = 0;
-							break;
+							stack.push(new SubtreeCount(child));
 						}
+						continue;
 					}
-				}
-			} // end iteration over edges
 
-			// 3: add property to node
-			if (value > 0) {				
-				propertyAssignedNodes++;
-				if (propertyAssignedNodes % 1000 == 0)
-					log.info("#nodes with property 'subsumedCities': "+propertyAssignedNodes);
-				
-				try (Transaction tx = this.graphDb.beginTx()) {
-					currentSuffix.setProperty(Suffix.KEY_SUBSCITIES, value);
+					// all children are done: write the property
+					stack.pop();
+					top.node.setProperty(Suffix.KEY_SUBSCITIES, top.value);
+					if (!stack.isEmpty())
+						stack.peek().value += top.value;
 
-					// determine nodes for the next layer
-					iterator = currentSuffix.getRelationships(Direction.INCOMING).iterator();
-					while (iterator.hasNext()) {
-						Relationship edge = iterator.next();
-						Suffix node = new Suffix(edge.getStartNode());
-						nextLayer.add(node);
+					propertyAssignedNodes++;
+					if (propertyAssignedNodes % BATCH_SIZE == 0) {
+						// commit changes
+						tx.success();
+						tx.close();
+						log.info("#nodes with property 'subsumedCities': "+propertyAssignedNodes);
+						tx = this.graphDb.beginTx();
 					}
-					// commit changes
-					tx.success();
-				}
-			}
-			// System.out.println(" properties: " + currentSuffix.getAllProperties());
-		} // end iteration over suffix nodes
+				} // end tree iteration
+			} // end iteration over roots
+			tx.success();
+		} finally {
+			tx.close();
+		}
+		log.info("#nodes with property 'subsumedCities': "+propertyAssignedNodes);
+	}
 
-		return nextLayer;
+	/**
+	 * A suffix node on the stack of the post-order traversal. Its value is the
+	 * number of cities named by the suffix plus the values of the children
+	 * done so far. Thus, cities whose name is suffix of another city's name are
+	 * counted correctly.
+	 */
+	private static class SubtreeCount {
+		/** The suffix node. */
+		final Node node;
+		/** Child suffix nodes, materialized to survive intermediate commits. */
+		final Node[] children;
+		/** Index of the next child to visit. */
+		int nextChild;
+		/** Subsumed cities counted so far. */
+		int value;
 
+		SubtreeCount(Node node) {
+			this.node = node;
+			List<Node> children = new ArrayList<Node>();
+			for (Relationship edge : node.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF))
+				children.add(edge.getEndNode());
+			this.children = children.toArray(new Node[children.size()]);
+			this.nextChild = 0;
+			this.value = node.getDegree(EdgeTypes.IS_NAME_OF, Direction.OUTGOING);
+		}
 	}
 
 	/**
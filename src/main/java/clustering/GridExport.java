@@ -0,0 +1,203 @@
+package clustering;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import process_control.ClusterProcess;
+import representation.CityIndex;
+import representation.EntityAccess;
+import representation.EntityAccess.SuffixData;
+import representation.Suffix;
+
+/**
+ * Exports the cities of each cluster aggregated to the cells of a fixed
+ * latitude/longitude grid, e.g. for heatmaps in a viewer without database
+ * access. The cell of each city is determined once by a single pass over the
+ * {@link CityIndex}, thus a cluster is aggregated from the cells of its range
+ * of positions without reading coordinates.
+ * <p>
+ * A cell is numbered row * columns + column, where the row counts from
+ * latitude -90 and the column from longitude -180 in steps of the cell size,
+ * i.e. the south-west corner of cell c is (-90 + (c / columns) * cellSize,
+ * -180 + (c % columns) * cellSize).
+ *
+ * @author MM
+ *
+ */
+public class GridExport {
+
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+
+	/** Default edge length of a cell in degrees. */
+	public static final double DEFAULT_CELL_SIZE = 0.1;
+
+	/** Number of exported clusters after which the progress is logged. */
+	private static final int LOG_INTERVAL = 1000;
+
+	/** Graph database. */
+	private final GraphDatabaseService graphDb;
+
+	/** Index of the cities below each suffix node. */
+	private final CityIndex index;
+
+	/** Edge length of a cell in degrees. */
+	private final double cellSize;
+
+	/** Number of cells per row. */
+	private final int columns;
+
+	/** Number of rows. */
+	private final int rows;
+
+	/** Cell of each city by position of the index. */
+	private final int[] cells;
+
+	/**
+	 * Creates a grid export and determines the cell of each city.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @param index
+	 *            Index of the cities below each suffix node.
+	 * @param cellSize
+	 *            Edge length of a cell in degrees, e.g. 0.1 (about 11 km
+	 *            north-south).
+	 */
+	public GridExport(GraphDatabaseService graphDb, CityIndex index, double cellSize) {
+		if (!(cellSize > 0) || cellSize > 180)
+			throw new IllegalArgumentException("The cell size must be within (0, 180] degrees.");
+		this.graphDb = graphDb;
+		this.index = index;
+		this.cellSize = cellSize;
+		this.columns = (int) Math.ceil(360 / cellSize);
+		this.rows = (int) Math.ceil(180 / cellSize);
+		if ((long) this.columns * this.rows > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The cell size " + cellSize + " is too small.");
+
+		this.cells = new int[index.getCountCities()];
+		for (int p = 0; p < this.cells.length; p++)
+			this.cells[p] = getCell(index.getLatitude(p), index.getLongitude(p));
+	}
+
+	public double getCellSize() {
+		return this.cellSize;
+	}
+
+	public int getColumns() {
+		return this.columns;
+	}
+
+	public int getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * Returns the cell of a location.
+	 *
+	 * @param latitude
+	 *            Latitude in degrees.
+	 * @param longitude
+	 *            Longitude in degrees.
+	 * @return Number of the cell.
+	 */
+	public int getCell(double latitude, double longitude) {
+		int row = clamp((int) Math.floor((latitude + 90) / this.cellSize), this.rows);
+		int column = clamp((int) Math.floor((longitude + 180) / this.cellSize), this.columns);
+		return row * this.columns + column;
+	}
+
+	/**
+	 * Returns the cities of a cluster per cell.
+	 *
+	 * @param cluster
+	 *            A cluster.
+	 * @return Alternating cell and number of cities, sorted by cell.
+	 * @throws IllegalArgumentException
+	 *             If the cluster is not part of the index.
+	 */
+	public int[] aggregate(Suffix cluster) {
+		int start = this.index.getStart(cluster), end = this.index.getEnd(cluster);
+		int[] sorted = Arrays.copyOfRange(this.cells, start, end);
+		Arrays.sort(sorted);
+
+		int[] counts = new int[2 * sorted.length];
+		int length = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (length > 0 && counts[length - 2] == sorted[i]) {
+				counts[length - 1]++;
+			} else {
+				counts[length++] = sorted[i];
+				counts[length++] = 1;
+			}
+		}
+		return Arrays.copyOf(counts, length);
+	}
+
+	/**
+	 * Writes the grid of each cluster as JSON, i.e. {"cellSize": .., "rows":
+	 * .., "columns": .., "clusters": [{"suffix": {...}, "countCells": ..,
+	 * "cells": [cell, count, cell, count, ...]}, ...]}. The clusters are
+	 * written in the order of their suffixes, one per line.
+	 *
+	 * @param clusters
+	 *            Clusters, i.e. cluster candidates.
+	 * @param out
+	 *            Receives the JSON.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public void export(Collection<Suffix> clusters, Writer out) throws IOException {
+		// stable order: sort by suffix
+		Map<String, SuffixData> sorted = new TreeMap<String, SuffixData>();
+		Map<String, Suffix> suffixes = new TreeMap<String, Suffix>();
+		try (Transaction tx = this.graphDb.beginTx()) {
+			EntityAccess access = new EntityAccess();
+			for (Suffix c : clusters) {
+				SuffixData data = access.readSuffix(c.getUnderlyingNode());
+				sorted.put(data.getStr(), data);
+				suffixes.put(data.getStr(), c);
+			}
+		}
+
+		out.write("{\"cellSize\":" + this.cellSize + ", \"rows\":" + this.rows + ", \"columns\":" + this.columns
+				+ ", \"clusters\": [\n");
+		int count = 0;
+		StringBuilder json = new StringBuilder();
+		for (Map.Entry<String, SuffixData> e : sorted.entrySet()) {
+			int[] grid = aggregate(suffixes.get(e.getKey()));
+			json.setLength(0);
+			if (count > 0)
+				json.append(",\n");
+			json.append('{').append(e.getValue().toString()).append(", \"countCells\":").append(grid.length / 2)
+					.append(", \"cells\":[");
+			for (int i = 0; i < grid.length; i++) {
+				if (i > 0)
+					json.append(',');
+				json.append(grid[i]);
+			}
+			json.append("]}");
+			out.write(json.toString());
+			if (++count % LOG_INTERVAL == 0)
+				log.info("exported grids of " + count + " clusters");
+		}
+		out.write("\n]}\n");
+		out.flush();
+	}
+
+	/**
+	 * Limits an index to [0, size), e.g. for latitude 90 or longitude 180.
+	 */
+	private static int clamp(int i, int size) {
+		return (i < 0) ? 0 : (i >= size) ? size - 1 : i;
+	}
+
+}
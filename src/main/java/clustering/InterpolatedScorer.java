@@ -0,0 +1,108 @@
+package clustering;
+
+/**
+ * Significance by linear interpolation of the letter probability and the
+ * probabilities given one and two letters of context, e.g. P(z), P(z|e), and
+ * P(z|el) for "zell". A suffix node is significant iff its proportion of the
+ * parent's cities exceeds the interpolated probability by the factor alpha.
+ * <p>
+ * The interpolated probability of each trigram of the model is calculated
+ * once when the scorer is created, thus scoring a node is one lookup in a
+ * primitive table.
+ *
+ * @author MM
+ *
+ */
+public final class InterpolatedScorer implements SignificanceScorer {
+
+	/** Bits of a probability which is not precomputed. */
+	private static final int UNKNOWN = Float.floatToRawIntBits(Float.NaN);
+
+	/** N-gram model. */
+	private final NGramModel model;
+
+	/** Weight of the letter probability. */
+	private final float weight0;
+	/** Weight of the probability given one letter of context. */
+	private final float weight1;
+	/** Weight of the probability given two letters of context. */
+	private final float weight2;
+	/** Factor by which the actual proportion has to exceed the expected one. */
+	private final float alpha;
+
+	/** Interpolated probabilities as float bits, keyed by the packed trigram. */
+	private final PackedCountTable probabilities;
+
+	/**
+	 * Creates a scorer with the weights and alpha of {@link SuffixClustering}.
+	 *
+	 * @param model
+	 *            N-gram model.
+	 */
+	public InterpolatedScorer(NGramModel model) {
+		this(model, SuffixClustering.WEIGHT_0, SuffixClustering.WEIGHT_1, SuffixClustering.WEIGHT_2,
+				SuffixClustering.ALPHA);
+	}
+
+	/**
+	 * Creates a scorer and precomputes the probabilities.
+	 *
+	 * @param model
+	 *            N-gram model.
+	 * @param weight0
+	 *            Weight of the letter probability.
+	 * @param weight1
+	 *            Weight of the probability given one letter of context.
+	 * @param weight2
+	 *            Weight of the probability given two letters of context.
+	 * @param alpha
+	 *            Factor by which the actual proportion has to exceed the
+	 *            expected one.
+	 */
+	public InterpolatedScorer(NGramModel model, float weight0, float weight1, float weight2, float alpha) {
+		this.model = model;
+		this.weight0 = weight0;
+		this.weight1 = weight1;
+		this.weight2 = weight2;
+		this.alpha = alpha;
+
+		PackedCountTable trigrams = model.getTrigramCounts();
+		this.probabilities = new PackedCountTable(trigrams.size());
+		for (int slot = 0; slot < trigrams.capacity(); slot++) {
+			long key = trigrams.keyAt(slot);
+			if (key != PackedCountTable.EMPTY)
+				this.probabilities.put(key, Float.floatToRawIntBits(calculateProbability((char) (key >>> 32),
+						(char) (key >>> 16), (char) key)));
+		}
+	}
+
+	@Override
+	public float getProbability(char letter, char context1, char context2) {
+		int bits = this.probabilities.get(NGramModel.pack(letter, context1, context2), UNKNOWN);
+		return (bits == UNKNOWN) ? calculateProbability(letter, context1, context2) : Float.intBitsToFloat(bits);
+	}
+
+	@Override
+	public boolean isSignificant(char letter, char context1, char context2, int subsCitiesChild,
+			int subsCitiesParent) {
+		float actual = 1f * subsCitiesChild / subsCitiesParent;
+		return actual > getProbability(letter, context1, context2) * this.alpha;
+	}
+
+	/**
+	 * Interpolates the probabilities of a letter.
+	 */
+	private float calculateProbability(char letter, char context1, char context2) {
+		float p0 = this.model.getLetterProbability(letter);
+		float p1 = this.model.getBigramConditionalProbability(letter, context1);
+		float p2 = this.model.getTrigramConditionalProbability(letter, context1, context2);
+		return this.weight0 * p0 + this.weight1 * p1 + this.weight2 * p2;
+	}
+
+	@Override
+	public String toString() {
+		return "interpolated (weights=" + this.weight0 + "," + this.weight1 + "," + this.weight2 + ", alpha="
+				+ this.alpha + ")";
+	}
+
+}
@@ -0,0 +1,126 @@
+package clustering;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import representation.GeoStatistics;
+import representation.Json;
+
+/**
+ * Writes clusters as JSON Lines, i.e. one JSON object per line and cluster:
+ * {"suffix": {"str": .., "subsumedCities": ..}, "geoStatistics": {...},
+ * "cities": [{"name": .., "latitude": .., "longitude": ..}, ...]}. The
+ * geo-statistics name their metric, e.g. "HAVERSINE" for kilometres, or null
+ * if unknown. The geo-statistics and the cities are omitted if not given. The
+ * output is UTF-8 and strings are escaped, thus each line can be parsed on its
+ * own, e.g. by a viewer which loads the clusters one by one.
+ *
+ * @author MM
+ *
+ */
+public class JsonLinesClusterWriter implements ClusterWriter {
+
+	/** Size of the buffer in chars. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The buffered output. */
+	private final Writer out;
+
+	/** 'true' iff a cluster is started. */
+	private boolean isInCluster;
+
+	/** 'true' iff the output is finished. */
+	private boolean isFinished;
+
+	/** Number of cities of the current cluster. */
+	private int countCities;
+
+	/**
+	 * Creates a writer.
+	 *
+	 * @param out
+	 *            Receives the clusters, closed by {@link #close()}.
+	 */
+	public JsonLinesClusterWriter(OutputStream out) {
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	@Override
+	public void beginCluster(String str, int subsumedCities, GeoStatistics geoStatistics) throws IOException {
+		if (this.isInCluster)
+			throw new IllegalStateException("The previous cluster is not ended.");
+		if (this.isFinished)
+			throw new IllegalStateException("The output is finished.");
+		this.isInCluster = true;
+		this.countCities = 0;
+		this.out.write("{\"suffix\": {\"str\":");
+		Json.appendQuoted(str, this.out);
+		this.out.write(", \"subsumedCities\":");
+		this.out.write(Integer.toString(subsumedCities));
+		this.out.write('}');
+		if (geoStatistics != null) {
+			this.out.write(", \"geoStatistics\": {\"min\":");
+			this.out.write(Json.number(geoStatistics.getMin()));
+			this.out.write(", \"max\":");
+			this.out.write(Json.number(geoStatistics.getMax()));
+			this.out.write(", \"avg\":");
+			this.out.write(Json.number(geoStatistics.getAvg()));
+			this.out.write(", \"dev\":");
+			this.out.write(Json.number(geoStatistics.getDev()));
+			this.out.write(", \"metric\":");
+			if (geoStatistics.getMetric() == null)
+				this.out.write("null");
+			else
+				Json.appendQuoted(geoStatistics.getMetric(), this.out);
+			this.out.write('}');
+		}
+	}
+
+	@Override
+	public void writeCity(String name, float latitude, float longitude) throws IOException {
+		if (!this.isInCluster)
+			throw new IllegalStateException("No cluster is started.");
+		this.out.write((this.countCities++ == 0) ? ", \"cities\": [" : ", ");
+		this.out.write("{\"name\":");
+		Json.appendQuoted(name, this.out);
+		this.out.write(", \"latitude\":");
+		this.out.write(Json.number(latitude));
+		this.out.write(", \"longitude\":");
+		this.out.write(Json.number(longitude));
+		this.out.write('}');
+	}
+
+	@Override
+	public void endCluster() throws IOException {
+		if (!this.isInCluster)
+			throw new IllegalStateException("No cluster is started.");
+		this.isInCluster = false;
+		this.out.write((this.countCities > 0) ? "]}\n" : "}\n");
+	}
+
+	/**
+	 * Flushes the output, JSON Lines have no end marker.
+	 */
+	@Override
+	public void finish() throws IOException {
+		if (this.isInCluster)
+			throw new IllegalStateException("The last cluster is not ended.");
+		this.isFinished = true;
+		this.out.flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+}
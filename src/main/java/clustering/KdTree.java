@@ -0,0 +1,271 @@
+package clustering;
+
+/**
+ * Spatial index of locations for nearest-neighbour and radius queries, e.g.
+ * per cluster. The locations are mapped to unit vectors (x, y, z), thus the
+ * straight-line (chord) distance grows strictly with the great-circle
+ * distance and the results are exact for {@link GeoMetric#HAVERSINE}, also
+ * across the date line and near the poles.
+ * <p>
+ * The tree is implicit: the coordinates are stored in primitive arrays
+ * ordered such that the median of each range is its split point, thus
+ * building takes O(n log n) and a query O(log n) on average. The tree is
+ * immutable after building, thus it can be queried by several threads.
+ *
+ * @author MM
+ *
+ */
+public final class KdTree {
+
+	/** Coordinates in tree order, by axis. */
+	private final double[][] coords;
+	/** Index of the location of each tree position. */
+	private final int[] ids;
+	/** Tree position of each location. */
+	private final int[] positions;
+
+	/**
+	 * Builds the tree.
+	 *
+	 * @param latitudes
+	 *            Latitudes of the locations in degrees.
+	 * @param longitudes
+	 *            Longitudes of the locations in degrees, same length as the
+	 *            latitudes.
+	 */
+	public KdTree(double[] latitudes, double[] longitudes) {
+		if (latitudes.length != longitudes.length)
+			throw new IllegalArgumentException("Each location needs a latitude and a longitude.");
+		int n = latitudes.length;
+		this.coords = new double[3][n];
+		this.ids = new int[n];
+		for (int i = 0; i < n; i++) {
+			double lat = Math.toRadians(latitudes[i]), lon = Math.toRadians(longitudes[i]);
+			this.coords[0][i] = Math.cos(lat) * Math.cos(lon);
+			this.coords[1][i] = Math.cos(lat) * Math.sin(lon);
+			this.coords[2][i] = Math.sin(lat);
+			this.ids[i] = i;
+		}
+		build(0, n, 0);
+		this.positions = new int[n];
+		for (int p = 0; p < n; p++)
+			this.positions[this.ids[p]] = p;
+	}
+
+	/**
+	 * Returns the number of locations.
+	 *
+	 * @return Number of locations.
+	 */
+	public int size() {
+		return this.ids.length;
+	}
+
+	/**
+	 * Returns the nearest other location of a location.
+	 *
+	 * @param i
+	 *            Index of a location.
+	 * @return Index of the nearest other location, -1 if there is none.
+	 */
+	public int nearest(int i) {
+		int p = this.positions[i];
+		return nearest(this.coords[0][p], this.coords[1][p], this.coords[2][p], i).id;
+	}
+
+	/**
+	 * Returns the great-circle distance of a location to its nearest other
+	 * location.
+	 *
+	 * @param i
+	 *            Index of a location.
+	 * @return Distance in kilometres, infinity if there is no other location.
+	 */
+	public double nearestDistance(int i) {
+		int p = this.positions[i];
+		Search search = nearest(this.coords[0][p], this.coords[1][p], this.coords[2][p], i);
+		return (search.id == -1) ? Double.POSITIVE_INFINITY : toKilometres(search.best);
+	}
+
+	/**
+	 * Returns the nearest location of a point.
+	 *
+	 * @param latitude
+	 *            Latitude of the point in degrees.
+	 * @param longitude
+	 *            Longitude of the point in degrees.
+	 * @return Index of the nearest location, -1 if there is none.
+	 */
+	public int nearest(double latitude, double longitude) {
+		double lat = Math.toRadians(latitude), lon = Math.toRadians(longitude);
+		return nearest(Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat), -1).id;
+	}
+
+	/**
+	 * Counts the locations within a great-circle distance of a point.
+	 *
+	 * @param latitude
+	 *            Latitude of the point in degrees.
+	 * @param longitude
+	 *            Longitude of the point in degrees.
+	 * @param radius
+	 *            Maximal distance in kilometres, inclusive.
+	 * @return Number of locations.
+	 */
+	public int countWithin(double latitude, double longitude, double radius) {
+		double angle = radius / GeoMetric.EARTH_RADIUS;
+		if (angle >= Math.PI)
+			return size();
+		double chord = 2 * Math.sin(angle / 2);
+		double lat = Math.toRadians(latitude), lon = Math.toRadians(longitude);
+		double[] q = { Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat) };
+		return countWithin(q, chord * chord, 0, size(), 0);
+	}
+
+	/**
+	 * Orders a range such that its median splits it along the axis of the
+	 * depth, then orders both halves.
+	 */
+	private void build(int lo, int hi, int depth) {
+		if (hi - lo < 2)
+			return;
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, depth % 3);
+		build(lo, mid, depth + 1);
+		build(mid + 1, hi, depth + 1);
+	}
+
+	/**
+	 * Moves the k-th smallest coordinate of an axis to position k by
+	 * quickselect.
+	 */
+	private void select(int left, int right, int k, int axis) {
+		double[] c = this.coords[axis];
+		while (left < right) {
+			// median of three as pivot
+			int mid = (left + right) >>> 1;
+			if (c[mid] < c[left])
+				swap(left, mid);
+			if (c[right] < c[left])
+				swap(left, right);
+			if (c[right] < c[mid])
+				swap(mid, right);
+			double pivot = c[mid];
+			int i = left, j = right;
+			while (i <= j) {
+				while (c[i] < pivot)
+					i++;
+				while (c[j] > pivot)
+					j--;
+				if (i <= j)
+					swap(i++, j--);
+			}
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Swaps two tree positions.
+	 */
+	private void swap(int a, int b) {
+		for (double[] c : this.coords) {
+			double t = c[a];
+			c[a] = c[b];
+			c[b] = t;
+		}
+		int t = this.ids[a];
+		this.ids[a] = this.ids[b];
+		this.ids[b] = t;
+	}
+
+	/**
+	 * Searches the nearest location of a unit vector.
+	 */
+	private Search nearest(double x, double y, double z, int exclude) {
+		Search search = new Search(new double[] { x, y, z }, exclude);
+		nearest(search, 0, size(), 0);
+		return search;
+	}
+
+	/**
+	 * Searches a range: its split point, the half of the query, and the other
+	 * half iff the split plane is closer than the best location so far.
+	 */
+	private void nearest(Search search, int lo, int hi, int depth) {
+		if (lo >= hi)
+			return;
+		int mid = (lo + hi) >>> 1;
+		if (this.ids[mid] != search.exclude) {
+			double d = squaredChord(search.q, mid);
+			if (d < search.best) {
+				search.best = d;
+				search.id = this.ids[mid];
+			}
+		}
+		double diff = search.q[depth % 3] - this.coords[depth % 3][mid];
+		if (diff < 0) {
+			nearest(search, lo, mid, depth + 1);
+			if (diff * diff < search.best)
+				nearest(search, mid + 1, hi, depth + 1);
+		} else {
+			nearest(search, mid + 1, hi, depth + 1);
+			if (diff * diff < search.best)
+				nearest(search, lo, mid, depth + 1);
+		}
+	}
+
+	/**
+	 * Counts the locations of a range within a squared chord.
+	 */
+	private int countWithin(double[] q, double squaredChord, int lo, int hi, int depth) {
+		if (lo >= hi)
+			return 0;
+		int mid = (lo + hi) >>> 1;
+		int count = (squaredChord(q, mid) <= squaredChord) ? 1 : 0;
+		double diff = q[depth % 3] - this.coords[depth % 3][mid];
+		if (diff <= 0 || diff * diff <= squaredChord)
+			count += countWithin(q, squaredChord, lo, mid, depth + 1);
+		if (diff >= 0 || diff * diff <= squaredChord)
+			count += countWithin(q, squaredChord, mid + 1, hi, depth + 1);
+		return count;
+	}
+
+	/**
+	 * Squared straight-line distance between a unit vector and a tree
+	 * position.
+	 */
+	private double squaredChord(double[] q, int p) {
+		double dx = q[0] - this.coords[0][p];
+		double dy = q[1] - this.coords[1][p];
+		double dz = q[2] - this.coords[2][p];
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Converts a squared chord of the unit sphere to kilometres.
+	 */
+	private static double toKilometres(double squaredChord) {
+		return 2 * GeoMetric.EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(squaredChord) / 2));
+	}
+
+	/**
+	 * State of a nearest-neighbour query.
+	 */
+	private static final class Search {
+		final double[] q;
+		final int exclude;
+		double best = Double.POSITIVE_INFINITY;
+		int id = -1;
+
+		Search(double[] q, int exclude) {
+			this.q = q;
+			this.exclude = exclude;
+		}
+	}
+
+}
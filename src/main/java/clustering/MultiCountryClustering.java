@@ -0,0 +1,254 @@
+package clustering;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import etl.CityRecord;
+import etl.CityRecordHandler;
+import etl.CityRecordPartitioner;
+import process_control.ClusterProcess;
+import representation.CompactSuffixTrie;
+import representation.Suffix;
+
+/**
+ * Clusters the toponyms of many countries at once. The extracted cities are
+ * partitioned by country code, each country gets its own suffix trie and
+ * n-gram model, and the countries are clustered in parallel. While
+ * extracting, only names and coordinates are collected; the trie of a country
+ * is built off-heap by the worker which clusters it and released afterwards.
+ * <p>
+ * Usage: pass the instance as {@link CityRecordPartitioner} to the
+ * extraction, then call {@link #cluster()} and {@link #export(Map, Writer)}.
+ *
+ * @author MM
+ *
+ */
+public class MultiCountryClustering implements CityRecordPartitioner {
+
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+
+	/** Number of worker threads. */
+	private final int threads;
+	/** Proportion of {@link SuffixClustering}. */
+	private final float proportion;
+	/** Minimal cluster size wrt. to the tree. */
+	private final float minPercent;
+	/** Maximal cluster size wrt. to the tree. */
+	private final float maxPercent;
+
+	/** Collected cities by country. */
+	private final Map<String, CompactSuffixTrie.Builder> partitions = new TreeMap<String, CompactSuffixTrie.Builder>();
+
+	/**
+	 * Creates a multi-country clustering.
+	 *
+	 * @param threads
+	 *            Number of worker threads.
+	 * @param proportion
+	 *            How many cities of the parent node must the current node
+	 *            subsume in order to represent a cluster potentially.
+	 * @param minPercent
+	 *            Minimal cluster size wrt. to the tree (each last letter forms
+	 *            a tree).
+	 * @param maxPercent
+	 *            Maximal cluster size wrt. to the tree (each last letter forms
+	 *            a tree).
+	 */
+	public MultiCountryClustering(int threads, float proportion, float minPercent, float maxPercent) {
+		this.threads = threads;
+		this.proportion = proportion;
+		this.minPercent = minPercent;
+		this.maxPercent = maxPercent;
+	}
+
+	@Override
+	public CityRecordHandler getHandler(String countryCode) {
+		final CompactSuffixTrie.Builder builder = new CompactSuffixTrie.Builder();
+		this.partitions.put(countryCode, builder);
+		return new CityRecordHandler() {
+			@Override
+			public void handle(CityRecord record) {
+				builder.addCity(record.getName(), record.getLatitude(), record.getLongitude());
+			}
+		};
+	}
+
+	/**
+	 * Clusters all collected countries in parallel. The largest countries are
+	 * started first, thus the workers finish at about the same time.
+	 *
+	 * @return Result per country, sorted by country code.
+	 * @throws IOException
+	 *             If the clustering is interrupted.
+	 */
+	public SortedMap<String, CountryResult> cluster() throws IOException {
+		List<String> countries = new ArrayList<String>(this.partitions.keySet());
+		Collections.sort(countries, new Comparator<String>() {
+			@Override
+			public int compare(String c1, String c2) {
+				return Integer.compare(partitions.get(c2).getCountCities(), partitions.get(c1).getCountCities());
+			}
+		});
+
+		Map<String, Future<CountryResult>> pending = new LinkedHashMap<String, Future<CountryResult>>();
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		try {
+			for (final String country : countries) {
+				final CompactSuffixTrie.Builder builder = this.partitions.get(country);
+				pending.put(country, executor.submit(new Callable<CountryResult>() {
+					@Override
+					public CountryResult call() {
+						return clusterCountry(country, builder);
+					}
+				}));
+			}
+
+			SortedMap<String, CountryResult> results = new TreeMap<String, CountryResult>();
+			for (Map.Entry<String, Future<CountryResult>> e : pending.entrySet()) {
+				CountryResult result = await(e.getValue());
+				results.put(e.getKey(), result);
+				// the names are no longer needed
+				this.partitions.put(e.getKey(), null);
+				log.info("clustered " + e.getKey() + ": " + result.getCountCities() + " cities, "
+						+ result.getClusters().size() + " clusters");
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Builds the trie and the n-gram model of one country and clusters it.
+	 */
+	private CountryResult clusterCountry(String country, CompactSuffixTrie.Builder builder) {
+		CompactSuffixTrie trie = builder.build();
+		SuffixClustering clustering = new SuffixClustering(new Statistics(trie), this.proportion, this.minPercent,
+				this.maxPercent);
+		SortedMap<String, Integer> clusters = new TreeMap<String, Integer>();
+		for (int node : clustering.determineClusterCandidatesByNGrams(trie))
+			clusters.put(trie.getStr(node), trie.getSubsumedCities(node));
+		return new CountryResult(country, trie.getCountCities(), trie.getCountSuffixNodes(), clusters);
+	}
+
+	/**
+	 * Writes the results of all countries as one JSON document, i.e.
+	 * {"countCountries": .., "countCities": .., "countClusters": ..,
+	 * "countries": [{"country": "de", "countCities": .., "countSuffixNodes":
+	 * .., "countClusters": .., "clusters": [{"suffix": {...}}, ...]}, ...]}.
+	 *
+	 * @param results
+	 *            Result per country.
+	 * @param out
+	 *            Receives the JSON.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public static void export(Map<String, CountryResult> results, Writer out) throws IOException {
+		int countCities = 0, countClusters = 0;
+		for (CountryResult result : results.values()) {
+			countCities += result.getCountCities();
+			countClusters += result.getClusters().size();
+		}
+		out.write("{\"countCountries\":" + results.size() + ", \"countCities\":" + countCities
+				+ ", \"countClusters\":" + countClusters + ", \"countries\": [\n");
+		boolean isFirstCountry = true;
+		for (CountryResult result : results.values()) {
+			if (!isFirstCountry)
+				out.write(",\n");
+			isFirstCountry = false;
+			out.write("{\"country\":\"" + result.getCountry() + "\", \"countCities\":" + result.getCountCities()
+					+ ", \"countSuffixNodes\":" + result.getCountSuffixNodes() + ", \"countClusters\":"
+					+ result.getClusters().size() + ", \"clusters\": [");
+			boolean isFirstCluster = true;
+			for (Map.Entry<String, Integer> c : result.getClusters().entrySet()) {
+				if (!isFirstCluster)
+					out.write(", ");
+				isFirstCluster = false;
+				out.write("{" + Suffix.toString(c.getKey(), c.getValue()) + "}");
+			}
+			out.write("]}");
+		}
+		out.write("\n]}\n");
+		out.flush();
+	}
+
+	/**
+	 * Waits for the result of a country.
+	 */
+	private static CountryResult await(Future<CountryResult> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Clustering was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Clusters of one country.
+	 *
+	 * @author MM
+	 *
+	 */
+	public static final class CountryResult {
+
+		/** Country code. */
+		private final String country;
+		/** Number of cities. */
+		private final int countCities;
+		/** Number of suffix nodes. */
+		private final int countSuffixNodes;
+		/** Subsumed cities by suffix of each cluster. */
+		private final SortedMap<String, Integer> clusters;
+
+		CountryResult(String country, int countCities, int countSuffixNodes, SortedMap<String, Integer> clusters) {
+			this.country = country;
+			this.countCities = countCities;
+			this.countSuffixNodes = countSuffixNodes;
+			this.clusters = Collections.unmodifiableSortedMap(clusters);
+		}
+
+		public String getCountry() {
+			return this.country;
+		}
+
+		public int getCountCities() {
+			return this.countCities;
+		}
+
+		public int getCountSuffixNodes() {
+			return this.countSuffixNodes;
+		}
+
+		/**
+		 * Returns the clusters.
+		 *
+		 * @return Subsumed cities by suffix of each cluster, sorted by suffix.
+		 */
+		public SortedMap<String, Integer> getClusters() {
+			return this.clusters;
+		}
+	}
+
+}
@@ -0,0 +1,285 @@
+package clustering;
+
+/**
+ * Letter, bigram, and trigram counts of the city names with packed primitive
+ * keys. Letters are counted in a dense array, bigrams and trigrams in
+ * open-addressing tables whose keys are the 16 bit characters packed into a
+ * long. Thus, lookups neither box values nor create strings.
+ * <p>
+ * Each name is padded with two start-of-word and two end-of-word symbols like
+ * in {@link Statistics}. The model is immutable after building, thus it can
+ * be shared among threads.
+ *
+ * @author MM
+ *
+ */
+public final class NGramModel {
+
+	/** Start of word. */
+	public static final char SOW = '$';
+	/** End of word. */
+	public static final char EOW = '#';
+
+	/** Count of each letter, indexed by the character. */
+	private final int[] letterCounts;
+	/** Number of letter types. */
+	private final int numberLetterTypes;
+	/** Counts of the bigrams. */
+	private final PackedCountTable bigramCounts;
+	/** Counts of the trigrams. */
+	private final PackedCountTable trigramCounts;
+
+	/** Number of letter tokens. */
+	private final int numberLetterTokens;
+	/** Number of bigram tokens. */
+	private final int numberBigramTokens;
+	/** Number of trigram tokens. */
+	private final int numberTrigramTokens;
+
+	/**
+	 * Creates a model from its counts.
+	 */
+	NGramModel(int[] letterCounts, PackedCountTable bigramCounts, PackedCountTable trigramCounts,
+			int numberLetterTokens, int numberBigramTokens, int numberTrigramTokens) {
+		this.letterCounts = letterCounts;
+		int types = 0;
+		for (int count : letterCounts)
+			if (count > 0)
+				types++;
+		this.numberLetterTypes = types;
+		this.bigramCounts = bigramCounts;
+		this.trigramCounts = trigramCounts;
+		this.numberLetterTokens = numberLetterTokens;
+		this.numberBigramTokens = numberBigramTokens;
+		this.numberTrigramTokens = numberTrigramTokens;
+	}
+
+	/**
+	 * Counts the n-grams (n=1, n=2, n=3) of city names.
+	 *
+	 * @param cityNames
+	 *            Distinct city names.
+	 * @return The n-gram model.
+	 */
+	public static NGramModel build(Iterable<? extends CharSequence> cityNames) {
+		int[] letterCounts = new int[Character.MAX_VALUE + 1];
+		PackedCountTable bigramCounts = new PackedCountTable(1024);
+		PackedCountTable trigramCounts = new PackedCountTable(8192);
+		int numberLetterTokens = 0, numberBigramTokens = 0, numberTrigramTokens = 0;
+
+		for (CharSequence str : cityNames) {
+			int length = str.length();
+			char prev2 = SOW, prev1 = SOW;
+			// iterate over the letters of the padded city name
+			for (int i = 0; i < length + 2; i++) {
+				char letter = (i < length) ? str.charAt(i) : EOW;
+				// 1: letter distribution (eow's are ignored)
+				if (i < length)
+					letterCounts[letter]++;
+				// 2: bigram distribution ([eow, eow] is ignored)
+				if (i < length + 1)
+					bigramCounts.increment(pack(prev1, letter));
+				// 3: trigram distribution
+				trigramCounts.increment(pack(prev2, prev1, letter));
+
+				prev2 = prev1;
+				prev1 = letter;
+			}
+
+			numberLetterTokens += length;
+			numberBigramTokens += length + 1;
+			numberTrigramTokens += length + 2;
+		}
+
+		return new NGramModel(letterCounts, bigramCounts, trigramCounts, numberLetterTokens, numberBigramTokens,
+				numberTrigramTokens);
+	}
+
+	/**
+	 * Packs a bigram into a key.
+	 *
+	 * @param a
+	 *            First letter.
+	 * @param b
+	 *            Second letter.
+	 * @return Packed bigram.
+	 */
+	static long pack(char a, char b) {
+		return ((long) a << 16) | b;
+	}
+
+	/**
+	 * Packs a trigram into a key.
+	 *
+	 * @param a
+	 *            First letter.
+	 * @param b
+	 *            Second letter.
+	 * @param c
+	 *            Third letter.
+	 * @return Packed trigram.
+	 */
+	static long pack(char a, char b, char c) {
+		return ((long) a << 32) | ((long) b << 16) | c;
+	}
+
+	/**
+	 * Returns the count of a letter.
+	 *
+	 * @param a
+	 *            A letter.
+	 * @return The count.
+	 */
+	public int getLetterCount(char a) {
+		return this.letterCounts[a];
+	}
+
+	/**
+	 * Returns the count of a bigram.
+	 *
+	 * @param a
+	 *            First letter.
+	 * @param b
+	 *            Second letter.
+	 * @return The count.
+	 */
+	public int getBigramCount(char a, char b) {
+		return this.bigramCounts.get(pack(a, b));
+	}
+
+	/**
+	 * Returns the count of a trigram.
+	 *
+	 * @param a
+	 *            First letter.
+	 * @param b
+	 *            Second letter.
+	 * @param c
+	 *            Third letter.
+	 * @return The count.
+	 */
+	public int getTrigramCount(char a, char b, char c) {
+		return this.trigramCounts.get(pack(a, b, c));
+	}
+
+	/**
+	 * Returns the relative frequency of a letter, e.g. P(z).
+	 *
+	 * @param a
+	 *            A letter.
+	 * @return The probability.
+	 */
+	public float getLetterProbability(char a) {
+		return 1f * getLetterCount(a) / this.numberLetterTokens;
+	}
+
+	/**
+	 * Returns the relative frequency of a bigram, e.g. P(ze).
+	 *
+	 * @param a
+	 *            First letter.
+	 * @param b
+	 *            Second letter.
+	 * @return The probability.
+	 */
+	public float getBigramProbability(char a, char b) {
+		return 1f * getBigramCount(a, b) / this.numberBigramTokens;
+	}
+
+	/**
+	 * Returns the relative frequency of a trigram, e.g. P(zel).
+	 *
+	 * @param a
+	 *            First letter.
+	 * @param b
+	 *            Second letter.
+	 * @param c
+	 *            Third letter.
+	 * @return The probability.
+	 */
+	public float getTrigramProbability(char a, char b, char c) {
+		return 1f * getTrigramCount(a, b, c) / this.numberTrigramTokens;
+	}
+
+	/**
+	 * Returns the probability of a letter given the following letter, e.g.
+	 * P(z|e) = P(ze) / P(e).
+	 *
+	 * @param a
+	 *            A letter.
+	 * @param context
+	 *            The following letter.
+	 * @return The conditional probability.
+	 */
+	public float getBigramConditionalProbability(char a, char context) {
+		return getBigramProbability(a, context) / getLetterProbability(context);
+	}
+
+	/**
+	 * Returns the probability of a letter given the two following letters,
+	 * e.g. P(z|el) = P(zel) / P(el).
+	 *
+	 * @param a
+	 *            A letter.
+	 * @param context1
+	 *            The following letter.
+	 * @param context2
+	 *            The letter following the context1.
+	 * @return The conditional probability.
+	 */
+	public float getTrigramConditionalProbability(char a, char context1, char context2) {
+		return getTrigramProbability(a, context1, context2) / getBigramProbability(context1, context2);
+	}
+
+	public int getNumberLetterTokens() {
+		return this.numberLetterTokens;
+	}
+
+	public int getNumberBigramTokens() {
+		return this.numberBigramTokens;
+	}
+
+	public int getNumberTrigramTokens() {
+		return this.numberTrigramTokens;
+	}
+
+	public int getNumberLetterTypes() {
+		return this.numberLetterTypes;
+	}
+
+	public int getNumberBigramTypes() {
+		return this.bigramCounts.size();
+	}
+
+	public int getNumberTrigramTypes() {
+		return this.trigramCounts.size();
+	}
+
+	/**
+	 * Returns the letter counts.
+	 *
+	 * @return Count of each letter, indexed by the character.
+	 */
+	int[] getLetterCounts() {
+		return this.letterCounts;
+	}
+
+	/**
+	 * Returns the bigram counts.
+	 *
+	 * @return Table of the packed bigrams.
+	 */
+	PackedCountTable getBigramCounts() {
+		return this.bigramCounts;
+	}
+
+	/**
+	 * Returns the trigram counts.
+	 *
+	 * @return Table of the packed trigrams.
+	 */
+	PackedCountTable getTrigramCounts() {
+		return this.trigramCounts;
+	}
+
+}
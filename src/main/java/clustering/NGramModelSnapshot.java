@@ -0,0 +1,150 @@
+package clustering;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary snapshot of an {@link NGramModel}. The snapshot holds the letter
+ * counts, the slots of both packed count tables, and the token totals, thus
+ * reading it neither counts nor hashes. It is stamped with the version of the
+ * data the model was built from, see {@link database.DataVersion}, and read by
+ * a memory mapping.
+ * <p>
+ * Layout (big endian): magic, format, data version, letter/bigram/trigram
+ * tokens, number of letter types, (letter, count) per letter type, and for
+ * the bigram and trigram table: capacity, size, keys, counts.
+ *
+ * @author MM
+ *
+ */
+public final class NGramModelSnapshot {
+
+	/** Magic number of a snapshot, "NGRM". */
+	private static final int MAGIC = 0x4E47524D;
+	/** Version of the layout. */
+	private static final int FORMAT = 1;
+
+	private NGramModelSnapshot() {
+	}
+
+	/**
+	 * Writes a model. The file is replaced atomically, thus readers see either
+	 * the old or the new snapshot.
+	 *
+	 * @param model
+	 *            The model.
+	 * @param file
+	 *            Location of the snapshot.
+	 * @param dataVersion
+	 *            Version of the data the model was built from.
+	 * @throws IOException
+	 *             If writing fails.
+	 */
+	public static void write(NGramModel model, File file, long dataVersion) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeLong(dataVersion);
+			out.writeInt(model.getNumberLetterTokens());
+			out.writeInt(model.getNumberBigramTokens());
+			out.writeInt(model.getNumberTrigramTokens());
+
+			int[] letterCounts = model.getLetterCounts();
+			out.writeInt(model.getNumberLetterTypes());
+			for (int c = 0; c < letterCounts.length; c++) {
+				if (letterCounts[c] > 0) {
+					out.writeChar(c);
+					out.writeInt(letterCounts[c]);
+				}
+			}
+			writeTable(out, model.getBigramCounts());
+			writeTable(out, model.getTrigramCounts());
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes the slots of a table.
+	 */
+	private static void writeTable(DataOutputStream out, PackedCountTable table) throws IOException {
+		out.writeInt(table.capacity());
+		out.writeInt(table.size());
+		for (int slot = 0; slot < table.capacity(); slot++)
+			out.writeLong(table.keyAt(slot));
+		for (int slot = 0; slot < table.capacity(); slot++)
+			out.writeInt(table.countAt(slot));
+	}
+
+	/**
+	 * Reads a model if it was built from the given version of the data.
+	 *
+	 * @param file
+	 *            Location of the snapshot.
+	 * @param dataVersion
+	 *            Current version of the data.
+	 * @return The model or 'null' if there is no snapshot or it is stale.
+	 * @throws IOException
+	 *             If reading fails or the snapshot is corrupt.
+	 */
+	public static NGramModel read(File file, long dataVersion) throws IOException {
+		if (!file.isFile())
+			return null;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 16 || buffer.getInt() != MAGIC)
+				throw new IOException("No n-gram snapshot: " + file);
+			if (buffer.getInt() != FORMAT || buffer.getLong() != dataVersion)
+				return null;
+
+			int numberLetterTokens = buffer.getInt();
+			int numberBigramTokens = buffer.getInt();
+			int numberTrigramTokens = buffer.getInt();
+
+			int[] letterCounts = new int[Character.MAX_VALUE + 1];
+			int numberLetterTypes = buffer.getInt();
+			for (int i = 0; i < numberLetterTypes; i++)
+				letterCounts[buffer.getChar()] = buffer.getInt();
+			PackedCountTable bigramCounts = readTable(buffer);
+			PackedCountTable trigramCounts = readTable(buffer);
+
+			return new NGramModel(letterCounts, bigramCounts, trigramCounts, numberLetterTokens, numberBigramTokens,
+					numberTrigramTokens);
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt n-gram snapshot: " + file, e);
+		}
+	}
+
+	/**
+	 * Reads the slots of a table by bulk copies.
+	 */
+	private static PackedCountTable readTable(MappedByteBuffer buffer) throws IOException {
+		int capacity = buffer.getInt();
+		int size = buffer.getInt();
+		if (Integer.bitCount(capacity) != 1 || size < 0 || size > capacity)
+			throw new IOException("Corrupt n-gram table: capacity " + capacity + ", size " + size);
+		long[] keys = new long[capacity];
+		buffer.asLongBuffer().get(keys);
+		buffer.position(buffer.position() + 8 * capacity);
+		int[] counts = new int[capacity];
+		buffer.asIntBuffer().get(counts);
+		buffer.position(buffer.position() + 4 * capacity);
+		return new PackedCountTable(keys, counts, size);
+	}
+
+}
@@ -0,0 +1,191 @@
+package clustering;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from packed n-gram keys to counts. Keys are
+ * non-negative longs, e.g. up to three 16 bit characters, thus neither keys
+ * nor counts are boxed.
+ *
+ * @author MM
+ *
+ */
+final class PackedCountTable {
+
+	/** Marker of an empty slot. */
+	static final long EMPTY = -1L;
+
+	/** Maximal fill ratio before the table grows. */
+	private static final float LOAD_FACTOR = 0.5f;
+
+	/** Keys of the slots. */
+	private long[] keys;
+	/** Counts of the slots. */
+	private int[] counts;
+	/** Number of used slots. */
+	private int size;
+
+	/**
+	 * Creates an empty table.
+	 *
+	 * @param expectedSize
+	 *            Expected number of keys.
+	 */
+	PackedCountTable(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(8, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		this.keys = new long[capacity];
+		Arrays.fill(this.keys, EMPTY);
+		this.counts = new int[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Creates a table from its slots, e.g. when reading a persisted table.
+	 *
+	 * @param keys
+	 *            Keys of the slots, the length is a power of two.
+	 * @param counts
+	 *            Counts of the slots.
+	 * @param size
+	 *            Number of used slots.
+	 */
+	PackedCountTable(long[] keys, int[] counts, int size) {
+		this.keys = keys;
+		this.counts = counts;
+		this.size = size;
+	}
+
+	/**
+	 * Increments the count of a key by one.
+	 *
+	 * @param key
+	 *            A non-negative key.
+	 */
+	void increment(long key) {
+		int slot = find(key);
+		if (this.keys[slot] == EMPTY) {
+			this.keys[slot] = key;
+			if (++this.size > this.keys.length * LOAD_FACTOR) {
+				grow();
+				slot = find(key);
+			}
+		}
+		this.counts[slot]++;
+	}
+
+	/**
+	 * Sets the value of a key, e.g. the bits of a float.
+	 *
+	 * @param key
+	 *            A non-negative key.
+	 * @param value
+	 *            The value.
+	 */
+	void put(long key, int value) {
+		int slot = find(key);
+		if (this.keys[slot] == EMPTY) {
+			this.keys[slot] = key;
+			if (++this.size > this.keys.length * LOAD_FACTOR) {
+				grow();
+				slot = find(key);
+			}
+		}
+		this.counts[slot] = value;
+	}
+
+	/**
+	 * Returns the value of a key.
+	 *
+	 * @param key
+	 *            A non-negative key.
+	 * @param defaultValue
+	 *            Value of unknown keys.
+	 * @return The value or the default value if the key is unknown.
+	 */
+	int get(long key, int defaultValue) {
+		int slot = find(key);
+		return (this.keys[slot] == EMPTY) ? defaultValue : this.counts[slot];
+	}
+
+	/**
+	 * Returns the count of a key.
+	 *
+	 * @param key
+	 *            A non-negative key.
+	 * @return The count or 0 if the key is unknown.
+	 */
+	int get(long key) {
+		return this.counts[find(key)];
+	}
+
+	/**
+	 * Returns the number of keys.
+	 *
+	 * @return Number of keys.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of slots.
+	 *
+	 * @return Number of slots.
+	 */
+	int capacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the key of a slot.
+	 *
+	 * @param slot
+	 *            A slot.
+	 * @return The key or {@link #EMPTY}.
+	 */
+	long keyAt(int slot) {
+		return this.keys[slot];
+	}
+
+	/**
+	 * Returns the count of a slot.
+	 *
+	 * @param slot
+	 *            A slot.
+	 * @return The count.
+	 */
+	int countAt(int slot) {
+		return this.counts[slot];
+	}
+
+	/**
+	 * Returns the slot of a key or the empty slot where it belongs to
+	 * (linear probing).
+	 */
+	private int find(long key) {
+		int mask = this.keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while (this.keys[slot] != EMPTY && this.keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Doubles the number of slots.
+	 */
+	private void grow() {
+		long[] oldKeys = this.keys;
+		int[] oldCounts = this.counts;
+		this.keys = new long[oldKeys.length * 2];
+		Arrays.fill(this.keys, EMPTY);
+		this.counts = new int[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = find(oldKeys[i]);
+				this.keys[slot] = oldKeys[i];
+				this.counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+}
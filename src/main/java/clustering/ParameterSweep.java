@@ -0,0 +1,349 @@
+package clustering;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import process_control.ClusterProcess;
+import representation.EdgeTypes;
+import representation.Suffix;
+
+/**
+ * Clusters the graph by n-grams like
+ * {@link SuffixClustering#determineClusterCandidatesByNGrams()} for many
+ * settings of the critical values at once. Each tree is traversed once and
+ * the decisions of all settings are made per node; the significance is
+ * decided by the {@link SignificanceScorer} of each setting, by default the
+ * one {@link SuffixClustering} chooses. Nothing is written to the graph, i.e.
+ * the candidates of each setting are returned.
+ *
+ * @author MM
+ *
+ */
+public class ParameterSweep {
+
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+
+	/** Graph database. */
+	private final GraphDatabaseService graphDb;
+
+	/** Graph properties. */
+	private final GraphProperties properties;
+
+	/** Graph statistics. */
+	private final Statistics statistics;
+
+	/** The settings to evaluate. */
+	private final List<Setting> settings;
+
+	/**
+	 * Creates a sweep.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @param properties
+	 *            Graph properties.
+	 * @param statistics
+	 *            Graph statistics.
+	 * @param settings
+	 *            The settings to evaluate, e.g. by
+	 *            {@link Setting#grid(float[], float[], SignificanceScorer...)}.
+	 */
+	public ParameterSweep(GraphDatabaseService graphDb, GraphProperties properties, Statistics statistics,
+			List<Setting> settings) {
+		if (settings.isEmpty())
+			throw new IllegalArgumentException("You have to specify at least one setting.");
+		this.graphDb = graphDb;
+		this.properties = properties;
+		this.statistics = statistics;
+		this.settings = new ArrayList<Setting>(settings);
+	}
+
+	/**
+	 * Determines the cluster candidates of each setting. The trees are
+	 * traversed in parallel.
+	 *
+	 * @param threads
+	 *            Number of worker threads.
+	 * @return Settings mapped to their cluster candidates, in the order of the
+	 *         settings.
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	public Map<Setting, Set<Suffix>> run(int threads) throws NoSuchFieldException {
+		long timeStart = System.currentTimeMillis();
+		final List<Set<Suffix>> candidates = new ArrayList<Set<Suffix>>();
+		for (int s = 0; s < this.settings.size(); s++)
+			candidates.add(Collections.newSetFromMap(new ConcurrentHashMap<Suffix, Boolean>()));
+
+		// the n-grams and the scorers are created lazily: do it before sharing them
+		final SignificanceScorer[] scorers = new SignificanceScorer[this.settings.size()];
+		SignificanceScorer defaultScorer = null;
+		for (int s = 0; s < scorers.length; s++) {
+			scorers[s] = this.settings.get(s).scorer;
+			if (scorers[s] == null) {
+				if (defaultScorer == null)
+					defaultScorer = SignificanceScorers.fromSystemProperties(this.statistics.getModel());
+				scorers[s] = defaultScorer;
+			}
+		}
+		try (Transaction tx = this.graphDb.beginTx()) {
+			for (Suffix root : this.properties.getRootNodes())
+				if (!root.getUnderlyingNode().hasProperty(Suffix.KEY_SUBSCITIES))
+					throw new NoSuchFieldException("You need to determined subsumend cities for this method.");
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (final Suffix root : this.properties.getRootNodes()) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						sweepTree(root.getUnderlyingNode(), scorers, candidates);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Parameter sweep was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Map<Setting, Set<Suffix>> result = new LinkedHashMap<Setting, Set<Suffix>>();
+		for (int s = 0; s < this.settings.size(); s++)
+			result.put(this.settings.get(s), candidates.get(s));
+		log.info("Evaluated " + this.settings.size() + " settings in " + (System.currentTimeMillis() - timeStart)
+				+ "ms.");
+		return result;
+	}
+
+	/**
+	 * Traverses a tree depth-first and decides for each setting which children
+	 * of a node are cluster candidates. The decision depends on the node and
+	 * the tree only, thus the order of the traversal does not matter.
+	 *
+	 * @param root
+	 *            Root of the tree.
+	 * @param scorers
+	 *            The scorer of each setting.
+	 * @param candidates
+	 *            Receives the candidates of each setting.
+	 */
+	private void sweepTree(Node root, SignificanceScorer[] scorers, List<Set<Suffix>> candidates) {
+		int countSettings = this.settings.size();
+		try (Transaction tx = this.graphDb.beginTx()) {
+			// bounds of each setting for this tree
+			int noCities = ((Number) root.getProperty(Suffix.KEY_SUBSCITIES)).intValue();
+			int[] minClusterSizes = new int[countSettings];
+			int[] maxClusterSizes = new int[countSettings];
+			int smallestMin = Integer.MAX_VALUE;
+			for (int s = 0; s < countSettings; s++) {
+				Setting setting = this.settings.get(s);
+				minClusterSizes[s] = SuffixClustering.minClusterSize(noCities, setting.minPercent);
+				maxClusterSizes[s] = SuffixClustering.maxClusterSize(noCities, setting.maxPercent);
+				smallestMin = Math.min(smallestMin, minClusterSizes[s]);
+			}
+
+			Deque<Frame> stack = new ArrayDeque<Frame>();
+			stack.push(new Frame(root, noCities, new BitSet(countSettings)));
+			boolean isRoot = true;
+			while (!stack.isEmpty()) {
+				Frame parent = stack.pop();
+
+				// settings which reach the parent
+				BitSet active = new BitSet(countSettings);
+				for (int s = 0; s < countSettings; s++)
+					if (isRoot || parent.subsumedCities >= minClusterSizes[s])
+						active.set(s);
+				isRoot = false;
+
+				// a child is no candidate iff the parent and all relevant sisters are candidates
+				BitSet isInheritance = (BitSet) parent.isCandidate.clone();
+				List<Frame> children = new ArrayList<Frame>();
+				for (Relationship edge : parent.node.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF)) {
+					Node node = edge.getEndNode();
+					int subsCitiesChild = ((Number) node.getProperty(Suffix.KEY_SUBSCITIES)).intValue();
+					if (subsCitiesChild < smallestMin)
+						continue;
+
+					// context of the suffix, independent of the setting
+					String str = (String) node.getProperty(Suffix.KEY_STR);
+					char letter = str.charAt(0);
+					char context1 = (str.length() > 1) ? str.charAt(1) : NGramModel.EOW;
+					char context2 = (str.length() > 2) ? str.charAt(2) : NGramModel.EOW;
+
+					Frame child = new Frame(node, subsCitiesChild, new BitSet(countSettings));
+					for (int s = active.nextSetBit(0); s >= 0; s = active.nextSetBit(s + 1)) {
+						if (subsCitiesChild < minClusterSizes[s] || subsCitiesChild > maxClusterSizes[s])
+							continue;
+						if (scorers[s].isSignificant(letter, context1, context2, subsCitiesChild,
+								parent.subsumedCities))
+							child.isCandidate.set(s); // significant
+						else
+							isInheritance.clear(s);
+					}
+					children.add(child);
+				}
+
+				for (Frame child : children) {
+					child.isCandidate.andNot(isInheritance);
+					for (int s = child.isCandidate.nextSetBit(0); s >= 0; s = child.isCandidate.nextSetBit(s + 1))
+						candidates.get(s).add(new Suffix(child.node));
+					stack.push(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A suffix node on the stack of the traversal.
+	 */
+	private static class Frame {
+		/** The suffix node. */
+		final Node node;
+		/** Its subsumed cities. */
+		final int subsumedCities;
+		/** Settings for which the node is a cluster candidate. */
+		final BitSet isCandidate;
+
+		Frame(Node node, int subsumedCities, BitSet isCandidate) {
+			this.node = node;
+			this.subsumedCities = subsumedCities;
+			this.isCandidate = isCandidate;
+		}
+	}
+
+	/**
+	 * Critical values of one clustering by n-grams.
+	 */
+	public static final class Setting {
+
+		/** Minimal cluster size wrt. to the tree. */
+		final float minPercent;
+		/** Maximal cluster size wrt. to the tree. */
+		final float maxPercent;
+		/** Decides about the significance, 'null' for the one of {@link SuffixClustering}. */
+		final SignificanceScorer scorer;
+
+		/**
+		 * Creates a setting.
+		 *
+		 * @param minPercent
+		 *            Minimal cluster size wrt. to the tree.
+		 * @param maxPercent
+		 *            Maximal cluster size wrt. to the tree.
+		 * @param scorer
+		 *            Decides about the significance, or 'null' for the scorer
+		 *            {@link SuffixClustering} chooses by system properties.
+		 */
+		public Setting(float minPercent, float maxPercent, SignificanceScorer scorer) {
+			if (minPercent < 0 || maxPercent < 0 || minPercent > 1 || maxPercent > 1)
+				throw new IllegalArgumentException("You have to specify a value from (0,1) for percentMin/Max.");
+			this.minPercent = minPercent;
+			this.maxPercent = maxPercent;
+			this.scorer = scorer;
+		}
+
+		/**
+		 * Creates a setting with the scorer {@link SuffixClustering} chooses
+		 * by system properties.
+		 *
+		 * @param minPercent
+		 *            Minimal cluster size wrt. to the tree.
+		 * @param maxPercent
+		 *            Maximal cluster size wrt. to the tree.
+		 */
+		public Setting(float minPercent, float maxPercent) {
+			this(minPercent, maxPercent, null);
+		}
+
+		/**
+		 * Returns all combinations of the given values.
+		 *
+		 * @param minPercents
+		 *            Minimal cluster sizes.
+		 * @param maxPercents
+		 *            Maximal cluster sizes.
+		 * @param scorers
+		 *            Scorers, e.g. with different alphas or weights.
+		 * @return The settings.
+		 */
+		public static List<Setting> grid(float[] minPercents, float[] maxPercents, SignificanceScorer... scorers) {
+			List<Setting> grid = new ArrayList<Setting>();
+			for (float minPercent : minPercents)
+				for (float maxPercent : maxPercents)
+					for (SignificanceScorer scorer : scorers)
+						grid.add(new Setting(minPercent, maxPercent, scorer));
+			return grid;
+		}
+
+		public float getMinPercent() {
+			return this.minPercent;
+		}
+
+		public float getMaxPercent() {
+			return this.maxPercent;
+		}
+
+		/**
+		 * Returns the scorer of the setting.
+		 *
+		 * @return The scorer or 'null' for the one of {@link SuffixClustering}.
+		 */
+		public SignificanceScorer getScorer() {
+			return this.scorer;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = Float.floatToIntBits(this.minPercent);
+			hash = 31 * hash + Float.floatToIntBits(this.maxPercent);
+			return 31 * hash + ((this.scorer == null) ? 0 : this.scorer.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Setting))
+				return false;
+			Setting other = (Setting) o;
+			return this.minPercent == other.minPercent && this.maxPercent == other.maxPercent
+					&& ((this.scorer == null) ? other.scorer == null : this.scorer.equals(other.scorer));
+		}
+
+		@Override
+		public String toString() {
+			return "minPercent=" + this.minPercent + ", maxPercent=" + this.maxPercent + ", scorer="
+					+ ((this.scorer == null) ? "default" : this.scorer.toString());
+		}
+	}
+
+}
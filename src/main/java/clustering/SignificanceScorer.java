@@ -0,0 +1,50 @@
+package clustering;
+
+/**
+ * Decides whether a suffix node is significant, i.e. whether it subsumes
+ * considerably more cities of its parent than its first letter is expected
+ * to. The letter is conditioned on its right context, i.e. the following two
+ * letters of the suffix or end of word.
+ * <p>
+ * Implementations are immutable, thus they can be shared among threads. Their
+ * {@link #toString()} names the scorer and all of its parameters, as it is
+ * stored with each incrementally clustered tree. See
+ * {@link SignificanceScorers} for choosing an implementation by system
+ * properties.
+ *
+ * @author MM
+ *
+ */
+public interface SignificanceScorer {
+
+	/**
+	 * Returns the expected probability of a letter given its context.
+	 *
+	 * @param letter
+	 *            First letter of the suffix, e.g. "z" of "zell".
+	 * @param context1
+	 *            Second letter of the suffix or end of word, e.g. "e".
+	 * @param context2
+	 *            Third letter of the suffix or end of word, e.g. "l".
+	 * @return The probability.
+	 */
+	float getProbability(char letter, char context1, char context2);
+
+	/**
+	 * Returns whether a suffix node is significant.
+	 *
+	 * @param letter
+	 *            First letter of the suffix.
+	 * @param context1
+	 *            Second letter of the suffix or end of word.
+	 * @param context2
+	 *            Third letter of the suffix or end of word.
+	 * @param subsCitiesChild
+	 *            Subsumed cities of the suffix node.
+	 * @param subsCitiesParent
+	 *            Subsumed cities of its parent.
+	 * @return 'true' iff significant.
+	 */
+	boolean isSignificant(char letter, char context1, char context2, int subsCitiesChild, int subsCitiesParent);
+
+}
@@ -0,0 +1,73 @@
+package clustering;
+
+/**
+ * Creates the {@link SignificanceScorer} chosen by system properties, thus
+ * scorers are swapped without code changes, e.g.
+ * <code>-Dtoponym.significance=witten-bell -Dtoponym.significance.alpha=2</code>.
+ *
+ * @author MM
+ *
+ */
+public final class SignificanceScorers {
+
+	/** System property for the scorer: {@value #INTERPOLATED} (default) or {@value #WITTEN_BELL}. */
+	public static final String SCORER_PROPERTY = "toponym.significance";
+	/** System property for alpha. */
+	public static final String ALPHA_PROPERTY = "toponym.significance.alpha";
+	/** System property for the three interpolation weights, e.g. "0.2,0.3,0.5". */
+	public static final String WEIGHTS_PROPERTY = "toponym.significance.weights";
+
+	/** Name of the {@link InterpolatedScorer}. */
+	public static final String INTERPOLATED = "interpolated";
+	/** Name of the {@link WittenBellScorer}. */
+	public static final String WITTEN_BELL = "witten-bell";
+
+	private SignificanceScorers() {
+	}
+
+	/**
+	 * Creates the scorer chosen by the system properties.
+	 *
+	 * @param model
+	 *            N-gram model.
+	 * @return The scorer.
+	 * @throws IllegalArgumentException
+	 *             If a property has an invalid value.
+	 */
+	public static SignificanceScorer fromSystemProperties(NGramModel model) {
+		String scorer = System.getProperty(SCORER_PROPERTY, INTERPOLATED);
+		float alpha = parseFloat(ALPHA_PROPERTY, System.getProperty(ALPHA_PROPERTY), SuffixClustering.ALPHA);
+
+		if (scorer.equals(INTERPOLATED)) {
+			float[] weights = { SuffixClustering.WEIGHT_0, SuffixClustering.WEIGHT_1, SuffixClustering.WEIGHT_2 };
+			String value = System.getProperty(WEIGHTS_PROPERTY);
+			if (value != null) {
+				String[] parts = value.split(",");
+				if (parts.length != weights.length)
+					throw new IllegalArgumentException(
+							"Three weights expected for " + WEIGHTS_PROPERTY + " but got \"" + value + "\".");
+				for (int i = 0; i < weights.length; i++)
+					weights[i] = parseFloat(WEIGHTS_PROPERTY, parts[i], 0f);
+			}
+			return new InterpolatedScorer(model, weights[0], weights[1], weights[2], alpha);
+		}
+		if (scorer.equals(WITTEN_BELL))
+			return new WittenBellScorer(model, alpha);
+		throw new IllegalArgumentException("Unknown significance scorer \"" + scorer + "\" for " + SCORER_PROPERTY
+				+ ", expected " + INTERPOLATED + " or " + WITTEN_BELL + ".");
+	}
+
+	/**
+	 * Parses the value of a property.
+	 */
+	private static float parseFloat(String property, String value, float defaultValue) {
+		if (value == null)
+			return defaultValue;
+		try {
+			return Float.parseFloat(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value \"" + value + "\" for " + property + ".", e);
+		}
+	}
+
+}
@@ -0,0 +1,371 @@
+package clustering;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import representation.CityIndex;
+import representation.EdgeTypes;
+import representation.Suffix;
+import representation.SuffixHierarchy;
+
+/**
+ * Tests whether the cities of a cluster candidate are spatially coherent,
+ * i.e. closer to each other than the cities of its parent suffix in general.
+ * The statistic is the mean great-circle distance of each city to its nearest
+ * neighbour within the candidate. It is compared with random samples of the
+ * same size drawn from the cities of the parent (permutation test), thus the
+ * p-value is the share of samples which are at least as close as the
+ * candidate.
+ * <p>
+ * The candidates are tested in parallel by a fork-join pool. Each candidate
+ * draws its samples from its own random generator seeded by its id, thus the
+ * p-values do not depend on the number of threads.
+ *
+ * @author MM
+ *
+ */
+public final class SpatialCoherence {
+
+	/** Default number of random samples per candidate. */
+	public static final int DEFAULT_PERMUTATIONS = 199;
+	/** Default significance level. */
+	public static final double DEFAULT_ALPHA = 0.05;
+	/**
+	 * Maximal number of cities of a sample; larger candidates are compared by
+	 * a random subset of their cities.
+	 */
+	public static final int MAX_SAMPLE = 1000;
+
+	/** Number of random samples per candidate. */
+	private final int permutations;
+	/** Significance level. */
+	private final double alpha;
+	/** Number of worker threads. */
+	private final int threads;
+
+	/**
+	 * Creates a test with {@value #DEFAULT_PERMUTATIONS} samples per candidate
+	 * and a significance level of {@value #DEFAULT_ALPHA}.
+	 *
+	 * @param threads
+	 *            Number of worker threads.
+	 */
+	public SpatialCoherence(int threads) {
+		this(DEFAULT_PERMUTATIONS, DEFAULT_ALPHA, threads);
+	}
+
+	/**
+	 * Creates a test.
+	 *
+	 * @param permutations
+	 *            Number of random samples per candidate, e.g. 99 or 999.
+	 * @param alpha
+	 *            Significance level, i.e. the maximal p-value of a coherent
+	 *            candidate.
+	 * @param threads
+	 *            Number of worker threads.
+	 */
+	public SpatialCoherence(int permutations, double alpha, int threads) {
+		if (permutations < 1)
+			throw new IllegalArgumentException("At least one permutation is required.");
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one thread is required.");
+		this.permutations = permutations;
+		this.alpha = alpha;
+		this.threads = threads;
+	}
+
+	public int getPermutations() {
+		return this.permutations;
+	}
+
+	public double getAlpha() {
+		return this.alpha;
+	}
+
+	/**
+	 * Returns whether a p-value is significant.
+	 *
+	 * @param pValue
+	 *            A p-value of this test.
+	 * @return 'true' iff the candidate is spatially coherent.
+	 */
+	public boolean isSignificant(double pValue) {
+		return pValue <= this.alpha;
+	}
+
+	/**
+	 * Tests cluster candidates of an in-memory suffix trie.
+	 *
+	 * @param trie
+	 *            Suffix trie.
+	 * @param candidates
+	 *            Cluster candidates, i.e. nodes of the trie.
+	 * @return P-value by candidate, in the order of the candidates; 1 if a
+	 *         candidate cannot be tested, e.g. a root or a node with less than
+	 *         two cities.
+	 */
+	public Map<Integer, Double> test(SuffixHierarchy trie, Collection<Integer> candidates) {
+		Map<Integer, int[]> ranges = new HashMap<Integer, int[]>();
+		for (int node : candidates) {
+			ranges.put(node, null);
+			int parent = trie.getParent(node);
+			if (parent != -1)
+				ranges.put(parent, null);
+		}
+
+		// number the cities depth-first, thus each node covers a range
+		float[] latitudes = new float[trie.getCountCities()];
+		float[] longitudes = new float[trie.getCountCities()];
+		int position = 0;
+		Deque<int[]> stack = new ArrayDeque<int[]>();
+		for (int root : trie.getRoots()) {
+			stack.push(new int[] { root, -1, 0 });
+			while (!stack.isEmpty()) {
+				int[] visit = stack.peek();
+				if (visit[1] == -1) {
+					// pre-order: add the cities named by the suffix
+					visit[1] = position;
+					for (int city : trie.getCityIds(visit[0])) {
+						latitudes[position] = trie.getLatitude(city);
+						longitudes[position] = trie.getLongitude(city);
+						position++;
+					}
+				}
+				int[] children = trie.getChildren(visit[0]);
+				if (visit[2] < children.length) {
+					stack.push(new int[] { children[visit[2]++], -1, 0 });
+				} else {
+					// post-order: the range of the node is complete
+					stack.pop();
+					if (ranges.containsKey(visit[0]))
+						ranges.put(visit[0], new int[] { visit[1], position });
+				}
+			}
+		}
+
+		Samples samples = new Samples(candidates.size(), latitudes, longitudes);
+		int i = 0;
+		for (int node : candidates) {
+			int parent = trie.getParent(node);
+			samples.set(i++, ranges.get(node), (parent == -1) ? null : ranges.get(parent), node);
+		}
+		double[] pValues = test(samples);
+
+		Map<Integer, Double> result = new LinkedHashMap<Integer, Double>();
+		i = 0;
+		for (int node : candidates)
+			result.put(node, pValues[i++]);
+		return result;
+	}
+
+	/**
+	 * Tests cluster candidates of the graph.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @param index
+	 *            Index of the cities below each suffix node.
+	 * @param candidates
+	 *            Cluster candidates.
+	 * @return P-value by candidate, in the order of the candidates; 1 if a
+	 *         candidate cannot be tested, e.g. a root or a node with less than
+	 *         two cities.
+	 */
+	public Map<Suffix, Double> test(GraphDatabaseService graphDb, CityIndex index, Collection<Suffix> candidates) {
+		float[] latitudes = new float[index.getCountCities()];
+		float[] longitudes = new float[index.getCountCities()];
+		for (int p = 0; p < latitudes.length; p++) {
+			latitudes[p] = index.getLatitude(p);
+			longitudes[p] = index.getLongitude(p);
+		}
+
+		Samples samples = new Samples(candidates.size(), latitudes, longitudes);
+		try (Transaction tx = graphDb.beginTx()) {
+			int i = 0;
+			for (Suffix candidate : candidates) {
+				int[] range = { index.getStart(candidate), index.getEnd(candidate) };
+				Relationship edge = candidate.getUnderlyingNode().getSingleRelationship(EdgeTypes.IS_SUFFIX_OF,
+						Direction.INCOMING);
+				int[] parentRange = null;
+				if (edge != null) {
+					Suffix parent = new Suffix(edge.getStartNode());
+					parentRange = new int[] { index.getStart(parent), index.getEnd(parent) };
+				}
+				samples.set(i++, range, parentRange, candidate.getUnderlyingNode().getId());
+			}
+			tx.success();
+		}
+		double[] pValues = test(samples);
+
+		Map<Suffix, Double> result = new LinkedHashMap<Suffix, Double>();
+		int i = 0;
+		for (Suffix candidate : candidates)
+			result.put(candidate, pValues[i++]);
+		return result;
+	}
+
+	/**
+	 * Tests all candidates in the fork-join pool.
+	 */
+	private double[] test(Samples samples) {
+		double[] pValues = new double[samples.seeds.length];
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+		try {
+			pool.invoke(new TestTask(samples, pValues, 0, pValues.length));
+		} finally {
+			pool.shutdown();
+		}
+		return pValues;
+	}
+
+	/**
+	 * Tests one candidate.
+	 */
+	private double test(Samples samples, int i) {
+		int start = samples.starts[i], k = samples.ends[i] - start;
+		int parentStart = samples.parentStarts[i], n = samples.parentEnds[i] - parentStart;
+		if (k < 2 || k >= n)
+			return 1;
+
+		Random random = new Random(samples.seeds[i]);
+		int m = Math.min(k, MAX_SAMPLE);
+		double[] latitudes = new double[m], longitudes = new double[m];
+
+		// observed statistic
+		int[] pool = positions(start, k);
+		sample(pool, m, random, samples, latitudes, longitudes);
+		double observed = meanNearestDistance(latitudes, longitudes);
+
+		// random samples of the parent: the shuffle needs no reset as a
+		// partial Fisher-Yates shuffle of any permutation is uniform
+		pool = positions(parentStart, n);
+		int extreme = 0;
+		for (int r = 0; r < this.permutations; r++) {
+			sample(pool, m, random, samples, latitudes, longitudes);
+			if (meanNearestDistance(latitudes, longitudes) <= observed)
+				extreme++;
+		}
+		return (1.0 + extreme) / (1.0 + this.permutations);
+	}
+
+	/**
+	 * Returns the positions [start, start + length).
+	 */
+	private static int[] positions(int start, int length) {
+		int[] positions = new int[length];
+		for (int p = 0; p < length; p++)
+			positions[p] = start + p;
+		return positions;
+	}
+
+	/**
+	 * Draws the locations of m random positions without replacement by a
+	 * partial Fisher-Yates shuffle, or copies them if all are drawn.
+	 */
+	private static void sample(int[] pool, int m, Random random, Samples samples, double[] latitudes,
+			double[] longitudes) {
+		for (int j = 0; j < m; j++) {
+			if (m < pool.length) {
+				int r = j + random.nextInt(pool.length - j);
+				int t = pool[j];
+				pool[j] = pool[r];
+				pool[r] = t;
+			}
+			latitudes[j] = samples.latitudes[pool[j]];
+			longitudes[j] = samples.longitudes[pool[j]];
+		}
+	}
+
+	/**
+	 * Returns the mean great-circle distance of the locations to their nearest
+	 * neighbour.
+	 */
+	private static double meanNearestDistance(double[] latitudes, double[] longitudes) {
+		KdTree tree = new KdTree(latitudes, longitudes);
+		double sum = 0;
+		for (int j = 0; j < latitudes.length; j++)
+			sum += tree.nearestDistance(j);
+		return sum / latitudes.length;
+	}
+
+	/**
+	 * Ranges of the candidates and their parents within the locations ordered
+	 * depth-first.
+	 */
+	private static final class Samples {
+		final float[] latitudes;
+		final float[] longitudes;
+		final int[] starts;
+		final int[] ends;
+		final int[] parentStarts;
+		final int[] parentEnds;
+		final long[] seeds;
+
+		Samples(int size, float[] latitudes, float[] longitudes) {
+			this.latitudes = latitudes;
+			this.longitudes = longitudes;
+			this.starts = new int[size];
+			this.ends = new int[size];
+			this.parentStarts = new int[size];
+			this.parentEnds = new int[size];
+			this.seeds = new long[size];
+		}
+
+		void set(int i, int[] range, int[] parentRange, long seed) {
+			this.starts[i] = range[0];
+			this.ends[i] = range[1];
+			if (parentRange != null) {
+				this.parentStarts[i] = parentRange[0];
+				this.parentEnds[i] = parentRange[1];
+			}
+			this.seeds[i] = seed;
+		}
+	}
+
+	/**
+	 * Tests a range of candidates, split in halves down to single candidates
+	 * as their costs differ widely.
+	 */
+	private final class TestTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Samples samples;
+		private final double[] pValues;
+		private final int from;
+		private final int to;
+
+		TestTask(Samples samples, double[] pValues, int from, int to) {
+			this.samples = samples;
+			this.pValues = pValues;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= 1) {
+				for (int i = this.from; i < this.to; i++)
+					this.pValues[i] = test(this.samples, i);
+			} else {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new TestTask(this.samples, this.pValues, this.from, mid),
+						new TestTask(this.samples, this.pValues, mid, this.to));
+			}
+		}
+	}
+
+}
@@ -1,16 +1,26 @@
 package clustering;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.apache.log4j.Logger;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import database.DataVersion;
+import process_control.ClusterProcess;
 import representation.Suffix;
+import representation.SuffixHierarchy;
 
 /**
  * Statistics about n-grams of the city names.
@@ -20,27 +30,32 @@ import representation.Suffix;
  */
 public class Statistics {
 	
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+	
 	/** Start of word. */
-	public final char sow = '$';
+	public final char sow = NGramModel.SOW;
 	/** End of word. */
-	public final char eow = '#';
+	public final char eow = NGramModel.EOW;
 	
 	/** Graph properties. */
 	private GraphProperties properties;
 	
-	/** City name letters mapped to their count. */
+	/** Location of the persisted n-gram model or 'null' if it is not persisted. */
+	private File snapshot;
+	
+	/** In-memory suffix trie, used instead of the graph if given. */
+	private SuffixHierarchy trie;
+	
+	/** Packed n-gram counts, calculated on first use. */
+	private volatile NGramModel model;
+	
+	/** City name letters mapped to their count, derived from the model. */
 	private Map<Character, Integer> letterDistribution;
-	/** City name bigrams mapped to their count. */
+	/** City name bigrams mapped to their count, derived from the model. */
 	private Map<String, Integer> bigramDistribution;
-	/** City name trigrams mapped to their count. */
+	/** City name trigrams mapped to their count, derived from the model. */
 	private Map<String, Integer> trigramDistribution;
-	
-	/** Number of letter tokens. */
-	private int numberLetterTokens;
-	/** Number of bigram tokens. */
-	private int numberBigramTokens;
-	/** Number of trigram tokens. */
-	private int numberTrigramTokens;
 		
 	
 	/**
@@ -51,54 +66,113 @@ public class Statistics {
 	 */
 	public Statistics (GraphProperties properties) {
 		this.properties = properties;
-		this.letterDistribution = new TreeMap<Character, Integer>();
-		this.bigramDistribution = new TreeMap<String, Integer>();
-		this.trigramDistribution = new TreeMap<String, Integer>();
-		this.numberLetterTokens = 0;
-		this.numberBigramTokens = 0;
-		this.numberTrigramTokens = 0;
 	}
 	
-	public int getNumberLetterTokens() {
-		if (this.numberLetterTokens == 0)
-			this.calculateNGrams();
+	/**
+	 * Creates new statistics whose n-gram model is persisted. The model is read
+	 * from the snapshot as long as the cities of the graph are unchanged, see
+	 * {@link DataVersion}, otherwise it is calculated and written again.
+	 * 
+	 * @param properties
+	 *				Graph properties.
+	 * @param snapshot
+	 *				Location of the persisted n-gram model.
+	 */
+	public Statistics (GraphProperties properties, File snapshot) {
+		this(properties);
+		this.snapshot = snapshot;
+	}
+	
+	/**
+	 * Creates new statistics for an in-memory suffix trie, i.e. without
+	 * database.
+	 * 
+	 * @param trie
+	 *				Suffix trie.
+	 */
+	public Statistics (SuffixHierarchy trie) {
+		this((GraphProperties) null);
+		this.trie = trie;
+	}
+	
+	/**
+	 * Returns the n-gram model of the city names. The model is calculated on
+	 * first use.
+	 * 
+	 * @return N-gram model.
+	 */
+	public NGramModel getModel() {
+		NGramModel m = this.model;
+		if (m == null) {
+			synchronized (this) {
+				m = this.model;
+				if (m == null) {
+					m = (this.snapshot == null) ? NGramModel.build(getCityNames()) : loadModel();
+					this.model = m;
+				}
+			}
+		}
+		return m;
+	}
+	
+	/**
+	 * Reads the n-gram model from the snapshot or calculates and persists it
+	 * if the snapshot is missing or stale.
+	 * 
+	 * @return N-gram model.
+	 */
+	private NGramModel loadModel() {
+		GraphDatabaseService graphDb = this.properties.getGraphDb();
+		long version = DataVersion.get(graphDb);
+		if (version == 0) {
+			// loaded before the cities were stamped
+			try (Transaction tx = graphDb.beginTx()) {
+				version = DataVersion.increment(graphDb);
+				tx.success();
+			}
+		}
 		
-		return this.numberLetterTokens;
+		try {
+			NGramModel m = NGramModelSnapshot.read(this.snapshot, version);
+			if (m != null) {
+				log.info("Read n-gram model from " + this.snapshot);
+				return m;
+			}
+		} catch (IOException e) {
+			log.warn("Reading n-gram model failed, calculating it: " + e.getMessage());
+		}
+		
+		NGramModel m = NGramModel.build(getCityNames());
+		try {
+			NGramModelSnapshot.write(m, this.snapshot, version);
+		} catch (IOException e) {
+			log.warn("Writing n-gram model failed: " + e.getMessage());
+		}
+		return m;
+	}
+	
+	public int getNumberLetterTokens() {
+		return this.getModel().getNumberLetterTokens();
 	}
 	
 	public int getNumberLetterTypes() {
-		if (this.letterDistribution.size() == 0)
-			this.calculateNGrams();
-		
-		return this.letterDistribution.size();
+		return this.getModel().getNumberLetterTypes();
 	}
 	
 	public int getNumberBigramTokens() {
-		if (this.numberBigramTokens == 0)
-			this.calculateNGrams();
-		
-		return this.numberBigramTokens;
+		return this.getModel().getNumberBigramTokens();
 	}
 	
 	public int getNumberBigramTypes() {
-		if (this.bigramDistribution.size() == 0)
-			this.calculateNGrams();
-		
-		return this.bigramDistribution.size();
+		return this.getModel().getNumberBigramTypes();
 	}
 	
 	public int getNumberTrigramTokens() {
-		if (this.numberTrigramTokens == 0)
-			this.calculateNGrams();
-		
-		return this.numberTrigramTokens;
+		return this.getModel().getNumberTrigramTokens();
 	}
 	
 	public int getNumberTrigramTypes() {
-		if (this.trigramDistribution.size() == 0)
-			this.calculateNGrams();
-		
-		return this.trigramDistribution.size();
+		return this.getModel().getNumberTrigramTypes();
 	}	
 	
 	public float getNumberBigramForUniformDistrib() {
@@ -115,9 +189,15 @@ public class Statistics {
 	 * Returns the distribution of letters within the city names.
 	 * @return City name letters mapped to their count. 
 	 */
-	public Map<Character, Integer> getLetterDistribution() {
-		if (this.letterDistribution.size() == 0)
-			this.calculateNGrams();
+	public synchronized Map<Character, Integer> getLetterDistribution() {
+		if (this.letterDistribution == null) {
+			Map<Character, Integer> distrib = new TreeMap<Character, Integer>();
+			int[] counts = this.getModel().getLetterCounts();
+			for (int c = 0; c < counts.length; c++)
+				if (counts[c] > 0)
+					distrib.put((char) c, counts[c]);
+			this.letterDistribution = distrib;
+		}
 		
 		return this.letterDistribution;		
 	}
@@ -126,9 +206,9 @@ public class Statistics {
 	 * Returns the distribution of bigrams within the city names.
 	 * @return City name bigrams mapped to their count. 
 	 */
-	public Map<String, Integer> getBigramDistribution() {
-		if (this.bigramDistribution.size() == 0)
-			this.calculateNGrams();
+	public synchronized Map<String, Integer> getBigramDistribution() {
+		if (this.bigramDistribution == null)
+			this.bigramDistribution = toDistribution(this.getModel().getBigramCounts(), 2);
 		
 		return this.bigramDistribution;
 	}
@@ -137,23 +217,23 @@ public class Statistics {
 	 * Returns the distribution of trigrams within the city names.
 	 * @return City name trigrams mapped to their count. 
 	 */
-	public Map<String, Integer> getTrigramDistribution() {
-		if (this.trigramDistribution.size() == 0)
-			this.calculateNGrams();
+	public synchronized Map<String, Integer> getTrigramDistribution() {
+		if (this.trigramDistribution == null)
+			this.trigramDistribution = toDistribution(this.getModel().getTrigramCounts(), 3);
 		
 		return this.trigramDistribution;
 	}
 	
 	public Map<Character, Integer> sortLetterDistributionByCount() {
-		return this.sortDistribByCount(this.letterDistribution);
+		return this.sortDistribByCount(this.getLetterDistribution());
 	}
 	
 	public Map<String, Integer> sortBigramDistributionByCount() {
-		return this.sortDistribByCount(this.bigramDistribution);
+		return this.sortDistribByCount(this.getBigramDistribution());
 	}
 	
 	public Map<String, Integer> sortTrigramDistributionByCount() {
-		return this.sortDistribByCount(this.trigramDistribution);
+		return this.sortDistribByCount(this.getTrigramDistribution());
 	}
 	
 	private <K extends Comparable<? super K>, V extends Comparable<? super V>> Map<K,V> sortDistribByCount(Map<K,V> distrib) {
@@ -180,59 +260,49 @@ public class Statistics {
 	}
 	
 	/**
-	 * Calculates the n-grams (n=1, n=2, n=3) for all city names.
+	 * Unpacks the n-grams of a count table into a sorted map, e.g. for the
+	 * export of the distributions.
+	 * 
+	 * @param table
+	 *				Packed n-gram counts.
+	 * @param n
+	 *				Length of the n-grams.
+	 * @return N-grams mapped to their count.
 	 */
-	private void calculateNGrams() {
-		
-		
-		// determine n grams
-		Set<Suffix> cityNames = properties.getCityNames();
-		for (Suffix cityName : cityNames) {
-			String str = cityName.getStr();
-			char[] letters = new char[str.length()+4];
-			letters[0] = sow;
-			letters[1] = sow;
-			letters[letters.length-2] = eow;
-			letters[letters.length-1] = eow;			
-			str.getChars(0, str.length(), letters, 2);
-			
-			// iterate over the letters of a city name
-			for (int i=2; i<letters.length; i++) {
-				// 1: letter distribution (eow's are ignored)
-				if (i < letters.length - 2) {
-					Integer oldValueLetter = this.letterDistribution.get(letters[i]);
-					if (oldValueLetter == null)					
-						this.letterDistribution.put(letters[i], 1); // add the the new letter to the distribution
-					else					
-						this.letterDistribution.put(letters[i], oldValueLetter + 1); // increment counter
-				}				
-				
-				// 2: bigram distribution ([eow, eow] is ignored)
-				if (i < letters.length - 1) {
-					char[] bigramArray = {letters[i-1], letters[i]};
-					String bigram = String.copyValueOf(bigramArray);
-					Integer oldValueBigram = this.bigramDistribution.get(bigram);
-					if (oldValueBigram == null)
-						this.bigramDistribution.put(bigram, 1); // add the new bigram to the distribution
-					else
-						this.bigramDistribution.put(bigram, oldValueBigram + 1); // increment counter
-				}				
-				
-				// 3: trigram distribution
-				char[] trigramArray = {letters[i-2], letters[i-1], letters[i]};
-				String trigram = String.copyValueOf(trigramArray);
-				Integer oldValueTrigram = this.trigramDistribution.get(trigram);
-				if (oldValueTrigram == null)
-					this.trigramDistribution.put(trigram, 1); // add the new trgram to the distribution
-				else
-					this.trigramDistribution.put(trigram, oldValueTrigram + 1); // increment counter
-				
-			} // end iteration over letters
-			
-			this.numberLetterTokens += str.length();
-			this.numberBigramTokens += str.length() + 1;
-			this.numberTrigramTokens += str.length() + 2;
-		} // end iteration over city names
+	private static Map<String, Integer> toDistribution(PackedCountTable table, int n) {
+		Map<String, Integer> distrib = new TreeMap<String, Integer>();
+		char[] ngram = new char[n];
+		for (int slot = 0; slot < table.capacity(); slot++) {
+			long key = table.keyAt(slot);
+			if (key == PackedCountTable.EMPTY)
+				continue;
+			for (int i = n - 1; i >= 0; i--) {
+				ngram[i] = (char) key;
+				key >>>= 16;
+			}
+			distrib.put(String.valueOf(ngram), table.countAt(slot));
+		}
+		return distrib;
+	}
+	
+	/**
+	 * Returns the distinct city names, either from the suffix trie or from the
+	 * graph.
+	 * 
+	 * @return City names.
+	 */
+	private Collection<String> getCityNames() {
+		Collection<String> names = new ArrayList<String>();
+		if (this.trie != null) {
+			for (int node = 0; node < this.trie.getCountSuffixNodes(); node++)
+				if (this.trie.getCityIds(node).length > 0)
+					names.add(this.trie.getStr(node));
+		} else {
+			Set<Suffix> cityNames = properties.getCityNames();
+			for (Suffix cityName : cityNames)
+				names.add(cityName.getStr());
+		}
+		return names;
 	}
 	
 
@@ -1,12 +1,23 @@
 package clustering;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -15,14 +26,19 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
 
+import database.DataVersion;
 import process_control.ClusterProcess;
+import representation.CityIndex;
 import representation.EdgeTypes;
 import representation.Suffix;
+import representation.SuffixHierarchy;
 
 /**
  * Provides methods for clustering city names according to their 'ending'. You
  * can instantiate this class with different critical values and thus compare
- * the results within one workflow.
+ * the results within one workflow. Note that each instance writes its cluster
+ * candidates to the graph; use {@link ParameterSweep} to compare many critical
+ * values within one traversal without writing.
  * 
  * @author MM
  *
@@ -61,6 +77,27 @@ public class SuffixClustering {
 	 * subsume in order to represent a cluster potentially.
 	 */
 	private float proportion;
+	
+	/**
+	 * Number of subsumed cities from which on a subtree is clustered by a
+	 * separate task in the parallel mode.
+	 */
+	private int splitSize = 1000;
+
+	/** Decides about the significance, created on first use. */
+	private volatile SignificanceScorer scorer;
+
+	/** Weight of the letter probability within the significance. */
+	static final float WEIGHT_0 = 0.2f;
+	/** Weight of the probability given one letter of context. */
+	static final float WEIGHT_1 = 0.3f;
+	/** Weight of the probability given two letters of context. */
+	static final float WEIGHT_2 = 0.5f;
+	/** Factor by which the actual proportion has to exceed the expected one. */
+	static final float ALPHA = 1.5f;
+
+	/** Number of changed cluster candidates per transaction. */
+	private static final int BATCH_SIZE = 10000;
 
 	/**
 	 * @return the minClusterSize
@@ -108,6 +145,24 @@ public class SuffixClustering {
 		this(graphDb, properties, statistics, proportion, 0f, 0f);		
 	}
 	
+	/**
+	 * Constructor for clustering an in-memory suffix trie, i.e. without
+	 * database.
+	 * 
+	 * @param statistics
+	 *            Statistics of the suffix trie.
+	 * @param proportion
+	 *            How many cities of the parent node must the current node
+	 *            subsume in order to represent a cluster potentially.
+	 * @param minPercent
+	 *             Minimal cluster size wrt. to the tree (each last letter forms a tree).
+	 * @param maxPercent
+	 *             Maximal cluster size wrt. to the tree (each last letter forms a tree).
+	 */
+	public SuffixClustering(Statistics statistics, float proportion, float minPercent, float maxPercent) {
+		this(null, null, statistics, proportion, minPercent, maxPercent);
+	}
+	
 	/**
 	 * 
 	 * @param graphDb
@@ -148,59 +203,77 @@ public class SuffixClustering {
 
 		// iterate over each root
 		for (Suffix root : properties.getRootNodes()) {
-			try (Transaction tx = this.graphDb.beginTx()) {
-				// define min-/max cluster size for this tree
-				if (!root.getUnderlyingNode().hasProperty(Suffix.KEY_SUBSCITIES))
-					throw new NoSuchFieldException("You need to determined subsumend cities for this method.");
-				int noCities = ((Number) root.getUnderlyingNode().getProperty(Suffix.KEY_SUBSCITIES)).intValue();
-				calculateMinMax(noCities);
-
-				// initialize queue
-				Queue<Suffix> queue = new LinkedList<Suffix>();
-				queue.add(root);
-
-				// iterate through the tree
-				while (queue.size() > 0) {
-
-//					System.out.println();
-//					System.out.println(queue.toString());
-
-					// get first node of the queue
-					Node parent = queue.remove().getUnderlyingNode();
-					float expected = ((Number) parent.getProperty(Suffix.KEY_SUBSCITIES)).intValue() * this.proportion;
-//					System.out.println(" p:" + parent.getProperty(Suffix.KEY_STR) + "\t subsCit:"
-//							+ parent.getProperty(Suffix.KEY_SUBSCITIES) + "\t proportion:" + expected);
-
-					// iterate through its children
-					Iterator<Relationship> iterator = parent
-							.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF).iterator();
-					while (iterator.hasNext()) {
-						Node child = iterator.next().getEndNode();
-						// check for cluster candidate
-						int subsumedCities = ((Number) child.getProperty(Suffix.KEY_SUBSCITIES)).intValue();
-//						System.out.println(" c:" + child.getProperty(Suffix.KEY_STR) + "\t subsCit:" + subsumedCities);
-
-						if (subsumedCities >= this.minClusterSize) {
-							// child or its children (!) could be a candidate
-							queue.add(new Suffix(child));
-							// calculate proportion
-							if (subsumedCities <= this.maxClusterSize && subsumedCities >= expected) {
-								// expected size and proportion
-//								System.out.println(" --> cluster candidate");
-								candidates.add(new Suffix(child));
-								// if parent is cluster candidate: remove parent
-								candidates.remove(new Suffix(parent));
-//								System.out.println("\t"+candidates.contains(new Suffix(parent)));
-//								System.out.println("\t"+candidates);
-							}
-						}
-					} // end children iteration
-				} // end tree iteration
-			}
+			// define min-/max cluster size for this tree
+			TreeBounds bounds = getTreeBounds(root);
+
+			// initialize queue
+			Queue<Node> queue = new LinkedList<Node>();
+			queue.add(root.getUnderlyingNode());
+
+			// iterate through the tree
+			while (queue.size() > 0)
+				queue.addAll(clusterChildrenByProportion(queue.remove(), bounds, candidates).keySet());
 		} // end iteration whole graph
 
 		return candidates;
 	}
+
+	/**
+	 * Same as {@link #determineClusterCandidatesByProportion()}, but the trees
+	 * are clustered in parallel. Large trees are split below the root.
+	 * 
+	 * @param threads
+	 *            Number of worker threads.
+	 * @return Cluster candidates for suffixes.
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	public Set<Suffix> determineClusterCandidatesByProportion(int threads) throws NoSuchFieldException {
+		Set<Suffix> candidates = Collections.newSetFromMap(new ConcurrentHashMap<Suffix, Boolean>());
+		clusterInParallel(threads, candidates);
+		return candidates;
+	}
+
+	/**
+	 * Determines the children of a suffix node which are cluster candidates
+	 * due to their proportion. If a child is a candidate, then the parent is
+	 * no candidate any more.
+	 * 
+	 * @param parent
+	 *            A suffix node.
+	 * @param bounds
+	 *            Min-/max cluster size of the tree.
+	 * @param candidates
+	 *            Cluster candidates found so far.
+	 * @return Children which could be a candidate or have candidates, mapped to
+	 *         their subsumed cities.
+	 */
+	private Map<Node, Integer> clusterChildrenByProportion(Node parent, TreeBounds bounds, Set<Suffix> candidates) {
+		Map<Node, Integer> next = new LinkedHashMap<Node, Integer>();
+		try (Transaction tx = this.graphDb.beginTx()) {
+			float expected = ((Number) parent.getProperty(Suffix.KEY_SUBSCITIES)).intValue() * this.proportion;
+
+			// iterate through its children
+			for (Relationship edge : parent.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF)) {
+				Node child = edge.getEndNode();
+				// check for cluster candidate
+				int subsumedCities = ((Number) child.getProperty(Suffix.KEY_SUBSCITIES)).intValue();
+
+				if (subsumedCities >= bounds.minClusterSize) {
+					// child or its children (!) could be a candidate
+					next.put(child, subsumedCities);
+					// calculate proportion
+					if (subsumedCities <= bounds.maxClusterSize && subsumedCities >= expected) {
+						// expected size and proportion
+						candidates.add(new Suffix(child));
+						// if parent is cluster candidate: remove parent
+						candidates.remove(new Suffix(parent));
+					}
+				}
+			} // end children iteration
+		}
+		return next;
+	}
 	
 	/**
 	 * Returns the cluster candidates in a set.
@@ -227,96 +300,189 @@ public class SuffixClustering {
 	}
 
 	/**
-	 * Iterates through the graph and determines suffix nodes which represent
-	 * cluster candidates. Uses n-gram distribution as background knowledge.
-	 * Cluster candidates are annotated in the DB with a property.
-	 *  
-	 * @throws NoSuchFieldException
-	 *             If the property 'subsumed cities' is not part of the graph.
+	 * Tests whether the cities of each cluster candidate are spatially
+	 * coherent and marks the candidates by the property
+	 * {@link Suffix#KEY_GEO_SIGNIFICANT}.
+	 * 
+	 * @param coherence
+	 *            The test.
+	 * @param index
+	 *            Index of the cities below each suffix node.
+	 * @return Number of spatially coherent cluster candidates.
 	 */
-	public void determineClusterCandidatesByNGrams() throws NoSuchFieldException {
+	public int determineGeoSignificance(SpatialCoherence coherence, CityIndex index) {
+		Map<Suffix, Double> pValues = coherence.test(this.graphDb, index, getClusterCandidates());
+		int countSignificant = 0, count = 0;
+		Transaction tx = this.graphDb.beginTx();
+		try {
+			for (Entry<Suffix, Double> e : pValues.entrySet()) {
+				boolean isSignificant = coherence.isSignificant(e.getValue());
+				e.getKey().getUnderlyingNode().setProperty(Suffix.KEY_GEO_SIGNIFICANT, isSignificant);
+				if (isSignificant)
+					countSignificant++;
+				if (++count % BATCH_SIZE == 0) {
+					tx.success();
+					tx.close();
+					tx = this.graphDb.beginTx();
+				}
+			}
+			tx.success();
+		} finally {
+			tx.close();
+		}
+		return countSignificant;
+	}
+
+	/**
+	 * Returns the cluster candidates of an in-memory suffix trie whose cities
+	 * are spatially coherent. Same as
+	 * {@link #determineGeoSignificance(SpatialCoherence, CityIndex)} without
+	 * database.
+	 * 
+	 * @param trie
+	 *            Suffix trie.
+	 * @param candidates
+	 *            Cluster candidates, i.e. nodes of the trie.
+	 * @param coherence
+	 *            The test.
+	 * @return Spatially coherent cluster candidates.
+	 */
+	public Set<Integer> determineGeoSignificantCandidates(SuffixHierarchy trie, Set<Integer> candidates,
+			SpatialCoherence coherence) {
+		Set<Integer> significant = new TreeSet<Integer>();
+		for (Entry<Integer, Double> e : coherence.test(trie, candidates).entrySet())
+			if (coherence.isSignificant(e.getValue()))
+				significant.add(e.getKey());
+		return significant;
+	}
+
+	/**
+	 * Iterates through an in-memory suffix trie and determines suffix nodes
+	 * which represent cluster candidates. Same as
+	 * {@link #determineClusterCandidatesByProportion()} without database.
+	 * 
+	 * @param trie
+	 *            Suffix trie.
+	 * @return Cluster candidates, i.e. nodes of the trie.
+	 */
+	public Set<Integer> determineClusterCandidatesByProportion(SuffixHierarchy trie) {
+		Set<Integer> candidates = new TreeSet<Integer>();
+
 		// iterate over each root
-		for (Suffix root : properties.getRootNodes()) {			
+		for (int root : trie.getRoots()) {
 			// define min-/max cluster size for this tree
-			try (Transaction tx = this.graphDb.beginTx()) {
-				if (!root.getUnderlyingNode().hasProperty(Suffix.KEY_SUBSCITIES))
-					throw new NoSuchFieldException("You need to determined subsumend cities for this method.");
-				int noCities = ((Number) root.getUnderlyingNode().getProperty(Suffix.KEY_SUBSCITIES)).intValue();
-				calculateMinMax(noCities);
-			}			
-			
-			// initialize queue: contains parents of possible candidates
-			Queue<Suffix> queue = new LinkedList<Suffix>();
+			TreeBounds bounds = new TreeBounds(trie.getSubsumedCities(root));
+
+			// initialize queue
+			Queue<Integer> queue = new LinkedList<Integer>();
 			queue.add(root);
+
 			// iterate through the tree
 			while (queue.size() > 0) {
-				// get first node of the queue
-				Node parent = null;
-				Map<String, Object> parentProperties = null;
-				try (Transaction tx = this.graphDb.beginTx()) {
-					parent = queue.remove().getUnderlyingNode();
-					parentProperties = parent.getAllProperties();
-				}
-				
+				int parent = queue.remove();
+				float expected = trie.getSubsumedCities(parent) * this.proportion;
+
 				// iterate through its children
-				boolean isInheritance = parentProperties.containsKey(Suffix.KEY_CLUSTER);
-				Set<Node> candidates = new HashSet<Node>();
-				Iterator<Relationship> iterator = null;
-				try (Transaction tx = this.graphDb.beginTx()) {
-					iterator = parent.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF).iterator();
-				}
-				while (iterator.hasNext()) {
-					// get information of the current child
-					Node child = null;
-					int subsCitiesChild = -1;
-					Map<String, Object> childProperties = null;
-					try (Transaction tx = this.graphDb.beginTx()) {
-						child = iterator.next().getEndNode();
-						childProperties = child.getProperties(Suffix.KEY_STR, Suffix.KEY_SUBSCITIES);
-						subsCitiesChild = ((Number) childProperties.get(Suffix.KEY_SUBSCITIES)).intValue();
+				for (int child : trie.getChildren(parent)) {
+					int subsumedCities = trie.getSubsumedCities(child);
+					if (subsumedCities >= bounds.minClusterSize) {
+						// child or its children (!) could be a candidate
+						queue.add(child);
+						if (subsumedCities <= bounds.maxClusterSize && subsumedCities >= expected) {
+							candidates.add(child);
+							// if parent is cluster candidate: remove parent
+							candidates.remove(parent);
+						}
 					}
-					
+				} // end children iteration
+			} // end tree iteration
+		} // end iteration whole trie
+
+		return candidates;
+	}
+
+	/**
+	 * Iterates through an in-memory suffix trie and determines suffix nodes
+	 * which represent cluster candidates. Uses n-gram distribution as
+	 * background knowledge. Same as {@link #determineClusterCandidatesByNGrams()}
+	 * without database, i.e. cluster candidates are returned instead of being
+	 * annotated.
+	 * 
+	 * @param trie
+	 *            Suffix trie.
+	 * @return Cluster candidates, i.e. nodes of the trie.
+	 */
+	public Set<Integer> determineClusterCandidatesByNGrams(SuffixHierarchy trie) {
+		BitSet isCandidate = new BitSet(trie.getCountSuffixNodes());
+
+		// iterate over each root
+		for (int root : trie.getRoots()) {
+			// define min-/max cluster size for this tree
+			TreeBounds bounds = new TreeBounds(trie.getSubsumedCities(root));
+
+			// initialize queue: contains parents of possible candidates
+			Queue<Integer> queue = new LinkedList<Integer>();
+			queue.add(root);
+			// iterate through the tree
+			while (queue.size() > 0) {
+				int parent = queue.remove();
+				int subsCitiesParent = trie.getSubsumedCities(parent);
+
+				// iterate through its children
+				boolean isInheritance = isCandidate.get(parent);
+				Set<Integer> candidates = new HashSet<Integer>();
+				for (int child : trie.getChildren(parent)) {
+					int subsCitiesChild = trie.getSubsumedCities(child);
+
 					// ##### decide whether child is cluster candidate #####
-					if (subsCitiesChild >= this.minClusterSize) {
+					if (subsCitiesChild >= bounds.minClusterSize) {
 						// child or its children (!) could be a candidate
-						queue.add(new Suffix(child));
+						queue.add(child);
 
-						if (subsCitiesChild <= this.maxClusterSize) {
-							// child has to be significant and long enough (|suffix| >= 3)
-							boolean isSignificant = calculateSignificance(childProperties, parentProperties);
-							
+						if (subsCitiesChild <= bounds.maxClusterSize) {
+							boolean isSignificant = calculateSignificance(trie, child, subsCitiesChild,
+									subsCitiesParent);
 							isInheritance &= isSignificant;
-							
 							if (isSignificant)
 								candidates.add(child);
 						}
-					} // #### 
-					
+					} // ####
 				} // end iteration children
-				
+
 				// POST-PROCESSING
-				// (1) a node is no candidate iff its parent and all its relevant sisters are candidates, too
-				if (!isInheritance && candidates.size() > 0) {
-					for (Node candidate : candidates) {
-						try (Transaction tx = this.graphDb.beginTx()) {
-							candidate.setProperty(Suffix.KEY_CLUSTER, true);
-							tx.success();
-						}
-					}
-					
-					// (2) if the parent is a candidate (ensured by the following IF) 
-					//		and at least one child is resp. is not a cluster candidate (ensured by the previous IF),
-					//		then the parent is no cluster candidate, e.g. [_orf [ dorf ] [ torf ] ]
-//					if (parentProperties.containsKey(Suffix.KEY_CLUSTER)) {
-//						try (Transaction tx = this.graphDb.beginTx()) {
-//							parent.removeProperty(Suffix.KEY_CLUSTER);
-//							tx.success();
-//						}
-//					}	
-					
-				} // end post-processing
-				
-			} // end tree iteration				
+				// a node is no candidate iff its parent and all its relevant sisters are candidates, too
+				if (!isInheritance)
+					for (int candidate : candidates)
+						isCandidate.set(candidate);
+			} // end tree iteration
+		} // end iteration whole trie
+
+		Set<Integer> result = new TreeSet<Integer>();
+		for (int node = isCandidate.nextSetBit(0); node >= 0; node = isCandidate.nextSetBit(node + 1))
+			result.add(node);
+		return result;
+	}
+
+	/**
+	 * Iterates through the graph and determines suffix nodes which represent
+	 * cluster candidates. Uses n-gram distribution as background knowledge.
+	 * Cluster candidates are annotated in the DB with a property.
+	 *  
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	public void determineClusterCandidatesByNGrams() throws NoSuchFieldException {
+		// iterate over each root
+		for (Suffix root : properties.getRootNodes()) {			
+			// define min-/max cluster size for this tree
+			TreeBounds bounds = getTreeBounds(root);
+			
+			// initialize queue: contains parents of possible candidates
+			Queue<Node> queue = new LinkedList<Node>();
+			queue.add(root.getUnderlyingNode());
+			// iterate through the tree
+			while (queue.size() > 0)
+				queue.addAll(clusterChildrenByNGrams(queue.remove(), bounds).keySet());
 		} // end iteration whole graph
 		
 		// global post-processing
@@ -324,6 +490,251 @@ public class SuffixClustering {
 //		ClusterProcess.log.info("#(global mods): "+countMod);
 		
 	}
+
+	/**
+	 * Same as {@link #determineClusterCandidatesByNGrams()}, but the trees are
+	 * clustered in parallel. Large trees are split below the root.
+	 * 
+	 * @param threads
+	 *            Number of worker threads.
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	public void determineClusterCandidatesByNGrams(int threads) throws NoSuchFieldException {
+		// the n-grams and the scorer are created lazily: do it before sharing them
+		getSignificanceScorer();
+		clusterInParallel(threads, null);
+	}
+
+	/**
+	 * Same as {@link #determineClusterCandidatesByNGrams(int)}, but only the
+	 * trees which changed since their last clustering are clustered again. A
+	 * tree changed if its root is marked by {@link Suffix#KEY_DIRTY}, e.g. by
+	 * an incremental load, or if it was clustered with other parameters or not
+	 * at all. The cluster candidates of these trees are removed before, the
+	 * ones of the other trees are kept.
+	 * <p>
+	 * The n-gram distribution is global, thus changed cities shift the
+	 * significance within untouched trees, too. The parameters include the
+	 * {@link DataVersion}, thus a changed set of cities clusters all trees
+	 * again and the result equals a full clustering.
+	 * 
+	 * @param threads
+	 *            Number of worker threads.
+	 * @return Number of clustered trees.
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	public int determineClusterCandidatesByNGramsIncrementally(int threads) throws NoSuchFieldException {
+		String parameters = getParameters();
+		List<Suffix> changedRoots = new ArrayList<Suffix>();
+		try (Transaction tx = this.graphDb.beginTx()) {
+			for (Suffix root : properties.getRootNodes()) {
+				Node node = root.getUnderlyingNode();
+				if (node.hasProperty(Suffix.KEY_DIRTY)
+						|| !parameters.equals(node.getProperty(Suffix.KEY_CLUSTER_PARAMS, null)))
+					changedRoots.add(root);
+			}
+		}
+		ClusterProcess.log.info("Clustering " + changedRoots.size() + " of " + properties.getRootNodes().size()
+				+ " trees ...");
+
+		for (Suffix root : changedRoots)
+			removeClusterCandidateProperty(root);
+		// the n-grams and the scorer are created lazily: do it before sharing them
+		getSignificanceScorer();
+		clusterInParallel(changedRoots, threads, null);
+
+		// mark the trees as clustered not before they are done
+		try (Transaction tx = this.graphDb.beginTx()) {
+			for (Suffix root : changedRoots) {
+				root.getUnderlyingNode().setProperty(Suffix.KEY_CLUSTER_PARAMS, parameters);
+				root.getUnderlyingNode().removeProperty(Suffix.KEY_DIRTY);
+			}
+			tx.success();
+		}
+		return changedRoots.size();
+	}
+
+	/**
+	 * Returns the parameters of the clustering by n-grams as string, which is
+	 * stored at the root of each clustered tree. It includes the significance
+	 * scorer and its parameters by {@link SignificanceScorer#toString()}, thus
+	 * switching the scorer, alpha or the weights clusters all trees again. It
+	 * includes the {@link DataVersion} of the cities, too, which the n-gram
+	 * model is derived from.
+	 * 
+	 * @return Parameters of the clustering.
+	 */
+	String getParameters() {
+		return "ngrams;proportion=" + this.proportion + ";minPercent=" + this.minPercent + ";maxPercent="
+				+ this.maxPercent + ";scorer=" + getSignificanceScorer() + ";dataVersion="
+				+ DataVersion.get(this.graphDb);
+	}
+
+	/**
+	 * Determines the children of a suffix node which are cluster candidates
+	 * due to their significance and annotates them in the DB.
+	 * 
+	 * @param parent
+	 *            A suffix node.
+	 * @param bounds
+	 *            Min-/max cluster size of the tree.
+	 * @return Children which could be a candidate or have candidates, mapped to
+	 *         their subsumed cities.
+	 */
+	private Map<Node, Integer> clusterChildrenByNGrams(Node parent, TreeBounds bounds) {
+		Map<Node, Integer> next = new LinkedHashMap<Node, Integer>();
+		boolean isInheritance;
+		Set<Node> candidates = new HashSet<Node>();
+		try (Transaction tx = this.graphDb.beginTx()) {
+			Map<String, Object> parentProperties = parent.getAllProperties();
+			
+			// iterate through its children
+			isInheritance = parentProperties.containsKey(Suffix.KEY_CLUSTER);
+			for (Relationship edge : parent.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF)) {
+				// get information of the current child
+				Node child = edge.getEndNode();
+				Map<String, Object> childProperties = child.getProperties(Suffix.KEY_STR, Suffix.KEY_SUBSCITIES);
+				int subsCitiesChild = ((Number) childProperties.get(Suffix.KEY_SUBSCITIES)).intValue();
+				
+				// ##### decide whether child is cluster candidate #####
+				if (subsCitiesChild >= bounds.minClusterSize) {
+					// child or its children (!) could be a candidate
+					next.put(child, subsCitiesChild);
+
+					if (subsCitiesChild <= bounds.maxClusterSize) {
+						// child has to be significant and long enough (|suffix| >= 3)
+						boolean isSignificant = calculateSignificance(childProperties, parentProperties);
+						
+						isInheritance &= isSignificant;
+						
+						if (isSignificant)
+							candidates.add(child);
+					}
+				} // #### 
+				
+			} // end iteration children
+		}
+		
+		// POST-PROCESSING
+		// (1) a node is no candidate iff its parent and all its relevant sisters are candidates, too
+		if (!isInheritance && candidates.size() > 0) {
+			try (Transaction tx = this.graphDb.beginTx()) {
+				for (Node candidate : candidates)
+					candidate.setProperty(Suffix.KEY_CLUSTER, true);
+				tx.success();
+			}
+			
+			// (2) if the parent is a candidate (ensured by the following IF) 
+			//		and at least one child is resp. is not a cluster candidate (ensured by the previous IF),
+			//		then the parent is no cluster candidate, e.g. [_orf [ dorf ] [ torf ] ]
+//			if (parentProperties.containsKey(Suffix.KEY_CLUSTER)) {
+//				try (Transaction tx = this.graphDb.beginTx()) {
+//					parent.removeProperty(Suffix.KEY_CLUSTER);
+//					tx.success();
+//				}
+//			}	
+			
+		} // end post-processing
+		
+		return next;
+	}
+
+	/**
+	 * Clusters all trees on a pool of worker threads. Each tree is clustered
+	 * with its own min-/max cluster size. Subtrees subsuming at least
+	 * {@link #splitSize} cities are clustered by separate tasks, which is
+	 * possible because the decision for the children of a node depends on the
+	 * node and the tree only.
+	 * 
+	 * @param threads
+	 *            Number of worker threads.
+	 * @param candidates
+	 *            Thread-safe set for the candidates by proportion or
+	 *            <code>null</code> for the clustering by n-grams.
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	private void clusterInParallel(int threads, Set<Suffix> candidates) throws NoSuchFieldException {
+		clusterInParallel(properties.getRootNodes(), threads, candidates);
+	}
+
+	/**
+	 * Clusters the given trees on a pool of worker threads, see
+	 * {@link #clusterInParallel(int, Set)}.
+	 * 
+	 * @param roots
+	 *            Roots of the trees.
+	 * @param threads
+	 *            Number of worker threads.
+	 * @param candidates
+	 *            Thread-safe set for the candidates by proportion or
+	 *            <code>null</code> for the clustering by n-grams.
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	private void clusterInParallel(Collection<Suffix> roots, int threads, Set<Suffix> candidates)
+			throws NoSuchFieldException {
+		List<SubtreeTask> tasks = new ArrayList<SubtreeTask>();
+		for (Suffix root : roots)
+			tasks.add(new SubtreeTask(root.getUnderlyingNode(), getTreeBounds(root), candidates));
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (SubtreeTask task : tasks)
+				pool.execute(task);
+			for (SubtreeTask task : tasks)
+				task.join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Clusters a subtree breadth-first and forks a new task for each large
+	 * subtree below.
+	 */
+	private class SubtreeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Root of the subtree. */
+		private final Node subtreeRoot;
+		/** Min-/max cluster size of the tree. */
+		private final TreeBounds bounds;
+		/** Candidates by proportion or <code>null</code> for n-grams. */
+		private final Set<Suffix> candidates;
+
+		SubtreeTask(Node subtreeRoot, TreeBounds bounds, Set<Suffix> candidates) {
+			this.subtreeRoot = subtreeRoot;
+			this.bounds = bounds;
+			this.candidates = candidates;
+		}
+
+		@Override
+		protected void compute() {
+			List<SubtreeTask> forks = new ArrayList<SubtreeTask>();
+			Queue<Node> queue = new LinkedList<Node>();
+			queue.add(this.subtreeRoot);
+			while (queue.size() > 0) {
+				Node parent = queue.remove();
+				Map<Node, Integer> next = (this.candidates == null) ? clusterChildrenByNGrams(parent, this.bounds)
+						: clusterChildrenByProportion(parent, this.bounds, this.candidates);
+				for (Entry<Node, Integer> child : next.entrySet()) {
+					if (child.getValue() >= splitSize) {
+						SubtreeTask task = new SubtreeTask(child.getKey(), this.bounds, this.candidates);
+						task.fork();
+						forks.add(task);
+					} else {
+						queue.add(child.getKey());
+					}
+				}
+			}
+			for (SubtreeTask task : forks)
+				task.join();
+		}
+	}
 	
 //	/**
 //	 * Applies global constraints to the graph, i.e. post-processing constraints
@@ -364,45 +775,111 @@ public class SuffixClustering {
 	 * @return 'true' iff significant.
 	 */
 	private boolean calculateSignificance(Map<String, Object> childProperties, Map<String, Object> parentProperties) {
-		boolean sign = false;
-		
-		// get values
-		String strChild = (String) childProperties.get(Suffix.KEY_STR); // e.g.: "zell"
+		return calculateSignificance((String) childProperties.get(Suffix.KEY_STR),
+				((Number) childProperties.get(Suffix.KEY_SUBSCITIES)).intValue(),
+				((Number) parentProperties.get(Suffix.KEY_SUBSCITIES)).intValue());
+	}
+	
+	/**
+	 * Calculates whether a suffix node is a cluster candidate, i.e. is
+	 * significant. The suffix has to be part of the statistics.
+	 * 
+	 * @param strChild
+	 * 				Suffix of the current node (the child).
+	 * @param subsCitiesChild
+	 * 				Subsumed cities of the current node.
+	 * @param subsCitiesParent
+	 * 				Subsumed cities of the parent node of the current node.
+	 * 
+	 * @return 'true' iff significant.
+	 */
+	public boolean calculateSignificance(String strChild, int subsCitiesChild, int subsCitiesParent) {
+		// strChild, e.g.: "zell"
 		char letter = strChild.charAt(0); // e.g.: "z"
-		String bigram = (strChild.length() > 1) ? strChild.substring(0, 2) : ""+letter+statistics.eow; // e.g.: "ze"
-		String trigram = (strChild.length() > 2) ? strChild.substring(0, 3) : bigram+statistics.eow; // e.g. "zel"
-		char context1 = (strChild.length() > 1) ? strChild.charAt(1) : statistics.eow; // e.g.: "e"
-		String context2 = (strChild.length() > 2) ? strChild.substring(1, 3) : ""+context1+statistics.eow; // e.g.: "el"
+		char context1 = (strChild.length() > 1) ? strChild.charAt(1) : NGramModel.EOW; // e.g.: "e"
+		char context2 = (strChild.length() > 2) ? strChild.charAt(2) : NGramModel.EOW; // e.g.: "l"
 		
-		Map<Character, Integer> letterDistribution = this.statistics.getLetterDistribution();
-		Map<String, Integer> bigramDistribution = this.statistics.getBigramDistribution();
-		Map<String, Integer> trigramDistribution = this.statistics.getTrigramDistribution();
-		
-		// calculate actual proportion
-		float actual = 1f * ((Number) childProperties.get(Suffix.KEY_SUBSCITIES)).intValue()/((Number) parentProperties.get(Suffix.KEY_SUBSCITIES)).intValue();
-				
-		// considering no context, e.g. P(z)
-		float p0 = 1f * letterDistribution.get(letter) / this.statistics.getNumberLetterTokens();
-		
-		// considering context of one letter, e.g. P(z|e)
-		float pContext = 1f * letterDistribution.get(context1) / this.statistics.getNumberLetterTokens(); // e.g. P(e)
-		float pBigram = 1f * bigramDistribution.get(bigram) / this.statistics.getNumberBigramTokens(); // e.g. P(ze)
-		float p1 = pBigram / pContext;
-		
-		// considering context of two letters, e.g. P(z|el)
-		pContext = 1f * bigramDistribution.get(context2) / this.statistics.getNumberBigramTokens(); // e.g. P(el)
-		float pTrigram = 1f * trigramDistribution.get(trigram) / this.statistics.getNumberTrigramTokens();
-		float p2 = pTrigram / pContext;
-		
-		// calculate significance
-		float weight0 = 0.2f, weight1 = 0.3f, weight2 = 0.5f; // linear interpolation, sum(weights) := 1
-		float p = weight0 * p0 + weight1 * p1 + weight2 * p2;
-		
-		float alpha = 1.5f;
-		if (actual > p * alpha)
-			sign = true;
-		
-		return sign;
+		return calculateSignificance(letter, context1, context2, subsCitiesChild, subsCitiesParent);
+	}
+
+	/**
+	 * Calculates whether a node of a suffix trie is a cluster candidate, i.e.
+	 * is significant. The letters are read from the node and its ancestors,
+	 * thus the suffix is not materialized.
+	 *
+	 * @param trie
+	 * 				Suffix trie.
+	 * @param child
+	 * 				The current node.
+	 * @param subsCitiesChild
+	 * 				Subsumed cities of the current node.
+	 * @param subsCitiesParent
+	 * 				Subsumed cities of the parent node of the current node.
+	 *
+	 * @return 'true' iff significant.
+	 */
+	private boolean calculateSignificance(SuffixHierarchy trie, int child, int subsCitiesChild, int subsCitiesParent) {
+		int length = trie.getLength(child);
+		int parent = trie.getParent(child);
+		char context1 = (length > 1) ? trie.getLetter(parent) : NGramModel.EOW;
+		char context2 = (length > 2) ? trie.getLetter(trie.getParent(parent)) : NGramModel.EOW;
+
+		return calculateSignificance(trie.getLetter(child), context1, context2, subsCitiesChild, subsCitiesParent);
+	}
+
+	/**
+	 * Calculates whether a suffix node is a cluster candidate, i.e. is
+	 * significant. Like {@link #calculateSignificance(String, int, int)}, but
+	 * the suffix is given by its first three letters, thus nothing is
+	 * allocated. The decision is made by the {@link #getSignificanceScorer()
+	 * significance scorer}.
+	 * 
+	 * @param letter
+	 * 				First letter of the suffix, e.g. "z" of "zell".
+	 * @param context1
+	 * 				Second letter of the suffix or end of word, e.g. "e".
+	 * @param context2
+	 * 				Third letter of the suffix or end of word, e.g. "l".
+	 * @param subsCitiesChild
+	 * 				Subsumed cities of the current node.
+	 * @param subsCitiesParent
+	 * 				Subsumed cities of the parent node of the current node.
+	 * 
+	 * @return 'true' iff significant.
+	 */
+	public boolean calculateSignificance(char letter, char context1, char context2, int subsCitiesChild,
+			int subsCitiesParent) {
+		return getSignificanceScorer().isSignificant(letter, context1, context2, subsCitiesChild, subsCitiesParent);
+	}
+
+	/**
+	 * Returns the scorer of the significance. Unless it is set, it is chosen
+	 * by the system properties on first use, see {@link SignificanceScorers}.
+	 * 
+	 * @return The scorer.
+	 */
+	public SignificanceScorer getSignificanceScorer() {
+		SignificanceScorer s = this.scorer;
+		if (s == null) {
+			synchronized (this) {
+				s = this.scorer;
+				if (s == null) {
+					s = SignificanceScorers.fromSystemProperties(this.statistics.getModel());
+					this.scorer = s;
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Sets the scorer of the significance.
+	 * 
+	 * @param scorer
+	 *            The scorer.
+	 */
+	public void setSignificanceScorer(SignificanceScorer scorer) {
+		this.scorer = scorer;
 	}
 
 	/**
@@ -416,15 +893,125 @@ public class SuffixClustering {
 	 *             If proportions are not correct.
 	 */
 	public void calculateMinMax(int noCities) throws IllegalArgumentException {
-		this.minClusterSize = Math.max(5, (int) (noCities * this.minPercent));
-		this.maxClusterSize = Math.min(noCities - 2, (int) (noCities - noCities * this.maxPercent));
+		TreeBounds bounds = new TreeBounds(noCities);
+		this.minClusterSize = bounds.minClusterSize;
+		this.maxClusterSize = bounds.maxClusterSize;
 	}
 	
 	/**
-	 * Removes the property 'clusterCandidate' from the graph.
+	 * Reads the number of cities of a tree and calculates its min and max size
+	 * measure for a cluster candidate.
+	 * 
+	 * @param root
+	 *            Root of the tree.
+	 * @return Min-/max cluster size of the tree.
+	 * @throws NoSuchFieldException
+	 *             If the property 'subsumed cities' is not part of the graph.
+	 */
+	private TreeBounds getTreeBounds(Suffix root) throws NoSuchFieldException {
+		try (Transaction tx = this.graphDb.beginTx()) {
+			if (!root.getUnderlyingNode().hasProperty(Suffix.KEY_SUBSCITIES))
+				throw new NoSuchFieldException("You need to determined subsumend cities for this method.");
+			int noCities = ((Number) root.getUnderlyingNode().getProperty(Suffix.KEY_SUBSCITIES)).intValue();
+			return new TreeBounds(noCities);
+		}
+	}
+	
+	/**
+	 * Min and max size measure for a cluster candidate within one tree.
+	 */
+	private class TreeBounds {
+		/** The minimum of cities a suffix node subsumes such that it represents a cluster. */
+		final int minClusterSize;
+		/** The maximum of cities a suffix node subsumes such that it represents a cluster. */
+		final int maxClusterSize;
+		
+		/**
+		 * @param noCities
+		 *            Number of cities within a connected component.
+		 */
+		TreeBounds(int noCities) {
+			this.minClusterSize = minClusterSize(noCities, minPercent);
+			this.maxClusterSize = maxClusterSize(noCities, maxPercent);
+		}
+	}
+
+	/**
+	 * Returns the minimum of cities a suffix node subsumes such that it
+	 * represents a cluster.
+	 * 
+	 * @param noCities
+	 *            Number of cities within a connected component.
+	 * @param minPercent
+	 *            Minimal cluster size wrt. to the tree.
+	 * @return Minimal cluster size.
+	 */
+	static int minClusterSize(int noCities, float minPercent) {
+		return Math.max(5, (int) (noCities * minPercent));
+	}
+
+	/**
+	 * Returns the maximum of cities a suffix node subsumes such that it
+	 * represents a cluster.
+	 * 
+	 * @param noCities
+	 *            Number of cities within a connected component.
+	 * @param maxPercent
+	 *            Maximal cluster size wrt. to the tree.
+	 * @return Maximal cluster size.
+	 */
+	static int maxClusterSize(int noCities, float maxPercent) {
+		return Math.min(noCities - 2, (int) (noCities - noCities * maxPercent));
+	}
+	
+	/**
+	 * Sets the number of subsumed cities from which on a subtree is clustered
+	 * by a separate task in the parallel mode.
+	 * 
+	 * @param splitSize
+	 *            Minimal subsumed cities of a separate subtree.
+	 */
+	public void setSplitSize(int splitSize) {
+		this.splitSize = splitSize;
+	}
+	
+	/**
+	 * Removes the properties 'clusterCandidate' and 'geoSignificant' from one
+	 * tree. The tree is
+	 * traversed depth-first and the changes are committed in batches.
+	 * 
+	 * @param root
+	 *            Root of the tree.
+	 */
+	public void removeClusterCandidateProperty(Suffix root) {
+		Transaction tx = this.graphDb.beginTx();
+		try {
+			int count = 0;
+			Deque<Node> stack = new ArrayDeque<Node>();
+			stack.push(root.getUnderlyingNode());
+			while (!stack.isEmpty()) {
+				Node node = stack.pop();
+				node.removeProperty(Suffix.KEY_GEO_SIGNIFICANT);
+				if (node.removeProperty(Suffix.KEY_CLUSTER) != null && ++count % BATCH_SIZE == 0) {
+					tx.success();
+					tx.close();
+					tx = this.graphDb.beginTx();
+				}
+				for (Relationship edge : node.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF))
+					stack.push(edge.getEndNode());
+			}
+			tx.success();
+		} finally {
+			tx.close();
+		}
+	}
+
+	/**
+	 * Removes the properties 'clusterCandidate' and 'geoSignificant' from the
+	 * graph.
 	 */
 	public void removeClusterCandidateProperty() {
-		String cypher = "MATCH (n:"+Suffix.LABEL+") REMOVE n."+Suffix.KEY_CLUSTER;
+		String cypher = "MATCH (n:"+Suffix.LABEL+") REMOVE n."+Suffix.KEY_CLUSTER+", n."+Suffix.KEY_GEO_SIGNIFICANT;
 		ClusterProcess.log.info("CYPHER: "+cypher);
 		
 		try(Transaction tx = this.graphDb.beginTx();
@@ -0,0 +1,111 @@
+package clustering;
+
+/**
+ * Significance by Witten-Bell smoothing: the probability of a letter given
+ * two letters of context is interpolated with the one given one letter, which
+ * is interpolated with the letter probability. The weight of the lower order
+ * depends on the number of distinct letters seen before a context, i.e.
+ * P(z|el) = (c(zel) + T(el) * P(z|e)) / (c(el) + T(el)), where c(el) counts
+ * the trigrams ending with "el" and T(el) their types. Thus, rare contexts
+ * rely on the lower orders and no weights have to be tuned.
+ * <p>
+ * The counts and types of all contexts are calculated once when the scorer is
+ * created.
+ *
+ * @author MM
+ *
+ */
+public final class WittenBellScorer implements SignificanceScorer {
+
+	/** N-gram model. */
+	private final NGramModel model;
+
+	/** Factor by which the actual proportion has to exceed the expected one. */
+	private final float alpha;
+
+	/** Bigram tokens by their second letter. */
+	private final int[] countsContext1;
+	/** Bigram types by their second letter. */
+	private final int[] typesContext1;
+	/** Trigram tokens by their last two letters (packed). */
+	private final PackedCountTable countsContext2;
+	/** Trigram types by their last two letters (packed). */
+	private final PackedCountTable typesContext2;
+
+	/**
+	 * Creates a scorer with the alpha of {@link SuffixClustering}.
+	 *
+	 * @param model
+	 *            N-gram model.
+	 */
+	public WittenBellScorer(NGramModel model) {
+		this(model, SuffixClustering.ALPHA);
+	}
+
+	/**
+	 * Creates a scorer and counts the contexts.
+	 *
+	 * @param model
+	 *            N-gram model.
+	 * @param alpha
+	 *            Factor by which the actual proportion has to exceed the
+	 *            expected one.
+	 */
+	public WittenBellScorer(NGramModel model, float alpha) {
+		this.model = model;
+		this.alpha = alpha;
+
+		this.countsContext1 = new int[Character.MAX_VALUE + 1];
+		this.typesContext1 = new int[Character.MAX_VALUE + 1];
+		PackedCountTable bigrams = model.getBigramCounts();
+		for (int slot = 0; slot < bigrams.capacity(); slot++) {
+			long key = bigrams.keyAt(slot);
+			if (key != PackedCountTable.EMPTY) {
+				char context = (char) key;
+				this.countsContext1[context] += bigrams.countAt(slot);
+				this.typesContext1[context]++;
+			}
+		}
+
+		PackedCountTable trigrams = model.getTrigramCounts();
+		this.countsContext2 = new PackedCountTable(bigrams.size());
+		this.typesContext2 = new PackedCountTable(bigrams.size());
+		for (int slot = 0; slot < trigrams.capacity(); slot++) {
+			long key = trigrams.keyAt(slot);
+			if (key != PackedCountTable.EMPTY) {
+				long context = key & 0xFFFFFFFFL;
+				this.countsContext2.put(context, this.countsContext2.get(context) + trigrams.countAt(slot));
+				this.typesContext2.increment(context);
+			}
+		}
+	}
+
+	@Override
+	public float getProbability(char letter, char context1, char context2) {
+		float p0 = this.model.getLetterProbability(letter);
+
+		int count1 = this.countsContext1[context1];
+		int types1 = this.typesContext1[context1];
+		float p1 = (count1 == 0) ? p0
+				: (this.model.getBigramCount(letter, context1) + types1 * p0) / (count1 + types1);
+
+		long context = NGramModel.pack(context1, context2);
+		int count2 = this.countsContext2.get(context);
+		int types2 = this.typesContext2.get(context);
+		return (count2 == 0) ? p1
+				: (this.model.getTrigramCount(letter, context1, context2) + types2 * p1) / (count2 + types2);
+	}
+
+	@Override
+	public boolean isSignificant(char letter, char context1, char context2, int subsCitiesChild,
+			int subsCitiesParent) {
+		float actual = 1f * subsCitiesChild / subsCitiesParent;
+		return actual > getProbability(letter, context1, context2) * this.alpha;
+	}
+
+	@Override
+	public String toString() {
+		return "witten-bell (alpha=" + this.alpha + ")";
+	}
+
+}
@@ -0,0 +1,99 @@
+package database;
+
+import java.util.Collections;
+
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+
+/**
+ * Version stamp of the cities within a graph database. Each loader which
+ * changes the set of cities increments the stamp, thus data derived from the
+ * cities, e.g. a persisted n-gram model, is stale iff its stamp differs. The
+ * stamp is a property of a single node.
+ * <p>
+ * A new stamp is at least the current time in milliseconds, thus stamps of
+ * different stores differ, too.
+ *
+ * @author MM
+ *
+ */
+public abstract class DataVersion {
+
+	/** Label of the node holding the stamp. */
+	public static final Label LABEL = DynamicLabel.label("dataVersion");
+
+	/** Property label of the stamp. */
+	public static final String KEY_VERSION = "version";
+
+	/**
+	 * Returns the current stamp.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @return The stamp or 0 if the cities were never stamped.
+	 */
+	public static long get(GraphDatabaseService graphDb) {
+		try (Transaction tx = graphDb.beginTx()) {
+			return read(graphDb);
+		}
+	}
+
+	/**
+	 * Sets a new stamp. Has to be called within the transaction which changes
+	 * the cities.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @return The new stamp.
+	 */
+	public static long increment(GraphDatabaseService graphDb) {
+		Node node;
+		try (ResourceIterator<Node> nodes = graphDb.findNodes(LABEL)) {
+			node = nodes.hasNext() ? nodes.next() : graphDb.createNode(LABEL);
+		}
+		// lock the node before reading, i.e. concurrent loaders get distinct stamps
+		node.setProperty(KEY_VERSION, node.getProperty(KEY_VERSION, 0L));
+		long version = next(read(graphDb));
+		node.setProperty(KEY_VERSION, version);
+		return version;
+	}
+
+	/**
+	 * Sets a new stamp of a store which is loaded by a batch inserter, i.e.
+	 * the store has no stamp yet.
+	 *
+	 * @param inserter
+	 *            Batch inserter.
+	 * @return The new stamp.
+	 */
+	public static long stamp(BatchInserter inserter) {
+		long version = next(0);
+		inserter.createNode(Collections.<String, Object> singletonMap(KEY_VERSION, version), LABEL);
+		return version;
+	}
+
+	/**
+	 * Reads the current stamp within the caller's transaction.
+	 */
+	private static long read(GraphDatabaseService graphDb) {
+		long version = 0;
+		try (ResourceIterator<Node> nodes = graphDb.findNodes(LABEL)) {
+			while (nodes.hasNext())
+				version = Math.max(version, ((Number) nodes.next().getProperty(KEY_VERSION, 0L)).longValue());
+		}
+		return version;
+	}
+
+	/**
+	 * Returns the stamp following a stamp.
+	 */
+	private static long next(long version) {
+		return Math.max(version + 1, System.currentTimeMillis());
+	}
+
+}
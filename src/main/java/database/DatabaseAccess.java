@@ -18,6 +18,9 @@ public abstract class DatabaseAccess {
 
 	/** Path to the database in the file system. */
 	private static final String DB_PATH = "neo4j_db";
+	
+	/** System property for overriding the path, e.g. for benchmarks. */
+	public static final String DB_PATH_PROPERTY = "toponym.db";
 
 	/** The graph database object. */
 	private static GraphDatabaseService graphDb;
@@ -32,7 +35,7 @@ public abstract class DatabaseAccess {
 		if (graphDb == null) {
 			graphDb = new GraphDatabaseFactory()
 					.setUserLogProvider(new Slf4jLogProvider()) // use SLF4J for log output
-					.newEmbeddedDatabase(new File(DB_PATH)); // access the database from file system
+					.newEmbeddedDatabase(new File(getDatabasePath())); // access the database from file system
 			
 			registerShutdownHook(graphDb);
 		}
@@ -40,11 +43,24 @@ public abstract class DatabaseAccess {
 	}
 
 	/**
-	 * Closes the connection to the database.
+	 * Returns the location of the database in the file system, e.g. for
+	 * offline batch loading. It can be overridden by the system property
+	 * {@value #DB_PATH_PROPERTY}.
+	 * 
+	 * @return Path to the database.
+	 */
+	public static String getDatabasePath() {
+		return System.getProperty(DB_PATH_PROPERTY, DB_PATH);
+	}
+
+	/**
+	 * Closes the connection to the database. The next call of
+	 * {@link #getGraphDb()} opens it again.
 	 */
 	public static void closeGraphDb() {
 		if (graphDb != null) {
 			graphDb.shutdown();
+			graphDb = null;
 		}
 	}
 
@@ -56,8 +72,7 @@ public abstract class DatabaseAccess {
 	 */
 	public static void dropDatabase() throws IOException {
 		closeGraphDb();
-		graphDb = null;
-		FileUtils.deleteRecursively(new File(DB_PATH));
+		FileUtils.deleteRecursively(new File(getDatabasePath()));
 	}
 
 	/**
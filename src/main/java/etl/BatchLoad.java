@@ -0,0 +1,182 @@
+package etl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+import database.DataVersion;
+import process_control.ClusterProcess;
+import representation.City;
+import representation.EdgeTypes;
+import representation.Suffix;
+
+/**
+ * Loads the city data into an offline graph database store by using the Neo4j
+ * batch inserter. Suffixes are deduplicated in memory, thus each suffix node
+ * and each edge is written exactly once without any Cypher query. The
+ * resulting graph is the same as the one built by {@link Load}.
+ * <p>
+ * IMPORTANT: The store must not be opened by any other graph database instance
+ * while loading, i.e. close the database before and open it afterwards.
+ *
+ * @author MM
+ *
+ */
+public class BatchLoad implements CityRecordHandler, AutoCloseable {
+
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+
+	/** Number of loaded cities after which the progress is logged. */
+	private static final int LOG_INTERVAL = 100000;
+
+	/** The batch inserter writing to the store. */
+	private final BatchInserter inserter;
+
+	/** Suffix strings mapped to the id of their suffix node. */
+	private final Map<String, Long> suffixIds;
+
+	/** Empty property map for edges. */
+	private final Map<String, Object> noProperties;
+
+	/** Count of loaded city nodes. */
+	private long countCityNodes;
+	/** Count of created suffix nodes. */
+	private long countSuffixNodes;
+	/** Count of created edges. */
+	private long countEdges;
+	/** Start of the loading in milliseconds. */
+	private final long timeStart;
+
+	/**
+	 * Opens the store for batch insertion.
+	 *
+	 * @param storeDir
+	 *            Location of the graph database in the file system.
+	 * @throws IOException
+	 *             If the store cannot be opened.
+	 */
+	public BatchLoad(String storeDir) throws IOException {
+		this.inserter = BatchInserters.inserter(new File(storeDir));
+		this.suffixIds = new HashMap<String, Long>();
+		this.noProperties = new HashMap<String, Object>();
+		this.countCityNodes = 0;
+		this.countSuffixNodes = 0;
+		this.countEdges = 0;
+		this.timeStart = System.currentTimeMillis();
+
+		// unique constraint for attribute 'str' in suffix-nodes, built on shutdown
+		this.inserter.createDeferredConstraint(Suffix.LABEL).assertPropertyIsUnique(Suffix.KEY_STR).create();
+	}
+
+	/**
+	 * Loads city and suffix nodes as well as the relationships among them to
+	 * the store.
+	 *
+	 * @param storeDir
+	 *            Location of the graph database in the file system.
+	 * @param data
+	 *            List of maps containing information to cities. Allowed keys
+	 *            are 'city' (= name of the city), 'latitude', and 'longitude'.
+	 * @throws IOException
+	 *             If the store cannot be opened.
+	 */
+	public static void loadCityAndSuffix(String storeDir, List<Map<String, String>> data) throws IOException {
+		try (BatchLoad load = new BatchLoad(storeDir)) {
+			for (Map<String, String> row : data) {
+				String cityName = row.get("city");
+				float latitude = Float.parseFloat(row.get("latitude"));
+				float longitude = Float.parseFloat(row.get("longitude"));
+				load.addCity(cityName, latitude, longitude);
+			}
+		}
+	}
+
+	@Override
+	public void handle(CityRecord record) {
+		addCity(record.getName(), record.getLatitude(), record.getLongitude());
+	}
+
+	/**
+	 * Adds a city node, the missing suffix nodes of its name, and the edges
+	 * among them.
+	 *
+	 * @param cityName
+	 *            Name of the city.
+	 * @param latitude
+	 *            Latitude of the city.
+	 * @param longitude
+	 *            Longitude of the city.
+	 */
+	public void addCity(String cityName, float latitude, float longitude) {
+		// insert city node
+		Map<String, Object> cityProperties = new HashMap<String, Object>();
+		cityProperties.put(City.LATITUDE, latitude);
+		cityProperties.put(City.LONGITUDE, longitude);
+		long cityId = this.inserter.createNode(cityProperties, City.LABEL);
+		this.countCityNodes++;
+
+		// insert suffix nodes from the full name to the final letter: each
+		// suffix has exactly one parent (the suffix without its first letter),
+		// thus stop as soon as a suffix is already known
+		long childId = -1;
+		for (int i = 0; i < cityName.length(); i++) {
+			String str = cityName.substring(i);
+			Long suffixId = this.suffixIds.get(str);
+			boolean isNew = suffixId == null;
+			if (isNew) {
+				Map<String, Object> suffixProperties = new HashMap<String, Object>();
+				suffixProperties.put(Suffix.KEY_STR, str);
+				suffixId = this.inserter.createNode(suffixProperties, Suffix.LABEL);
+				this.suffixIds.put(str, suffixId);
+				this.countSuffixNodes++;
+			}
+
+			// insert edge
+			if (i == 0) {
+				// isNameOf edge
+				this.inserter.createRelationship(suffixId, cityId, EdgeTypes.IS_NAME_OF, this.noProperties);
+			} else {
+				// isSuffixOf edge
+				this.inserter.createRelationship(suffixId, childId, EdgeTypes.IS_SUFFIX_OF, this.noProperties);
+			}
+			this.countEdges++;
+
+			if (!isNew)
+				break; // the remaining suffixes and edges already exist
+			childId = suffixId;
+		}
+
+		if (this.countCityNodes % LOG_INTERVAL == 0)
+			logRates();
+	}
+
+	/**
+	 * Logs the number of loaded nodes and edges and the rates per second.
+	 */
+	private void logRates() {
+		double seconds = Math.max(1, System.currentTimeMillis() - this.timeStart) / 1000.0;
+		long countNodes = this.countCityNodes + this.countSuffixNodes;
+		log.info(String.format("batch load: %d cities, %d suffixes, %d edges (%.0f nodes/s, %.0f edges/s)",
+				this.countCityNodes, this.countSuffixNodes, this.countEdges, countNodes / seconds,
+				this.countEdges / seconds));
+	}
+
+	/**
+	 * Stamps the cities, flushes all data to the store, and builds the unique
+	 * constraint.
+	 */
+	@Override
+	public void close() {
+		DataVersion.stamp(this.inserter);
+		this.inserter.shutdown();
+		logRates();
+	}
+
+}
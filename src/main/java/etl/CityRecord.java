@@ -0,0 +1,85 @@
+package etl;
+
+/**
+ * An extracted city: its name and coordinates. Latitude and longitude are kept
+ * as read from the data source as well, thus writing them back does not
+ * change their representation.
+ *
+ * @author MM
+ *
+ */
+public final class CityRecord {
+
+	/** Running number of the extracted city, starting at 1. */
+	private final int id;
+	/** Name of the city (ASCII). */
+	private final String name;
+	/** Latitude as read from the data source. */
+	private final String latitudeStr;
+	/** Longitude as read from the data source. */
+	private final String longitudeStr;
+	/** Latitude of the city. */
+	private final float latitude;
+	/** Longitude of the city. */
+	private final float longitude;
+
+	/**
+	 * Creates a city record.
+	 *
+	 * @param id
+	 *            Running number of the extracted city, starting at 1.
+	 * @param name
+	 *            Name of the city.
+	 * @param latitudeStr
+	 *            Latitude as read from the data source.
+	 * @param longitudeStr
+	 *            Longitude as read from the data source.
+	 * @throws NumberFormatException
+	 *             If a coordinate is not a number.
+	 */
+	public CityRecord(int id, String name, String latitudeStr, String longitudeStr) {
+		this(id, name, latitudeStr, longitudeStr, Float.parseFloat(latitudeStr), Float.parseFloat(longitudeStr));
+	}
+
+	/**
+	 * Creates a city record whose coordinates are already parsed.
+	 */
+	CityRecord(int id, String name, String latitudeStr, String longitudeStr, float latitude, float longitude) {
+		this.id = id;
+		this.name = name;
+		this.latitudeStr = latitudeStr;
+		this.longitudeStr = longitudeStr;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	public int getId() {
+		return this.id;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public String getLatitudeStr() {
+		return this.latitudeStr;
+	}
+
+	public String getLongitudeStr() {
+		return this.longitudeStr;
+	}
+
+	public float getLatitude() {
+		return this.latitude;
+	}
+
+	public float getLongitude() {
+		return this.longitude;
+	}
+
+	@Override
+	public String toString() {
+		return this.id + "," + this.name + "," + this.latitudeStr + "," + this.longitudeStr;
+	}
+
+}
@@ -0,0 +1,24 @@
+package etl;
+
+import java.io.IOException;
+
+/**
+ * Receives the extracted cities one by one, e.g. to write or to load them
+ * while the data source is still read.
+ *
+ * @author MM
+ *
+ */
+public interface CityRecordHandler {
+
+	/**
+	 * Handles an extracted city.
+	 *
+	 * @param record
+	 *            The extracted city.
+	 * @throws IOException
+	 *             If handling the city fails.
+	 */
+	void handle(CityRecord record) throws IOException;
+
+}
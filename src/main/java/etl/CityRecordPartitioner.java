@@ -0,0 +1,26 @@
+package etl;
+
+import java.io.IOException;
+
+/**
+ * Partitions the extracted cities by country, i.e. provides the handler of
+ * each country when its first city is extracted.
+ *
+ * @author MM
+ *
+ */
+public interface CityRecordPartitioner {
+
+	/**
+	 * Returns the handler of the cities of a country. It is called once per
+	 * country.
+	 *
+	 * @param countryCode
+	 *            Country code, e.g. "de".
+	 * @return Receives the extracted cities of the country.
+	 * @throws IOException
+	 *             If creating the handler fails.
+	 */
+	CityRecordHandler getHandler(String countryCode) throws IOException;
+
+}
@@ -0,0 +1,55 @@
+package etl;
+
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.io.ICsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+/**
+ * Writes extracted cities to a CSV file with the columns 'id', 'city',
+ * 'latitude', and 'longitude', i.e. the same format as
+ * {@link Extraction#writeToCsvFile(String, java.util.List)}.
+ *
+ * @author MM
+ *
+ */
+public class CsvCityWriter implements CityRecordHandler, AutoCloseable {
+
+	/** Header of the CSV file. */
+	static final String[] HEADER = new String[] { "id", "city", "latitude", "longitude" };
+
+	/** The underlying writer. */
+	private final ICsvListWriter listWriter;
+
+	/**
+	 * Creates the CSV file and writes its header.
+	 *
+	 * @param fileLocation
+	 *            Location within the file system for the extracted data.
+	 * @throws IOException
+	 *             If writing to the file system fails.
+	 */
+	public CsvCityWriter(String fileLocation) throws IOException {
+		this.listWriter = new CsvListWriter(new FileWriter(fileLocation), CsvPreference.STANDARD_PREFERENCE);
+		try {
+			this.listWriter.writeHeader(HEADER);
+		} catch (IOException e) {
+			this.listWriter.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void handle(CityRecord record) throws IOException {
+		this.listWriter.write(Integer.toString(record.getId()), record.getName(), record.getLatitudeStr(),
+				record.getLongitudeStr());
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.listWriter.close();
+	}
+
+}
@@ -1,13 +1,16 @@
 package etl;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.supercsv.cellprocessor.Optional;
 import org.supercsv.cellprocessor.ift.CellProcessor;
@@ -28,6 +31,15 @@ import org.supercsv.prefs.CsvPreference;
  */
 public abstract class Extraction {
 
+	/** Country code of German cities within the Free World City Database. */
+	public static final String COUNTRY_GERMANY = "de";
+
+	/** Number of columns of the Free World City Database. */
+	private static final int NUMBER_COLUMNS = 7;
+
+	/** Start of the header row of the Free World City Database. */
+	private static final String HEADER_PREFIX = "Country,";
+
 	/**
 	 * Extracts German city name (ASCII), latitude, and longitude from the Free
 	 * World City Database.
@@ -42,34 +54,176 @@ public abstract class Extraction {
 	 *             If reading the CSV file from the file location fails.
 	 */
 	public static List<Map<String, String>> extractFromFreeWorldCitiesDatabase(String fileLocation) throws IOException {
-		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		final List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		extractFromFreeWorldCitiesDatabase(fileLocation, COUNTRY_GERMANY, new CityRecordHandler() {
+			@Override
+			public void handle(CityRecord record) {
+				Map<String, String> extractedMap = new HashMap<String, String>();
+				extractedMap.put("city", record.getName());
+				extractedMap.put("latitude", record.getLatitudeStr());
+				extractedMap.put("longitude", record.getLongitudeStr());
+				data.add(extractedMap);
+			}
+		});
+		return data;
+	}
 
-		BufferedReader reader = null;
-		try {
-			reader = new BufferedReader(new FileReader(fileLocation));
+	/**
+	 * Extracts city name (ASCII), latitude, and longitude of one country from
+	 * the Free World City Database and passes each city to a handler while
+	 * reading, i.e. the memory does not depend on the size of the database.
+	 * Rows of other countries are skipped before their columns are split.
+	 * 
+	 * @param fileLocation
+	 *            Location of the database as CSV file at the file system.
+	 * @param countryCode
+	 *            Country code of the cities to extract, e.g. "de".
+	 * @param handler
+	 *            Receives the extracted cities in the order of the file.
+	 * @return Number of extracted cities.
+	 * @throws IOException
+	 *             If reading the CSV file from the file location fails or the
+	 *             handler fails.
+	 */
+	public static int extractFromFreeWorldCitiesDatabase(String fileLocation, String countryCode,
+			CityRecordHandler handler) throws IOException {
+		int countCities = 0;
+		int[] commas = new int[NUMBER_COLUMNS - 1];
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(fileLocation), StandardCharsets.ISO_8859_1))) {
 			// iterate over each row of the CSV file
 			String row;
 			while ((row = reader.readLine()) != null) {
-				String[] rowData = row.split(",");
-				if (rowData.length != 7) {
-					throw new IOException("There is something wrong: 7 columns expected but there are " + rowData.length
-							+ " columns in line \"" + row + "\".");
+				int countCommas = findCommas(row, commas);
+				if (countCommas != commas.length) {
+					throw new IOException("There is something wrong: " + NUMBER_COLUMNS + " columns expected but there are "
+							+ (countCommas + 1) + " columns in line \"" + row + "\".");
 				}
-				// check whether it is a German city
-				if (rowData[0].equals("de")) {
-					Map<String, String> extractedMap = new HashMap<String, String>();
-					extractedMap.put("city", rowData[1]);
-					extractedMap.put("latitude", rowData[5]);
-					extractedMap.put("longitude", rowData[6]);
-					data.add(extractedMap);
+				// check whether the city belongs to the country
+				if (commas[0] == countryCode.length() && row.startsWith(countryCode)) {
+					countCities++;
+					handler.handle(createRecord(countCities, row, commas));
 				}
 			}
-		} finally {
-			if (reader != null)
-				reader.close();
 		}
 
-		return data;
+		return countCities;
+	}
+
+	/**
+	 * Extracts city name (ASCII), latitude, and longitude of all countries
+	 * from the Free World City Database and passes each city to the handler
+	 * of its country while reading. The cities of each country are numbered
+	 * separately, starting at 1.
+	 * 
+	 * @param fileLocation
+	 *            Location of the database as CSV file at the file system.
+	 * @param partitioner
+	 *            Provides the handler of each country.
+	 * @return Number of extracted cities per country.
+	 * @throws IOException
+	 *             If reading the CSV file from the file location fails or a
+	 *             handler fails.
+	 */
+	public static Map<String, Integer> extractFromFreeWorldCitiesDatabase(String fileLocation,
+			CityRecordPartitioner partitioner) throws IOException {
+		Map<String, CityRecordHandler> handlers = new HashMap<String, CityRecordHandler>();
+		Map<String, Integer> countCities = new TreeMap<String, Integer>();
+		int[] commas = new int[NUMBER_COLUMNS - 1];
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(fileLocation), StandardCharsets.ISO_8859_1))) {
+			// iterate over each row of the CSV file
+			String row;
+			boolean isFirstRow = true;
+			while ((row = reader.readLine()) != null) {
+				if (isFirstRow && row.startsWith(HEADER_PREFIX)) {
+					isFirstRow = false;
+					continue;
+				}
+				isFirstRow = false;
+				int countCommas = findCommas(row, commas);
+				if (countCommas != commas.length) {
+					throw new IOException("There is something wrong: " + NUMBER_COLUMNS + " columns expected but there are "
+							+ (countCommas + 1) + " columns in line \"" + row + "\".");
+				}
+				// partition by country
+				String countryCode = row.substring(0, commas[0]);
+				CityRecordHandler handler = handlers.get(countryCode);
+				if (handler == null) {
+					handler = partitioner.getHandler(countryCode);
+					handlers.put(countryCode, handler);
+					countCities.put(countryCode, 0);
+				}
+				int id = countCities.get(countryCode) + 1;
+				countCities.put(countryCode, id);
+				handler.handle(createRecord(id, row, commas));
+			}
+		}
+
+		return countCities;
+	}
+
+	/**
+	 * Finds the separating commas of a row.
+	 * 
+	 * @param row
+	 *            A row of the CSV file.
+	 * @param commas
+	 *            Receives the positions of the commas.
+	 * @return Number of commas within the row, may exceed the length of the
+	 *         array.
+	 */
+	private static int findCommas(String row, int[] commas) {
+		int count = 0;
+		for (int i = row.indexOf(','); i >= 0; i = row.indexOf(',', i + 1)) {
+			if (count < commas.length)
+				commas[count] = i;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Creates the city record of a row.
+	 * 
+	 * @param id
+	 *            Running number of the city.
+	 * @param row
+	 *            A row of the CSV file.
+	 * @param commas
+	 *            Positions of the separating commas of the row.
+	 * @return The city record.
+	 * @throws IOException
+	 *             If a coordinate is empty or not a number.
+	 */
+	private static CityRecord createRecord(int id, String row, int[] commas) throws IOException {
+		try {
+			return new CityRecord(id, row.substring(commas[0] + 1, commas[1]), row.substring(commas[4] + 1, commas[5]),
+					row.substring(commas[5] + 1));
+		} catch (NumberFormatException e) {
+			throw new IOException("There is something wrong: latitude and longitude expected in line \"" + row + "\".",
+					e);
+		}
+	}
+
+	/**
+	 * Combines handlers, i.e. each city is passed to each handler in the given
+	 * order.
+	 * 
+	 * @param handlers
+	 *            Handlers of the extracted cities.
+	 * @return Combined handler.
+	 */
+	public static CityRecordHandler fanOut(final CityRecordHandler... handlers) {
+		return new CityRecordHandler() {
+			@Override
+			public void handle(CityRecord record) throws IOException {
+				for (CityRecordHandler handler : handlers)
+					handler.handle(record);
+			}
+		};
 	}
 
 	/**
@@ -0,0 +1,468 @@
+package etl;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+import database.DataVersion;
+import process_control.ClusterProcess;
+import representation.City;
+import representation.EdgeTypes;
+import representation.Suffix;
+
+/**
+ * Applies a delta of cities to a loaded graph database, i.e. inserts, updates,
+ * and deletes single cities without reloading the whole graph. Only the suffix
+ * chain of the name of a changed city is touched: missing suffix nodes are
+ * created, unused ones are deleted, the property 'subsumedCities' is adjusted
+ * by one, and the geo-statistics become stale and are deleted. The root of the
+ * chain is marked by the property {@link Suffix#KEY_DIRTY}, thus only the
+ * changed trees have to be clustered again.
+ * <p>
+ * The changes are committed in batches. If a change fails, e.g. a line of a
+ * delta is malformed, the whole current batch is rolled back, the counts are
+ * reset to the last commit, and the loader refuses further changes, i.e.
+ * nothing after the last commit is applied. Cities have no identifier, thus a
+ * city is identified by its name and its coordinates.
+ *
+ * @author MM
+ *
+ */
+public class IncrementalLoad implements CityRecordHandler, AutoCloseable {
+
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+
+	/** Number of changes per transaction. */
+	private static final int BATCH_SIZE = 1000;
+
+	/** Header of a delta file. */
+	static final String[] HEADER = { "operation", "city", "latitude", "longitude", "newLatitude", "newLongitude" };
+
+	/** Operations of a delta. */
+	public enum Operation {
+		INSERT, UPDATE, DELETE
+	}
+
+	/** The graph database. */
+	private final GraphDatabaseService graphDb;
+
+	/** 'true' iff the property 'subsumedCities' is maintained. */
+	private final boolean isCounted;
+
+	/** Transaction of the current batch, 'null' if none is open. */
+	private Transaction tx;
+	/** Number of changes within the current batch. */
+	private int countPending;
+
+	/** Count of inserted cities. */
+	private int countInserted;
+	/** Count of updated cities. */
+	private int countUpdated;
+	/** Count of deleted cities. */
+	private int countDeleted;
+	/** Count of updates and deletions whose city was not found. */
+	private int countMissing;
+
+	/** Count of inserted cities at the last commit. */
+	private int committedInserted;
+	/** Count of updated cities at the last commit. */
+	private int committedUpdated;
+	/** Count of deleted cities at the last commit. */
+	private int committedDeleted;
+	/** Count of missing cities at the last commit. */
+	private int committedMissing;
+
+	/** 'true' iff a change failed and its batch was rolled back. */
+	private boolean isFailed;
+
+	/**
+	 * Prepares the graph database for incremental loading, i.e. creates the
+	 * unique constraint for suffix nodes if it is missing. The property
+	 * 'subsumedCities' is maintained iff it was already added to the graph.
+	 *
+	 * @param graphDb
+	 *            The graph database.
+	 */
+	public IncrementalLoad(GraphDatabaseService graphDb) {
+		this.graphDb = graphDb;
+		try (Transaction tx = graphDb.beginTx()) {
+			if (!graphDb.schema().getConstraints(Suffix.LABEL).iterator().hasNext())
+				graphDb.schema().constraintFor(Suffix.LABEL).assertPropertyIsUnique(Suffix.KEY_STR).create();
+			tx.success();
+		}
+		try (Transaction tx = graphDb.beginTx(); ResourceIterator<Node> suffixes = graphDb.findNodes(Suffix.LABEL)) {
+			this.isCounted = suffixes.hasNext() && suffixes.next().hasProperty(Suffix.KEY_SUBSCITIES);
+		}
+	}
+
+	/**
+	 * Applies a delta file. Its first line is the header
+	 * "operation,city,latitude,longitude,newLatitude,newLongitude", the
+	 * operation is one of 'insert', 'update', and 'delete'. The new coordinates
+	 * are only given for updates. If a line is malformed, the current batch is
+	 * rolled back.
+	 *
+	 * @param fileLocation
+	 *            Location of the delta file.
+	 * @return Number of applied changes, i.e. without the updates and
+	 *         deletions whose city was not found.
+	 * @throws IOException
+	 *             If reading the file fails or a line is malformed.
+	 */
+	public int applyDelta(String fileLocation) throws IOException {
+		int countChanges = 0;
+		try (ICsvListReader reader = new CsvListReader(new FileReader(fileLocation),
+				CsvPreference.STANDARD_PREFERENCE)) {
+			String[] header = reader.getHeader(true);
+			if (header == null || header.length < 4 || !header[0].equals(HEADER[0]) || !header[1].equals(HEADER[1]))
+				throw new IOException("The delta has to start with the header \"operation,city,latitude,longitude,...\".");
+			List<String> row;
+			while ((row = readChange(reader)) != null) {
+				boolean isApplied = true;
+				try {
+					Operation operation = Operation.valueOf(row.get(0).trim().toUpperCase());
+					String name = row.get(1);
+					float latitude = Float.parseFloat(row.get(2));
+					float longitude = Float.parseFloat(row.get(3));
+					switch (operation) {
+					case INSERT:
+						insert(name, latitude, longitude);
+						break;
+					case UPDATE:
+						isApplied = update(name, latitude, longitude, Float.parseFloat(row.get(4)),
+								Float.parseFloat(row.get(5)));
+						break;
+					case DELETE:
+						isApplied = delete(name, latitude, longitude);
+						break;
+					}
+				} catch (IllegalArgumentException | IndexOutOfBoundsException | NullPointerException e) {
+					rollback();
+					throw new IOException("Malformed change in line " + reader.getLineNumber() + ": " + row, e);
+				}
+				if (isApplied)
+					countChanges++;
+			}
+		}
+		return countChanges;
+	}
+
+	/**
+	 * Reads the next line of a delta, the current batch is rolled back if
+	 * reading fails.
+	 *
+	 * @return The line or 'null' at the end of the delta.
+	 */
+	private List<String> readChange(ICsvListReader reader) throws IOException {
+		try {
+			return reader.read();
+		} catch (IOException | RuntimeException e) {
+			rollback();
+			throw e;
+		}
+	}
+
+	@Override
+	public void handle(CityRecord record) {
+		insert(record.getName(), record.getLatitude(), record.getLongitude());
+	}
+
+	/**
+	 * Inserts a city. The missing suffix nodes of its name are created.
+	 *
+	 * @param cityName
+	 *            Name of the city.
+	 * @param latitude
+	 *            Latitude of the city.
+	 * @param longitude
+	 *            Longitude of the city.
+	 */
+	public void insert(String cityName, float latitude, float longitude) {
+		transaction();
+		try {
+			Node city = this.graphDb.createNode(City.LABEL);
+			city.setProperty(City.LATITUDE, latitude);
+			city.setProperty(City.LONGITUDE, longitude);
+
+			// from the name to the root: suffixes are closed under suffixes,
+			// i.e. below an existing node all nodes exist
+			Node node = null, child = null;
+			boolean isChildCreated = false;
+			for (int i = 0; i < cityName.length(); i++) {
+				node = (isChildCreated || child == null)
+						? this.graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, cityName.substring(i)) : parent(child);
+				boolean isCreated = node == null;
+				if (isCreated) {
+					node = this.graphDb.createNode(Suffix.LABEL);
+					node.setProperty(Suffix.KEY_STR, cityName.substring(i));
+					if (this.isCounted)
+						node.setProperty(Suffix.KEY_SUBSCITIES, 1);
+				} else {
+					increment(node, 1);
+					invalidate(node);
+				}
+				if (child == null)
+					node.createRelationshipTo(city, EdgeTypes.IS_NAME_OF);
+				else if (isChildCreated)
+					node.createRelationshipTo(child, EdgeTypes.IS_SUFFIX_OF);
+				child = node;
+				isChildCreated = isCreated;
+			}
+			if (node != null)
+				node.setProperty(Suffix.KEY_DIRTY, true);
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		}
+		this.countInserted++;
+		batch();
+	}
+
+	/**
+	 * Moves a city to new coordinates. The geo-statistics of the suffixes of
+	 * its name are deleted.
+	 *
+	 * @param cityName
+	 *            Name of the city.
+	 * @param latitude
+	 *            Latitude of the city.
+	 * @param longitude
+	 *            Longitude of the city.
+	 * @param newLatitude
+	 *            New latitude of the city.
+	 * @param newLongitude
+	 *            New longitude of the city.
+	 * @return 'true' iff the city was found.
+	 */
+	public boolean update(String cityName, float latitude, float longitude, float newLatitude, float newLongitude) {
+		transaction();
+		try {
+			Node name = this.graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, cityName);
+			Node city = (name == null) ? null : findCity(name, latitude, longitude);
+			if (city == null) {
+				this.countMissing++;
+				return false;
+			}
+			city.setProperty(City.LATITUDE, newLatitude);
+			city.setProperty(City.LONGITUDE, newLongitude);
+			Node node = name;
+			for (Node next = name; next != null; next = parent(next)) {
+				invalidate(next);
+				node = next;
+			}
+			node.setProperty(Suffix.KEY_DIRTY, true);
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		}
+		this.countUpdated++;
+		batch();
+		return true;
+	}
+
+	/**
+	 * Deletes a city. Suffix nodes which neither name a city nor have children
+	 * anymore are deleted, too.
+	 *
+	 * @param cityName
+	 *            Name of the city.
+	 * @param latitude
+	 *            Latitude of the city.
+	 * @param longitude
+	 *            Longitude of the city.
+	 * @return 'true' iff the city was found.
+	 */
+	public boolean delete(String cityName, float latitude, float longitude) {
+		transaction();
+		try {
+			Node name = this.graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, cityName);
+			Node city = (name == null) ? null : findCity(name, latitude, longitude);
+			if (city == null) {
+				this.countMissing++;
+				return false;
+			}
+			for (Relationship edge : city.getRelationships())
+				edge.delete();
+			city.delete();
+
+			// from the name to the root
+			Node node = name;
+			while (node != null) {
+				Node parent = parent(node);
+				invalidate(node);
+				increment(node, -1);
+				if (!node.hasRelationship(Direction.OUTGOING, EdgeTypes.IS_NAME_OF, EdgeTypes.IS_SUFFIX_OF)) {
+					// unused suffix
+					for (Relationship edge : node.getRelationships())
+						edge.delete();
+					node.delete();
+				} else if (parent == null) {
+					node.setProperty(Suffix.KEY_DIRTY, true);
+				}
+				node = parent;
+			}
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		}
+		this.countDeleted++;
+		batch();
+		return true;
+	}
+
+	/**
+	 * Finds the city of a name at the given coordinates.
+	 *
+	 * @return City node or 'null' if there is none.
+	 */
+	private static Node findCity(Node name, float latitude, float longitude) {
+		for (Relationship edge : name.getRelationships(Direction.OUTGOING, EdgeTypes.IS_NAME_OF)) {
+			Node city = edge.getEndNode();
+			if (((Number) city.getProperty(City.LATITUDE)).floatValue() == latitude
+					&& ((Number) city.getProperty(City.LONGITUDE)).floatValue() == longitude)
+				return city;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the next shorter suffix.
+	 *
+	 * @return Parent node or 'null' for a root.
+	 */
+	private static Node parent(Node suffix) {
+		Relationship edge = suffix.getSingleRelationship(EdgeTypes.IS_SUFFIX_OF, Direction.INCOMING);
+		return (edge == null) ? null : edge.getStartNode();
+	}
+
+	/**
+	 * Adds a value to the property 'subsumedCities' if it is given.
+	 */
+	private static void increment(Node suffix, int delta) {
+		Object value = suffix.getProperty(Suffix.KEY_SUBSCITIES, null);
+		if (value != null)
+			suffix.setProperty(Suffix.KEY_SUBSCITIES, ((Number) value).intValue() + delta);
+	}
+
+	/**
+	 * Deletes the geo-statistics of a suffix since its cities changed.
+	 */
+	private static void invalidate(Node suffix) {
+		for (Relationship edge : suffix.getRelationships(Direction.INCOMING, EdgeTypes.EUCLIDEAN_DIST)) {
+			Node geoStatistics = edge.getStartNode();
+			edge.delete();
+			geoStatistics.delete();
+		}
+	}
+
+	/**
+	 * Returns the transaction of the current batch.
+	 *
+	 * @throws IllegalStateException
+	 *             If a change failed before.
+	 */
+	private Transaction transaction() {
+		if (this.isFailed)
+			throw new IllegalStateException("A change failed, its batch was rolled back.");
+		if (this.tx == null)
+			this.tx = this.graphDb.beginTx();
+		return this.tx;
+	}
+
+	/**
+	 * Commits the current batch if it is full.
+	 */
+	private void batch() {
+		if (++this.countPending == BATCH_SIZE)
+			commit();
+	}
+
+	/**
+	 * Commits the current batch.
+	 *
+	 * @throws IllegalStateException
+	 *             If a change failed before.
+	 */
+	public void commit() {
+		if (this.isFailed)
+			throw new IllegalStateException("A change failed, its batch was rolled back.");
+		if (this.tx != null) {
+			// the set of cities changed, not only coordinates
+			if (this.countInserted > this.committedInserted || this.countDeleted > this.committedDeleted)
+				DataVersion.increment(this.graphDb);
+			this.tx.success();
+			this.tx.close();
+			this.tx = null;
+		}
+		this.countPending = 0;
+		this.committedInserted = this.countInserted;
+		this.committedUpdated = this.countUpdated;
+		this.committedDeleted = this.countDeleted;
+		this.committedMissing = this.countMissing;
+	}
+
+	/**
+	 * Discards the current batch and resets the counts to the last commit. No
+	 * further changes are accepted.
+	 */
+	private void rollback() {
+		if (this.tx != null) {
+			this.tx.failure();
+			this.tx.close();
+			this.tx = null;
+		}
+		this.countPending = 0;
+		this.countInserted = this.committedInserted;
+		this.countUpdated = this.committedUpdated;
+		this.countDeleted = this.committedDeleted;
+		this.countMissing = this.committedMissing;
+		this.isFailed = true;
+	}
+
+	public int getCountInserted() {
+		return this.countInserted;
+	}
+
+	public int getCountUpdated() {
+		return this.countUpdated;
+	}
+
+	public int getCountDeleted() {
+		return this.countDeleted;
+	}
+
+	/**
+	 * Returns the number of updates and deletions whose city was not found.
+	 *
+	 * @return Number of missing cities.
+	 */
+	public int getCountMissing() {
+		return this.countMissing;
+	}
+
+	/**
+	 * Commits the remaining changes unless a change failed.
+	 */
+	@Override
+	public void close() {
+		if (this.isFailed)
+			log.warn("Incremental load failed, the last batch was rolled back.");
+		else
+			commit();
+		log.info("Incremental load: " + this.countInserted + " inserted, " + this.countUpdated + " updated, "
+				+ this.countDeleted + " deleted, " + this.countMissing + " not found.");
+	}
+
+}
@@ -4,21 +4,50 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.log4j.Logger;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
+import database.DataVersion;
+import process_control.ClusterProcess;
 import representation.City;
 import representation.EdgeTypes;
 import representation.Suffix;
 
 /**
- * Loads the city data into the graph database.
+ * Loads the city data into the graph database. As {@link CityRecordHandler}
+ * it loads the cities while they are extracted. Each city is added within its
+ * own transaction, the data version is incremented once by {@link #close()}.
  * 
  * @author MM
  *
  */
-public class Load {
+public class Load implements CityRecordHandler, AutoCloseable {
+
+	/** Log4j Logger */
+	private static Logger log = ClusterProcess.log;
+
+	/** The graph database. */
+	private final GraphDatabaseService graphDb;
+	/** Number of cities added since the data version was incremented. */
+	private long countAddedCities;
+
+	/**
+	 * Prepares the graph database for loading, i.e. creates the unique
+	 * constraint for suffix nodes.
+	 * 
+	 * @param graphDb
+	 *            The graph database.
+	 */
+	public Load(GraphDatabaseService graphDb) {
+		this.graphDb = graphDb;
+		// create unique constraint for attribute 'str' in suffix-nodes
+		try (Transaction tx = graphDb.beginTx()) {
+			graphDb.schema().constraintFor(Suffix.LABEL).assertPropertyIsUnique(Suffix.KEY_STR).create();
+			tx.success();
+		}
+	}
 
 	/**
 	 * Loads city and suffix nodes as well as the relationships among them to
@@ -31,57 +60,92 @@ public class Load {
 	 *            are 'city' (= name of the city), 'latitude', and 'longitude'.
 	 */
 	public static void loadCityAndSuffix(GraphDatabaseService graphDb, List<Map<String, String>> data) {
-		// create unique constraint for attribute 'str' in suffix-nodes
-		try (Transaction tx = graphDb.beginTx()) {
-			graphDb.schema().constraintFor(Suffix.LABEL).assertPropertyIsUnique(Suffix.KEY_STR).create();
-			tx.success();
+		try (Load load = new Load(graphDb)) {
+			// iterate over each row of the data
+			for (Map<String, String> row : data) {
+				if (Integer.parseInt(row.get("id")) % 1000 == 0)
+					log.info("\t" + row.get("id"));
+				String cityName = row.get("city");
+				float latitude = Float.parseFloat(row.get("latitude"));
+				float longitude = Float.parseFloat(row.get("longitude"));
+				load.addCity(cityName, latitude, longitude);
+			}
 		}
+	}
+
+	@Override
+	public void handle(CityRecord record) {
+		if (record.getId() % 1000 == 0)
+			log.info("\t" + record.getId());
+		addCity(record.getName(), record.getLatitude(), record.getLongitude());
+	}
+
+	/**
+	 * Adds a city node, the missing suffix nodes of its name, and the edges
+	 * among them within one transaction. The data version is incremented by
+	 * {@link #close()}.
+	 * 
+	 * @param cityName
+	 *            Name of the city.
+	 * @param latitude
+	 *            Latitude of the city.
+	 * @param longitude
+	 *            Longitude of the city.
+	 */
+	public void addCity(String cityName, float latitude, float longitude) {
+		GraphDatabaseService graphDb = this.graphDb;
+		try (Transaction tx = graphDb.beginTx()) {
+			// insert city node
+			Node newCity = graphDb.createNode();
+			newCity.addLabel(City.LABEL);
+			newCity.setProperty(City.LATITUDE, latitude);
+			newCity.setProperty(City.LONGITUDE, longitude);
 
-		// iterate over each row of the data
-		for (Map<String, String> row : data) {
-			if (Integer.parseInt(row.get("id")) % 1000 == 0)
-				System.out.println("\t"+row.get("id"));
-			String cityName = row.get("city");
-			float latitude = Float.parseFloat(row.get("latitude"));
-			float longitude = Float.parseFloat(row.get("longitude"));
-
-			try (Transaction tx = graphDb.beginTx()) {
-				// insert city node
-				Node newCity = graphDb.createNode();
-				newCity.addLabel(City.LABEL);
-				newCity.setProperty(City.LATITUDE, latitude);
-				newCity.setProperty(City.LONGITUDE, longitude);
-
-				// insert suffix nodes: use MERGE because suffix is unique
-				String mergeQuery = "MERGE (n:" + Suffix.LABEL + " {" + Suffix.KEY_STR + ": {value}})";
-				String edgeQuery = "MATCH (source:" + Suffix.LABEL + " {" + Suffix.KEY_STR + ": {valSrc}}), (target:"
-						+ Suffix.LABEL + " {" + Suffix.KEY_STR + ": {valTrg}}) CREATE UNIQUE (source)-[:"
-						+ EdgeTypes.IS_SUFFIX_OF + "]->(target)";
-				Map<String, Object> parameters = new HashMap<>();
-				for (int i = cityName.length(); i > 0; i--) {
-					String str = cityName.substring(cityName.length() - i);
-					parameters.put("value", str);
-					graphDb.execute(mergeQuery, parameters);
-
-					// insert edge
-					Node source = graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, str);
-					if (i == cityName.length()) {
-						// isNameOf edge
-						source.createRelationshipTo(newCity, EdgeTypes.IS_NAME_OF);
-					} else {
-						// isSuffixOf edge
-						String prevSuffix = cityName.substring(cityName.length() - i - 1);
-						
-						parameters.put("valSrc", str);
-						parameters.put("valTrg", prevSuffix);
-						graphDb.execute(edgeQuery, parameters);
-					}
+			// insert suffix nodes: use MERGE because suffix is unique
+			String mergeQuery = "MERGE (n:" + Suffix.LABEL + " {" + Suffix.KEY_STR + ": {value}})";
+			String edgeQuery = "MATCH (source:" + Suffix.LABEL + " {" + Suffix.KEY_STR + ": {valSrc}}), (target:"
+					+ Suffix.LABEL + " {" + Suffix.KEY_STR + ": {valTrg}}) CREATE UNIQUE (source)-[:"
+					+ EdgeTypes.IS_SUFFIX_OF + "]->(target)";
+			Map<String, Object> parameters = new HashMap<>();
+			for (int i = cityName.length(); i > 0; i--) {
+				String str = cityName.substring(cityName.length() - i);
+				parameters.put("value", str);
+				graphDb.execute(mergeQuery, parameters);
 
+				// insert edge
+				Node source = graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, str);
+				if (i == cityName.length()) {
+					// isNameOf edge
+					source.createRelationshipTo(newCity, EdgeTypes.IS_NAME_OF);
+				} else {
+					// isSuffixOf edge
+					String prevSuffix = cityName.substring(cityName.length() - i - 1);
+					
+					parameters.put("valSrc", str);
+					parameters.put("valTrg", prevSuffix);
+					graphDb.execute(edgeQuery, parameters);
 				}
 
-				tx.success();
 			}
+
+			tx.success();
+		}
+		this.countAddedCities++;
+	}
+
+	/**
+	 * Increments the data version once if cities were added, i.e. the cities
+	 * of a whole load share one stamp.
+	 */
+	@Override
+	public void close() {
+		if (this.countAddedCities == 0)
+			return;
+		try (Transaction tx = this.graphDb.beginTx()) {
+			DataVersion.increment(this.graphDb);
+			tx.success();
 		}
+		this.countAddedCities = 0;
 	}
 
 }
@@ -0,0 +1,304 @@
+package etl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts cities from the Free World City Database like
+ * {@link Extraction#extractFromFreeWorldCitiesDatabase(String, String, CityRecordHandler)},
+ * but memory-maps the file and parses chunks of it in parallel. The chunks end
+ * at line breaks. Columns are located and the country code is compared on the
+ * raw bytes, thus strings are only created for the extracted cities. The
+ * cities are passed to the handler in the order of the file and with the same
+ * ids as by the sequential extraction.
+ * <p>
+ * The file is decoded as ISO-8859-1. At most two chunks per thread are held
+ * in memory at a time.
+ *
+ * @author MM
+ *
+ */
+public class ParallelExtraction {
+
+	/** Minimal size of a chunk in bytes. */
+	static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	/** Number of chunks per thread if the file is large enough. */
+	private static final int CHUNKS_PER_THREAD = 8;
+
+	/** Number of columns of the Free World City Database. */
+	private static final int NUMBER_COLUMNS = 7;
+
+	/**
+	 * Extracts city name (ASCII), latitude, and longitude of one country from
+	 * the Free World City Database.
+	 *
+	 * @param fileLocation
+	 *            Location of the database as CSV file at the file system.
+	 * @param countryCode
+	 *            Country code of the cities to extract, e.g. "de".
+	 * @param threads
+	 *            Number of parsing threads.
+	 * @param handler
+	 *            Receives the extracted cities in the order of the file.
+	 * @return Number of extracted cities.
+	 * @throws IOException
+	 *             If reading the CSV file from the file location fails or the
+	 *             handler fails.
+	 */
+	public static int extract(String fileLocation, String countryCode, int threads, CityRecordHandler handler)
+			throws IOException {
+		return extract(fileLocation, countryCode, threads, handler, MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Same as {@link #extract(String, String, int, CityRecordHandler)} with a
+	 * given minimal chunk size.
+	 */
+	static int extract(String fileLocation, String countryCode, int threads, CityRecordHandler handler,
+			int minChunkSize) throws IOException {
+		final byte[] country = countryCode.getBytes(StandardCharsets.ISO_8859_1);
+		int countCities = 0;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (RandomAccessFile file = new RandomAccessFile(fileLocation, "r")) {
+			final FileChannel channel = file.getChannel();
+			long[] bounds = findChunkBounds(channel, threads, minChunkSize);
+
+			// parse ahead, but hand over the chunks in order
+			Queue<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+			int next = 0;
+			while (next < bounds.length - 1 || !pending.isEmpty()) {
+				while (next < bounds.length - 1 && pending.size() < 2 * threads) {
+					final long start = bounds[next], end = bounds[next + 1];
+					pending.add(executor.submit(new Callable<Chunk>() {
+						@Override
+						public Chunk call() throws IOException {
+							return parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start),
+									country);
+						}
+					}));
+					next++;
+				}
+
+				Chunk chunk = await(pending.remove());
+				for (int i = 0; i < chunk.size; i++) {
+					countCities++;
+					handler.handle(new CityRecord(countCities, chunk.strings.get(3 * i),
+							chunk.strings.get(3 * i + 1), chunk.strings.get(3 * i + 2), chunk.latitudes[i],
+							chunk.longitudes[i]));
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return countCities;
+	}
+
+	/**
+	 * Waits for a parsed chunk.
+	 */
+	private static Chunk await(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Extraction was interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Splits a file into chunks which end at line breaks.
+	 *
+	 * @param channel
+	 *            The file.
+	 * @param threads
+	 *            Number of parsing threads.
+	 * @param minChunkSize
+	 *            Minimal size of a chunk in bytes.
+	 * @return Offsets of the chunks, followed by the size of the file.
+	 * @throws IOException
+	 *             If reading the file fails.
+	 */
+	static long[] findChunkBounds(FileChannel channel, int threads, int minChunkSize) throws IOException {
+		long size = channel.size();
+		long chunkSize = Math.max(minChunkSize, size / ((long) threads * CHUNKS_PER_THREAD));
+		chunkSize = Math.min(chunkSize, Integer.MAX_VALUE);
+
+		long[] bounds = new long[16];
+		int count = 0;
+		bounds[count++] = 0;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long position = 0;
+		while (size - position > chunkSize) {
+			// the chunk ends after the first line break behind its nominal end
+			long end = findLineEnd(channel, position + chunkSize - 1, buffer);
+			if (end >= size)
+				break;
+			if (count == bounds.length)
+				bounds = Arrays.copyOf(bounds, 2 * count);
+			bounds[count++] = end;
+			position = end;
+		}
+		if (count == bounds.length)
+			bounds = Arrays.copyOf(bounds, count + 1);
+		bounds[count++] = size;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	/**
+	 * Returns the position after the first line break at or behind a
+	 * position, or the size of the file if there is none.
+	 */
+	private static long findLineEnd(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+		long offset = position;
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read <= 0)
+				return channel.size();
+			for (int i = 0; i < read; i++)
+				if (buffer.get(i) == '\n')
+					return offset + i + 1;
+			offset += read;
+		}
+	}
+
+	/**
+	 * Parses the lines of a chunk.
+	 *
+	 * @param buffer
+	 *            The chunk, it ends at a line break or at the end of the file.
+	 * @param country
+	 *            Country code of the cities to extract.
+	 * @return Extracted cities of the chunk.
+	 * @throws IOException
+	 *             If a line has not the expected number of columns or its
+	 *             coordinates are no numbers.
+	 */
+	static Chunk parseChunk(MappedByteBuffer buffer, byte[] country) throws IOException {
+		Chunk chunk = new Chunk();
+		int[] commas = new int[NUMBER_COLUMNS - 1];
+		char[] chars = new char[64];
+		int limit = buffer.limit();
+
+		int lineStart = 0;
+		while (lineStart < limit) {
+			// find the end of the line and its commas
+			int countCommas = 0;
+			int lineEnd = lineStart;
+			for (; lineEnd < limit; lineEnd++) {
+				byte b = buffer.get(lineEnd);
+				if (b == '\n')
+					break;
+				if (b == ',') {
+					if (countCommas < commas.length)
+						commas[countCommas] = lineEnd;
+					countCommas++;
+				}
+			}
+			int next = lineEnd + 1;
+			if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+				lineEnd--;
+
+			if (countCommas != commas.length) {
+				throw new IOException("There is something wrong: " + NUMBER_COLUMNS + " columns expected but there are "
+						+ (countCommas + 1) + " columns in line \"" + decode(buffer, lineStart, lineEnd, chars) + "\".");
+			}
+
+			// check whether the city belongs to the country
+			if (isCountry(buffer, lineStart, commas[0], country)) {
+				String latitude = decode(buffer, commas[4] + 1, commas[5], chars);
+				String longitude = decode(buffer, commas[5] + 1, lineEnd, chars);
+				try {
+					chunk.add(decode(buffer, commas[0] + 1, commas[1], chars), latitude, longitude);
+				} catch (NumberFormatException e) {
+					throw new IOException("There is something wrong: latitude and longitude expected in line \""
+							+ decode(buffer, lineStart, lineEnd, chars) + "\".", e);
+				}
+			}
+
+			lineStart = next;
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * Compares the first column of a line with the country code.
+	 */
+	private static boolean isCountry(ByteBuffer buffer, int lineStart, int firstComma, byte[] country) {
+		if (firstComma - lineStart != country.length)
+			return false;
+		for (int i = 0; i < country.length; i++)
+			if (buffer.get(lineStart + i) != country[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Decodes bytes as ISO-8859-1.
+	 */
+	private static String decode(ByteBuffer buffer, int from, int to, char[] chars) {
+		int length = to - from;
+		if (length > chars.length)
+			chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = (char) (buffer.get(from + i) & 0xff);
+		return new String(chars, 0, length);
+	}
+
+	/**
+	 * Extracted cities of a chunk.
+	 */
+	static class Chunk {
+
+		/** Name, latitude, and longitude of each city. */
+		final List<String> strings = new ArrayList<String>();
+		/** Parsed latitudes. */
+		float[] latitudes = new float[64];
+		/** Parsed longitudes. */
+		float[] longitudes = new float[64];
+		/** Number of cities. */
+		int size = 0;
+
+		/**
+		 * Adds a city.
+		 */
+		void add(String name, String latitude, String longitude) {
+			if (this.size == this.latitudes.length) {
+				this.latitudes = Arrays.copyOf(this.latitudes, 2 * this.size);
+				this.longitudes = Arrays.copyOf(this.longitudes, 2 * this.size);
+			}
+			this.strings.add(name);
+			this.strings.add(latitude);
+			this.strings.add(longitude);
+			this.latitudes[this.size] = Float.parseFloat(latitude);
+			this.longitudes[this.size] = Float.parseFloat(longitude);
+			this.size++;
+		}
+
+	}
+
+}
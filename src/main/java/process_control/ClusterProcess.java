@@ -1,28 +1,49 @@
 package process_control;
 
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.List;
+import java.io.Writer;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Transaction;
 
+import clustering.BinaryClusterWriter;
+import clustering.ClusterExport;
+import clustering.ClusterWriter;
+import clustering.Dispersion;
 import clustering.GeoDistance;
+import clustering.GeoMetric;
 import clustering.GraphProperties;
+import clustering.GridExport;
+import clustering.JsonLinesClusterWriter;
+import clustering.MultiCountryClustering;
+import clustering.SpatialCoherence;
 import clustering.Statistics;
 import clustering.SuffixClustering;
 import clustering.Visualisation;
 import database.DatabaseAccess;
+import etl.BatchLoad;
+import etl.CityRecord;
+import etl.CityRecordHandler;
+import etl.CsvCityWriter;
 import etl.Extraction;
+import etl.IncrementalLoad;
 import etl.Load;
-import representation.GeoStatistics;
+import etl.ParallelExtraction;
+import representation.CityIndex;
+import representation.CompactSuffixTrie;
+import representation.CoordinateCache;
 import representation.Suffix;
+import representation.SuffixHierarchy;
+import representation.SuffixTrie;
 
 /**
  * Contains the main steps for clustering toponyms.
@@ -41,6 +62,42 @@ public class ClusterProcess {
 	static final String locationExtractedData = "./src/main/resources/extractedData_small.csv";
 	/** 'true' iff the graph database is already loaded. */
 	static final boolean isGraphLoaded = true;
+	/** Location of a delta of the cities which is applied to the loaded graph, or 'null'. */
+	static final String locationDeltaData = null;
+	/** 'true' iff the graph is loaded offline by the batch inserter. */
+	static final boolean isBatchLoaded = true;
+	/** 'true' iff the clustering runs on an in-memory suffix trie without database. */
+	static final boolean isInMemory = false;
+	/** Location of the off-heap suffix trie for the in-memory clustering, which is built once and reopened, or 'null' for a heap-resident trie. */
+	static final String locationCompactTrie = null;
+	/** 'true' iff the cities of all countries are clustered, each country on its own, without database. */
+	static final boolean isMultiCountry = false;
+	/** Location of the combined export of all countries. */
+	static final String locationMultiCountryExport = "target/clusters_countries.json";
+	/** Number of worker threads for the clustering. */
+	static final int numberThreads = Runtime.getRuntime().availableProcessors();
+	/** How the pairwise distances of the cities of a cluster are aggregated; APPROXIMATE samples avg and dev of large clusters. */
+	static final Dispersion.Mode geoDispersionMode = Dispersion.Mode.EXACT;
+	/** How the distance between two cities is measured, e.g. HAVERSINE in kilometres; stored statistics of another metric are recalculated. */
+	static final GeoMetric geoMetric = GeoMetric.EUCLIDEAN;
+	/** Location of the export of the clusters as JSON Lines, one cluster per line, or 'null'. */
+	static final String locationJsonLinesExport = "target/clusters.jsonl";
+	/** Location of the export of the clusters in the binary format of {@link BinaryClusterWriter}, or 'null'. */
+	static final String locationBinaryExport = null;
+	/** 'true' iff the streaming exports contain the name and location of each member city. */
+	static final boolean isExportedWithCities = true;
+	/** Location of the export of the cities of each cluster per grid cell, e.g. for heatmaps, or 'null'. */
+	static final String locationGridExport = "target/cluster_grid.json";
+	/** Edge length of a grid cell in degrees. */
+	static final double gridCellSize = GridExport.DEFAULT_CELL_SIZE;
+	/** 'true' iff the cluster candidates are tested for spatial coherence against their parent suffix. */
+	static final boolean isGeoCoherenceTested = false;
+	/** 'true' iff the raw data is memory-mapped and parsed in parallel. */
+	static final boolean isParsedInParallel = true;
+	/** 'true' iff only the trees which changed since their last clustering are clustered. */
+	static final boolean isClusteredIncrementally = true;
+	/** Name of the persisted n-gram model within the database directory. */
+	static final String nGramModelFile = "ngrams.bin";
 	/** 'true' iff n-gram distribution should not be exported to file system. */
 	static final boolean isExorted = true;
 
@@ -55,26 +112,67 @@ public class ClusterProcess {
 		log.info("start");
 		long timeStart = System.currentTimeMillis();
 
+		if (isMultiCountry) {
+			clusterAllCountries();
+			long timeEnd = System.currentTimeMillis();
+			log.info("end");
+			System.out.println("\n===== End (" + (timeEnd - timeStart)/1000 + "s) =====");
+			return;
+		}
+
+		if (isInMemory) {
+			clusterInMemory();
+			long timeEnd = System.currentTimeMillis();
+			log.info("end");
+			System.out.println("\n===== End (" + (timeEnd - timeStart)/1000 + "s) =====");
+			return;
+		}
+
 		GraphDatabaseService graphDb = DatabaseAccess.getGraphDb();
 		
 		// 1: ETL
 		if (!isGraphLoaded) {
 			try {
 				DatabaseAccess.dropDatabase();
-				graphDb = DatabaseAccess.getGraphDb();
-				// extraction
-				List<Map<String, String>> data = Extraction.extractFromFreeWorldCitiesDatabase(locationRawData);
-				log.info("Writing to " + locationExtractedData + " ... ");
-				Extraction.writeToCsvFile(locationExtractedData, data);
-				// load
-				log.info("Loading data to neo4j ... ");
-				Load.loadCityAndSuffix(graphDb, data);
+				// extraction and load: the cities are streamed, thus never held in memory
+				log.info("Writing to " + locationExtractedData + " and loading data to neo4j ... ");
+				int countCities;
+				try (CsvCityWriter writer = new CsvCityWriter(locationExtractedData)) {
+					if (isBatchLoaded) {
+						// the batch inserter needs exclusive access to the store
+						try (BatchLoad load = new BatchLoad(DatabaseAccess.getDatabasePath())) {
+							countCities = extract(Extraction.fanOut(writer, load));
+						}
+						graphDb = DatabaseAccess.getGraphDb();
+					} else {
+						graphDb = DatabaseAccess.getGraphDb();
+						try (Load load = new Load(graphDb)) {
+							countCities = extract(Extraction.fanOut(writer, load));
+						}
+					}
+				}
+				log.info("Loaded " + countCities + " cities.");
 			} catch (IOException e) {
 				log.error("Loading graph failed!");
 				e.printStackTrace();
 			}
 		}
 		
+		// the cities are loaded, from now on the cache follows the commits, e.g. of a delta
+		log.info("Caching coordinates ... ");
+		CoordinateCache coordinateCache = CoordinateCache.register(graphDb);
+		
+		// 1b: apply changed cities without reloading
+		if (locationDeltaData != null) {
+			log.info("Applying delta " + locationDeltaData + " ... ");
+			try (IncrementalLoad load = new IncrementalLoad(graphDb)) {
+				load.applyDelta(locationDeltaData);
+			} catch (IOException e) {
+				log.error("Applying delta failed!");
+				e.printStackTrace();
+			}
+		}
+		
 		// 2: some properties of the graph
 		log.info("Determining graph properties ... ");
 		GraphProperties properties = new GraphProperties(graphDb);
@@ -111,7 +209,7 @@ public class ClusterProcess {
 		
 		// 4: determine distribution of letters, bigrams, and trigrams
 		log.info("Determining distribution of letters, bigrams, and trigrams ... ");
-		Statistics statistics = new Statistics(properties);
+		Statistics statistics = new Statistics(properties, new File(DatabaseAccess.getDatabasePath(), nGramModelFile));
 		
 		if (!isExorted) {		
 			String pathLetter = "target/letters.csv", pathBigram = "target/bigrams.csv", pathTrigram = "target/trigrams.csv";			
@@ -135,31 +233,68 @@ public class ClusterProcess {
 		// 5: clustering
 		String clusterExportPath = "target/cluster.json";
 		SuffixClustering clustering = new SuffixClustering(graphDb, properties, statistics);
-		log.info("Removing cluster candidate property ... ");
-		clustering.removeClusterCandidateProperty();
-		log.info("Clustering ... ");
 		try {
-			clustering.determineClusterCandidatesByNGrams();
+			if (isClusteredIncrementally) {
+				log.info("Clustering changed trees ... ");
+				clustering.determineClusterCandidatesByNGramsIncrementally(numberThreads);
+			} else {
+				log.info("Removing cluster candidate property ... ");
+				clustering.removeClusterCandidateProperty();
+				log.info("Clustering ... ");
+				clustering.determineClusterCandidatesByNGrams(numberThreads);
+			}
 		} catch (NoSuchFieldException e) {
 			log.error("Clustering failed!");
 			e.printStackTrace();
 		}
 		Set<Suffix> clusters = clustering.getClusterCandidates();
 		log.info("Cluster size with background knowledge: "+clusters.size());
+		// the index is a snapshot of the cities, thus the cache is not needed anymore
+		CityIndex cityIndex = CityIndex.build(graphDb, coordinateCache);
+		coordinateCache.close();
+		if (isGeoCoherenceTested) {
+			log.info("Testing spatial coherence of the clusters ... ");
+			int countCoherent = clustering.determineGeoSignificance(new SpatialCoherence(numberThreads), cityIndex);
+			log.info("Spatially coherent clusters: "+countCoherent);
+		}
 		log.info("Writing clusters to "+clusterExportPath+" ...");
-		try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(clusterExportPath)))) {
-			GeoDistance geoDistance = new GeoDistance(graphDb);		
-			writer.println("{\"clusters\": [");
-			for (Suffix c : clusters) {				
-				geoDistance.calcAvgEuclideanDist(c);
-				GeoStatistics currGeoStat = geoDistance.getCurrGeoStatistics();
-				writer.println("{"+c.toString()+", "+currGeoStat.toString()+"}");
-			}
-			writer.println("]}");
+		GeoDistance geoDistance = new GeoDistance(graphDb, geoDispersionMode, cityIndex, geoMetric);
+		ClusterExport clusterExport = new ClusterExport(graphDb, geoDistance, numberThreads);
+		try (Writer writer = new BufferedWriter(new FileWriter(clusterExportPath))) {
+			clusterExport.export(clusters, writer);
 		} catch (IOException e) {
 			log.error("Exporting clusters failed!");
 			e.printStackTrace();
 		}
+		if (locationJsonLinesExport != null) {
+			log.info("Writing clusters to "+locationJsonLinesExport+" ...");
+			try (ClusterWriter writer = new JsonLinesClusterWriter(new FileOutputStream(locationJsonLinesExport))) {
+				clusterExport.export(clusters, writer, isExportedWithCities);
+				writer.finish();
+			} catch (IOException e) {
+				log.error("Exporting clusters as JSON Lines failed!");
+				e.printStackTrace();
+			}
+		}
+		if (locationBinaryExport != null) {
+			log.info("Writing clusters to "+locationBinaryExport+" ...");
+			try (ClusterWriter writer = new BinaryClusterWriter(new FileOutputStream(locationBinaryExport))) {
+				clusterExport.export(clusters, writer, isExportedWithCities);
+				writer.finish();
+			} catch (IOException e) {
+				log.error("Exporting clusters in binary format failed!");
+				e.printStackTrace();
+			}
+		}
+		if (locationGridExport != null) {
+			log.info("Writing cluster grids to "+locationGridExport+" ...");
+			try (Writer writer = new BufferedWriter(new FileWriter(locationGridExport))) {
+				new GridExport(graphDb, cityIndex, gridCellSize).export(clusters, writer);
+			} catch (IOException e) {
+				log.error("Exporting cluster grids failed!");
+				e.printStackTrace();
+			}
+		}
 		
 		
 		// clean up
@@ -170,5 +305,93 @@ public class ClusterProcess {
 		log.info("end");
 		System.out.println("\n===== End (" + (timeEnd - timeStart)/1000 + "s) =====");
 	}
+	
+	/**
+	 * Clusters the toponyms on an in-memory suffix trie built straight from the
+	 * extracted data, i.e. without database.
+	 */
+	private static void clusterInMemory() {
+		try {
+			SuffixHierarchy trie;
+			if (locationCompactTrie != null && new File(locationCompactTrie).isFile()) {
+				log.info("Opening compact suffix trie " + locationCompactTrie + " ... ");
+				trie = CompactSuffixTrie.open(new File(locationCompactTrie));
+			} else if (locationCompactTrie != null) {
+				log.info("Building compact suffix trie " + locationCompactTrie + " ... ");
+				final CompactSuffixTrie.Builder builder = new CompactSuffixTrie.Builder();
+				extract(new CityRecordHandler() {
+					@Override
+					public void handle(CityRecord record) {
+						builder.addCity(record.getName(), record.getLatitude(), record.getLongitude());
+					}
+				});
+				trie = builder.build(new File(locationCompactTrie));
+			} else {
+				log.info("Building suffix trie ... ");
+				final SuffixTrie.Builder builder = new SuffixTrie.Builder();
+				extract(new CityRecordHandler() {
+					@Override
+					public void handle(CityRecord record) {
+						builder.addCity(record.getName(), record.getLatitude(), record.getLongitude());
+					}
+				});
+				trie = builder.build();
+			}
+			log.info("Results:\n  countCities:\t\t"+trie.getCountCities()+
+					"\n  countSuffixNodes:\t\t"+trie.getCountSuffixNodes()+
+					"\n  countRootNodes:\t\t"+trie.getRoots().length);
+			
+			log.info("Clustering ... ");
+			Statistics statistics = new Statistics(trie);
+			SuffixClustering clustering = new SuffixClustering(statistics, 0f, 0f, 0f);
+			Set<Integer> clusters = clustering.determineClusterCandidatesByNGrams(trie);
+			log.info("Cluster size with background knowledge: "+clusters.size());
+			for (int c : clusters)
+				log.info("  "+trie.getStr(c)+" ("+trie.getSubsumedCities(c)+")");
+		} catch (IOException e) {
+			log.error("Building suffix trie failed!");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Clusters the toponyms of each country on its own and in parallel, i.e.
+	 * without database, and writes one export for all countries.
+	 */
+	private static void clusterAllCountries() {
+		try {
+			log.info("Partitioning cities by country ... ");
+			MultiCountryClustering clustering = new MultiCountryClustering(numberThreads, 0f, 0f, 0f);
+			Map<String, Integer> countCities = Extraction.extractFromFreeWorldCitiesDatabase(locationRawData,
+					clustering);
+			log.info("Extracted cities of " + countCities.size() + " countries.");
+
+			log.info("Clustering ... ");
+			SortedMap<String, MultiCountryClustering.CountryResult> results = clustering.cluster();
+
+			log.info("Writing clusters to " + locationMultiCountryExport + " ...");
+			try (Writer writer = new BufferedWriter(new FileWriter(locationMultiCountryExport))) {
+				MultiCountryClustering.export(results, writer);
+			}
+		} catch (IOException e) {
+			log.error("Clustering all countries failed!");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Extracts the German cities from the raw data.
+	 * 
+	 * @param handler
+	 *            Receives the extracted cities in the order of the raw data.
+	 * @return Number of extracted cities.
+	 * @throws IOException
+	 *             If reading the raw data fails or the handler fails.
+	 */
+	private static int extract(CityRecordHandler handler) throws IOException {
+		if (isParsedInParallel)
+			return ParallelExtraction.extract(locationRawData, Extraction.COUNTRY_GERMANY, numberThreads, handler);
+		return Extraction.extractFromFreeWorldCitiesDatabase(locationRawData, Extraction.COUNTRY_GERMANY, handler);
+	}
 
 }
@@ -7,7 +7,6 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 
-import database.DatabaseAccess;
 
 /**
  * 
@@ -56,7 +55,7 @@ public class City {
 	public float getLatitude() {
 		float lat;
 		
-		try (Transaction tx = DatabaseAccess.getGraphDb().beginTx()) {
+		try (Transaction tx = this.underlyingNode.getGraphDatabase().beginTx()) {
 			lat = (Float) this.underlyingNode.getProperty(LATITUDE);
 		}
 		
@@ -71,7 +70,7 @@ public class City {
 	public float getLongitude() {
 		float lon;
 		
-		try (Transaction tx = DatabaseAccess.getGraphDb().beginTx()) {
+		try (Transaction tx = this.underlyingNode.getGraphDatabase().beginTx()) {
 			lon =  (Float) this.underlyingNode.getProperty(LONGITUDE);
 		}
 		
@@ -0,0 +1,317 @@
+package representation;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Index of the cities below each suffix node. The cities are numbered in the
+ * order of a depth-first traversal of the suffix trees, thus the cities whose
+ * name ends with a suffix form the range [start, end) of positions. The
+ * coordinates are stored by position, i.e. the locations of a suffix are read
+ * in time proportional to their number and without database access.
+ * <p>
+ * The index is an immutable snapshot of the graph, thus it can be used by
+ * several threads.
+ *
+ * @author MM
+ *
+ */
+public final class CityIndex {
+
+	/** Ids of the suffix nodes, sorted. */
+	private final long[] suffixIds;
+	/** First position of the cities of each suffix node. */
+	private final int[] starts;
+	/** Position after the last city of each suffix node. */
+	private final int[] ends;
+
+	/** Ids of the city nodes by position. */
+	private final long[] cityIds;
+	/** Latitudes of the cities by position. */
+	private final float[] latitudes;
+	/** Longitudes of the cities by position. */
+	private final float[] longitudes;
+
+	/**
+	 * Creates an index.
+	 */
+	private CityIndex(long[] suffixIds, int[] starts, int[] ends, long[] cityIds, float[] latitudes,
+			float[] longitudes) {
+		this.suffixIds = suffixIds;
+		this.starts = starts;
+		this.ends = ends;
+		this.cityIds = cityIds;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+	}
+
+	/**
+	 * Builds the index by one depth-first traversal of all suffix trees.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @return The index.
+	 */
+	public static CityIndex build(GraphDatabaseService graphDb) {
+		return build(graphDb, null);
+	}
+
+	/**
+	 * Builds the index by one depth-first traversal of all suffix trees. The
+	 * coordinates are read from a cache, thus only the edges of the suffix
+	 * trees are read from the graph. Cities without cached coordinates are
+	 * read from the graph.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @param coordinateCache
+	 *            Coordinates of the cities, kept in sync with the graph, or
+	 *            'null' to read them from the graph.
+	 * @return The index.
+	 */
+	public static CityIndex build(GraphDatabaseService graphDb, CoordinateCache coordinateCache) {
+		int countSuffixes = 0, countCities = 0;
+		long[] suffixIds = new long[1024];
+		int[] starts = new int[1024];
+		int[] ends = new int[1024];
+		long[] cityIds = new long[1024];
+		float[] latitudes = new float[1024];
+		float[] longitudes = new float[1024];
+
+		try (Transaction tx = graphDb.beginTx(); ResourceIterator<Node> suffixes = graphDb.findNodes(Suffix.LABEL)) {
+			Deque<Visit> stack = new ArrayDeque<Visit>();
+			while (suffixes.hasNext()) {
+				Node root = suffixes.next();
+				if (root.hasRelationship(Direction.INCOMING, EdgeTypes.IS_SUFFIX_OF))
+					continue;
+
+				stack.push(new Visit(root, countSuffixes++, countCities));
+				while (!stack.isEmpty()) {
+					Visit visit = stack.peek();
+					if (visit.children == null) {
+						// pre-order: add the cities named by the suffix
+						for (Relationship edge : visit.node.getRelationships(Direction.OUTGOING,
+								EdgeTypes.IS_NAME_OF)) {
+							if (countCities == cityIds.length) {
+								cityIds = Arrays.copyOf(cityIds, 2 * countCities);
+								latitudes = Arrays.copyOf(latitudes, 2 * countCities);
+								longitudes = Arrays.copyOf(longitudes, 2 * countCities);
+							}
+							Node city = edge.getEndNode();
+							int ordinal = (coordinateCache == null) ? -1 : coordinateCache.getOrdinal(city.getId());
+							float latitude = (ordinal < 0) ? Float.NaN : coordinateCache.getLatitude(ordinal);
+							float longitude = (ordinal < 0) ? Float.NaN : coordinateCache.getLongitude(ordinal);
+							if (Float.isNaN(latitude) || Float.isNaN(longitude)) {
+								latitude = ((Number) city.getProperty(City.LATITUDE)).floatValue();
+								longitude = ((Number) city.getProperty(City.LONGITUDE)).floatValue();
+							}
+							cityIds[countCities] = city.getId();
+							latitudes[countCities] = latitude;
+							longitudes[countCities] = longitude;
+							countCities++;
+						}
+						visit.children = visit.node.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF)
+								.iterator();
+					}
+
+					if (visit.children.hasNext()) {
+						stack.push(new Visit(visit.children.next().getEndNode(), countSuffixes++, countCities));
+					} else {
+						// post-order: the range of the suffix is complete
+						stack.pop();
+						if (visit.index >= suffixIds.length) {
+							int length = Math.max(2 * suffixIds.length, visit.index + 1);
+							suffixIds = Arrays.copyOf(suffixIds, length);
+							starts = Arrays.copyOf(starts, length);
+							ends = Arrays.copyOf(ends, length);
+						}
+						suffixIds[visit.index] = visit.node.getId();
+						starts[visit.index] = visit.start;
+						ends[visit.index] = countCities;
+					}
+				}
+			}
+		}
+
+		// sort the ranges by node id
+		long[] sortedIds = Arrays.copyOf(suffixIds, countSuffixes);
+		Arrays.sort(sortedIds);
+		int[] sortedStarts = new int[countSuffixes];
+		int[] sortedEnds = new int[countSuffixes];
+		for (int i = 0; i < countSuffixes; i++) {
+			int k = Arrays.binarySearch(sortedIds, suffixIds[i]);
+			sortedStarts[k] = starts[i];
+			sortedEnds[k] = ends[i];
+		}
+
+		return new CityIndex(sortedIds, sortedStarts, sortedEnds, Arrays.copyOf(cityIds, countCities),
+				Arrays.copyOf(latitudes, countCities), Arrays.copyOf(longitudes, countCities));
+	}
+
+	/**
+	 * Returns the number of indexed cities.
+	 *
+	 * @return Number of cities.
+	 */
+	public int getCountCities() {
+		return this.cityIds.length;
+	}
+
+	/**
+	 * Returns the number of indexed suffix nodes.
+	 *
+	 * @return Number of suffix nodes.
+	 */
+	public int getCountSuffixes() {
+		return this.suffixIds.length;
+	}
+
+	/**
+	 * Returns whether a suffix node is indexed.
+	 *
+	 * @param suffix
+	 *            A suffix node.
+	 * @return 'true' iff the suffix is part of the index.
+	 */
+	public boolean contains(Suffix suffix) {
+		return Arrays.binarySearch(this.suffixIds, suffix.getUnderlyingNode().getId()) >= 0;
+	}
+
+	/**
+	 * Returns the first position of the cities whose name ends with a suffix.
+	 *
+	 * @param suffix
+	 *            A suffix node.
+	 * @return First position.
+	 * @throws IllegalArgumentException
+	 *             If the suffix is not part of the index.
+	 */
+	public int getStart(Suffix suffix) {
+		return this.starts[find(suffix)];
+	}
+
+	/**
+	 * Returns the position after the last city whose name ends with a suffix.
+	 *
+	 * @param suffix
+	 *            A suffix node.
+	 * @return Position after the last city.
+	 * @throws IllegalArgumentException
+	 *             If the suffix is not part of the index.
+	 */
+	public int getEnd(Suffix suffix) {
+		return this.ends[find(suffix)];
+	}
+
+	/**
+	 * Returns the id of the city node at a position.
+	 *
+	 * @param position
+	 *            Position of the city.
+	 * @return Id of the city node.
+	 */
+	public long getCityId(int position) {
+		return this.cityIds[position];
+	}
+
+	/**
+	 * Returns the latitude of the city at a position.
+	 *
+	 * @param position
+	 *            Position of the city in the order of the traversal, e.g.
+	 *            within [{@link #getStart(Suffix)}, {@link #getEnd(Suffix)}).
+	 * @return Latitude of the city.
+	 */
+	public float getLatitude(int position) {
+		return this.latitudes[position];
+	}
+
+	/**
+	 * Returns the longitude of the city at a position.
+	 *
+	 * @param position
+	 *            Position of the city in the order of the traversal, e.g.
+	 *            within [{@link #getStart(Suffix)}, {@link #getEnd(Suffix)}).
+	 * @return Longitude of the city.
+	 */
+	public float getLongitude(int position) {
+		return this.longitudes[position];
+	}
+
+	/**
+	 * Returns the latitudes of the cities whose name ends with a suffix.
+	 *
+	 * @param suffix
+	 *            A suffix node.
+	 * @return Latitudes, in the order of the index.
+	 * @throws IllegalArgumentException
+	 *             If the suffix is not part of the index.
+	 */
+	public double[] getLatitudes(Suffix suffix) {
+		return toDoubles(this.latitudes, find(suffix));
+	}
+
+	/**
+	 * Returns the longitudes of the cities whose name ends with a suffix.
+	 *
+	 * @param suffix
+	 *            A suffix node.
+	 * @return Longitudes, in the same order as the latitudes.
+	 * @throws IllegalArgumentException
+	 *             If the suffix is not part of the index.
+	 */
+	public double[] getLongitudes(Suffix suffix) {
+		return toDoubles(this.longitudes, find(suffix));
+	}
+
+	/**
+	 * Copies the range of a suffix.
+	 */
+	private double[] toDoubles(float[] values, int k) {
+		double[] result = new double[this.ends[k] - this.starts[k]];
+		for (int i = 0; i < result.length; i++)
+			result[i] = values[this.starts[k] + i];
+		return result;
+	}
+
+	/**
+	 * Returns the index of a suffix within the sorted ids.
+	 */
+	private int find(Suffix suffix) {
+		int k = Arrays.binarySearch(this.suffixIds, suffix.getUnderlyingNode().getId());
+		if (k < 0)
+			throw new IllegalArgumentException("The suffix node " + suffix.getUnderlyingNode().getId()
+					+ " is not part of the city index.");
+		return k;
+	}
+
+	/**
+	 * A suffix node on the stack of the depth-first traversal.
+	 */
+	private static class Visit {
+		/** The suffix node. */
+		final Node node;
+		/** Index of the suffix in the order of the traversal. */
+		final int index;
+		/** First position of its cities. */
+		final int start;
+		/** Edges to the children, 'null' until the node is entered. */
+		Iterator<Relationship> children;
+
+		Visit(Node node, int index, int start) {
+			this.node = node;
+			this.index = index;
+			this.start = start;
+		}
+	}
+
+}
@@ -0,0 +1,718 @@
+package representation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Off-heap counterpart of {@link SuffixTrie} for gazetteers with tens of
+ * millions of suffix nodes. The trie is path-compressed: a chain of suffixes
+ * without cities and with one child each is stored as one physical node whose
+ * label is a range of a shared letter pool. The logical suffix nodes of
+ * {@link SuffixHierarchy} are the positions in that pool, thus the ids of the
+ * label of a physical node are consecutive and no per-suffix data is stored
+ * besides its letter.
+ * <p>
+ * Physical nodes are numbered breadth-first with siblings sorted by letter,
+ * thus the children of a node form a range of ids and the roots come first.
+ * All arrays are int, float, or char buffers, either direct or mapped from a
+ * file, thus the heap holds only the roots. The file survives restarts, see
+ * {@link #open(File)}.
+ * <p>
+ * Layout of the file (big endian): magic, format, count of logical nodes,
+ * physical nodes, roots, and cities, followed by the sections starts,
+ * parents, lengths, subsumed cities, first children, city starts (per
+ * physical node), city ids, name nodes, latitudes, longitudes (per city), and
+ * letters (per logical node).
+ *
+ * @author MM
+ *
+ */
+public final class CompactSuffixTrie implements SuffixHierarchy {
+
+	/** Magic number of a file, "CSTR". */
+	private static final int MAGIC = 0x43535452;
+	/** Version of the layout. */
+	private static final int FORMAT = 1;
+	/** Bytes of the header. */
+	private static final int HEADER_SIZE = 24;
+
+	/** Empty int array for leaves and nodes without cities. */
+	private static final int[] EMPTY = new int[0];
+
+	/** First logical node of each physical node, followed by the count of logical nodes. */
+	private final IntBuffer starts;
+	/** Physical parent of each physical node, -1 for roots. */
+	private final IntBuffer parents;
+	/** Length of the suffix of the last logical node of each physical node. */
+	private final IntBuffer lengths;
+	/** Number of cities whose name ends with the label of each physical node. */
+	private final IntBuffer subsumedCities;
+	/** First physical child of each physical node, followed by the count of physical nodes. */
+	private final IntBuffer firstChildren;
+	/** First position in {@link #cityIds} of each physical node, followed by the count of cities. */
+	private final IntBuffer cityStarts;
+	/** Cities grouped by physical node. */
+	private final IntBuffer cityIds;
+	/** Logical name node of each city. */
+	private final IntBuffer cityNodes;
+	/** Latitude of each city. */
+	private final FloatBuffer latitudes;
+	/** Longitude of each city. */
+	private final FloatBuffer longitudes;
+	/** Letter of each logical node. */
+	private final CharBuffer letters;
+
+	/** Count of physical nodes. */
+	private final int countPhysicalNodes;
+	/** Logical root nodes, sorted by letter. */
+	private final int[] roots;
+
+	/**
+	 * Creates a trie from its sections.
+	 */
+	private CompactSuffixTrie(Layout layout, ByteBuffer[] sections) {
+		this.starts = sections[0].asIntBuffer();
+		this.parents = sections[1].asIntBuffer();
+		this.lengths = sections[2].asIntBuffer();
+		this.subsumedCities = sections[3].asIntBuffer();
+		this.firstChildren = sections[4].asIntBuffer();
+		this.cityStarts = sections[5].asIntBuffer();
+		this.cityIds = sections[6].asIntBuffer();
+		this.cityNodes = sections[7].asIntBuffer();
+		this.latitudes = sections[8].asFloatBuffer();
+		this.longitudes = sections[9].asFloatBuffer();
+		this.letters = sections[10].asCharBuffer();
+
+		this.countPhysicalNodes = layout.countPhysicalNodes;
+		this.roots = new int[layout.countRoots];
+		for (int root = 0; root < this.roots.length; root++)
+			this.roots[root] = this.starts.get(root);
+	}
+
+	/**
+	 * Builds a trie in direct memory from extracted city data.
+	 *
+	 * @param data
+	 *            List of maps containing information to cities. Allowed keys
+	 *            are 'city' (= name of the city), 'latitude', and 'longitude'.
+	 * @return The suffix trie.
+	 */
+	public static CompactSuffixTrie build(List<Map<String, String>> data) {
+		Builder builder = new Builder();
+		for (Map<String, String> row : data) {
+			String cityName = row.get("city");
+			float latitude = Float.parseFloat(row.get("latitude"));
+			float longitude = Float.parseFloat(row.get("longitude"));
+			builder.addCity(cityName, latitude, longitude);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Opens a trie written by {@link Builder#build(File)}. The sections are
+	 * mapped read-only, thus the trie is loaded lazily by the operating
+	 * system.
+	 *
+	 * @param file
+	 *            Location of the trie.
+	 * @return The suffix trie.
+	 * @throws IOException
+	 *             If reading fails or the file is corrupt.
+	 */
+	public static CompactSuffixTrie open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("No compact suffix trie: " + file);
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+				throw new IOException("No compact suffix trie: " + file);
+			if (header.getInt() != FORMAT)
+				throw new IOException("Unsupported format of compact suffix trie: " + file);
+			Layout layout = new Layout(header.getInt(), header.getInt(), header.getInt(), header.getInt());
+			if (channel.size() != layout.size())
+				throw new IOException("Corrupt compact suffix trie: " + file);
+			return new CompactSuffixTrie(layout, layout.map(channel, FileChannel.MapMode.READ_ONLY));
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Corrupt compact suffix trie: " + file, e);
+		}
+	}
+
+	/**
+	 * Returns the count of physical nodes, i.e. after path compression.
+	 *
+	 * @return Count of physical nodes.
+	 */
+	public int getCountPhysicalNodes() {
+		return this.countPhysicalNodes;
+	}
+
+	@Override
+	public int getCountSuffixNodes() {
+		return this.letters.limit();
+	}
+
+	@Override
+	public int getCountCities() {
+		return this.cityNodes.limit();
+	}
+
+	@Override
+	public int[] getRoots() {
+		return this.roots;
+	}
+
+	/**
+	 * {@inheritDoc} The array is created on each call.
+	 */
+	@Override
+	public int[] getChildren(int node) {
+		int physical = toPhysical(node);
+		if (node < this.starts.get(physical + 1) - 1)
+			return new int[] { node + 1 };
+		int first = this.firstChildren.get(physical);
+		int[] children = new int[this.firstChildren.get(physical + 1) - first];
+		for (int i = 0; i < children.length; i++)
+			children[i] = this.starts.get(first + i);
+		return children;
+	}
+
+	@Override
+	public int getParent(int node) {
+		int physical = toPhysical(node);
+		if (node > this.starts.get(physical))
+			return node - 1;
+		int parent = this.parents.get(physical);
+		return (parent == -1) ? -1 : this.starts.get(parent + 1) - 1;
+	}
+
+	@Override
+	public char getLetter(int node) {
+		return this.letters.get(node);
+	}
+
+	@Override
+	public int getLength(int node) {
+		int physical = toPhysical(node);
+		return this.lengths.get(physical) - (this.starts.get(physical + 1) - 1 - node);
+	}
+
+	@Override
+	public int getSubsumedCities(int node) {
+		return this.subsumedCities.get(toPhysical(node));
+	}
+
+	/**
+	 * {@inheritDoc} The array is created on each call.
+	 */
+	@Override
+	public int[] getCityIds(int node) {
+		int physical = toPhysical(node);
+		if (node < this.starts.get(physical + 1) - 1)
+			return EMPTY;
+		int start = this.cityStarts.get(physical);
+		int end = this.cityStarts.get(physical + 1);
+		if (start == end)
+			return EMPTY;
+		int[] ids = new int[end - start];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = this.cityIds.get(start + i);
+		return ids;
+	}
+
+	@Override
+	public String getStr(int node) {
+		char[] str = new char[getLength(node)];
+		int physical = toPhysical(node);
+		int i = 0;
+		while (true) {
+			for (int n = node; n >= this.starts.get(physical); n--)
+				str[i++] = this.letters.get(n);
+			physical = this.parents.get(physical);
+			if (physical == -1)
+				return new String(str);
+			node = this.starts.get(physical + 1) - 1;
+		}
+	}
+
+	@Override
+	public int find(String str) {
+		if (str.isEmpty())
+			return -1;
+		int physical = findChild(0, this.roots.length, str.charAt(str.length() - 1));
+		int i = str.length() - 1;
+		while (physical != -1) {
+			// compare the label
+			int end = this.starts.get(physical + 1);
+			for (int node = this.starts.get(physical); node < end; node++, i--) {
+				if (this.letters.get(node) != str.charAt(i))
+					return -1;
+				if (i == 0)
+					return node;
+			}
+			physical = findChild(this.firstChildren.get(physical), this.firstChildren.get(physical + 1),
+					str.charAt(i));
+		}
+		return -1;
+	}
+
+	@Override
+	public String getCityName(int cityId) {
+		return getStr(this.cityNodes.get(cityId));
+	}
+
+	@Override
+	public float getLatitude(int cityId) {
+		return this.latitudes.get(cityId);
+	}
+
+	@Override
+	public float getLongitude(int cityId) {
+		return this.longitudes.get(cityId);
+	}
+
+	/**
+	 * Returns the physical node of a logical node, i.e. the last physical node
+	 * which starts at or before it.
+	 */
+	private int toPhysical(int node) {
+		int low = 0, high = this.countPhysicalNodes - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (this.starts.get(mid) <= node)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Searches the physical node in [from, to) whose label starts with the
+	 * given letter.
+	 */
+	private int findChild(int from, int to, char letter) {
+		int low = from, high = to - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char c = this.letters.get(this.starts.get(mid));
+			if (c < letter)
+				low = mid + 1;
+			else if (c > letter)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Counts and sizes of the sections.
+	 */
+	private static final class Layout {
+
+		final int countLogicalNodes;
+		final int countPhysicalNodes;
+		final int countRoots;
+		final int countCities;
+
+		Layout(int countLogicalNodes, int countPhysicalNodes, int countRoots, int countCities) {
+			if (countLogicalNodes < countPhysicalNodes || countPhysicalNodes < countRoots || countRoots < 0
+					|| countCities < 0)
+				throw new IllegalArgumentException("Invalid counts: " + countLogicalNodes + ", "
+						+ countPhysicalNodes + ", " + countRoots + ", " + countCities);
+			this.countLogicalNodes = countLogicalNodes;
+			this.countPhysicalNodes = countPhysicalNodes;
+			this.countRoots = countRoots;
+			this.countCities = countCities;
+		}
+
+		/**
+		 * Returns the bytes of each section.
+		 */
+		long[] sectionSizes() {
+			long p = this.countPhysicalNodes, c = this.countCities;
+			return new long[] { 4 * (p + 1), 4 * p, 4 * p, 4 * p, 4 * (p + 1), 4 * (p + 1), 4 * c, 4 * c, 4 * c,
+					4 * c, 2L * this.countLogicalNodes };
+		}
+
+		/**
+		 * Returns the bytes of the file.
+		 */
+		long size() {
+			long size = HEADER_SIZE;
+			for (long sectionSize : sectionSizes())
+				size += sectionSize;
+			return size;
+		}
+
+		/**
+		 * Allocates the sections in direct memory.
+		 */
+		ByteBuffer[] allocate() {
+			long[] sizes = sectionSizes();
+			ByteBuffer[] sections = new ByteBuffer[sizes.length];
+			for (int i = 0; i < sizes.length; i++)
+				sections[i] = ByteBuffer.allocateDirect(checkSize(sizes[i]));
+			return sections;
+		}
+
+		/**
+		 * Maps the sections of a file.
+		 */
+		ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+			long[] sizes = sectionSizes();
+			ByteBuffer[] sections = new ByteBuffer[sizes.length];
+			long position = HEADER_SIZE;
+			for (int i = 0; i < sizes.length; i++) {
+				sections[i] = channel.map(mode, position, checkSize(sizes[i]));
+				position += sizes[i];
+			}
+			return sections;
+		}
+
+		/**
+		 * Checks that a section fits into one buffer.
+		 */
+		private static int checkSize(long size) {
+			if (size > Integer.MAX_VALUE)
+				throw new IllegalStateException("Section of " + size + " bytes exceeds a buffer.");
+			return (int) size;
+		}
+	}
+
+	/**
+	 * Builds a compact suffix trie. The cities are collected on the heap, the
+	 * nodes are written straight into the off-heap sections: the reversed
+	 * names are sorted, thus each physical node is a range of names which
+	 * share a suffix, and the trie is built breadth-first by splitting the
+	 * ranges. The first pass counts the nodes, the second one writes them.
+	 *
+	 * @author MM
+	 *
+	 */
+	public static class Builder {
+
+		private String[] names = new String[1024];
+		private float[] latitudes = new float[1024];
+		private float[] longitudes = new float[1024];
+		private int countCities = 0;
+
+		/** City ids sorted by reversed name. */
+		private int[] order;
+
+		/**
+		 * Adds a city.
+		 *
+		 * @param cityName
+		 *            Name of the city.
+		 * @param latitude
+		 *            Latitude of the city.
+		 * @param longitude
+		 *            Longitude of the city.
+		 * @return The id of the new city.
+		 */
+		public int addCity(String cityName, float latitude, float longitude) {
+			if (cityName.isEmpty())
+				throw new IllegalArgumentException("A city needs a name.");
+			if (this.countCities == this.names.length) {
+				int capacity = this.countCities * 2;
+				this.names = Arrays.copyOf(this.names, capacity);
+				this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+				this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+			}
+			int cityId = this.countCities++;
+			this.names[cityId] = cityName;
+			this.latitudes[cityId] = latitude;
+			this.longitudes[cityId] = longitude;
+			return cityId;
+		}
+
+		/**
+		 * Returns the count of the added cities.
+		 *
+		 * @return Count of cities.
+		 */
+		public int getCountCities() {
+			return this.countCities;
+		}
+
+		/**
+		 * Builds the trie in direct memory.
+		 *
+		 * @return The suffix trie.
+		 */
+		public CompactSuffixTrie build() {
+			Layout layout = count();
+			ByteBuffer[] sections = layout.allocate();
+			write(sections);
+			return new CompactSuffixTrie(layout, sections);
+		}
+
+		/**
+		 * Builds the trie in a file and maps it. The file is replaced
+		 * atomically, thus readers see either the old or the new trie.
+		 *
+		 * @param file
+		 *            Location of the trie.
+		 * @return The suffix trie.
+		 * @throws IOException
+		 *             If writing fails.
+		 */
+		public CompactSuffixTrie build(File file) throws IOException {
+			Layout layout = count();
+			File tmp = new File(file.getPath() + ".tmp");
+			try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(FORMAT).putInt(layout.countLogicalNodes)
+						.putInt(layout.countPhysicalNodes).putInt(layout.countRoots).putInt(layout.countCities);
+				header.flip();
+				while (header.hasRemaining())
+					channel.write(header, header.position());
+
+				ByteBuffer[] sections = layout.map(channel, FileChannel.MapMode.READ_WRITE);
+				write(sections);
+				for (ByteBuffer section : sections)
+					((MappedByteBuffer) section).force();
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return open(file);
+		}
+
+		/**
+		 * Sorts the names and counts the nodes.
+		 */
+		private Layout count() {
+			this.order = new int[this.countCities];
+			for (int i = 0; i < this.countCities; i++)
+				this.order[i] = i;
+			sortByReversedName(this.order, new int[this.countCities], 0, this.countCities);
+			return traverse(null);
+		}
+
+		/**
+		 * Writes the nodes and cities into the sections.
+		 */
+		private void write(ByteBuffer[] sections) {
+			traverse(sections);
+			sections[8].asFloatBuffer().put(this.latitudes, 0, this.countCities);
+			sections[9].asFloatBuffer().put(this.longitudes, 0, this.countCities);
+		}
+
+		/**
+		 * Builds the trie breadth-first. Each physical node is a range of the
+		 * sorted names which share the suffix up to the start of its label.
+		 * The label is extended while no name ends and all names continue
+		 * with the same letter.
+		 *
+		 * @param sections
+		 *            Sections to write or 'null' to count only.
+		 * @return Counts of the trie.
+		 */
+		private Layout traverse(ByteBuffer[] sections) {
+			IntBuffer starts = null, parents = null, lengths = null, subsumed = null, firstChildren = null,
+					cityStarts = null, cityIds = null, cityNodes = null;
+			CharBuffer letters = null;
+			if (sections != null) {
+				starts = sections[0].asIntBuffer();
+				parents = sections[1].asIntBuffer();
+				lengths = sections[2].asIntBuffer();
+				subsumed = sections[3].asIntBuffer();
+				firstChildren = sections[4].asIntBuffer();
+				cityStarts = sections[5].asIntBuffer();
+				cityIds = sections[6].asIntBuffer();
+				cityNodes = sections[7].asIntBuffer();
+				letters = sections[10].asCharBuffer();
+			}
+
+			RangeQueue queue = new RangeQueue();
+			int countRoots = split(queue, 0, this.countCities, 0, -1);
+			int countPhysical = countRoots;
+			int physical = 0, logical = 0, position = 0;
+			while (!queue.isEmpty()) {
+				queue.poll();
+				int lo = queue.lo, hi = queue.hi, from = queue.from;
+				String first = this.names[this.order[lo]];
+				String last = this.names[this.order[hi - 1]];
+
+				// extend the label
+				int length = from + 1;
+				while (first.length() != length && charAt(first, length) == charAt(last, length))
+					length++;
+				int end = logical + length - from;
+
+				if (sections != null) {
+					starts.put(physical, logical);
+					parents.put(physical, queue.parent);
+					lengths.put(physical, length);
+					subsumed.put(physical, hi - lo);
+					firstChildren.put(physical, countPhysical);
+					cityStarts.put(physical, position);
+					for (int depth = from; depth < length; depth++)
+						letters.put(logical + depth - from, charAt(first, depth));
+				}
+
+				// the names which end here are the cities of the last logical node
+				while (lo < hi && this.names[this.order[lo]].length() == length) {
+					if (sections != null) {
+						cityIds.put(position, this.order[lo]);
+						cityNodes.put(this.order[lo], end - 1);
+					}
+					position++;
+					lo++;
+				}
+
+				countPhysical += split(queue, lo, hi, length, physical);
+				logical = end;
+				physical++;
+			}
+
+			if (sections != null) {
+				starts.put(physical, logical);
+				firstChildren.put(physical, physical);
+				cityStarts.put(physical, position);
+			}
+			return new Layout(logical, physical, countRoots, this.countCities);
+		}
+
+		/**
+		 * Splits a range of names by their letter at the given depth and
+		 * queues the parts as children.
+		 *
+		 * @return Number of children.
+		 */
+		private int split(RangeQueue queue, int lo, int hi, int depth, int parent) {
+			int count = 0;
+			while (lo < hi) {
+				char letter = charAt(this.names[this.order[lo]], depth);
+				int next = lo + 1;
+				while (next < hi && charAt(this.names[this.order[next]], depth) == letter)
+					next++;
+				queue.add(lo, next, depth, parent);
+				count++;
+				lo = next;
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the letter of a name at a depth of its reversed name.
+		 */
+		private static char charAt(String name, int depth) {
+			return name.charAt(name.length() - 1 - depth);
+		}
+
+		/**
+		 * Sorts the cities by reversed name, stable, i.e. by merge sort.
+		 */
+		private void sortByReversedName(int[] ids, int[] tmp, int from, int to) {
+			if (to - from < 2)
+				return;
+			int mid = (from + to) >>> 1;
+			sortByReversedName(ids, tmp, from, mid);
+			sortByReversedName(ids, tmp, mid, to);
+			if (compareReversed(this.names[ids[mid - 1]], this.names[ids[mid]]) <= 0)
+				return;
+			System.arraycopy(ids, from, tmp, from, to - from);
+			for (int i = from, l = from, r = mid; i < to; i++) {
+				if (r >= to || (l < mid && compareReversed(this.names[tmp[l]], this.names[tmp[r]]) <= 0))
+					ids[i] = tmp[l++];
+				else
+					ids[i] = tmp[r++];
+			}
+		}
+
+		/**
+		 * Compares two names from their last letter on, a suffix of the other
+		 * name comes first.
+		 */
+		private static int compareReversed(String a, String b) {
+			int i = a.length() - 1, j = b.length() - 1;
+			for (; i >= 0 && j >= 0; i--, j--) {
+				char x = a.charAt(i), y = b.charAt(j);
+				if (x != y)
+					return x - y;
+			}
+			return i - j;
+		}
+	}
+
+	/**
+	 * FIFO queue of ranges of names, backed by a growing ring of int arrays.
+	 */
+	private static final class RangeQueue {
+
+		private int[] los = new int[64];
+		private int[] his = new int[64];
+		private int[] froms = new int[64];
+		private int[] parents = new int[64];
+		private int head = 0;
+		private int size = 0;
+
+		/** Fields of the last polled range. */
+		int lo, hi, from, parent;
+
+		void add(int lo, int hi, int from, int parent) {
+			if (this.size == this.los.length)
+				grow();
+			int tail = (this.head + this.size) & (this.los.length - 1);
+			this.los[tail] = lo;
+			this.his[tail] = hi;
+			this.froms[tail] = from;
+			this.parents[tail] = parent;
+			this.size++;
+		}
+
+		void poll() {
+			this.lo = this.los[this.head];
+			this.hi = this.his[this.head];
+			this.from = this.froms[this.head];
+			this.parent = this.parents[this.head];
+			this.head = (this.head + 1) & (this.los.length - 1);
+			this.size--;
+		}
+
+		boolean isEmpty() {
+			return this.size == 0;
+		}
+
+		/**
+		 * Doubles the ring and unwraps it.
+		 */
+		private void grow() {
+			this.los = unwrap(this.los);
+			this.his = unwrap(this.his);
+			this.froms = unwrap(this.froms);
+			this.parents = unwrap(this.parents);
+			this.head = 0;
+		}
+
+		private int[] unwrap(int[] ring) {
+			int[] array = new int[ring.length * 2];
+			int firstPart = ring.length - this.head;
+			System.arraycopy(ring, this.head, array, 0, firstPart);
+			System.arraycopy(ring, 0, array, firstPart, this.head);
+			return array;
+		}
+	}
+
+}
@@ -0,0 +1,246 @@
+package representation;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+/**
+ * Columnar cache of the city coordinates: each city gets a dense ordinal, and
+ * latitudes and longitudes are stored in float arrays indexed by it. The
+ * ordinal of a city is looked up by the id of its node once, afterwards a
+ * coordinate is read by one array access without transaction and without
+ * unboxing. Ordinals of deleted cities are not reused.
+ * <p>
+ * The cache is loaded once and kept in sync with the graph by a transaction
+ * event handler, i.e. committed creations, updates, and deletions of city
+ * nodes are applied. Cities without coordinates or with only one of them keep
+ * their ordinal and the known coordinate, thus the handler reads only the
+ * changes of a commit and never the graph. Commits during the initial load are
+ * applied after it, thus none is lost and none is overwritten by an older
+ * value. Loads by the batch inserter bypass the handler, thus register the
+ * cache after the database is opened. Readers may run concurrently to
+ * updates; a coordinate is read either before or after an update.
+ *
+ * @author MM
+ *
+ */
+public class CoordinateCache implements TransactionEventHandler<Void>, AutoCloseable {
+
+	/** The graph database whose cities are cached. */
+	private final GraphDatabaseService graphDb;
+
+	/** Ordinals of the cities by the id of their node. */
+	private final Map<Long, Integer> ordinals;
+	/** Latitudes by ordinal, NaN if unknown. */
+	private volatile float[] latitudes;
+	/** Longitudes by ordinal, NaN if unknown. */
+	private volatile float[] longitudes;
+	/** Number of assigned ordinals. */
+	private int countOrdinals;
+	/** Number of cached cities with both coordinates. */
+	private volatile int countCities;
+
+	/**
+	 * Creates an empty cache.
+	 */
+	private CoordinateCache(GraphDatabaseService graphDb) {
+		this.graphDb = graphDb;
+		this.ordinals = new ConcurrentHashMap<Long, Integer>();
+		this.latitudes = new float[0];
+		this.longitudes = new float[0];
+		this.countOrdinals = 0;
+		this.countCities = 0;
+	}
+
+	/**
+	 * Loads the coordinates of all cities and keeps them in sync with the
+	 * graph until the cache is closed.
+	 *
+	 * @param graphDb
+	 *            Graph database.
+	 * @return The cache.
+	 */
+	public static CoordinateCache register(GraphDatabaseService graphDb) {
+		CoordinateCache cache = new CoordinateCache(graphDb);
+		// register first: no commit between loading and registering is lost;
+		// the handler waits for the monitor, thus commits during the load are
+		// applied after it and their values are not overwritten by older ones
+		synchronized (cache) {
+			graphDb.registerTransactionEventHandler(cache);
+			try (Transaction tx = graphDb.beginTx();
+					ResourceIterator<Node> cities = graphDb.findNodes(City.LABEL)) {
+				while (cities.hasNext()) {
+					Node city = cities.next();
+					int ordinal = cache.add(city.getId());
+					Object latitude = city.getProperty(City.LATITUDE, null);
+					Object longitude = city.getProperty(City.LONGITUDE, null);
+					if (latitude != null)
+						cache.set(ordinal, true, ((Number) latitude).floatValue());
+					if (longitude != null)
+						cache.set(ordinal, false, ((Number) longitude).floatValue());
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the number of cached cities with both coordinates.
+	 *
+	 * @return Number of cities.
+	 */
+	public int getCountCities() {
+		return this.countCities;
+	}
+
+	/**
+	 * Returns the ordinal of a city.
+	 *
+	 * @param cityId
+	 *            Id of a node.
+	 * @return Ordinal or -1 if the node is no cached city.
+	 */
+	public int getOrdinal(long cityId) {
+		Integer ordinal = this.ordinals.get(cityId);
+		return (ordinal == null) ? -1 : ordinal;
+	}
+
+	/**
+	 * Returns whether both coordinates of a node are cached.
+	 *
+	 * @param cityId
+	 *            Id of a node.
+	 * @return 'true' iff the node is a city with coordinates.
+	 */
+	public boolean contains(long cityId) {
+		int ordinal = getOrdinal(cityId);
+		return ordinal >= 0 && !Float.isNaN(getLatitude(ordinal)) && !Float.isNaN(getLongitude(ordinal));
+	}
+
+	/**
+	 * Returns the latitude of a city.
+	 *
+	 * @param ordinal
+	 *            Ordinal of the city, see {@link #getOrdinal(long)}.
+	 * @return Latitude or NaN if unknown.
+	 */
+	public float getLatitude(int ordinal) {
+		float[] values = this.latitudes;
+		return (ordinal >= 0 && ordinal < values.length) ? values[ordinal] : Float.NaN;
+	}
+
+	/**
+	 * Returns the longitude of a city.
+	 *
+	 * @param ordinal
+	 *            Ordinal of the city, see {@link #getOrdinal(long)}.
+	 * @return Longitude or NaN if unknown.
+	 */
+	public float getLongitude(int ordinal) {
+		float[] values = this.longitudes;
+		return (ordinal >= 0 && ordinal < values.length) ? values[ordinal] : Float.NaN;
+	}
+
+	/**
+	 * Assigns an ordinal to a city without coordinates, unless it has one.
+	 */
+	private synchronized int add(long cityId) {
+		Integer known = this.ordinals.get(cityId);
+		if (known != null)
+			return known;
+		int ordinal = this.countOrdinals++;
+		if (ordinal >= this.latitudes.length) {
+			int length = Math.max(1024, 2 * this.latitudes.length);
+			float[] newLatitudes = Arrays.copyOf(this.latitudes, length);
+			float[] newLongitudes = Arrays.copyOf(this.longitudes, length);
+			Arrays.fill(newLatitudes, this.latitudes.length, length, Float.NaN);
+			Arrays.fill(newLongitudes, this.longitudes.length, length, Float.NaN);
+			this.longitudes = newLongitudes;
+			this.latitudes = newLatitudes;
+		}
+		this.ordinals.put(cityId, ordinal);
+		return ordinal;
+	}
+
+	/**
+	 * Sets or clears one coordinate of a city.
+	 */
+	private synchronized void set(int ordinal, boolean isLatitude, float value) {
+		boolean wasComplete = !Float.isNaN(this.latitudes[ordinal]) && !Float.isNaN(this.longitudes[ordinal]);
+		(isLatitude ? this.latitudes : this.longitudes)[ordinal] = value;
+		boolean isComplete = !Float.isNaN(this.latitudes[ordinal]) && !Float.isNaN(this.longitudes[ordinal]);
+		if (isComplete && !wasComplete)
+			this.countCities++;
+		else if (wasComplete && !isComplete)
+			this.countCities--;
+	}
+
+	/**
+	 * Removes a city.
+	 */
+	private synchronized void remove(long cityId) {
+		Integer ordinal = this.ordinals.get(cityId);
+		if (ordinal != null) {
+			set(ordinal, true, Float.NaN);
+			set(ordinal, false, Float.NaN);
+			this.ordinals.remove(cityId);
+		}
+	}
+
+	@Override
+	public Void beforeCommit(TransactionData data) throws Exception {
+		return null;
+	}
+
+	@Override
+	public synchronized void afterCommit(TransactionData data, Void state) {
+		// cities which lost a coordinate keep their ordinal and the other one
+		for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+			boolean isLatitude = entry.key().equals(City.LATITUDE);
+			int ordinal = getOrdinal(entry.entity().getId());
+			if (ordinal >= 0 && (isLatitude || entry.key().equals(City.LONGITUDE)))
+				set(ordinal, isLatitude, Float.NaN);
+		}
+		for (Node node : data.deletedNodes())
+			remove(node.getId());
+		for (LabelEntry entry : data.removedLabels())
+			if (entry.label().equals(City.LABEL))
+				remove(entry.node().getId());
+
+		// nodes which became cities
+		for (LabelEntry entry : data.assignedLabels())
+			if (entry.label().equals(City.LABEL) && !data.isDeleted(entry.node()))
+				add(entry.node().getId());
+
+		// assigned coordinates of cities, the other one is kept
+		for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+			boolean isLatitude = entry.key().equals(City.LATITUDE);
+			int ordinal = getOrdinal(entry.entity().getId());
+			if (ordinal >= 0 && (isLatitude || entry.key().equals(City.LONGITUDE)))
+				set(ordinal, isLatitude, ((Number) entry.value()).floatValue());
+		}
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, Void state) {
+		// nothing changed
+	}
+
+	/**
+	 * Stops keeping the cache in sync with the graph.
+	 */
+	@Override
+	public void close() {
+		this.graphDb.unregisterTransactionEventHandler(this);
+	}
+
+}
@@ -0,0 +1,245 @@
+package representation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+/**
+ * Reads suffixes, cities, and geo-statistics within the caller's transaction
+ * and returns immutable snapshots of them. Thus, many entities are read by one
+ * transaction instead of one transaction per getter like by the domain
+ * entities. The snapshots can be used after the transaction is closed and by
+ * several threads.
+ * <p>
+ * Each method has to be called within a transaction of the graph database
+ * the nodes belong to, e.g.
+ *
+ * <pre>
+ * try (Transaction tx = graphDb.beginTx()) {
+ * 	List&lt;SuffixData&gt; suffixes = new EntityAccess().readSuffixes(clusters);
+ * }
+ * </pre>
+ *
+ * @author MM
+ *
+ */
+public class EntityAccess {
+
+	/**
+	 * Reads a suffix node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Snapshot of the suffix.
+	 */
+	public SuffixData readSuffix(Node node) {
+		Object subsumedCities = node.getProperty(Suffix.KEY_SUBSCITIES, null);
+		return new SuffixData(node.getId(), (String) node.getProperty(Suffix.KEY_STR),
+				(subsumedCities == null) ? -1 : ((Number) subsumedCities).intValue(),
+				(Boolean) node.getProperty(Suffix.KEY_CLUSTER, null));
+	}
+
+	/**
+	 * Reads suffix nodes.
+	 *
+	 * @param suffixes
+	 *            Suffixes.
+	 * @return Snapshots of the suffixes, in the same order.
+	 */
+	public List<SuffixData> readSuffixes(Iterable<Suffix> suffixes) {
+		List<SuffixData> result = new ArrayList<SuffixData>();
+		for (Suffix suffix : suffixes)
+			result.add(readSuffix(suffix.getUnderlyingNode()));
+		return result;
+	}
+
+	/**
+	 * Reads a city node.
+	 *
+	 * @param node
+	 *            A city node.
+	 * @return Snapshot of the city.
+	 */
+	public CityData readCity(Node node) {
+		return new CityData(node.getId(), ((Number) node.getProperty(City.LATITUDE)).floatValue(),
+				((Number) node.getProperty(City.LONGITUDE)).floatValue());
+	}
+
+	/**
+	 * Reads city nodes.
+	 *
+	 * @param cities
+	 *            Cities.
+	 * @return Snapshots of the cities, in the same order.
+	 */
+	public List<CityData> readCities(Iterable<City> cities) {
+		List<CityData> result = new ArrayList<CityData>();
+		for (City city : cities)
+			result.add(readCity(city.getUnderlyingNode()));
+		return result;
+	}
+
+	/**
+	 * Reads the cities whose name ends with a suffix.
+	 *
+	 * @param suffix
+	 *            A suffix.
+	 * @return Snapshots of the cities.
+	 */
+	public List<CityData> readAssocCities(Suffix suffix) {
+		List<CityData> result = new ArrayList<CityData>();
+		for (Node node : Suffix.getAssocCityNodes(suffix.getUnderlyingNode()))
+			result.add(readCity(node));
+		return result;
+	}
+
+	/**
+	 * Reads the geo-statistics of a suffix, whatever metric they are measured
+	 * by; see {@link GeoStatistics#getMetric()}.
+	 *
+	 * @param suffix
+	 *            A suffix.
+	 * @return Geo-statistics whose getters do not access the database, or
+	 *         'null' if they are not calculated yet.
+	 */
+	public GeoStatistics readGeoStatistics(Suffix suffix) {
+		return readGeoStatistics(suffix, null);
+	}
+
+	/**
+	 * Reads the geo-statistics of a suffix measured by a metric.
+	 *
+	 * @param suffix
+	 *            A suffix.
+	 * @param metric
+	 *            Name of the metric, e.g. "HAVERSINE", or 'null' for any.
+	 * @return Geo-statistics whose getters do not access the database, or
+	 *         'null' if they are not calculated yet or by another metric.
+	 */
+	public GeoStatistics readGeoStatistics(Suffix suffix, String metric) {
+		Node node = suffix.getUnderlyingNode();
+		for (Relationship edge : node.getRelationships(Direction.INCOMING, EdgeTypes.EUCLIDEAN_DIST)) {
+			GeoStatistics geoStatistics = GeoStatistics.read(edge.getOtherNode(node));
+			if (metric == null || metric.equals(geoStatistics.getMetric()))
+				return geoStatistics;
+		}
+		return null;
+	}
+
+	/**
+	 * Immutable snapshot of a suffix node.
+	 */
+	public static final class SuffixData {
+
+		private final long id;
+		private final String str;
+		private final int subsumedCities;
+		private final Boolean clusterCandidate;
+
+		SuffixData(long id, String str, int subsumedCities, Boolean clusterCandidate) {
+			this.id = id;
+			this.str = str;
+			this.subsumedCities = subsumedCities;
+			this.clusterCandidate = clusterCandidate;
+		}
+
+		/**
+		 * @return Id of the suffix node.
+		 */
+		public long getId() {
+			return this.id;
+		}
+
+		public String getStr() {
+			return this.str;
+		}
+
+		/**
+		 * @return Number of subsumed cities or -1 if not calculated yet.
+		 */
+		public int getSubsumedCities() {
+			return this.subsumedCities;
+		}
+
+		/**
+		 * @return Value of the property 'clusterCandidate' or 'null' if not
+		 *         given.
+		 */
+		public Boolean getClusterCandidate() {
+			return this.clusterCandidate;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (this.id ^ (this.id >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof SuffixData && this.id == ((SuffixData) o).id;
+		}
+
+		/**
+		 * Returns the same JSON representation as {@link Suffix#toString()}.
+		 */
+		@Override
+		public String toString() {
+			return Suffix.toString(this.str, this.subsumedCities);
+		}
+
+	}
+
+	/**
+	 * Immutable snapshot of a city node.
+	 */
+	public static final class CityData {
+
+		private final long id;
+		private final float latitude;
+		private final float longitude;
+
+		CityData(long id, float latitude, float longitude) {
+			this.id = id;
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+
+		/**
+		 * @return Id of the city node.
+		 */
+		public long getId() {
+			return this.id;
+		}
+
+		public float getLatitude() {
+			return this.latitude;
+		}
+
+		public float getLongitude() {
+			return this.longitude;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (this.id ^ (this.id >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof CityData && this.id == ((CityData) o).id;
+		}
+
+		/**
+		 * Returns the same representation as {@link City#toString()}.
+		 */
+		@Override
+		public String toString() {
+			return "City: (" + this.latitude + "," + this.longitude + ")";
+		}
+
+	}
+
+}
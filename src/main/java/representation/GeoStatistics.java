@@ -7,8 +7,6 @@ import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
-import database.DatabaseAccess;
-
 /**
  * Domain entity of a geo-statistics node.
  * 
@@ -32,6 +30,26 @@ public class GeoStatistics {
 	/** Property label 'dev' (standard deviation). */
 	public static final String KEY_DEV = "dev";
 	
+	/**
+	 * Property label 'metric' (name of the {@link clustering.GeoMetric}),
+	 * always written; missing only on statistics stored before it, which are
+	 * Euclidean.
+	 */
+	public static final String KEY_METRIC = "metric";
+	
+	/**
+	 * Property label 'dispersion' (name of the {@link clustering.Dispersion.Mode}
+	 * the distances are aggregated by), missing only on statistics stored
+	 * before it, which are exact.
+	 */
+	public static final String KEY_DISPERSION = "dispersion";
+	
+	/** Name of the dispersion mode of statistics without property 'dispersion'. */
+	public static final String DEFAULT_DISPERSION = "EXACT";
+	
+	/** Name of the metric of statistics without property 'metric'. */
+	public static final String DEFAULT_METRIC = "EUCLIDEAN";
+	
 	/** The underlying node of this geo-statistics. */
 	private final Node underlyingNode;
 	
@@ -39,6 +57,8 @@ public class GeoStatistics {
 	private double max;
 	private double avg;
 	private double dev;
+	/** Name of the metric, 'null' if unknown. */
+	private String metric;
 	
 	/**
 	 * Creates a new geo-statistics entity.
@@ -51,6 +71,69 @@ public class GeoStatistics {
 		min = -1; max = -1; avg = -1; dev = -1;
 	}	
 	
+	/**
+	 * Creates a new geo-statistics entity whose properties are already known,
+	 * thus the getters do not access the database.
+	 * 
+	 * @param underlyingNode
+	 * 				The underlying node of the new geo-statistics entity.
+	 * @param min
+	 * 				Minimal distance.
+	 * @param max
+	 * 				Maximal distance.
+	 * @param avg
+	 * 				Average distance.
+	 * @param dev
+	 * 				Standard deviation of the distances.
+	 */
+	public GeoStatistics(Node underlyingNode, double min, double max, double avg, double dev) {
+		this(underlyingNode, min, max, avg, dev, null);
+	}
+	
+	/**
+	 * Creates a new geo-statistics entity whose properties and metric are
+	 * already known, thus the getters do not access the database.
+	 * 
+	 * @param underlyingNode
+	 * 				The underlying node of the new geo-statistics entity.
+	 * @param min
+	 * 				Minimal distance.
+	 * @param max
+	 * 				Maximal distance.
+	 * @param avg
+	 * 				Average distance.
+	 * @param dev
+	 * 				Standard deviation of the distances.
+	 * @param metric
+	 * 				Name of the metric of the distances, 'null' if unknown.
+	 */
+	public GeoStatistics(Node underlyingNode, double min, double max, double avg, double dev, String metric) {
+		this.underlyingNode = underlyingNode;
+		this.min = min; this.max = max; this.avg = avg; this.dev = dev;
+		this.metric = metric;
+	}
+	
+	/**
+	 * Reads a geo-statistics entity within the caller's transaction.
+	 * 
+	 * @param underlyingNode
+	 * 				The underlying node of the geo-statistics entity.
+	 * @return Geo-statistics whose getters do not access the database.
+	 */
+	public static GeoStatistics read(Node underlyingNode) {
+		Map<String, Object> properties = underlyingNode.getAllProperties();
+		return new GeoStatistics(underlyingNode, (double) properties.get(KEY_MIN), (double) properties.get(KEY_MAX),
+				(double) properties.get(KEY_AVG), (double) properties.get(KEY_DEV), readMetric(properties));
+	}
+	
+	/**
+	 * Returns the name of the metric of stored statistics.
+	 */
+	private static String readMetric(Map<String, Object> properties) {
+		Object metric = properties.get(KEY_METRIC);
+		return (metric == null) ? DEFAULT_METRIC : (String) metric;
+	}
+	
 	/**
 	 * Returns the node representation of this geo-statistics within the database.
 	 * 
@@ -88,14 +171,29 @@ public class GeoStatistics {
 		return dev;
 	}
 	
+	/**
+	 * Returns the name of the metric the distances are measured by, e.g.
+	 * "EUCLIDEAN" or "HAVERSINE" (kilometres).
+	 * 
+	 * @return Name of the metric, 'null' if unknown, e.g. statistics created
+	 *         without metric.
+	 */
+	public String getMetric() {
+		if (metric == null && underlyingNode != null)
+			setProperties();
+		
+		return metric;
+	}
+	
 	
 	private void setProperties() {
-		try (Transaction tx = DatabaseAccess.getGraphDb().beginTx()) {
+		try (Transaction tx = this.underlyingNode.getGraphDatabase().beginTx()) {
 			Map<String, Object> properties = underlyingNode.getAllProperties();
 			min = (double) properties.get(KEY_MIN);
 			max = (double) properties.get(KEY_MAX);
 			avg = (double) properties.get(KEY_AVG);
 			dev = (double) properties.get(KEY_DEV);
+			metric = readMetric(properties);
 		}
 	}
 	
@@ -110,10 +208,11 @@ public class GeoStatistics {
 	}
 
 	public String toString() {
-		return "\"geoStatistics\": {\"min\":"+getMin()
-				+ ", \"max\":"+getMax()
-				+ ", \"avg\":"+getAvg()
-				+ ", \"dev\":"+getDev()+"}";
+		return "\"geoStatistics\": {\"min\":"+Json.number(getMin())
+				+ ", \"max\":"+Json.number(getMax())
+				+ ", \"avg\":"+Json.number(getAvg())
+				+ ", \"dev\":"+Json.number(getDev())
+				+ ", \"metric\":"+((getMetric() == null) ? "null" : Json.quote(getMetric()))+"}";
 	}
 
 }
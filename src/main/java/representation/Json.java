@@ -0,0 +1,116 @@
+package representation;
+
+import java.io.IOException;
+
+/**
+ * Writes JSON strings and numbers, e.g. for the exports of clusters. Strings
+ * are escaped according to RFC 8259, thus city names with quotes, backslashes
+ * or control characters yield valid JSON.
+ *
+ * @author MM
+ *
+ */
+public final class Json {
+
+	/** Hexadecimal digits of unicode escapes. */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Json() {
+	}
+
+	/**
+	 * Returns a string as JSON string, i.e. quoted and escaped.
+	 *
+	 * @param s
+	 *            A string.
+	 * @return JSON string.
+	 */
+	public static String quote(CharSequence s) {
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		try {
+			appendQuoted(s, sb);
+		} catch (IOException e) {
+			// a StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends a string as JSON string, i.e. quoted and escaped. Unescaped runs
+	 * are appended at once, thus no temporary strings are created.
+	 *
+	 * @param s
+	 *            A string.
+	 * @param out
+	 *            Receives the JSON string.
+	 * @throws IOException
+	 *             If appending fails.
+	 */
+	public static void appendQuoted(CharSequence s, Appendable out) throws IOException {
+		out.append('"');
+		int run = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029')
+				continue;
+			out.append(s, run, i);
+			run = i + 1;
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			case '\b':
+				out.append("\\b");
+				break;
+			case '\f':
+				out.append("\\f");
+				break;
+			default:
+				// other control characters, and line separators which end
+				// JavaScript strings
+				out.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+						.append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+			}
+		}
+		out.append(s, run, s.length());
+		out.append('"');
+	}
+
+	/**
+	 * Returns a number as JSON value.
+	 *
+	 * @param d
+	 *            A number.
+	 * @return The number, or 'null' if it is not finite as JSON does not
+	 *         support NaN and infinity.
+	 */
+	public static String number(double d) {
+		return (Double.isNaN(d) || Double.isInfinite(d)) ? "null" : Double.toString(d);
+	}
+
+	/**
+	 * Returns a number as JSON value with the shortest representation of a
+	 * float, e.g. a coordinate.
+	 *
+	 * @param f
+	 *            A number.
+	 * @return The number, or 'null' if it is not finite.
+	 */
+	public static String number(float f) {
+		return (Float.isNaN(f) || Float.isInfinite(f)) ? "null" : Float.toString(f);
+	}
+
+}
@@ -1,17 +1,20 @@
 package representation;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.DynamicLabel;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 
-import database.DatabaseAccess;
 
 /**
  * Domain entity of a suffix node.
@@ -35,7 +38,25 @@ public class Suffix {
 	
 	/** Property label for cluster candidates, value in {true, false} or not given. */
 	public static final String KEY_CLUSTER = "clusterCandidate";
-	
+
+	/**
+	 * Property label of cluster candidates whose cities are spatially
+	 * coherent, value in {true, false} or not given if not tested.
+	 */
+	public static final String KEY_GEO_SIGNIFICANT = "geoSignificant";
+
+	/**
+	 * Property label of root nodes whose tree changed since its last
+	 * clustering, value 'true' or not given.
+	 */
+	public static final String KEY_DIRTY = "dirty";
+
+	/**
+	 * Property label of root nodes for the parameters their tree was
+	 * clustered with.
+	 */
+	public static final String KEY_CLUSTER_PARAMS = "clusterParameters";
+
 	/** The underlying node of this city. */
 	private final Node underlyingNode;
 
@@ -65,7 +86,7 @@ public class Suffix {
 	 */
 	public String getStr() {
 		String s = null;
-		try (Transaction tx = DatabaseAccess.getGraphDb().beginTx()) {
+		try (Transaction tx = this.underlyingNode.getGraphDatabase().beginTx()) {
 			s = (String) this.underlyingNode.getProperty(KEY_STR);
 		}
 		return s;
@@ -78,7 +99,7 @@ public class Suffix {
 	 */
 	public int getSubsumedCities() {
 		int i = -1;
-		try (Transaction tx = DatabaseAccess.getGraphDb().beginTx()) {
+		try (Transaction tx = this.underlyingNode.getGraphDatabase().beginTx()) {
 			i = ((Number) this.underlyingNode.getProperty(KEY_SUBSCITIES)).intValue();
 		}
 		return i;
@@ -93,20 +114,38 @@ public class Suffix {
 	 */
 	public Set<City> getAssocCityLocations(GraphDatabaseService graphDb) {
 		Set<City> cities = new HashSet<City>();
+		try (Transaction tx = graphDb.beginTx()) {
+			for (Node node : getAssocCityNodes(this.underlyingNode))
+				cities.add(new City(node));
+		}
 		
-		String cyper = "MATCH (n:"+LABEL+")-[*1..]->(c:"+City.LABEL+")"
-				+ " WHERE n.str='"+getStr()+"'"
-						+ " RETURN c AS city";
-		try (Transaction tx = graphDb.beginTx();
-				Result rs = graphDb.execute(cyper)) {
-			while (rs.hasNext()) {
-				Map<String, Object> row = rs.next();
-				Node node = (Node) row.get("city");
-				City city = new City(node);
-				cities.add(city);
+		return cities;
+	}
+	
+	/**
+	 * Returns the city nodes whose name ends with the suffix of a node, i.e.
+	 * traverses its subtree along the outgoing edges. Thus, the time is
+	 * proportional to the size of the subtree. Has to be called within a
+	 * transaction.
+	 * 
+	 * @param suffixNode
+	 * 			A suffix node.
+	 * @return City nodes.
+	 */
+	public static List<Node> getAssocCityNodes(Node suffixNode) {
+		List<Node> cities = new ArrayList<Node>();
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(suffixNode);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			for (Relationship edge : node.getRelationships(Direction.OUTGOING, EdgeTypes.IS_SUFFIX_OF,
+					EdgeTypes.IS_NAME_OF)) {
+				if (edge.isType(EdgeTypes.IS_NAME_OF))
+					cities.add(edge.getEndNode());
+				else
+					stack.push(edge.getEndNode());
 			}
 		}
-		
 		return cities;
 	}
 
@@ -121,7 +160,22 @@ public class Suffix {
 	}
 
 	public String toString() {
-		return "\"suffix\": {\"str\":\""+getStr()+"\", \"subsumedCities\":"+getSubsumedCities()+"}";
+		return toString(getStr(), getSubsumedCities());
+	}
+	
+	/**
+	 * Returns the JSON representation of a suffix like {@link #toString()},
+	 * e.g. for properties read within the caller's transaction. The string is
+	 * escaped.
+	 * 
+	 * @param str
+	 * 			The string value of the suffix.
+	 * @param subsumedCities
+	 * 			Number of subsumed cities.
+	 * @return JSON representation.
+	 */
+	public static String toString(String str, int subsumedCities) {
+		return "\"suffix\": {\"str\":"+Json.quote(str)+", \"subsumedCities\":"+subsumedCities+"}";
 	}
 
 }
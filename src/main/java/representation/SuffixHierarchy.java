@@ -0,0 +1,140 @@
+package representation;
+
+/**
+ * Read access to the hierarchy of suffixes of the city names, i.e. the edges
+ * 'isSuffixOf' and 'isNameOf' of the suffix graph without database. Each node
+ * represents one suffix, its children are the suffixes which are one letter
+ * longer. Nodes and cities are addressed by dense int ids.
+ * <p>
+ * Implementations are immutable, thus they can be shared among threads.
+ *
+ * @author MM
+ *
+ */
+public interface SuffixHierarchy {
+
+	/**
+	 * Returns the count of all suffix nodes. Node ids are 0 to count - 1.
+	 *
+	 * @return Count of suffix nodes.
+	 */
+	int getCountSuffixNodes();
+
+	/**
+	 * Returns the count of all cities. City ids are 0 to count - 1.
+	 *
+	 * @return Count of cities.
+	 */
+	int getCountCities();
+
+	/**
+	 * Returns the root nodes, i.e. final letters, sorted by letter. The array
+	 * must not be modified.
+	 *
+	 * @return Root nodes.
+	 */
+	int[] getRoots();
+
+	/**
+	 * Returns the children of a node, i.e. the suffixes which are one letter
+	 * longer. The array must not be modified.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Child nodes sorted by letter.
+	 */
+	int[] getChildren(int node);
+
+	/**
+	 * Returns the parent of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Parent node or -1 for a root.
+	 */
+	int getParent(int node);
+
+	/**
+	 * Returns the first letter of the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return First letter, e.g. 'z' for "zig".
+	 */
+	char getLetter(int node);
+
+	/**
+	 * Returns the length of the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Length of the suffix.
+	 */
+	int getLength(int node);
+
+	/**
+	 * Returns the number of cities whose name ends with the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Number of subsumed cities.
+	 */
+	int getSubsumedCities(int node);
+
+	/**
+	 * Returns the cities whose name is equal to the suffix of a node. The array
+	 * must not be modified.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return City ids.
+	 */
+	int[] getCityIds(int node);
+
+	/**
+	 * Returns the string value of the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return A string representing the suffix.
+	 */
+	String getStr(int node);
+
+	/**
+	 * Returns the node of a suffix.
+	 *
+	 * @param str
+	 *            A suffix.
+	 * @return The suffix node or -1 if the suffix is not part of the
+	 *         hierarchy.
+	 */
+	int find(String str);
+
+	/**
+	 * Returns the name of a city.
+	 *
+	 * @param cityId
+	 *            A city.
+	 * @return The name of the city.
+	 */
+	String getCityName(int cityId);
+
+	/**
+	 * Returns the latitude value of a city.
+	 *
+	 * @param cityId
+	 *            A city.
+	 * @return A float number representing the latitude.
+	 */
+	float getLatitude(int cityId);
+
+	/**
+	 * Returns the longitude value of a city.
+	 *
+	 * @param cityId
+	 *            A city.
+	 * @return A float number representing the longitude.
+	 */
+	float getLongitude(int cityId);
+
+}
@@ -0,0 +1,419 @@
+package representation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heap-resident counterpart of the suffix graph: a trie over the reversed
+ * city names. Each node represents one suffix, its children are the suffixes
+ * which are one letter longer (edge 'isSuffixOf') and its cities are those
+ * whose name is equal to the suffix (edge 'isNameOf'). Nodes and cities are
+ * addressed by dense int ids.
+ * <p>
+ * The trie is immutable after building, thus it can be shared among threads.
+ * See {@link CompactSuffixTrie} for an off-heap counterpart.
+ *
+ * @author MM
+ *
+ */
+public class SuffixTrie implements SuffixHierarchy {
+
+	/** Empty int array for leaves and nodes without cities. */
+	private static final int[] EMPTY = new int[0];
+
+	/** First letter of the suffix of each node, e.g. 'z' for "zig". */
+	private final char[] letters;
+	/** Parent of each node, -1 for roots. */
+	private final int[] parents;
+	/** Length of the suffix of each node. */
+	private final int[] lengths;
+	/** Number of cities whose name ends with the suffix of each node. */
+	private final int[] subsumedCities;
+	/** Children of each node, sorted by letter. */
+	private final int[][] children;
+	/** Cities whose name is equal to the suffix of each node. */
+	private final int[][] cityIds;
+	/** Root nodes, i.e. final letters, sorted by letter. */
+	private final int[] roots;
+
+	/** Name node of each city. */
+	private final int[] cityNodes;
+	/** Latitude of each city. */
+	private final float[] latitudes;
+	/** Longitude of each city. */
+	private final float[] longitudes;
+
+	/**
+	 * Creates a trie from the arrays of a builder.
+	 */
+	private SuffixTrie(Builder b) {
+		int n = b.countNodes;
+		int c = b.countCities;
+		this.letters = Arrays.copyOf(b.letters, n);
+		this.parents = Arrays.copyOf(b.parents, n);
+		this.lengths = Arrays.copyOf(b.lengths, n);
+		this.subsumedCities = Arrays.copyOf(b.subsumedCities, n);
+		this.children = new int[n][];
+		this.cityIds = new int[n][];
+		for (int i = 0; i < n; i++) {
+			this.children[i] = sortByLetter(b.children[i], b.countChildren[i]);
+			this.cityIds[i] = (b.countCityIds[i] == 0) ? EMPTY : Arrays.copyOf(b.cityIds[i], b.countCityIds[i]);
+		}
+		this.roots = sortByLetter(b.roots, b.countRoots);
+		this.cityNodes = Arrays.copyOf(b.cityNodes, c);
+		this.latitudes = Arrays.copyOf(b.latitudes, c);
+		this.longitudes = Arrays.copyOf(b.longitudes, c);
+	}
+
+	/**
+	 * Builds a trie from extracted city data.
+	 *
+	 * @param data
+	 *            List of maps containing information to cities. Allowed keys
+	 *            are 'city' (= name of the city), 'latitude', and 'longitude'.
+	 * @return The suffix trie.
+	 */
+	public static SuffixTrie build(List<Map<String, String>> data) {
+		Builder builder = new Builder();
+		for (Map<String, String> row : data) {
+			String cityName = row.get("city");
+			float latitude = Float.parseFloat(row.get("latitude"));
+			float longitude = Float.parseFloat(row.get("longitude"));
+			builder.addCity(cityName, latitude, longitude);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns the count of all suffix nodes.
+	 *
+	 * @return Count of suffix nodes.
+	 */
+	@Override
+	public int getCountSuffixNodes() {
+		return this.letters.length;
+	}
+
+	/**
+	 * Returns the count of all cities.
+	 *
+	 * @return Count of cities.
+	 */
+	@Override
+	public int getCountCities() {
+		return this.cityNodes.length;
+	}
+
+	/**
+	 * Returns the root nodes, i.e. final letters. The array must not be
+	 * modified.
+	 *
+	 * @return Root nodes.
+	 */
+	@Override
+	public int[] getRoots() {
+		return this.roots;
+	}
+
+	/**
+	 * Returns the children of a node, i.e. the suffixes which are one letter
+	 * longer. The array must not be modified.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Child nodes sorted by letter.
+	 */
+	@Override
+	public int[] getChildren(int node) {
+		return this.children[node];
+	}
+
+	/**
+	 * Returns the parent of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Parent node or -1 for a root.
+	 */
+	@Override
+	public int getParent(int node) {
+		return this.parents[node];
+	}
+
+	/**
+	 * Returns the first letter of the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return First letter, e.g. 'z' for "zig".
+	 */
+	@Override
+	public char getLetter(int node) {
+		return this.letters[node];
+	}
+
+	/**
+	 * Returns the length of the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Length of the suffix.
+	 */
+	@Override
+	public int getLength(int node) {
+		return this.lengths[node];
+	}
+
+	/**
+	 * Returns the number of cities whose name ends with the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return Number of subsumed cities.
+	 */
+	@Override
+	public int getSubsumedCities(int node) {
+		return this.subsumedCities[node];
+	}
+
+	/**
+	 * Returns the cities whose name is equal to the suffix of a node. The array
+	 * must not be modified.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return City ids.
+	 */
+	@Override
+	public int[] getCityIds(int node) {
+		return this.cityIds[node];
+	}
+
+	/**
+	 * Returns the string value of the suffix of a node.
+	 *
+	 * @param node
+	 *            A suffix node.
+	 * @return A string representing the suffix.
+	 */
+	@Override
+	public String getStr(int node) {
+		char[] str = new char[this.lengths[node]];
+		for (int i = 0; node != -1; i++, node = this.parents[node])
+			str[i] = this.letters[node];
+		return new String(str);
+	}
+
+	/**
+	 * Returns the node of a suffix.
+	 *
+	 * @param str
+	 *            A suffix.
+	 * @return The suffix node or -1 if the suffix is not part of the trie.
+	 */
+	@Override
+	public int find(String str) {
+		if (str.isEmpty())
+			return -1;
+		int node = findChild(this.roots, str.charAt(str.length() - 1));
+		for (int i = str.length() - 2; i >= 0 && node != -1; i--)
+			node = findChild(this.children[node], str.charAt(i));
+		return node;
+	}
+
+	/**
+	 * Returns the name of a city.
+	 *
+	 * @param cityId
+	 *            A city.
+	 * @return The name of the city.
+	 */
+	@Override
+	public String getCityName(int cityId) {
+		return getStr(this.cityNodes[cityId]);
+	}
+
+	/**
+	 * Returns the latitude value of a city.
+	 *
+	 * @param cityId
+	 *            A city.
+	 * @return A float number representing the latitude.
+	 */
+	@Override
+	public float getLatitude(int cityId) {
+		return this.latitudes[cityId];
+	}
+
+	/**
+	 * Returns the longitude value of a city.
+	 *
+	 * @param cityId
+	 *            A city.
+	 * @return A float number representing the longitude.
+	 */
+	@Override
+	public float getLongitude(int cityId) {
+		return this.longitudes[cityId];
+	}
+
+	/**
+	 * Searches a node with the given letter in an array sorted by letter.
+	 */
+	private int findChild(int[] nodes, char letter) {
+		int low = 0, high = nodes.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char c = this.letters[nodes[mid]];
+			if (c < letter)
+				low = mid + 1;
+			else if (c > letter)
+				high = mid - 1;
+			else
+				return nodes[mid];
+		}
+		return -1;
+	}
+
+	/**
+	 * Copies the first nodes of an array and sorts them by letter.
+	 */
+	private int[] sortByLetter(int[] nodes, int count) {
+		if (count == 0)
+			return EMPTY;
+		// sort by (letter, node) packed into one long
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++)
+			keys[i] = ((long) this.letters[nodes[i]] << 32) | nodes[i];
+		Arrays.sort(keys);
+		int[] sorted = new int[count];
+		for (int i = 0; i < count; i++)
+			sorted[i] = (int) keys[i];
+		return sorted;
+	}
+
+	/**
+	 * Builds a suffix trie city by city without creating a string per suffix.
+	 *
+	 * @author MM
+	 *
+	 */
+	public static class Builder {
+
+		private char[] letters = new char[1024];
+		private int[] parents = new int[1024];
+		private int[] lengths = new int[1024];
+		private int[] subsumedCities = new int[1024];
+		private int[][] children = new int[1024][];
+		private int[] countChildren = new int[1024];
+		private int[][] cityIds = new int[1024][];
+		private int[] countCityIds = new int[1024];
+		private int countNodes = 0;
+
+		private int[] roots = new int[64];
+		private int countRoots = 0;
+
+		private int[] cityNodes = new int[1024];
+		private float[] latitudes = new float[1024];
+		private float[] longitudes = new float[1024];
+		private int countCities = 0;
+
+		/**
+		 * Adds a city and the missing suffix nodes of its name.
+		 *
+		 * @param cityName
+		 *            Name of the city.
+		 * @param latitude
+		 *            Latitude of the city.
+		 * @param longitude
+		 *            Longitude of the city.
+		 * @return The id of the new city.
+		 */
+		public int addCity(String cityName, float latitude, float longitude) {
+			if (cityName.isEmpty())
+				throw new IllegalArgumentException("A city needs a name.");
+
+			// walk from the final letter to the full name
+			int node = -1;
+			for (int i = cityName.length() - 1; i >= 0; i--) {
+				node = getOrCreateNode(node, cityName.charAt(i));
+				this.subsumedCities[node]++;
+			}
+
+			// add the city to its name node
+			if (this.countCities == this.cityNodes.length) {
+				int capacity = this.countCities * 2;
+				this.cityNodes = Arrays.copyOf(this.cityNodes, capacity);
+				this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+				this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+			}
+			int cityId = this.countCities++;
+			this.cityNodes[cityId] = node;
+			this.latitudes[cityId] = latitude;
+			this.longitudes[cityId] = longitude;
+			this.cityIds[node] = append(this.cityIds[node], this.countCityIds[node]++, cityId);
+
+			return cityId;
+		}
+
+		/**
+		 * Builds the immutable trie.
+		 *
+		 * @return The suffix trie.
+		 */
+		public SuffixTrie build() {
+			return new SuffixTrie(this);
+		}
+
+		/**
+		 * Returns the child of a node with the given letter and creates it if
+		 * necessary.
+		 */
+		private int getOrCreateNode(int parent, char letter) {
+			int[] candidates = (parent == -1) ? this.roots : this.children[parent];
+			int count = (parent == -1) ? this.countRoots : this.countChildren[parent];
+			for (int i = 0; i < count; i++)
+				if (this.letters[candidates[i]] == letter)
+					return candidates[i];
+
+			// create new node
+			if (this.countNodes == this.letters.length) {
+				int capacity = this.countNodes * 2;
+				this.letters = Arrays.copyOf(this.letters, capacity);
+				this.parents = Arrays.copyOf(this.parents, capacity);
+				this.lengths = Arrays.copyOf(this.lengths, capacity);
+				this.subsumedCities = Arrays.copyOf(this.subsumedCities, capacity);
+				this.children = Arrays.copyOf(this.children, capacity);
+				this.countChildren = Arrays.copyOf(this.countChildren, capacity);
+				this.cityIds = Arrays.copyOf(this.cityIds, capacity);
+				this.countCityIds = Arrays.copyOf(this.countCityIds, capacity);
+			}
+			int node = this.countNodes++;
+			this.letters[node] = letter;
+			this.parents[node] = parent;
+			this.lengths[node] = (parent == -1) ? 1 : this.lengths[parent] + 1;
+
+			if (parent == -1)
+				this.roots = append(this.roots, this.countRoots++, node);
+			else
+				this.children[parent] = append(this.children[parent], this.countChildren[parent]++, node);
+
+			return node;
+		}
+
+		/**
+		 * Sets a value at the given position and grows the array if
+		 * necessary.
+		 */
+		private static int[] append(int[] array, int position, int value) {
+			if (array == null)
+				array = new int[2];
+			else if (position == array.length)
+				array = Arrays.copyOf(array, position * 2);
+			array[position] = value;
+			return array;
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+package clustering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.GeoStatistics;
+import representation.Suffix;
+
+/**
+ * Tests of {@link ClusterExport}.
+ *
+ * @author MM
+ *
+ */
+public class ClusterExportTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/** Clusters of the test data. */
+	private static final String[] CLUSTERS = { "hof", "dorf", "heim", "f", "m" };
+
+	/**
+	 * The export has to be sorted by suffix and must not depend on the number
+	 * of threads. Geo-statistics are calculated once.
+	 */
+	@Test
+	public void testExport() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createVillages());
+		new GraphProperties(db).addPropertySubsumedCities();
+		List<Suffix> clusters = new ArrayList<Suffix>();
+		try (Transaction tx = db.beginTx()) {
+			for (String str : CLUSTERS)
+				clusters.add(new Suffix(db.findNode(Suffix.LABEL, Suffix.KEY_STR, str)));
+		}
+
+		GeoDistance geoDistance = new GeoDistance(db, Dispersion.Mode.STREAMING);
+		StringWriter parallel = new StringWriter();
+		new ClusterExport(db, geoDistance, 4).export(clusters, parallel);
+		StringWriter sequential = new StringWriter();
+		new ClusterExport(db, geoDistance, 1).export(clusters, sequential);
+
+		String json = parallel.toString();
+		assertEquals(sequential.toString(), json);
+		assertTrue(json.startsWith("{\"clusters\": [\n{\"suffix\": {\"str\":\"dorf\", \"subsumedCities\":6}, "
+				+ "\"geoStatistics\": {"));
+		assertTrue(json.indexOf("\"str\":\"f\"") < json.indexOf("\"str\":\"heim\""));
+		assertTrue(json.indexOf("\"str\":\"hof\"") < json.indexOf("\"str\":\"m\""));
+		assertEquals(CLUSTERS.length - 1, json.split("\\},\n\\{").length - 1);
+
+		try (Transaction tx = db.beginTx()) {
+			int count = 0;
+			for (ResourceIterator<Node> it = db.findNodes(GeoStatistics.LABEL); it.hasNext(); it.next())
+				count++;
+			assertEquals(CLUSTERS.length, count);
+		}
+
+		// stored statistics are read
+		GeoStatistics stored = new GeoDistance(db, Dispersion.Mode.EXACT).calcGeoStatistics(clusters.get(3));
+		assertTrue(json.contains("{" + Suffix.toString("f", 12) + ", " + stored.toString() + "}"));
+
+		// statistics of another metric are replaced
+		GeoStatistics km = new GeoDistance(db, Dispersion.Mode.STREAMING, null, GeoMetric.HAVERSINE)
+				.calcGeoStatistics(clusters.get(3));
+		assertTrue(km.getMax() > 50 * stored.getMax());
+		try (Transaction tx = db.beginTx()) {
+			int count = 0;
+			for (ResourceIterator<Node> it = db.findNodes(GeoStatistics.LABEL); it.hasNext(); it.next())
+				count++;
+			assertEquals(CLUSTERS.length, count);
+		}
+		assertEquals(km.getMax(), new GeoDistance(db, Dispersion.Mode.EXACT, null, GeoMetric.HAVERSINE)
+				.calcGeoStatistics(clusters.get(3)).getMax(), 0);
+
+		// sampled statistics are not taken for exact ones and vice versa
+		GeoStatistics sampled = new GeoDistance(db, Dispersion.Mode.APPROXIMATE, null, GeoMetric.HAVERSINE)
+				.calcGeoStatistics(clusters.get(3));
+		assertNotEquals(km.getUnderlyingNode(), sampled.getUnderlyingNode());
+		assertEquals(sampled.getUnderlyingNode(), new GeoDistance(db, Dispersion.Mode.APPROXIMATE, null,
+				GeoMetric.HAVERSINE).calcGeoStatistics(clusters.get(3)).getUnderlyingNode());
+		assertNotEquals(sampled.getUnderlyingNode(), new GeoDistance(db, Dispersion.Mode.STREAMING, null,
+				GeoMetric.HAVERSINE).calcGeoStatistics(clusters.get(3)).getUnderlyingNode());
+	}
+
+	/**
+	 * The streaming export has to write one line per cluster in the order of
+	 * the suffixes, with all member cities, and the binary format has to yield
+	 * the same lines.
+	 */
+	@Test
+	public void testStreamingExport() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createVillages());
+		new GraphProperties(db).addPropertySubsumedCities();
+		List<Suffix> clusters = new ArrayList<Suffix>();
+		try (Transaction tx = db.beginTx()) {
+			for (String str : CLUSTERS)
+				clusters.add(new Suffix(db.findNode(Suffix.LABEL, Suffix.KEY_STR, str)));
+		}
+		ClusterExport export = new ClusterExport(db, new GeoDistance(db, Dispersion.Mode.STREAMING), 2);
+
+		ByteArrayOutputStream jsonLines = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new JsonLinesClusterWriter(jsonLines)) {
+			assertEquals(CLUSTERS.length, export.export(clusters, writer, true));
+			writer.finish();
+		}
+		String[] lines = new String(jsonLines.toByteArray(), StandardCharsets.UTF_8).split("\n");
+		assertEquals(CLUSTERS.length, lines.length);
+		assertTrue(lines[0].startsWith("{\"suffix\": {\"str\":\"dorf\", \"subsumedCities\":6}, "
+				+ "\"geoStatistics\": {"));
+		assertTrue(lines[1].startsWith("{" + Suffix.toString("f", 12)));
+		assertEquals(12, lines[1].split("\\{\"name\":").length - 1);
+		assertTrue(lines[4].contains("{\"name\":\"altheim\", \"latitude\":"));
+
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new BinaryClusterWriter(binary)) {
+			export.export(clusters, writer, true);
+			writer.finish();
+		}
+		ByteArrayOutputStream converted = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new JsonLinesClusterWriter(converted)) {
+			assertEquals(CLUSTERS.length,
+					BinaryClusterWriter.read(new ByteArrayInputStream(binary.toByteArray()), writer));
+		}
+		assertArrayEquals(jsonLines.toByteArray(), converted.toByteArray());
+	}
+
+}
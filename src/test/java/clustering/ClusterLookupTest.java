@@ -0,0 +1,113 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.Suffix;
+
+/**
+ * Tests of {@link ClusterLookup}.
+ *
+ * @author MM
+ *
+ */
+public class ClusterLookupTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * Marks suffixes as cluster candidates.
+	 */
+	private static void setClusters(GraphDatabaseService db, String... clusters) {
+		try (Transaction tx = db.beginTx()) {
+			for (String str : clusters)
+				db.findNode(Suffix.LABEL, Suffix.KEY_STR, str).setProperty(Suffix.KEY_CLUSTER, true);
+			tx.success();
+		}
+	}
+
+	/**
+	 * The deepest cluster candidate has to be found, answers have to be cached
+	 * and updated by commits.
+	 */
+	@Test
+	public void testLookup() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createVillages());
+		try (ClusterLookup lookup = ClusterLookup.register(db, 100)) {
+			new GraphProperties(db).addPropertySubsumedCities();
+			setClusters(db, "f", "dorf");
+			new GeoDistance(db, Dispersion.Mode.EXACT).calcGeoStatistics(new Suffix(findNode(db, "dorf")));
+
+			ClusterLookup.Membership dorf = lookup.lookup("altdorf");
+			assertEquals("dorf", dorf.getStr());
+			assertEquals(6, dorf.getSubsumedCities());
+			assertNotNull(dorf.getGeoStatistics());
+			assertEquals(GeoMetric.EUCLIDEAN.name(), dorf.getGeoStatistics().getMetric());
+			assertNull(dorf.getGeoSignificant());
+			assertEquals("f", lookup.lookup("althof").getStr());
+			assertNull(lookup.lookup("altheim"));
+			assertNull(lookup.lookup("xyz"));
+			assertNull(lookup.lookup(""));
+			assertEquals(0, lookup.getHits());
+			assertEquals(5, lookup.getMisses());
+
+			// cached, also unknown toponyms
+			assertSame(dorf, lookup.lookup("altdorf"));
+			assertNull(lookup.lookup("xyz"));
+			assertEquals(2, lookup.getHits());
+			assertEquals(2.0 / 7, lookup.getHitRate(), 1e-9);
+
+			// a new cluster candidate clears the cache
+			setClusters(db, "hof");
+			assertEquals(0, lookup.size());
+			assertEquals("hof", lookup.lookup("althof").getStr());
+		}
+	}
+
+	/** The cache has to be bounded, evicted toponyms are walked again. */
+	@Test
+	public void testCapacity() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createVillages());
+		try (ClusterLookup bounded = ClusterLookup.register(db, 16);
+				ClusterLookup disabled = ClusterLookup.register(db, 0)) {
+			setClusters(db, "m");
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < 100; i++) {
+					String toponym = "x" + i + "heim";
+					assertEquals("m", bounded.lookup(toponym).getStr());
+					assertEquals("m", disabled.lookup(toponym).getStr());
+				}
+			}
+			assertTrue(bounded.size() <= 16);
+			assertEquals(bounded.getMisses(), bounded.size() + bounded.getEvictions());
+			assertEquals(200 - bounded.getMisses(), bounded.getHits());
+			assertEquals(0, disabled.size());
+			assertEquals(200, disabled.getMisses());
+		}
+	}
+
+	/**
+	 * Finds a suffix node.
+	 */
+	private static Node findNode(GraphDatabaseService db, String str) {
+		try (Transaction tx = db.beginTx()) {
+			return db.findNode(Suffix.LABEL, Suffix.KEY_STR, str);
+		}
+	}
+
+}
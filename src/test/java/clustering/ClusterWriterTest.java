@@ -0,0 +1,116 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import representation.GeoStatistics;
+
+/**
+ * Tests of {@link JsonLinesClusterWriter} and {@link BinaryClusterWriter}.
+ *
+ * @author MM
+ *
+ */
+public class ClusterWriterTest {
+
+	/**
+	 * Writes two clusters, one with geo-statistics and awkward city names, and
+	 * finishes the output.
+	 */
+	private static void writeClusters(ClusterWriter writer) throws IOException {
+		writer.beginCluster("ow", 2, new GeoStatistics(null, 0.5, 2.0, 1.25, Double.NaN, GeoMetric.HAVERSINE.name()));
+		writer.writeCity("\"Kr\u00f3tk\u00f3w\"", 50.5f, 19.25f);
+		writer.writeCity("back\\slash\ttab\u0001", -33.9f, 151.2f);
+		writer.endCluster();
+		writer.beginCluster("burg", 7, null);
+		writer.endCluster();
+		writer.finish();
+	}
+
+	/** Each cluster has to be one escaped JSON line. */
+	@Test
+	public void testJsonLines() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new JsonLinesClusterWriter(out)) {
+			writeClusters(writer);
+		}
+		String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n", -1);
+		assertEquals(Arrays.asList(
+				"{\"suffix\": {\"str\":\"ow\", \"subsumedCities\":2}, "
+						+ "\"geoStatistics\": {\"min\":0.5, \"max\":2.0, \"avg\":1.25, \"dev\":null, \"metric\":\"HAVERSINE\"}, \"cities\": ["
+						+ "{\"name\":\"\\\"Kr\u00f3tk\u00f3w\\\"\", \"latitude\":50.5, \"longitude\":19.25}, "
+						+ "{\"name\":\"back\\\\slash\\ttab\\u0001\", \"latitude\":-33.9, \"longitude\":151.2}]}",
+				"{\"suffix\": {\"str\":\"burg\", \"subsumedCities\":7}}", ""), Arrays.asList(lines));
+	}
+
+	/** The binary format has to be read back like the clusters were written. */
+	@Test
+	public void testBinary() throws IOException {
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new BinaryClusterWriter(binary)) {
+			writeClusters(writer);
+		}
+		ByteArrayOutputStream direct = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new JsonLinesClusterWriter(direct)) {
+			writeClusters(writer);
+		}
+		ByteArrayOutputStream converted = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new JsonLinesClusterWriter(converted)) {
+			assertEquals(2, BinaryClusterWriter.read(new ByteArrayInputStream(binary.toByteArray()), writer));
+		}
+		assertTrue(Arrays.equals(direct.toByteArray(), converted.toByteArray()));
+
+		// truncated
+		byte[] truncated = Arrays.copyOf(binary.toByteArray(), binary.size() - 1);
+		try (ClusterWriter writer = new JsonLinesClusterWriter(new ByteArrayOutputStream())) {
+			BinaryClusterWriter.read(new ByteArrayInputStream(truncated), writer);
+			fail("Truncated input has to be detected.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/** A binary output which is closed without being finished is rejected. */
+	@Test
+	public void testBinaryAborted() throws IOException {
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		try (ClusterWriter writer = new BinaryClusterWriter(binary)) {
+			writer.beginCluster("ow", 2, null);
+			writer.endCluster();
+			// export fails before finishing
+		}
+		try (ClusterWriter writer = new JsonLinesClusterWriter(new ByteArrayOutputStream())) {
+			BinaryClusterWriter.read(new ByteArrayInputStream(binary.toByteArray()), writer);
+			fail("An aborted output has to be rejected.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/** Clusters after finishing are rejected. */
+	@Test(expected = IllegalStateException.class)
+	public void testClusterAfterFinish() throws IOException {
+		try (ClusterWriter writer = new BinaryClusterWriter(new ByteArrayOutputStream())) {
+			writer.finish();
+			writer.beginCluster("ow", 2, null);
+		}
+	}
+
+	/** Cities outside of a cluster are rejected. */
+	@Test(expected = IllegalStateException.class)
+	public void testCityOutsideCluster() throws IOException {
+		try (ClusterWriter writer = new JsonLinesClusterWriter(new ByteArrayOutputStream())) {
+			writer.writeCity("leipzig", 51.3f, 12.4f);
+		}
+	}
+
+}
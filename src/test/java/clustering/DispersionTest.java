@@ -0,0 +1,144 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link Dispersion}.
+ *
+ * @author MM
+ *
+ */
+public class DispersionTest {
+
+	/**
+	 * Creates random locations within Germany, some of them twice.
+	 *
+	 * @param size
+	 *            Number of locations.
+	 * @return Latitudes and longitudes.
+	 */
+	private static double[][] createLocations(int size) {
+		Random random = new Random(size);
+		double[][] locations = new double[2][size];
+		for (int i = 0; i < size; i++) {
+			if (i > 0 && random.nextInt(50) == 0) {
+				int j = random.nextInt(i);
+				locations[0][i] = locations[0][j];
+				locations[1][i] = locations[1][j];
+			} else {
+				locations[0][i] = 47.3 + 7.7 * random.nextDouble();
+				locations[1][i] = 5.9 + 9.1 * random.nextDouble();
+			}
+		}
+		return locations;
+	}
+
+	/** Streaming has to equal the exact statistics. */
+	@Test
+	public void testStreamingEqualsExact() {
+		double[][] locations = createLocations(300);
+		Dispersion exact = Dispersion.calculate(locations[0], locations[1], Dispersion.Mode.EXACT);
+		Dispersion streaming = Dispersion.calculate(locations[0], locations[1], Dispersion.Mode.STREAMING);
+
+		assertEquals(exact.getMin(), streaming.getMin(), 0);
+		assertEquals(exact.getMax(), streaming.getMax(), 0);
+		assertEquals(exact.getAvg(), streaming.getAvg(), 1e-9);
+		assertEquals(exact.getDev(), streaming.getDev(), 1e-9);
+	}
+
+	/**
+	 * The approximation has exact min and max, and its avg and dev lie within
+	 * the sampling error.
+	 */
+	@Test
+	public void testApproximate() {
+		double[][] locations = createLocations(1000);
+		Dispersion exact = Dispersion.calculate(locations[0], locations[1], Dispersion.Mode.EXACT);
+		Dispersion approximate = Dispersion.calculate(locations[0], locations[1], Dispersion.Mode.APPROXIMATE);
+
+		assertEquals(0, approximate.getMin(), 0);
+		assertEquals(exact.getMin(), approximate.getMin(), 0);
+		assertEquals(exact.getMax(), approximate.getMax(), 0);
+		// 5 standard errors
+		double error = 5 * exact.getDev() / Math.sqrt(Dispersion.SAMPLE_PAIRS);
+		assertEquals(exact.getAvg(), approximate.getAvg(), error);
+		assertEquals(exact.getDev(), approximate.getDev(), 0.01 * exact.getDev());
+	}
+
+	/** Closest pair and diameter have to equal the brute force solution. */
+	@Test
+	public void testClosestPairAndDiameter() {
+		for (int size = 2; size < 200; size += 13) {
+			double[][] locations = createLocations(size);
+			// some locations on a line
+			for (int i = 0; i < size; i += 3)
+				locations[1][i] = 10.0;
+
+			double min = Double.POSITIVE_INFINITY, max = 0;
+			for (int i = 0; i < size; i++)
+				for (int j = i + 1; j < size; j++) {
+					double d = Math.hypot(locations[0][i] - locations[0][j], locations[1][i] - locations[1][j]);
+					min = Math.min(min, d);
+					max = Math.max(max, d);
+				}
+
+			assertEquals(min, Dispersion.closestPair(locations[0], locations[1]), 1e-12);
+			assertEquals(max, Dispersion.diameter(locations[0], locations[1]), 1e-12);
+		}
+	}
+
+	/** Distances in kilometres of known city pairs. */
+	@Test
+	public void testMetrics() {
+		// Berlin - Munich
+		assertEquals(504, GeoMetric.HAVERSINE.distance(52.5200, 13.4050, 48.1351, 11.5820), 1);
+		assertEquals(504, GeoMetric.EQUIRECTANGULAR.distance(52.5200, 13.4050, 48.1351, 11.5820), 1);
+		// one degree of longitude shrinks with the latitude
+		assertEquals(111.2, GeoMetric.HAVERSINE.distance(0, 10, 0, 11), 0.1);
+		assertEquals(111.2 * Math.cos(Math.toRadians(54)), GeoMetric.HAVERSINE.distance(54, 10, 54, 11), 0.1);
+		assertEquals(1.0, GeoMetric.EUCLIDEAN.distance(54, 10, 54, 11), 0);
+		// across the date line
+		assertEquals(111.2, GeoMetric.HAVERSINE.distance(0, 179.5, 0, -179.5), 0.1);
+		assertEquals(0, GeoMetric.HAVERSINE.distance(50, 10, 50, 10), 0);
+	}
+
+	/**
+	 * In kilometres, the approximation has the exact min and nearly the exact
+	 * max.
+	 */
+	@Test
+	public void testApproximateHaversine() {
+		double[][] locations = createLocations(1000);
+		for (GeoMetric metric : new GeoMetric[] { GeoMetric.HAVERSINE, GeoMetric.EQUIRECTANGULAR }) {
+			Dispersion exact = Dispersion.calculate(locations[0], locations[1], Dispersion.Mode.EXACT, metric);
+			Dispersion approximate = Dispersion.calculate(locations[0], locations[1], Dispersion.Mode.APPROXIMATE,
+					metric);
+
+			assertEquals(exact.getMin(), approximate.getMin(), 0);
+			assertEquals(exact.getMax(), approximate.getMax(), 0.001 * exact.getMax());
+			double error = 5 * exact.getDev() / Math.sqrt(Dispersion.SAMPLE_PAIRS);
+			assertEquals(exact.getAvg(), approximate.getAvg(), error);
+		}
+
+		// distinct locations
+		double[][] distinct = createLocations(30);
+		distinct[0][29] += 0.001;
+		Dispersion exact = Dispersion.calculate(distinct[0], distinct[1], Dispersion.Mode.EXACT, GeoMetric.HAVERSINE);
+		assertEquals(exact.getMin(), Dispersion.closestPair(distinct[0], distinct[1], GeoMetric.HAVERSINE), 1e-9);
+	}
+
+	/** Without any pair, there are no statistics. */
+	@Test
+	public void testSingleCity() {
+		for (Dispersion.Mode mode : Dispersion.Mode.values()) {
+			Dispersion dispersion = Dispersion.calculate(new double[] { 50.0 }, new double[] { 10.0 }, mode);
+			assertTrue(Double.isNaN(dispersion.getAvg()));
+		}
+	}
+
+}
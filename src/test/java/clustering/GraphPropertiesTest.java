@@ -3,17 +3,26 @@ package clustering;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Transaction;
 
 import database.DatabaseAccess;
+import fixtures.CityGraph;
+import fixtures.CityRows;
 import representation.Suffix;
+import representation.SuffixTrie;
 
 /**
  * Tests for {@link GraphProperties}
@@ -94,26 +103,35 @@ public class GraphPropertiesTest {
 		assertEquals(0, act);
 	}
 
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
 	/**
-	 * Test method for {@link GraphProperties#addPropertySubsumedCities()}.
+	 * Test method for {@link GraphProperties#addPropertySubsumedCities()}: the
+	 * property has to equal the counts of the suffix trie, also if a city name
+	 * is suffix of another city's name.
 	 */
 	@Test
-	public void testAddPropertySubsumedCities() {
-		prop.addPropertySubsumedCities();
-		// System.out.println();
-		// try (Transaction tx = db.beginTx()) {
-		// ResourceIterator<Node> nodes = db.findNodes(Suffix.LABEL);
-		// while (nodes.hasNext()) {
-		// Node n = nodes.next();
-		// System.out.println(n.getId());
-		// Map<String, Object> properties = n.getProperties();
-		// System.out.println(" |properties|: "+properties.size());
-		// for (String key : properties.keySet()) {
-		// System.out.println(" "+key + ": " + properties.get(key));
-		// }
-		// }
-		// }
-		fail("to be implemented");
+	public void testAddPropertySubsumedCities() throws IOException {
+		String[] names = { "leipzig", "pelzig", "zig", "leipzig", "ig", "dorf", "altdorf", "neudorf", "f" };
+		List<Map<String, String>> data = CityRows.createRows(names);
+		SuffixTrie trie = SuffixTrie.build(data);
+
+		GraphDatabaseService graphDb = this.graph.load(data);
+		new GraphProperties(graphDb).addPropertySubsumedCities();
+		try (Transaction tx = graphDb.beginTx()) {
+			ResourceIterator<Node> nodes = graphDb.findNodes(Suffix.LABEL);
+			int count = 0;
+			while (nodes.hasNext()) {
+				Node n = nodes.next();
+				int node = trie.find((String) n.getProperty(Suffix.KEY_STR));
+				assertEquals(trie.getSubsumedCities(node),
+						((Number) n.getProperty(Suffix.KEY_SUBSCITIES)).intValue());
+				count++;
+			}
+			assertEquals(trie.getCountSuffixNodes(), count);
+		}
 	}
 
 	/**
@@ -0,0 +1,91 @@
+package clustering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.CityIndex;
+import representation.Suffix;
+
+/**
+ * Tests of {@link GridExport}.
+ *
+ * @author MM
+ *
+ */
+public class GridExportTest {
+
+	/** Clusters of the test data, nested ones included. */
+	private static final String[] CLUSTERS = { "hof", "dorf", "heim", "f" };
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * The cells of each cluster have to equal the cells of its cities, and the
+	 * export has to be sorted by suffix. The cells cover the whole world, the
+	 * poles and the date line included.
+	 */
+	@Test
+	public void testExport() throws IOException {
+		List<Map<String, String>> data = CityRows.createVillages();
+		GraphDatabaseService db = this.graph.load(data);
+		new GraphProperties(db).addPropertySubsumedCities();
+		List<Suffix> clusters = new ArrayList<Suffix>();
+		try (Transaction tx = db.beginTx()) {
+			for (String str : CLUSTERS)
+				clusters.add(new Suffix(db.findNode(Suffix.LABEL, Suffix.KEY_STR, str)));
+		}
+		GridExport grid = new GridExport(db, CityIndex.build(db), 1.0);
+		assertEquals(360, grid.getColumns());
+		assertEquals(180, grid.getRows());
+		assertEquals(0, grid.getCell(-90, -180));
+		assertEquals(180 * 360 - 1, grid.getCell(90, 180));
+		assertEquals(90 * 360 + 180, grid.getCell(0, 0));
+		assertEquals(90 * 360 + 179, grid.getCell(0.4, -0.1));
+
+		for (int k = 0; k < CLUSTERS.length; k++) {
+			Map<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+			for (Map<String, String> row : data) {
+				if (!row.get("city").endsWith(CLUSTERS[k]))
+					continue;
+				int cell = grid.getCell(Float.parseFloat(row.get("latitude")),
+						Float.parseFloat(row.get("longitude")));
+				expected.put(cell, expected.containsKey(cell) ? expected.get(cell) + 1 : 1);
+			}
+			int[] pairs = new int[2 * expected.size()];
+			int i = 0;
+			for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+				pairs[i++] = e.getKey();
+				pairs[i++] = e.getValue();
+			}
+			assertArrayEquals(CLUSTERS[k], pairs, grid.aggregate(clusters.get(k)));
+		}
+
+		StringWriter out = new StringWriter();
+		grid.export(clusters, out);
+		String json = out.toString();
+		assertTrue(json.startsWith("{\"cellSize\":1.0, \"rows\":180, \"columns\":360, \"clusters\": [\n"
+				+ "{\"suffix\": {\"str\":\"dorf\", \"subsumedCities\":6}, \"countCells\":"));
+		assertTrue(json.indexOf("\"str\":\"dorf\"") < json.indexOf("\"str\":\"f\""));
+		assertTrue(json.indexOf("\"str\":\"f\"") < json.indexOf("\"str\":\"heim\""));
+		assertTrue(json.indexOf("\"str\":\"heim\"") < json.indexOf("\"str\":\"hof\""));
+		assertTrue(json.endsWith("}\n]}\n"));
+	}
+
+}
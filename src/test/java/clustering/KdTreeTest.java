@@ -0,0 +1,93 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link KdTree}.
+ *
+ * @author MM
+ *
+ */
+public class KdTreeTest {
+
+	/**
+	 * Creates random locations all over the world.
+	 */
+	private static double[][] createLocations(int size, Random random) {
+		double[][] locations = new double[2][size];
+		for (int i = 0; i < size; i++) {
+			locations[0][i] = -90 + 180 * random.nextDouble();
+			locations[1][i] = -180 + 360 * random.nextDouble();
+		}
+		return locations;
+	}
+
+	/** Nearest neighbours and radius counts have to equal brute force. */
+	@Test
+	public void testEqualsBruteForce() {
+		Random random = new Random(42);
+		for (int size = 1; size < 500; size += 37) {
+			double[][] locations = createLocations(size, random);
+			KdTree tree = new KdTree(locations[0], locations[1]);
+			assertEquals(size, tree.size());
+
+			for (int i = 0; i < size; i++) {
+				int nearest = -1;
+				double best = Double.POSITIVE_INFINITY;
+				for (int j = 0; j < size; j++) {
+					double d = GeoMetric.HAVERSINE.distance(locations[0][i], locations[1][i], locations[0][j],
+							locations[1][j]);
+					if (j != i && d < best) {
+						best = d;
+						nearest = j;
+					}
+				}
+				assertEquals(nearest, tree.nearest(i));
+				assertEquals(best, tree.nearestDistance(i), 1e-6);
+			}
+
+			for (int k = 0; k < 20; k++) {
+				double lat = -90 + 180 * random.nextDouble(), lon = -180 + 360 * random.nextDouble();
+				double radius = 5000 * random.nextDouble();
+				int count = 0, nearest = -1;
+				double best = Double.POSITIVE_INFINITY;
+				for (int j = 0; j < size; j++) {
+					double d = GeoMetric.HAVERSINE.distance(lat, lon, locations[0][j], locations[1][j]);
+					if (d <= radius)
+						count++;
+					if (d < best) {
+						best = d;
+						nearest = j;
+					}
+				}
+				assertEquals(count, tree.countWithin(lat, lon, radius));
+				assertEquals(nearest, tree.nearest(lat, lon));
+			}
+			assertEquals(size, tree.countWithin(0, 0, 30000));
+		}
+	}
+
+	/** The date line does not separate neighbours. */
+	@Test
+	public void testDateLine() {
+		KdTree tree = new KdTree(new double[] { 0, 0, 0 }, new double[] { 179.9, -179.9, 170 });
+		assertEquals(1, tree.nearest(0));
+		assertEquals(0, tree.nearest(1));
+		assertEquals(2 * 111.195 * 0.1, tree.nearestDistance(0), 0.01);
+		assertEquals(2, tree.countWithin(0, 180, 20));
+	}
+
+	/** Duplicates are nearest neighbours at distance 0. */
+	@Test
+	public void testDuplicates() {
+		KdTree tree = new KdTree(new double[] { 51.3, 52.5, 51.3 }, new double[] { 12.4, 13.4, 12.4 });
+		assertEquals(2, tree.nearest(0));
+		assertEquals(0, tree.nearestDistance(2), 0);
+		assertEquals(-1, new KdTree(new double[] { 1 }, new double[] { 2 }).nearest(0));
+	}
+
+}
@@ -0,0 +1,109 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import etl.Extraction;
+import representation.SuffixTrie;
+
+/**
+ * Tests for {@link MultiCountryClustering}.
+ *
+ * @author MM
+ *
+ */
+public class MultiCountryClusteringTest {
+
+	/** Prefixes of the synthetic city names. */
+	private static final String[] PREFIXES = { "alt", "neu", "ober", "unter", "gross", "klein", "wald", "berg" };
+	/** Endings of the synthetic city names of the first country. */
+	private static final String[] ENDINGS_DE = { "dorf", "hof", "bach", "hausen", "heim", "stedt", "ingen", "stein" };
+	/** Endings of the synthetic city names of the second country. */
+	private static final String[] ENDINGS_NL = { "dam", "dijk", "veen", "wijk", "broek", "hoven", "kerk", "huizen" };
+
+	/** Temporary files. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Each country has to be clustered like a trie of its cities only, and the
+	 * export has to break the clusters down by country.
+	 */
+	@Test
+	public void testClusterPerCountry() throws IOException {
+		List<String> rows = new ArrayList<String>();
+		rows.add("Country,City,AccentCity,Region,Population,Latitude,Longitude");
+		List<Map<String, String>> de = new ArrayList<Map<String, String>>();
+		List<Map<String, String>> nl = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < PREFIXES.length * ENDINGS_DE.length; i++) {
+			// interleave the countries
+			addRow(rows, de, "de", PREFIXES[i % PREFIXES.length] + ENDINGS_DE[i / PREFIXES.length], i);
+			addRow(rows, nl, "nl", PREFIXES[i % PREFIXES.length] + ENDINGS_NL[i / PREFIXES.length], i);
+		}
+		File file = this.folder.newFile();
+		Files.write(file.toPath(), rows, StandardCharsets.ISO_8859_1);
+
+		MultiCountryClustering clustering = new MultiCountryClustering(2, 0.1f, 0f, 0f);
+		Extraction.extractFromFreeWorldCitiesDatabase(file.getPath(), clustering);
+		SortedMap<String, MultiCountryClustering.CountryResult> results = clustering.cluster();
+
+		assertEquals("[de, nl]", results.keySet().toString());
+		assertEquals(expectedClusters(de), results.get("de").getClusters());
+		assertEquals(expectedClusters(nl), results.get("nl").getClusters());
+		assertEquals(64, results.get("de").getCountCities());
+		assertFalse(results.get("de").getClusters().isEmpty());
+
+		StringWriter out = new StringWriter();
+		MultiCountryClustering.export(results, out);
+		String json = out.toString();
+		int countClusters = results.get("de").getClusters().size() + results.get("nl").getClusters().size();
+		assertTrue(json.startsWith("{\"countCountries\":2, \"countCities\":128, \"countClusters\":" + countClusters));
+		assertTrue(json.contains("{\"country\":\"de\", \"countCities\":64, \"countSuffixNodes\":"));
+		assertTrue(json.indexOf("\"country\":\"de\"") < json.indexOf("\"country\":\"nl\""));
+		assertTrue(json.contains("\"str\":\"" + results.get("nl").getClusters().firstKey() + "\""));
+	}
+
+	/**
+	 * Adds a city to the rows of the raw data and to the data of its country.
+	 */
+	private static void addRow(List<String> rows, List<Map<String, String>> data, String country, String name,
+			int i) {
+		String lat = Float.toString(50f + i / 100f), lon = Float.toString(10f + i / 100f);
+		rows.add(country + "," + name + "," + name + ",01,," + lat + "," + lon);
+		Map<String, String> row = new HashMap<String, String>();
+		row.put("city", name);
+		row.put("latitude", lat);
+		row.put("longitude", lon);
+		data.add(row);
+	}
+
+	/**
+	 * Clusters the cities of one country by a heap-resident trie.
+	 */
+	private static Map<String, Integer> expectedClusters(List<Map<String, String>> data) {
+		SuffixTrie trie = SuffixTrie.build(data);
+		SuffixClustering clustering = new SuffixClustering(new Statistics(trie), 0.1f, 0f, 0f);
+		Map<String, Integer> clusters = new TreeMap<String, Integer>();
+		for (int node : clustering.determineClusterCandidatesByNGrams(trie))
+			clusters.put(trie.getStr(node), trie.getSubsumedCities(node));
+		return clusters;
+	}
+
+}
@@ -0,0 +1,180 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import database.DataVersion;
+import etl.IncrementalLoad;
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.SuffixTrie;
+
+/**
+ * Tests of {@link NGramModel}, {@link PackedCountTable}, and
+ * {@link NGramModelSnapshot}.
+ *
+ * @author MM
+ *
+ */
+public class NGramModelTest {
+
+	/** Counts of the padded city names "leipzig" and "zig". */
+	@Test
+	public void testBuild() {
+		NGramModel model = NGramModel.build(Arrays.asList("leipzig", "zig"));
+
+		assertEquals(10, model.getNumberLetterTokens());
+		assertEquals(12, model.getNumberBigramTokens());
+		assertEquals(14, model.getNumberTrigramTokens());
+		assertEquals(6, model.getNumberLetterTypes());
+
+		assertEquals(2, model.getLetterCount('z'));
+		assertEquals(0, model.getLetterCount(NGramModel.EOW));
+		assertEquals(2, model.getBigramCount('g', NGramModel.EOW));
+		assertEquals(1, model.getBigramCount(NGramModel.SOW, 'z'));
+		assertEquals(0, model.getBigramCount(NGramModel.EOW, NGramModel.EOW));
+		assertEquals(2, model.getTrigramCount('z', 'i', 'g'));
+		assertEquals(2, model.getTrigramCount('g', NGramModel.EOW, NGramModel.EOW));
+		assertEquals(1, model.getTrigramCount(NGramModel.SOW, NGramModel.SOW, 'l'));
+		assertEquals(0, model.getTrigramCount('g', 'i', 'z'));
+
+		assertEquals(0.2f, model.getLetterProbability('z'), 1e-6);
+		assertEquals(2f / 12, model.getBigramProbability('z', 'i'), 1e-6);
+	}
+
+	/** Temporary snapshot files. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * A snapshot has to restore all counts for the same data version and has
+	 * to be ignored for other versions.
+	 */
+	@Test
+	public void testSnapshot() throws IOException {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < 2000; i++)
+			names.add("ort" + (char) ('a' + i % 26) + (char) ('a' + i / 26 % 26) + "\u00e4" + i % 7);
+		NGramModel model = NGramModel.build(names);
+		File file = new File(this.folder.getRoot(), "ngrams.bin");
+		assertNull(NGramModelSnapshot.read(file, 42L));
+
+		NGramModelSnapshot.write(model, file, 42L);
+		assertNull(NGramModelSnapshot.read(file, 43L));
+		NGramModel read = NGramModelSnapshot.read(file, 42L);
+		assertEquals(model.getNumberLetterTokens(), read.getNumberLetterTokens());
+		assertEquals(model.getNumberBigramTokens(), read.getNumberBigramTokens());
+		assertEquals(model.getNumberTrigramTokens(), read.getNumberTrigramTokens());
+		assertEquals(model.getNumberLetterTypes(), read.getNumberLetterTypes());
+		assertEquals(model.getNumberBigramTypes(), read.getNumberBigramTypes());
+		assertEquals(model.getNumberTrigramTypes(), read.getNumberTrigramTypes());
+		assertTrue(Arrays.equals(model.getLetterCounts(), read.getLetterCounts()));
+		for (String name : names) {
+			assertEquals(model.getBigramCount(name.charAt(2), name.charAt(3)),
+					read.getBigramCount(name.charAt(2), name.charAt(3)));
+			assertEquals(model.getTrigramCount(name.charAt(3), name.charAt(4), name.charAt(5)),
+					read.getTrigramCount(name.charAt(3), name.charAt(4), name.charAt(5)));
+		}
+		assertEquals(0, read.getTrigramCount('x', 'y', 'z'));
+	}
+
+	/**
+	 * Statistics have to persist their model and have to read it again as
+	 * long as the cities are unchanged.
+	 */
+	@Test
+	public void testStatisticsSnapshot() throws IOException {
+		GraphDatabaseService graphDb = this.graph.load(CityRows.createRows("leipzig", "pelzig", "zig"));
+		File file = new File(this.folder.getRoot(), "ngrams.bin");
+		GraphProperties properties = new GraphProperties(graphDb);
+		NGramModel built = new Statistics(properties, file).getModel();
+		assertTrue(file.isFile());
+		assertNotNull(NGramModelSnapshot.read(file, DataVersion.get(graphDb)));
+		assertEquals(built.getNumberTrigramTokens(),
+				new Statistics(properties, file).getModel().getNumberTrigramTokens());
+
+		try (IncrementalLoad load = new IncrementalLoad(graphDb)) {
+			load.insert("zeitz", 51.0f, 12.1f);
+		}
+		assertNull(NGramModelSnapshot.read(file, DataVersion.get(graphDb)));
+		NGramModel rebuilt = new Statistics(new GraphProperties(graphDb), file).getModel();
+		assertEquals(built.getNumberLetterTokens() + 5, rebuilt.getNumberLetterTokens());
+	}
+
+	/** The table has to keep all counts when it grows. */
+	@Test
+	public void testPackedCountTableGrows() {
+		PackedCountTable table = new PackedCountTable(1);
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < 5000; i++) {
+			long key = NGramModel.pack((char) (i % 97), (char) (i % 89), (char) (i % 7));
+			table.increment(key);
+			Integer old = expected.get(key);
+			expected.put(key, old == null ? 1 : old + 1);
+		}
+
+		assertEquals(expected.size(), table.size());
+		assertTrue(table.size() <= table.capacity() / 2);
+		for (Map.Entry<Long, Integer> entry : expected.entrySet())
+			assertEquals(entry.getValue().intValue(), table.get(entry.getKey()));
+		assertEquals(0, table.get(NGramModel.pack('x', 'y', 'z')));
+	}
+
+	/**
+	 * The distributions of the statistics are derived from the model and have
+	 * to contain the padded n-grams.
+	 */
+	@Test
+	public void testStatisticsDistributions() {
+		Statistics statistics = new Statistics(SuffixTrie.build(
+				createData("leipzig", "pelzig", "zig")));
+
+		Map<String, Integer> trigrams = statistics.getTrigramDistribution();
+		assertEquals(Integer.valueOf(3), trigrams.get("zig"));
+		assertEquals(Integer.valueOf(3), trigrams.get("g##"));
+		assertEquals(Integer.valueOf(1), trigrams.get("$$p"));
+		assertEquals(statistics.getNumberTrigramTypes(), trigrams.size());
+		assertEquals(Integer.valueOf(3), statistics.getBigramDistribution().get("zi"));
+		assertEquals(Integer.valueOf(2), statistics.getLetterDistribution().get('l'));
+	}
+
+	/**
+	 * Creates rows like the output of the extraction.
+	 *
+	 * @param names
+	 *            City names.
+	 * @return Extracted data.
+	 */
+	private static List<Map<String, String>> createData(String... names) {
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < names.length; i++) {
+			Map<String, String> row = new HashMap<String, String>();
+			row.put("id", Integer.toString(i + 1));
+			row.put("city", names[i]);
+			row.put("latitude", "50.0");
+			row.put("longitude", "10.0");
+			data.add(row);
+		}
+		return data;
+	}
+
+}
@@ -0,0 +1,106 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import clustering.ParameterSweep.Setting;
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.Suffix;
+import representation.SuffixTrie;
+
+/**
+ * Tests for {@link ParameterSweep}.
+ *
+ * @author MM
+ *
+ */
+public class ParameterSweepTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * Each setting of the sweep has to find the same candidates as a separate
+	 * clustering with its critical values, and the sweep must not write to the
+	 * graph.
+	 */
+	@Test
+	public void testSweepEqualsSeparateRuns() throws IOException, NoSuchFieldException {
+		String[] prefixes = { "alt", "neu", "ober", "unter", "gross", "klein", "wald", "berg", "nieder", "rot" };
+		String[] endings = { "dorf", "hof", "bach", "hausen", "heim", "stedt", "ingen", "stein", "feld", "au" };
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < endings.length; i++)
+			for (int k = 0; k <= i; k++)
+				data.add(CityRows.createRow(data.size() + 1, prefixes[k] + endings[i], 51.0, 12.0));
+
+		GraphDatabaseService graphDb = this.graph.load(data);
+		GraphProperties properties = new GraphProperties(graphDb);
+		properties.addPropertySubsumedCities();
+		Statistics statistics = new Statistics(SuffixTrie.build(data));
+
+		List<Setting> settings = new ArrayList<Setting>();
+		float[][] bounds = { { 0f, 0f }, { 0.05f, 0.1f }, { 0.1f, 0.5f }, { 0f, 0.8f } };
+		for (float[] b : bounds)
+			settings.add(new Setting(b[0], b[1]));
+		Setting never = new Setting(0f, 0f, new InterpolatedScorer(statistics.getModel(), 0.2f, 0.3f, 0.5f, 1000f));
+		settings.add(never);
+		SignificanceScorer wittenBell = new WittenBellScorer(statistics.getModel());
+		Setting other = new Setting(0f, 0.8f, wittenBell);
+		settings.add(other);
+
+		new SuffixClustering(graphDb, properties, statistics).removeClusterCandidateProperty();
+		Map<Setting, Set<Suffix>> result = new ParameterSweep(graphDb, properties, statistics, settings).run(4);
+		assertEquals(settings.size(), result.size());
+		assertTrue(result.get(never).isEmpty());
+
+		SuffixClustering check = new SuffixClustering(graphDb, properties, statistics);
+		assertTrue(check.getClusterCandidates().isEmpty());
+		boolean isAnyFound = false;
+		for (float[] b : bounds) {
+			SuffixClustering clustering = new SuffixClustering(graphDb, properties, statistics, 0f, b[0], b[1]);
+			clustering.removeClusterCandidateProperty();
+			clustering.determineClusterCandidatesByNGrams();
+			Set<String> expected = toStrings(graphDb, clustering.getClusterCandidates());
+			assertEquals(expected,
+					toStrings(graphDb, result.get(new Setting(b[0], b[1]))));
+			isAnyFound |= !expected.isEmpty();
+		}
+		assertTrue(isAnyFound);
+
+		// the sweep delegates to the scorer of the setting
+		SuffixClustering clustering = new SuffixClustering(graphDb, properties, statistics, 0f, 0f, 0.8f);
+		clustering.setSignificanceScorer(wittenBell);
+		clustering.removeClusterCandidateProperty();
+		clustering.determineClusterCandidatesByNGrams();
+		assertEquals(toStrings(graphDb, clustering.getClusterCandidates()),
+				toStrings(graphDb, result.get(other)));
+		assertEquals(4, Setting.grid(new float[] { 0f, 0.1f }, new float[] { 0f }, wittenBell, null).size());
+	}
+
+	/**
+	 * Returns the sorted strings of suffix nodes.
+	 */
+	private static Set<String> toStrings(GraphDatabaseService graphDb, Set<Suffix> suffixes) {
+		Set<String> strings = new TreeSet<String>();
+		try (Transaction tx = graphDb.beginTx()) {
+			for (Suffix s : suffixes)
+				strings.add((String) s.getUnderlyingNode().getProperty(Suffix.KEY_STR));
+		}
+		return strings;
+	}
+
+}
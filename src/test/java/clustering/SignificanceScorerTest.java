@@ -0,0 +1,104 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of {@link InterpolatedScorer}, {@link WittenBellScorer}, and
+ * {@link SignificanceScorers}.
+ *
+ * @author MM
+ *
+ */
+public class SignificanceScorerTest {
+
+	/** Model of some city names. */
+	private final NGramModel model = NGramModel
+			.build(Arrays.asList("leipzig", "zig", "zell", "wedel", "kiel", "celle", "zeil"));
+
+	/** Clears the system properties. */
+	@After
+	public void tearDown() {
+		System.clearProperty(SignificanceScorers.SCORER_PROPERTY);
+		System.clearProperty(SignificanceScorers.ALPHA_PROPERTY);
+		System.clearProperty(SignificanceScorers.WEIGHTS_PROPERTY);
+	}
+
+	/** Precomputed probabilities equal the interpolated ones. */
+	@Test
+	public void testInterpolated() {
+		InterpolatedScorer scorer = new InterpolatedScorer(this.model, 0.2f, 0.3f, 0.5f, 1.5f);
+
+		// "zell": seen trigram
+		float expected = 0.2f * this.model.getLetterProbability('z')
+				+ 0.3f * this.model.getBigramConditionalProbability('z', 'e')
+				+ 0.5f * this.model.getTrigramConditionalProbability('z', 'e', 'l');
+		assertEquals(expected, scorer.getProbability('z', 'e', 'l'), 1e-6);
+
+		// "kel": unseen trigram
+		expected = 0.2f * this.model.getLetterProbability('k')
+				+ 0.3f * this.model.getBigramConditionalProbability('k', 'e')
+				+ 0.5f * this.model.getTrigramConditionalProbability('k', 'e', 'l');
+		assertEquals(expected, scorer.getProbability('k', 'e', 'l'), 1e-6);
+
+		float p = scorer.getProbability('z', 'e', 'l');
+		assertTrue(scorer.isSignificant('z', 'e', 'l', (int) Math.ceil(p * 1.5f * 1000) + 1, 1000));
+		assertFalse(scorer.isSignificant('z', 'e', 'l', (int) Math.floor(p * 1.5f * 1000), 1000));
+	}
+
+	/** Witten-Bell probabilities of a context form a distribution. */
+	@Test
+	public void testWittenBell() {
+		WittenBellScorer scorer = new WittenBellScorer(this.model);
+
+		float sum = 0;
+		for (int a = 0; a <= Character.MAX_VALUE; a++) {
+			float p = scorer.getProbability((char) a, 'e', 'l');
+			assertTrue(p >= 0 && p <= 1);
+			sum += p;
+		}
+		assertEquals(1f, sum, 1e-3);
+
+		// seen trigrams are more likely than unseen ones
+		assertTrue(scorer.getProbability('z', 'e', 'l') > scorer.getProbability('k', 'e', 'l'));
+		// unknown contexts back off to the letter probability
+		assertEquals(this.model.getLetterProbability('z'), scorer.getProbability('z', 'x', 'y'), 1e-6);
+	}
+
+	/** Scorers are chosen by system properties. */
+	@Test
+	public void testFromSystemProperties() {
+		assertTrue(SignificanceScorers.fromSystemProperties(this.model) instanceof InterpolatedScorer);
+
+		System.setProperty(SignificanceScorers.WEIGHTS_PROPERTY, "0, 0, 1");
+		System.setProperty(SignificanceScorers.ALPHA_PROPERTY, "2");
+		SignificanceScorer scorer = SignificanceScorers.fromSystemProperties(this.model);
+		assertEquals(this.model.getTrigramConditionalProbability('z', 'e', 'l'), scorer.getProbability('z', 'e', 'l'),
+				1e-6);
+		assertEquals("interpolated (weights=0.0,0.0,1.0, alpha=2.0)", scorer.toString());
+
+		System.setProperty(SignificanceScorers.SCORER_PROPERTY, SignificanceScorers.WITTEN_BELL);
+		assertTrue(SignificanceScorers.fromSystemProperties(this.model) instanceof WittenBellScorer);
+	}
+
+	/** Invalid properties are rejected. */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownScorer() {
+		System.setProperty(SignificanceScorers.SCORER_PROPERTY, "kneser-ney");
+		SignificanceScorers.fromSystemProperties(this.model);
+	}
+
+	/** Invalid weights are rejected. */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWeights() {
+		System.setProperty(SignificanceScorers.WEIGHTS_PROPERTY, "0.5,0.5");
+		SignificanceScorers.fromSystemProperties(this.model);
+	}
+
+}
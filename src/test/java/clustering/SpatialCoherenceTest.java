@@ -0,0 +1,157 @@
+package clustering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.CityIndex;
+import representation.CompactSuffixTrie;
+import representation.Suffix;
+import representation.SuffixTrie;
+
+/**
+ * Tests of {@link SpatialCoherence}.
+ *
+ * @author MM
+ *
+ */
+public class SpatialCoherenceTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * Creates 60 cities per ending below the parent suffix 'w': the cities of
+	 * 'ow' lie within a few kilometres, the others are spread over Europe.
+	 *
+	 * @return Extracted data.
+	 */
+	private static List<Map<String, String>> createData() {
+		Random random = new Random(7);
+		String[] endings = { "ow", "ew", "aw" };
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		for (String ending : endings) {
+			for (int i = 0; i < 60; i++) {
+				boolean isTight = ending.equals("ow");
+				double latitude = isTight ? 52 + 0.1 * random.nextDouble() : 40 + 20 * random.nextDouble();
+				double longitude = isTight ? 14 + 0.1 * random.nextDouble() : 20 * random.nextDouble();
+				data.add(CityRows.createRow(data.size() + 1,
+						"" + (char) ('a' + i / 26) + (char) ('a' + i % 26) + ending, latitude, longitude));
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * A tight cluster has to be significant, a random part of the parent not.
+	 * Roots and the parent itself cannot be tested.
+	 */
+	@Test
+	public void testTrie() {
+		SuffixTrie trie = SuffixTrie.build(createData());
+		SpatialCoherence coherence = new SpatialCoherence(99, 0.05, 2);
+		int ow = trie.find("ow"), ew = trie.find("ew"), w = trie.find("w");
+		Map<Integer, Double> pValues = coherence.test(trie, Arrays.asList(ow, ew, w));
+
+		assertEquals(0.01, pValues.get(ow), 1e-9);
+		assertTrue(coherence.isSignificant(pValues.get(ow)));
+		assertTrue(pValues.get(ew) > 0.05);
+		assertEquals(1, pValues.get(w), 0);
+
+		SuffixClustering clustering = new SuffixClustering(new Statistics(trie), 0.1f, 0f, 0f);
+		Set<Integer> significant = clustering.determineGeoSignificantCandidates(trie,
+				new TreeSet<Integer>(Arrays.asList(ow, ew, w)), coherence);
+		assertEquals(1, significant.size());
+		assertTrue(significant.contains(ow));
+	}
+
+	/**
+	 * The p-values must not depend on the number of threads or the trie
+	 * implementation.
+	 */
+	@Test
+	public void testDeterministic() {
+		List<Map<String, String>> data = createData();
+		SuffixTrie trie = SuffixTrie.build(data);
+		CompactSuffixTrie compact = CompactSuffixTrie.build(data);
+		List<Integer> nodes = new ArrayList<Integer>(), compactNodes = new ArrayList<Integer>();
+		for (String str : new String[] { "ow", "ew", "aw", "bow", "w" }) {
+			nodes.add(trie.find(str));
+			compactNodes.add(compact.find(str));
+		}
+
+		double[] sequential = values(new SpatialCoherence(49, 0.05, 1).test(trie, nodes));
+		double[] parallel = values(new SpatialCoherence(49, 0.05, 4).test(trie, nodes));
+		assertTrue(Arrays.equals(sequential, parallel));
+		assertEquals(5, sequential.length);
+		for (double p : sequential)
+			assertTrue(p > 0 && p <= 1);
+
+		// same cities, thus the same significance
+		double[] other = values(new SpatialCoherence(49, 0.05, 4).test(compact, compactNodes));
+		for (int i = 0; i < other.length; i++)
+			assertEquals(sequential[i] <= 0.05, other[i] <= 0.05);
+	}
+
+	/**
+	 * The flag has to be written to the cluster candidates of the graph and
+	 * removed with the candidates.
+	 */
+	@Test
+	public void testGraph() throws IOException {
+		GraphDatabaseService db = this.graph.load(createData());
+		GraphProperties properties = new GraphProperties(db);
+		properties.addPropertySubsumedCities();
+		try (Transaction tx = db.beginTx()) {
+			for (String str : new String[] { "ow", "ew" })
+				db.findNode(Suffix.LABEL, Suffix.KEY_STR, str).setProperty(Suffix.KEY_CLUSTER, true);
+			tx.success();
+		}
+
+		SuffixClustering clustering = new SuffixClustering(db, properties, null, 0.1f, 0f, 0f);
+		SpatialCoherence coherence = new SpatialCoherence(99, 0.05, 4);
+		assertEquals(1, clustering.determineGeoSignificance(coherence, CityIndex.build(db)));
+		try (Transaction tx = db.beginTx()) {
+			assertEquals(true, db.findNode(Suffix.LABEL, Suffix.KEY_STR, "ow").getProperty(Suffix.KEY_GEO_SIGNIFICANT));
+			assertEquals(false, db.findNode(Suffix.LABEL, Suffix.KEY_STR, "ew").getProperty(Suffix.KEY_GEO_SIGNIFICANT));
+			assertFalse(db.findNode(Suffix.LABEL, Suffix.KEY_STR, "aw").hasProperty(Suffix.KEY_GEO_SIGNIFICANT));
+		}
+
+		clustering.removeClusterCandidateProperty();
+		try (Transaction tx = db.beginTx()) {
+			Node ow = db.findNode(Suffix.LABEL, Suffix.KEY_STR, "ow");
+			assertFalse(ow.hasProperty(Suffix.KEY_CLUSTER));
+			assertFalse(ow.hasProperty(Suffix.KEY_GEO_SIGNIFICANT));
+		}
+	}
+
+	/**
+	 * Returns the p-values in the order of the candidates.
+	 */
+	private static double[] values(Map<Integer, Double> pValues) {
+		double[] values = new double[pValues.size()];
+		int i = 0;
+		for (double p : pValues.values())
+			values[i++] = p;
+		return values;
+	}
+
+}
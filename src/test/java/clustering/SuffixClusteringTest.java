@@ -1,17 +1,30 @@
 package clustering;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
 
+import database.DataVersion;
 import database.DatabaseAccess;
+import fixtures.CityGraph;
+import fixtures.CityRows;
 import representation.Suffix;
+import representation.SuffixTrie;
 
 /**
  * Tests of {@link SuffixClustering}.
@@ -74,4 +87,139 @@ public class SuffixClusteringTest {
 		actual = clustering.getMaxClusterSize();
 		assertEquals(119, actual);
 	}
+	
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+	
+	/**
+	 * Test method for {@link SuffixClustering#determineClusterCandidatesByNGrams(int)}
+	 * and {@link SuffixClustering#determineClusterCandidatesByProportion(int)}: the
+	 * parallel mode has to find the same candidates as the sequential one.
+	 */
+	@Test
+	public void testParallelEqualsSequential() throws IOException, NoSuchFieldException {
+		List<Map<String, String>> data = createData();
+		
+		GraphDatabaseService graphDb = this.graph.load(data);
+		GraphProperties properties = new GraphProperties(graphDb);
+		properties.addPropertySubsumedCities();
+		Statistics statistics = new Statistics(SuffixTrie.build(data));
+		SuffixClustering clustering = new SuffixClustering(graphDb, properties, statistics, 0.1f, 0f, 0f);
+		clustering.setSplitSize(5);
+		
+		clustering.removeClusterCandidateProperty();
+		clustering.determineClusterCandidatesByNGrams();
+		Set<String> expected = toStrings(graphDb, clustering.getClusterCandidates());
+		clustering.removeClusterCandidateProperty();
+		clustering.determineClusterCandidatesByNGrams(4);
+		Set<String> actual = toStrings(graphDb, clustering.getClusterCandidates());
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+		
+		expected = toStrings(graphDb, clustering.determineClusterCandidatesByProportion());
+		actual = toStrings(graphDb, clustering.determineClusterCandidatesByProportion(4));
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+	
+	/**
+	 * Test method for
+	 * {@link SuffixClustering#determineClusterCandidatesByNGramsIncrementally(int)}:
+	 * only dirty trees and trees clustered with other parameters or another
+	 * version of the cities are clustered again, the candidates of the other
+	 * trees are kept.
+	 */
+	@Test
+	public void testIncrementalClustering() throws IOException, NoSuchFieldException {
+		List<Map<String, String>> data = createData();
+
+		GraphDatabaseService graphDb = this.graph.load(data);
+		GraphProperties properties = new GraphProperties(graphDb);
+		properties.addPropertySubsumedCities();
+		Statistics statistics = new Statistics(SuffixTrie.build(data));
+		SuffixClustering clustering = new SuffixClustering(graphDb, properties, statistics, 0.1f, 0f, 0f);
+		clustering.removeClusterCandidateProperty();
+		clustering.determineClusterCandidatesByNGrams(4);
+		Set<String> expected = toStrings(graphDb, clustering.getClusterCandidates());
+		assertFalse(expected.isEmpty());
+
+		// first run: all trees
+		int countRoots = properties.getRootNodes().size();
+		assertEquals(countRoots, clustering.determineClusterCandidatesByNGramsIncrementally(4));
+		assertEquals(expected, toStrings(graphDb, clustering.getClusterCandidates()));
+		assertEquals(0, clustering.determineClusterCandidatesByNGramsIncrementally(4));
+
+		// dirty tree: a marker within another tree has to be kept
+		try (Transaction tx = graphDb.beginTx()) {
+			graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, "n").setProperty(Suffix.KEY_CLUSTER, true);
+			graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, "f").setProperty(Suffix.KEY_DIRTY, true);
+			graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, "dorf").setProperty(Suffix.KEY_CLUSTER, true);
+			tx.success();
+		}
+		assertEquals(1, clustering.determineClusterCandidatesByNGramsIncrementally(4));
+		Set<String> actual = toStrings(graphDb, clustering.getClusterCandidates());
+		assertTrue(actual.contains("n"));
+		actual.remove("n");
+		assertEquals(expected, actual);
+
+		// other parameters: all trees
+		SuffixClustering other = new SuffixClustering(graphDb, properties, statistics, 0.2f, 0f, 0f);
+		assertEquals(countRoots, other.determineClusterCandidatesByNGramsIncrementally(4));
+		assertFalse(toStrings(graphDb, other.getClusterCandidates()).contains("n"));
+
+		// other scorer, alpha, or weights: all trees
+		assertEquals(0, other.determineClusterCandidatesByNGramsIncrementally(4));
+		other.setSignificanceScorer(new WittenBellScorer(statistics.getModel()));
+		assertEquals(countRoots, other.determineClusterCandidatesByNGramsIncrementally(4));
+		assertEquals(0, other.determineClusterCandidatesByNGramsIncrementally(4));
+		other.setSignificanceScorer(new WittenBellScorer(statistics.getModel(), 2f));
+		assertEquals(countRoots, other.determineClusterCandidatesByNGramsIncrementally(4));
+		other.setSignificanceScorer(new InterpolatedScorer(statistics.getModel(), 0.1f, 0.3f, 0.6f,
+				SuffixClustering.ALPHA));
+		assertEquals(countRoots, other.determineClusterCandidatesByNGramsIncrementally(4));
+		assertEquals(0, other.determineClusterCandidatesByNGramsIncrementally(4));
+
+		// changed cities, thus another n-gram model: all trees
+		try (Transaction tx = graphDb.beginTx()) {
+			DataVersion.increment(graphDb);
+			tx.success();
+		}
+		assertEquals(countRoots, other.determineClusterCandidatesByNGramsIncrementally(4));
+		assertEquals(0, other.determineClusterCandidatesByNGramsIncrementally(4));
+	}
+
+	/**
+	 * Creates each combination of nine prefixes and nine endings, all at the
+	 * same location.
+	 * 
+	 * @return Rows like the output of the extraction.
+	 */
+	private static List<Map<String, String>> createData() {
+		String[] prefixes = { "alt", "neu", "ober", "unter", "gross", "klein", "wald", "berg", "nieder" };
+		String[] endings = { "dorf", "hof", "bach", "hausen", "heim", "stedt", "ingen", "stein", "feld" };
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		for (String ending : endings)
+			for (String prefix : prefixes)
+				data.add(CityRows.createRow(data.size() + 1, prefix + ending, 51.0, 12.0));
+		return data;
+	}
+
+	/**
+	 * Returns the strings of suffix nodes.
+	 * 
+	 * @param graphDb
+	 *            Graph database of the suffix nodes.
+	 * @param suffixes
+	 *            Suffix nodes.
+	 * @return Sorted strings.
+	 */
+	private static Set<String> toStrings(GraphDatabaseService graphDb, Set<Suffix> suffixes) {
+		Set<String> strings = new TreeSet<String>();
+		try (Transaction tx = graphDb.beginTx()) {
+			for (Suffix s : suffixes)
+				strings.add((String) s.getUnderlyingNode().getProperty(Suffix.KEY_STR));
+		}
+		return strings;
+	}
 }
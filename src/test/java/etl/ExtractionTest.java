@@ -1,13 +1,22 @@
 package etl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Tests for {@link Extraction}.
@@ -17,6 +26,32 @@ import org.junit.Test;
  */
 public class ExtractionTest {
 
+	/** Rows of a small Free World City Database. */
+	private static final List<String> ROWS = Arrays.asList(
+			"Country,City,AccentCity,Region,Population,Latitude,Longitude",
+			"ad,aixas,Aixas,06,,42.4833333,1.4666667",
+			"de,leipzig,Leipzig,13,,51.3,12.3333333",
+			"dk,zig,Zig,01,,55.1,9.2",
+			"de,pelzig,Pelzig,01,,52.0,14.0",
+			"des,dessau,Dessau,01,,51.8,12.2");
+
+	/** Temporary files. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Writes rows to a temporary file.
+	 *
+	 * @param rows
+	 *            Rows of the file.
+	 * @return Location of the file.
+	 */
+	private String createFile(List<String> rows) throws IOException {
+		File file = this.folder.newFile();
+		Files.write(file.toPath(), rows, StandardCharsets.ISO_8859_1);
+		return file.getPath();
+	}
+
 	/**
 	 * Test method for
 	 * {@link Extraction#extractFromFreeWorldCitiesDatabase(String)}.
@@ -34,4 +69,107 @@ public class ExtractionTest {
 
 	}
 
+	/**
+	 * Test method for
+	 * {@link Extraction#extractFromFreeWorldCitiesDatabase(String, String, CityRecordHandler)}.
+	 */
+	@Test
+	public void testExtractStreaming() throws IOException {
+		final List<CityRecord> records = new ArrayList<CityRecord>();
+		int count = Extraction.extractFromFreeWorldCitiesDatabase(createFile(ROWS), Extraction.COUNTRY_GERMANY,
+				new CityRecordHandler() {
+					@Override
+					public void handle(CityRecord record) {
+						records.add(record);
+					}
+				});
+
+		assertEquals(2, count);
+		assertEquals(2, records.size());
+		assertEquals("1,leipzig,51.3,12.3333333", records.get(0).toString());
+		assertEquals("2,pelzig,52.0,14.0", records.get(1).toString());
+		assertEquals(51.3f, records.get(0).getLatitude(), 1e-6);
+		assertEquals(14f, records.get(1).getLongitude(), 1e-6);
+
+		List<Map<String, String>> data = Extraction.extractFromFreeWorldCitiesDatabase(createFile(ROWS));
+		assertEquals(2, data.size());
+		assertEquals("pelzig", data.get(1).get("city"));
+		assertEquals("52.0", data.get(1).get("latitude"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link Extraction#extractFromFreeWorldCitiesDatabase(String, CityRecordPartitioner)}.
+	 */
+	@Test
+	public void testExtractAllCountries() throws IOException {
+		final Map<String, List<CityRecord>> partitions = new TreeMap<String, List<CityRecord>>();
+		Map<String, Integer> counts = Extraction.extractFromFreeWorldCitiesDatabase(createFile(ROWS),
+				new CityRecordPartitioner() {
+					@Override
+					public CityRecordHandler getHandler(String countryCode) {
+						assertFalse(partitions.containsKey(countryCode));
+						final List<CityRecord> records = new ArrayList<CityRecord>();
+						partitions.put(countryCode, records);
+						return new CityRecordHandler() {
+							@Override
+							public void handle(CityRecord record) {
+								records.add(record);
+							}
+						};
+					}
+				});
+
+		assertEquals("{ad=1, de=2, des=1, dk=1}", counts.toString());
+		assertEquals(counts.keySet(), partitions.keySet());
+		assertEquals("1,leipzig,51.3,12.3333333", partitions.get("de").get(0).toString());
+		assertEquals("2,pelzig,52.0,14.0", partitions.get("de").get(1).toString());
+		assertEquals("1,dessau,51.8,12.2", partitions.get("des").get(0).toString());
+	}
+
+	/** A row with a wrong number of columns is an error. */
+	@Test(expected = IOException.class)
+	public void testExtractStreamingWrongColumns() throws IOException {
+		List<String> rows = new ArrayList<String>(ROWS);
+		rows.add("de,leipzig,Leipzig,13,51.3,12.3333333");
+		Extraction.extractFromFreeWorldCitiesDatabase(createFile(rows), Extraction.COUNTRY_GERMANY,
+				new CityRecordHandler() {
+					@Override
+					public void handle(CityRecord record) {
+					}
+				});
+	}
+
+	/** A row with empty coordinates is an error. */
+	@Test(expected = IOException.class)
+	public void testExtractStreamingEmptyCoordinates() throws IOException {
+		List<String> rows = new ArrayList<String>(ROWS);
+		rows.add("de,leipzig,Leipzig,13,,,");
+		Extraction.extractFromFreeWorldCitiesDatabase(createFile(rows), Extraction.COUNTRY_GERMANY,
+				new CityRecordHandler() {
+					@Override
+					public void handle(CityRecord record) {
+					}
+				});
+	}
+
+	/**
+	 * The streamed CSV file has to equal the one written from the extracted
+	 * list.
+	 */
+	@Test
+	public void testCsvCityWriter() throws IOException {
+		String rawData = createFile(ROWS);
+		File expected = this.folder.newFile();
+		Extraction.writeToCsvFile(expected.getPath(), Extraction.extractFromFreeWorldCitiesDatabase(rawData));
+
+		File actual = this.folder.newFile();
+		try (CsvCityWriter writer = new CsvCityWriter(actual.getPath())) {
+			Extraction.extractFromFreeWorldCitiesDatabase(rawData, Extraction.COUNTRY_GERMANY, writer);
+		}
+
+		assertEquals(Files.readAllLines(expected.toPath(), StandardCharsets.UTF_8),
+				Files.readAllLines(actual.toPath(), StandardCharsets.UTF_8));
+	}
+
 }
@@ -0,0 +1,214 @@
+package etl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import clustering.GeoDistance;
+import clustering.GraphProperties;
+import database.DataVersion;
+import fixtures.CityGraph;
+import representation.City;
+import representation.EdgeTypes;
+import representation.GeoStatistics;
+import representation.Suffix;
+
+/**
+ * Tests for {@link IncrementalLoad}.
+ *
+ * @author MM
+ *
+ */
+public class IncrementalLoadTest {
+
+	/** Temporary deltas. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * Applying a delta to a loaded graph has to result in the same graph as
+	 * loading the changed data from scratch. Only touched trees are dirty and
+	 * only touched suffixes lose their geo-statistics.
+	 */
+	@Test
+	public void testApplyDelta() throws IOException {
+		String[][] before = { { "leipzig", "51.0", "12.0" }, { "pelzig", "45.0", "10.0" }, { "zig", "50.0", "11.0" },
+				{ "berlin", "52.0", "13.0" }, { "hof", "50.5", "11.5" } };
+		String[][] after = { { "leipzig", "51.0", "12.0" }, { "pelzig", "46.0", "10.5" },
+				{ "berlin", "52.0", "13.0" }, { "lindig", "50.75", "11.25" }, { "leipzig", "51.5", "12.5" } };
+		File delta = this.folder.newFile("delta.csv");
+		try (Writer writer = new FileWriter(delta)) {
+			writer.write("operation,city,latitude,longitude,newLatitude,newLongitude\n");
+			writer.write("insert,lindig,50.75,11.25,,\n");
+			writer.write("insert,leipzig,51.5,12.5,,\n");
+			writer.write("update,pelzig,45.0,10.0,46.0,10.5\n");
+			writer.write("delete,zig,50.0,11.0,,\n");
+			writer.write("delete,hof,50.5,11.5,,\n");
+			writer.write("delete,foo,1.0,1.0,,\n");
+		}
+
+		GraphDatabaseService incrementalDb = this.graph.load(createData(before));
+		GraphDatabaseService expectedDb = this.graph.load(createData(after));
+		new GraphProperties(incrementalDb).addPropertySubsumedCities();
+		new GraphProperties(expectedDb).addPropertySubsumedCities();
+		GeoDistance geoDistance = new GeoDistance(incrementalDb);
+		geoDistance.calcAvgEuclideanDist(find(incrementalDb, "in"));
+		geoDistance.calcAvgEuclideanDist(find(incrementalDb, "ig"));
+
+		long version = DataVersion.get(incrementalDb);
+		assertTrue(version > 0);
+		try (IncrementalLoad load = new IncrementalLoad(incrementalDb)) {
+			assertEquals(5, load.applyDelta(delta.getPath()));
+			assertEquals(2, load.getCountInserted());
+			assertEquals(1, load.getCountUpdated());
+			assertEquals(2, load.getCountDeleted());
+			assertEquals(1, load.getCountMissing());
+		}
+
+		assertTrue(DataVersion.get(incrementalDb) > version);
+		assertEquals(describeGraph(expectedDb), describeGraph(incrementalDb));
+		try (Transaction tx = incrementalDb.beginTx()) {
+			assertTrue(find(incrementalDb, "g").getUnderlyingNode().hasProperty(Suffix.KEY_DIRTY));
+			assertFalse(find(incrementalDb, "n").getUnderlyingNode().hasProperty(Suffix.KEY_DIRTY));
+			assertNull(incrementalDb.findNode(Suffix.LABEL, Suffix.KEY_STR, "f"));
+			assertTrue(hasGeoStatistics(find(incrementalDb, "in")));
+			assertFalse(hasGeoStatistics(find(incrementalDb, "ig")));
+		}
+
+		// moving a city keeps the set of cities, thus the stamp
+		version = DataVersion.get(incrementalDb);
+		try (IncrementalLoad load = new IncrementalLoad(incrementalDb)) {
+			assertTrue(load.update("berlin", 52f, 13f, 52.5f, 13.5f));
+		}
+		assertEquals(version, DataVersion.get(incrementalDb));
+	}
+
+	/**
+	 * A malformed line within a batch has to roll back the whole batch and its
+	 * counts, committed batches are kept, and nothing is committed on closing.
+	 */
+	@Test
+	public void testMalformedChange() throws IOException {
+		String[][] before = { { "leipzig", "51.0", "12.0" }, { "zig", "50.0", "11.0" } };
+		String[][] committed = { { "leipzig", "51.0", "12.0" }, { "zig", "50.0", "11.0" }, { "hof", "50.5", "11.5" } };
+		File delta = this.folder.newFile("delta.csv");
+		try (Writer writer = new FileWriter(delta)) {
+			writer.write("operation,city,latitude,longitude,newLatitude,newLongitude\n");
+			writer.write("insert,lindig,50.75,11.25,,\n");
+			writer.write("delete,zig,50.0,11.0,,\n");
+			writer.write("delete,foo,1.0,1.0,,\n");
+			writer.write("update,leipzig,51.0,12.0,north,12.5\n");
+			writer.write("insert,berlin,52.0,13.0,,\n");
+		}
+
+		GraphDatabaseService incrementalDb = this.graph.load(createData(before));
+		GraphDatabaseService expectedDb = this.graph.load(createData(committed));
+		new GraphProperties(incrementalDb).addPropertySubsumedCities();
+		new GraphProperties(expectedDb).addPropertySubsumedCities();
+
+		long version;
+		try (IncrementalLoad load = new IncrementalLoad(incrementalDb)) {
+			load.insert("hof", 50.5f, 11.5f);
+			load.commit();
+			version = DataVersion.get(incrementalDb);
+			try {
+				load.applyDelta(delta.getPath());
+				fail("The malformed line has to be rejected.");
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(1, load.getCountInserted());
+			assertEquals(0, load.getCountUpdated());
+			assertEquals(0, load.getCountDeleted());
+			assertEquals(0, load.getCountMissing());
+			try {
+				load.insert("berlin", 52.0f, 13.0f);
+				fail("Changes after a failure have to be rejected.");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+
+		assertEquals(version, DataVersion.get(incrementalDb));
+		assertEquals(describeGraph(expectedDb), describeGraph(incrementalDb));
+	}
+
+	/**
+	 * Creates rows of cities, i.e. name, latitude, and longitude.
+	 */
+	private static List<Map<String, String>> createData(String[][] cities) {
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < cities.length; i++) {
+			Map<String, String> row = new HashMap<String, String>();
+			row.put("id", Integer.toString(i + 1));
+			row.put("city", cities[i][0]);
+			row.put("latitude", cities[i][1]);
+			row.put("longitude", cities[i][2]);
+			data.add(row);
+		}
+		return data;
+	}
+
+	private static Suffix find(GraphDatabaseService graphDb, String str) {
+		try (Transaction tx = graphDb.beginTx()) {
+			return new Suffix(graphDb.findNode(Suffix.LABEL, Suffix.KEY_STR, str));
+		}
+	}
+
+	private static boolean hasGeoStatistics(Suffix suffix) {
+		return suffix.getUnderlyingNode().hasRelationship(Direction.INCOMING, EdgeTypes.EUCLIDEAN_DIST);
+	}
+
+	/**
+	 * Describes the suffix and city nodes and the edges among them
+	 * independently from node ids.
+	 */
+	private static Set<String> describeGraph(GraphDatabaseService graphDb) {
+		Set<String> lines = new TreeSet<String>();
+		try (Transaction tx = graphDb.beginTx()) {
+			GlobalGraphOperations ops = GlobalGraphOperations.at(graphDb);
+			for (Node n : ops.getAllNodes())
+				if (!n.hasLabel(GeoStatistics.LABEL) && !n.hasLabel(DataVersion.LABEL))
+					lines.add(describeNode(n));
+			for (Relationship r : ops.getAllRelationships())
+				if (!r.isType(EdgeTypes.EUCLIDEAN_DIST))
+					lines.add(describeNode(r.getStartNode()) + " -" + r.getType().name() + "-> "
+							+ describeNode(r.getEndNode()));
+		}
+		return lines;
+	}
+
+	private static String describeNode(Node n) {
+		if (n.hasLabel(Suffix.LABEL))
+			return "suffix:" + n.getProperty(Suffix.KEY_STR) + "(" + n.getProperty(Suffix.KEY_SUBSCITIES) + ")";
+		return "city:" + n.getProperty(City.LATITUDE) + "," + n.getProperty(City.LONGITUDE);
+	}
+
+}
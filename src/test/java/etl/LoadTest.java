@@ -1,15 +1,30 @@
 package etl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.junit.Rule;
 import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
 
+import database.DataVersion;
 import database.DatabaseAccess;
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.City;
+import representation.Suffix;
 
 public class LoadTest {
 
@@ -34,4 +49,82 @@ public class LoadTest {
 		Load.loadCityAndSuffix(graphDb, data);
 	}
 
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * Test method for {@link BatchLoad#loadCityAndSuffix(String, List)}: the
+	 * batch inserter has to build the same graph as
+	 * {@link Load#loadCityAndSuffix(GraphDatabaseService, List)}.
+	 */
+	@Test
+	public void testBatchLoadCityAndSuffix() throws IOException {
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		data.add(CityRows.createRow(1, "leipzig", 51.3397, 12.3731));
+		data.add(CityRows.createRow(2, "pelzig", 45.050, 10.1234));
+		data.add(CityRows.createRow(3, "zig", 50.1, 11.2));
+		data.add(CityRows.createRow(4, "leipzig", 51.0, 12.0));
+
+		GraphDatabaseService batchDb = this.graph.load(data);
+		GraphDatabaseService txDb = this.graph.create();
+		Load.loadCityAndSuffix(txDb, data);
+
+		Set<String> expected = describeGraph(txDb);
+		Set<String> actual = describeGraph(batchDb);
+		assertEquals(expected, actual);
+		// 10 suffixes + 4 cities, 9 suffix edges + 4 name edges
+		assertEquals(27, actual.size());
+	}
+
+	/**
+	 * The data version has to be incremented once per load, not per city.
+	 */
+	@Test
+	public void testDataVersion() throws IOException {
+		GraphDatabaseService graphDb = this.graph.create();
+		long version;
+		try (Load load = new Load(graphDb)) {
+			load.addCity("leipzig", 51.3397f, 12.3731f);
+			version = DataVersion.get(graphDb);
+			load.addCity("pelzig", 45.050f, 10.1234f);
+			assertEquals(version, DataVersion.get(graphDb));
+		}
+		assertTrue(DataVersion.get(graphDb) > version);
+	}
+
+	/**
+	 * Describes the nodes and edges of a graph independently from node ids.
+	 * 
+	 * @param graphDb
+	 *            A graph database.
+	 * @return One line per node and edge.
+	 */
+	private static Set<String> describeGraph(GraphDatabaseService graphDb) {
+		Set<String> lines = new TreeSet<String>();
+		try (Transaction tx = graphDb.beginTx()) {
+			GlobalGraphOperations ops = GlobalGraphOperations.at(graphDb);
+			for (Node n : ops.getAllNodes())
+				if (!n.hasLabel(DataVersion.LABEL))
+					lines.add(describeNode(n));
+			for (Relationship r : ops.getAllRelationships())
+				lines.add(describeNode(r.getStartNode()) + " -" + r.getType().name() + "-> "
+						+ describeNode(r.getEndNode()));
+		}
+		return lines;
+	}
+
+	/**
+	 * Describes a suffix or city node by its properties.
+	 * 
+	 * @param n
+	 *            A node.
+	 * @return Label and properties of the node.
+	 */
+	private static String describeNode(Node n) {
+		if (n.hasLabel(Suffix.LABEL))
+			return "suffix:" + n.getProperty(Suffix.KEY_STR);
+		return "city:" + n.getProperty(City.LATITUDE) + "," + n.getProperty(City.LONGITUDE);
+	}
+
 }
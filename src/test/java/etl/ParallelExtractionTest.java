@@ -0,0 +1,123 @@
+package etl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ParallelExtraction}.
+ *
+ * @author MM
+ *
+ */
+public class ParallelExtractionTest {
+
+	/** Country codes of the generated rows. */
+	private static final String[] COUNTRIES = { "de", "dk", "at", "ad", "d", "des" };
+
+	/** Temporary files. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Generates a Free World City Database with random rows.
+	 *
+	 * @param size
+	 *            Number of rows.
+	 * @param lineSeparator
+	 *            Line separator.
+	 * @return The file.
+	 */
+	private File createFile(int size, String lineSeparator) throws IOException {
+		Random random = new Random(7);
+		StringBuilder content = new StringBuilder("Country,City,AccentCity,Region,Population,Latitude,Longitude");
+		for (int i = 0; i < size; i++) {
+			String name = "city" + random.nextInt(1000);
+			content.append(lineSeparator).append(COUNTRIES[random.nextInt(COUNTRIES.length)]).append(',')
+					.append(name).append(',').append(name).append("\u00e4,").append(random.nextInt(20)).append(",,")
+					.append(47 + random.nextInt(80000) / 10000.0).append(',').append(6 + random.nextInt(90000) / 10000.0);
+		}
+		File file = this.folder.newFile();
+		Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.ISO_8859_1));
+		return file;
+	}
+
+	/**
+	 * Extracts the cities as strings.
+	 */
+	private static List<String> extract(String fileLocation, int threads, int minChunkSize) throws IOException {
+		final List<String> records = new ArrayList<String>();
+		CityRecordHandler handler = new CityRecordHandler() {
+			@Override
+			public void handle(CityRecord record) {
+				records.add(record.toString() + "|" + record.getLatitude() + "|" + record.getLongitude());
+			}
+		};
+		if (threads == 0)
+			Extraction.extractFromFreeWorldCitiesDatabase(fileLocation, Extraction.COUNTRY_GERMANY, handler);
+		else
+			ParallelExtraction.extract(fileLocation, Extraction.COUNTRY_GERMANY, threads, handler, minChunkSize);
+		return records;
+	}
+
+	/** The parallel extraction has to equal the sequential one. */
+	@Test
+	public void testExtractEqualsSequential() throws IOException {
+		for (String lineSeparator : new String[] { "\n", "\r\n" }) {
+			String fileLocation = createFile(2000, lineSeparator).getPath();
+			List<String> expected = extract(fileLocation, 0, 0);
+			assertTrue(expected.size() > 100);
+			for (int minChunkSize : new int[] { 1, 100, 4096, ParallelExtraction.MIN_CHUNK_SIZE })
+				assertEquals(expected, extract(fileLocation, 4, minChunkSize));
+		}
+	}
+
+	/** The chunks have to end at line breaks. */
+	@Test
+	public void testFindChunkBounds() throws IOException {
+		File file = createFile(500, "\n");
+		byte[] content = Files.readAllBytes(file.toPath());
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long[] bounds = ParallelExtraction.findChunkBounds(raf.getChannel(), 2, 1000);
+			assertEquals(0, bounds[0]);
+			assertEquals(content.length, bounds[bounds.length - 1]);
+			assertTrue(bounds.length > 2);
+			for (int i = 1; i < bounds.length - 1; i++) {
+				assertTrue(bounds[i] > bounds[i - 1]);
+				assertEquals('\n', content[(int) bounds[i] - 1]);
+			}
+		}
+	}
+
+	/** A row with a wrong number of columns is an error. */
+	@Test(expected = IOException.class)
+	public void testWrongColumns() throws IOException {
+		File file = createFile(1000, "\n");
+		Files.write(file.toPath(), "\nde,leipzig,Leipzig,13,51.3,12.3".getBytes(StandardCharsets.ISO_8859_1),
+				StandardOpenOption.APPEND);
+		extract(file.getPath(), 4, 100);
+	}
+
+	/** A row with empty coordinates is an error. */
+	@Test(expected = IOException.class)
+	public void testEmptyCoordinates() throws IOException {
+		File file = createFile(1000, "\n");
+		Files.write(file.toPath(), "\nde,leipzig,Leipzig,13,,,".getBytes(StandardCharsets.ISO_8859_1),
+				StandardOpenOption.APPEND);
+		extract(file.getPath(), 4, 100);
+	}
+
+}
@@ -0,0 +1,79 @@
+package fixtures;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import etl.BatchLoad;
+
+/**
+ * Rule for the tests which need a graph database: loads rows by the batch
+ * inserter into a temporary store and opens it. All databases opened by the
+ * rule are shut down and their stores are deleted after each test.
+ *
+ * @author MM
+ *
+ */
+public class CityGraph extends ExternalResource {
+
+	/** Temporary stores. */
+	private final TemporaryFolder folder = new TemporaryFolder();
+	/** Opened databases. */
+	private final List<GraphDatabaseService> databases = new ArrayList<GraphDatabaseService>();
+
+	@Override
+	protected void before() throws Throwable {
+		this.folder.create();
+	}
+
+	@Override
+	protected void after() {
+		for (GraphDatabaseService graphDb : this.databases)
+			graphDb.shutdown();
+		this.databases.clear();
+		this.folder.delete();
+	}
+
+	/**
+	 * Loads rows into a new store and opens it.
+	 *
+	 * @param data
+	 *            Rows like the output of the extraction, see {@link CityRows}.
+	 * @return The opened database.
+	 * @throws IOException
+	 *             If the store cannot be created.
+	 */
+	public GraphDatabaseService load(List<Map<String, String>> data) throws IOException {
+		File storeDir = this.folder.newFolder();
+		BatchLoad.loadCityAndSuffix(storeDir.getPath(), data);
+		return open(storeDir);
+	}
+
+	/**
+	 * Opens a new empty database.
+	 *
+	 * @return The opened database.
+	 * @throws IOException
+	 *             If the store cannot be created.
+	 */
+	public GraphDatabaseService create() throws IOException {
+		return open(this.folder.newFolder());
+	}
+
+	/**
+	 * Opens a store.
+	 */
+	private GraphDatabaseService open(File storeDir) {
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(storeDir);
+		this.databases.add(graphDb);
+		return graphDb;
+	}
+
+}
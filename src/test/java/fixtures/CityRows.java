@@ -0,0 +1,92 @@
+package fixtures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates rows like the output of the extraction, i.e. the input of
+ * {@link etl.BatchLoad#loadCityAndSuffix(String, List)}, for the tests which
+ * load synthetic cities.
+ *
+ * @author MM
+ *
+ */
+public final class CityRows {
+
+	/** Prefixes of the synthetic city names. */
+	private static final String[] PREFIXES = { "alt", "neu", "ober", "unter", "gross", "klein", "wald", "berg" };
+	/** Endings of the synthetic city names. */
+	private static final String[] ENDINGS = { "dorf", "hof", "bach", "hausen", "heim", "stedt", "ingen", "stein" };
+
+	private CityRows() {
+	}
+
+	/**
+	 * Creates a row.
+	 *
+	 * @param id
+	 *            Id of the city.
+	 * @param city
+	 *            Name of the city.
+	 * @param latitude
+	 *            Latitude of the city.
+	 * @param longitude
+	 *            Longitude of the city.
+	 * @return The row.
+	 */
+	public static Map<String, String> createRow(int id, String city, double latitude, double longitude) {
+		Map<String, String> row = new HashMap<String, String>();
+		row.put("id", Integer.toString(id));
+		row.put("city", city);
+		row.put("latitude", Double.toString(latitude));
+		row.put("longitude", Double.toString(longitude));
+		return row;
+	}
+
+	/**
+	 * Creates rows of cities close to each other.
+	 *
+	 * @param names
+	 *            City names.
+	 * @return Rows in the order of the names.
+	 */
+	public static List<Map<String, String>> createRows(String... names) {
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < names.length; i++)
+			data.add(createRow(i + 1, names[i], 50f + i / 100f, 10f + i / 100f));
+		return data;
+	}
+
+	/**
+	 * Creates synthetic city names, i.e. each of eight prefixes combined with
+	 * each of eight endings.
+	 *
+	 * @return City names.
+	 */
+	public static String[] createNames() {
+		List<String> names = new ArrayList<String>();
+		for (String ending : ENDINGS)
+			for (String prefix : PREFIXES)
+				names.add(prefix + ending);
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Creates six prefixes combined with 'dorf', 'hof', and 'heim', spread
+	 * over central Europe.
+	 *
+	 * @return Rows of 18 cities.
+	 */
+	public static List<Map<String, String>> createVillages() {
+		String[] prefixes = { "alt", "neu", "ober", "unter", "gross", "klein" };
+		String[] endings = { "dorf", "hof", "heim" };
+		List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < prefixes.length * endings.length; i++)
+			data.add(createRow(i + 1, prefixes[i % prefixes.length] + endings[i / prefixes.length],
+					47.5f + (i * 7 % 13) / 2f, 6f + (i * 5 % 11) / 1.5f));
+		return data;
+	}
+
+}
@@ -0,0 +1,75 @@
+package representation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+import fixtures.CityGraph;
+import fixtures.CityRows;
+
+/**
+ * Tests for {@link CityIndex}.
+ *
+ * @author MM
+ *
+ */
+public class CityIndexTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * The index has to contain the same locations for each suffix as the
+	 * traversal of the graph, also if a city name is suffix of another city's
+	 * name.
+	 */
+	@Test
+	public void testLocationsEqualGraph() throws IOException {
+		List<Map<String, String>> data = CityRows.createRows(CityRows.createNames());
+		data.addAll(CityRows.createRows("dorf", "hof", "f", "hof"));
+
+		GraphDatabaseService db = this.graph.load(data);
+		CityIndex index = CityIndex.build(db);
+		assertEquals(data.size(), index.getCountCities());
+
+		try (Transaction tx = db.beginTx(); ResourceIterator<Node> nodes = db.findNodes(Suffix.LABEL)) {
+			int count = 0;
+			while (nodes.hasNext()) {
+				Suffix suffix = new Suffix(nodes.next());
+				List<String> expected = new ArrayList<String>();
+				for (Node city : Suffix.getAssocCityNodes(suffix.getUnderlyingNode()))
+					expected.add(city.getId() + ":" + city.getProperty(City.LATITUDE) + ","
+							+ city.getProperty(City.LONGITUDE));
+				List<String> actual = new ArrayList<String>();
+				double[] latitudes = index.getLatitudes(suffix);
+				double[] longitudes = index.getLongitudes(suffix);
+				for (int i = index.getStart(suffix); i < index.getEnd(suffix); i++) {
+					int k = i - index.getStart(suffix);
+					assertEquals(index.getLatitude(i), latitudes[k], 0);
+					assertEquals(index.getLongitude(i), longitudes[k], 0);
+					actual.add(index.getCityId(i) + ":" + index.getLatitude(i) + "," + index.getLongitude(i));
+				}
+				Collections.sort(expected);
+				Collections.sort(actual);
+				assertFalse(actual.isEmpty());
+				assertEquals(expected, actual);
+				count++;
+			}
+			assertEquals(index.getCountSuffixes(), count);
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+package representation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import clustering.Statistics;
+import clustering.SuffixClustering;
+import fixtures.CityRows;
+
+/**
+ * Tests for {@link CompactSuffixTrie}.
+ *
+ * @author MM
+ *
+ */
+public class CompactSuffixTrieTest {
+
+	/** Temporary trie files. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Test method for {@link CompactSuffixTrie#build(List)}. */
+	@Test
+	public void testBuild() {
+		CompactSuffixTrie trie = CompactSuffixTrie.build(CityRows.createRows("leipzig", "pelzig", "zig",
+				"leipzig"));
+
+		assertEquals(4, trie.getCountCities());
+		assertEquals(10, trie.getCountSuffixNodes());
+		// "zig", "leip", "pel"
+		assertEquals(3, trie.getCountPhysicalNodes());
+		assertEquals(1, trie.getRoots().length);
+		assertEquals("g", trie.getStr(trie.getRoots()[0]));
+		assertEquals(-1, trie.getParent(trie.getRoots()[0]));
+
+		int zig = trie.find("zig");
+		assertEquals("zig", trie.getStr(zig));
+		assertEquals(3, trie.getLength(zig));
+		assertEquals(4, trie.getSubsumedCities(zig));
+		assertArrayEquals(new int[] { 2 }, trie.getCityIds(zig));
+		assertEquals(2, trie.getChildren(zig).length);
+		assertEquals('l', trie.getLetter(trie.getChildren(zig)[0]));
+		assertEquals('p', trie.getLetter(trie.getChildren(zig)[1]));
+
+		// within a label
+		int pzig = trie.find("pzig");
+		assertEquals(zig, trie.getParent(pzig));
+		assertEquals(2, trie.getSubsumedCities(pzig));
+		assertEquals(0, trie.getCityIds(pzig).length);
+		assertArrayEquals(new int[] { trie.find("ipzig") }, trie.getChildren(pzig));
+
+		int leipzig = trie.find("leipzig");
+		assertEquals(2, trie.getSubsumedCities(leipzig));
+		assertArrayEquals(new int[] { 0, 3 }, trie.getCityIds(leipzig));
+		assertEquals(0, trie.getChildren(leipzig).length);
+		assertEquals("leipzig", trie.getCityName(3));
+		assertEquals("pelzig", trie.getCityName(1));
+		assertEquals(50.03f, trie.getLatitude(3), 1e-6);
+		assertEquals(10.03f, trie.getLongitude(3), 1e-6);
+
+		assertEquals(-1, trie.find("dorf"));
+		assertEquals(-1, trie.find("ezig"));
+		assertEquals(-1, trie.find("aleipzig"));
+	}
+
+	/**
+	 * Each suffix of the heap-resident trie has to be represented the same way
+	 * by the compact trie, also if a city name is suffix of another city's
+	 * name.
+	 */
+	@Test
+	public void testEqualsSuffixTrie() {
+		List<Map<String, String>> data = CityRows.createRows("leipzig", "pelzig", "zig", "leipzig", "ig",
+				"dorf", "altdorf", "neudorf", "f", "a");
+		data.addAll(CityRows.createRows(CityRows.createNames()));
+		SuffixTrie expected = SuffixTrie.build(data);
+		CompactSuffixTrie actual = CompactSuffixTrie.build(data);
+
+		assertEquals(expected.getCountSuffixNodes(), actual.getCountSuffixNodes());
+		assertEquals(expected.getCountCities(), actual.getCountCities());
+		assertTrue(actual.getCountPhysicalNodes() < actual.getCountSuffixNodes());
+		assertEquals(strings(expected, expected.getRoots()), strings(actual, actual.getRoots()));
+
+		for (int node = 0; node < expected.getCountSuffixNodes(); node++) {
+			String str = expected.getStr(node);
+			int other = actual.find(str);
+			assertEquals(str, actual.getStr(other));
+			assertEquals(expected.getLength(node), actual.getLength(other));
+			assertEquals(expected.getLetter(node), actual.getLetter(other));
+			assertEquals(expected.getSubsumedCities(node), actual.getSubsumedCities(other));
+			assertArrayEquals(expected.getCityIds(node), actual.getCityIds(other));
+			assertEquals(strings(expected, expected.getChildren(node)), strings(actual, actual.getChildren(other)));
+			int parent = expected.getParent(node);
+			assertEquals((parent == -1) ? -1 : actual.find(expected.getStr(parent)), actual.getParent(other));
+		}
+		for (int cityId = 0; cityId < expected.getCountCities(); cityId++) {
+			assertEquals(expected.getCityName(cityId), actual.getCityName(cityId));
+			assertEquals(expected.getLatitude(cityId), actual.getLatitude(cityId), 0);
+		}
+	}
+
+	/** The clustering of the compact trie equals that of the suffix trie. */
+	@Test
+	public void testClusteringEqualsSuffixTrie() {
+		List<Map<String, String>> data = CityRows.createRows(CityRows.createNames());
+		SuffixTrie expected = SuffixTrie.build(data);
+		CompactSuffixTrie actual = CompactSuffixTrie.build(data);
+
+		SuffixClustering expectedClustering = new SuffixClustering(new Statistics(expected), 0.1f, 0f, 0f);
+		SuffixClustering actualClustering = new SuffixClustering(new Statistics(actual), 0.1f, 0f, 0f);
+		Set<String> expectedCandidates = strings(expected,
+				expectedClustering.determineClusterCandidatesByNGrams(expected));
+		assertTrue(!expectedCandidates.isEmpty());
+		assertEquals(expectedCandidates,
+				strings(actual, actualClustering.determineClusterCandidatesByNGrams(actual)));
+		assertEquals(strings(expected, expectedClustering.determineClusterCandidatesByProportion(expected)),
+				strings(actual, actualClustering.determineClusterCandidatesByProportion(actual)));
+	}
+
+	/** Test method for {@link CompactSuffixTrie.Builder#build(File)} and {@link CompactSuffixTrie#open(File)}. */
+	@Test
+	public void testPersist() throws IOException {
+		List<Map<String, String>> data = CityRows.createRows(CityRows.createNames());
+		CompactSuffixTrie.Builder builder = new CompactSuffixTrie.Builder();
+		for (Map<String, String> row : data)
+			builder.addCity(row.get("city"), Float.parseFloat(row.get("latitude")),
+					Float.parseFloat(row.get("longitude")));
+		File file = new File(this.folder.getRoot(), "trie.bin");
+		CompactSuffixTrie written = builder.build(file);
+		CompactSuffixTrie expected = CompactSuffixTrie.build(data);
+
+		CompactSuffixTrie actual = CompactSuffixTrie.open(file);
+		assertEquals(expected.getCountSuffixNodes(), actual.getCountSuffixNodes());
+		assertEquals(expected.getCountPhysicalNodes(), actual.getCountPhysicalNodes());
+		assertEquals(written.getCountSuffixNodes(), actual.getCountSuffixNodes());
+		for (int node = 0; node < expected.getCountSuffixNodes(); node++) {
+			assertEquals(expected.getStr(node), actual.getStr(node));
+			assertEquals(expected.getSubsumedCities(node), actual.getSubsumedCities(node));
+		}
+		for (int cityId = 0; cityId < expected.getCountCities(); cityId++)
+			assertEquals(expected.getLongitude(cityId), actual.getLongitude(cityId), 0);
+	}
+
+	/** A truncated file is rejected. */
+	@Test(expected = IOException.class)
+	public void testOpenCorrupt() throws IOException {
+		File file = new File(this.folder.getRoot(), "trie.bin");
+		CompactSuffixTrie.Builder builder = new CompactSuffixTrie.Builder();
+		builder.addCity("leipzig", 51.3f, 12.4f);
+		builder.build(file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 1);
+		}
+		CompactSuffixTrie.open(file);
+	}
+
+	/**
+	 * Returns the suffixes of nodes.
+	 */
+	private static Set<String> strings(SuffixHierarchy trie, Iterable<Integer> nodes) {
+		Set<String> strs = new TreeSet<String>();
+		for (int node : nodes)
+			strs.add(trie.getStr(node));
+		return strs;
+	}
+
+	/**
+	 * Returns the suffixes of nodes.
+	 */
+	private static Set<String> strings(SuffixHierarchy trie, int[] nodes) {
+		Set<String> strs = new TreeSet<String>();
+		for (int node : nodes)
+			strs.add(trie.getStr(node));
+		return strs;
+	}
+
+}
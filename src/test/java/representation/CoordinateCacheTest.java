@@ -0,0 +1,157 @@
+package representation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import fixtures.CityGraph;
+import fixtures.CityRows;
+
+/**
+ * Tests for {@link CoordinateCache}.
+ *
+ * @author MM
+ *
+ */
+public class CoordinateCacheTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * The cache has to contain the loaded cities and to follow committed
+	 * changes, but not rolled back ones.
+	 */
+	@Test
+	public void testSync() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createRows("leipzig", "pelzig", "zig"));
+		try (CoordinateCache cache = CoordinateCache.register(db)) {
+			assertEquals(3, cache.getCountCities());
+			Node zig, suffix;
+			try (Transaction tx = db.beginTx()) {
+				for (Node city : Suffix.getAssocCityNodes(db.findNode(Suffix.LABEL, Suffix.KEY_STR, "g"))) {
+					int ordinal = cache.getOrdinal(city.getId());
+					assertTrue(ordinal >= 0 && ordinal < 3);
+					assertEquals((Float) city.getProperty(City.LATITUDE), cache.getLatitude(ordinal), 0);
+					assertEquals((Float) city.getProperty(City.LONGITUDE), cache.getLongitude(ordinal), 0);
+				}
+				zig = Suffix.getAssocCityNodes(db.findNode(Suffix.LABEL, Suffix.KEY_STR, "zig")).get(0);
+				suffix = db.findNode(Suffix.LABEL, Suffix.KEY_STR, "g");
+			}
+			assertFalse(cache.contains(suffix.getId()));
+			assertEquals(-1, cache.getOrdinal(suffix.getId()));
+
+			// create and update
+			Node created;
+			try (Transaction tx = db.beginTx()) {
+				created = db.createNode(City.LABEL);
+				created.setProperty(City.LATITUDE, 51f);
+				created.setProperty(City.LONGITUDE, 12f);
+				zig.setProperty(City.LATITUDE, 48f);
+				tx.success();
+			}
+			int ordinal = cache.getOrdinal(created.getId());
+			assertEquals(4, cache.getCountCities());
+			assertEquals(3, ordinal);
+			assertEquals(51f, cache.getLatitude(ordinal), 0);
+			assertEquals(12f, cache.getLongitude(ordinal), 0);
+			assertEquals(48f, cache.getLatitude(cache.getOrdinal(zig.getId())), 0);
+
+			// rollback
+			try (Transaction tx = db.beginTx()) {
+				created.setProperty(City.LATITUDE, 0f);
+				tx.failure();
+			}
+			assertEquals(51f, cache.getLatitude(ordinal), 0);
+
+			// a removed coordinate is set again, the other one is kept
+			try (Transaction tx = db.beginTx()) {
+				created.removeProperty(City.LONGITUDE);
+				tx.success();
+			}
+			assertFalse(cache.contains(created.getId()));
+			assertEquals(3, cache.getCountCities());
+			try (Transaction tx = db.beginTx()) {
+				created.setProperty(City.LONGITUDE, 13f);
+				tx.success();
+			}
+			assertEquals(4, cache.getCountCities());
+			assertEquals(51f, cache.getLatitude(ordinal), 0);
+			assertEquals(13f, cache.getLongitude(ordinal), 0);
+
+			// delete
+			try (Transaction tx = db.beginTx()) {
+				created.delete();
+				tx.success();
+			}
+			assertEquals(3, cache.getCountCities());
+			assertEquals(-1, cache.getOrdinal(created.getId()));
+			assertTrue(Float.isNaN(cache.getLatitude(ordinal)));
+		}
+	}
+
+	/**
+	 * A city whose coordinates are set by separate commits has to be cached
+	 * as soon as both are set.
+	 */
+	@Test
+	public void testCoordinatesOfSeparateCommits() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createRows("leipzig"));
+		try (CoordinateCache cache = CoordinateCache.register(db)) {
+			Node created;
+			try (Transaction tx = db.beginTx()) {
+				created = db.createNode(City.LABEL);
+				tx.success();
+			}
+			assertEquals(1, cache.getOrdinal(created.getId()));
+			try (Transaction tx = db.beginTx()) {
+				created.setProperty(City.LATITUDE, 51f);
+				tx.success();
+			}
+			assertFalse(cache.contains(created.getId()));
+			assertEquals(1, cache.getCountCities());
+			try (Transaction tx = db.beginTx()) {
+				created.setProperty(City.LONGITUDE, 12f);
+				tx.success();
+			}
+			assertTrue(cache.contains(created.getId()));
+			assertEquals(2, cache.getCountCities());
+			assertEquals(51f, cache.getLatitude(1), 0);
+			assertEquals(12f, cache.getLongitude(1), 0);
+		}
+	}
+
+	/**
+	 * An index built from the cache has to equal the one built from the
+	 * graph, also after a city moved.
+	 */
+	@Test
+	public void testCityIndex() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createRows(CityRows.createNames()));
+		try (CoordinateCache cache = CoordinateCache.register(db)) {
+			try (Transaction tx = db.beginTx()) {
+				Node city = Suffix.getAssocCityNodes(db.findNode(Suffix.LABEL, Suffix.KEY_STR, "altdorf")).get(0);
+				city.setProperty(City.LATITUDE, 48f);
+				tx.success();
+			}
+			CityIndex expected = CityIndex.build(db);
+			CityIndex actual = CityIndex.build(db, cache);
+			assertEquals(expected.getCountCities(), actual.getCountCities());
+			for (int i = 0; i < expected.getCountCities(); i++) {
+				assertEquals(expected.getCityId(i), actual.getCityId(i));
+				assertEquals(expected.getLatitude(i), actual.getLatitude(i), 0);
+				assertEquals(expected.getLongitude(i), actual.getLongitude(i), 0);
+			}
+		}
+	}
+
+}
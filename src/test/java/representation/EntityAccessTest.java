@@ -0,0 +1,99 @@
+package representation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import clustering.Dispersion;
+import clustering.GeoDistance;
+import clustering.GeoMetric;
+import clustering.GraphProperties;
+import fixtures.CityGraph;
+import fixtures.CityRows;
+import representation.EntityAccess.CityData;
+import representation.EntityAccess.SuffixData;
+
+/**
+ * Tests for {@link EntityAccess}.
+ *
+ * @author MM
+ *
+ */
+public class EntityAccessTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/**
+	 * Snapshots read within one transaction have to equal the values of the
+	 * getters of the entities and have to be usable after the transaction,
+	 * also for a database other than the default one.
+	 */
+	@Test
+	public void testSnapshots() throws IOException {
+		GraphDatabaseService db = this.graph.load(CityRows.createRows("leipzig", "pelzig", "zig"));
+		EntityAccess access = new EntityAccess();
+		try (Transaction tx = db.beginTx()) {
+			SuffixData zig = access.readSuffix(db.findNode(Suffix.LABEL, Suffix.KEY_STR, "zig"));
+			assertEquals(-1, zig.getSubsumedCities());
+			assertNull(zig.getClusterCandidate());
+		}
+		new GraphProperties(db).addPropertySubsumedCities();
+
+		Suffix zig, g;
+		List<SuffixData> suffixes;
+		List<CityData> cities;
+		GeoStatistics geoStat;
+		try (Transaction tx = db.beginTx()) {
+			zig = new Suffix(db.findNode(Suffix.LABEL, Suffix.KEY_STR, "zig"));
+			g = new Suffix(db.findNode(Suffix.LABEL, Suffix.KEY_STR, "g"));
+			suffixes = access.readSuffixes(Arrays.asList(zig, g));
+			cities = access.readAssocCities(zig);
+			geoStat = access.readGeoStatistics(zig);
+		}
+
+		assertEquals(2, suffixes.size());
+		assertEquals("zig", suffixes.get(0).getStr());
+		assertEquals(zig.getSubsumedCities(), suffixes.get(0).getSubsumedCities());
+		assertEquals(zig.toString(), suffixes.get(0).toString());
+		assertEquals(g.getUnderlyingNode().getId(), suffixes.get(1).getId());
+		assertEquals(3, suffixes.get(1).getSubsumedCities());
+		assertNull(geoStat);
+
+		assertEquals(3, cities.size());
+		List<City> entities = new ArrayList<City>();
+		try (Transaction tx = db.beginTx()) {
+			for (Node node : Suffix.getAssocCityNodes(zig.getUnderlyingNode()))
+				entities.add(new City(node));
+		}
+		for (int i = 0; i < cities.size(); i++) {
+			assertEquals(entities.get(i).getLatitude(), cities.get(i).getLatitude(), 0);
+			assertEquals(entities.get(i).getLongitude(), cities.get(i).getLongitude(), 0);
+			assertEquals(entities.get(i).toString(), cities.get(i).toString());
+		}
+		try (Transaction tx = db.beginTx()) {
+			assertEquals(cities, access.readCities(entities));
+		}
+
+		// the metric is read with the statistics
+		new GeoDistance(db, Dispersion.Mode.EXACT, null, GeoMetric.HAVERSINE).calcGeoStatistics(zig);
+		try (Transaction tx = db.beginTx()) {
+			assertEquals(GeoMetric.HAVERSINE.name(), access.readGeoStatistics(zig).getMetric());
+			assertNotNull(access.readGeoStatistics(zig, GeoMetric.HAVERSINE.name()));
+			assertNull(access.readGeoStatistics(zig, GeoMetric.EUCLIDEAN.name()));
+		}
+	}
+
+}
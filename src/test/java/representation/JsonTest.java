@@ -0,0 +1,44 @@
+package representation;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link Json}.
+ *
+ * @author MM
+ *
+ */
+public class JsonTest {
+
+	/** Test method for {@link Json#quote(CharSequence)}. */
+	@Test
+	public void testQuote() {
+		assertEquals("\"leipzig\"", Json.quote("leipzig"));
+		assertEquals("\"\"", Json.quote(""));
+		assertEquals("\"say \\\"hi\\\"\"", Json.quote("say \"hi\""));
+		assertEquals("\"a\\\\b\"", Json.quote("a\\b"));
+		assertEquals("\"\\n\\r\\t\\b\\f\"", Json.quote("\n\r\t\b\f"));
+		assertEquals("\"\\u0000\\u001f\"", Json.quote("\u0000\u001f"));
+		assertEquals("\"a\\u2028b\\u2029\"", Json.quote("a\u2028b\u2029"));
+		assertEquals("\"s\u00e3o paulo\"", Json.quote("s\u00e3o paulo"));
+	}
+
+	/** Suffixes have to be escaped. */
+	@Test
+	public void testSuffix() {
+		assertEquals("\"suffix\": {\"str\":\"o\\\"w\", \"subsumedCities\":3}", Suffix.toString("o\"w", 3));
+	}
+
+	/** Test method for {@link Json#number(double)}. */
+	@Test
+	public void testNumber() {
+		assertEquals("1.5", Json.number(1.5));
+		assertEquals("null", Json.number(Double.NaN));
+		assertEquals("null", Json.number(Double.NEGATIVE_INFINITY));
+		assertEquals("6.6666665", Json.number(6.6666665f));
+		assertEquals("null", Json.number(Float.POSITIVE_INFINITY));
+	}
+
+}
@@ -0,0 +1,102 @@
+package representation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import clustering.GraphProperties;
+import clustering.Statistics;
+import clustering.SuffixClustering;
+import fixtures.CityGraph;
+import fixtures.CityRows;
+
+/**
+ * Tests for {@link SuffixTrie}.
+ *
+ * @author MM
+ *
+ */
+public class SuffixTrieTest {
+
+	/** Temporary graph databases. */
+	@Rule
+	public CityGraph graph = new CityGraph();
+
+	/** Test method for {@link SuffixTrie#build(List)}. */
+	@Test
+	public void testBuild() {
+		SuffixTrie trie = SuffixTrie.build(CityRows.createRows("leipzig", "pelzig", "zig", "leipzig"));
+
+		assertEquals(4, trie.getCountCities());
+		assertEquals(10, trie.getCountSuffixNodes());
+		assertEquals(1, trie.getRoots().length);
+		assertEquals("g", trie.getStr(trie.getRoots()[0]));
+
+		int zig = trie.find("zig");
+		assertEquals("zig", trie.getStr(zig));
+		assertEquals(3, trie.getLength(zig));
+		assertEquals(4, trie.getSubsumedCities(zig));
+		assertArrayEquals(new int[] { 2 }, trie.getCityIds(zig));
+		assertEquals(2, trie.getChildren(zig).length);
+		assertEquals('l', trie.getLetter(trie.getChildren(zig)[0]));
+		assertEquals('p', trie.getLetter(trie.getChildren(zig)[1]));
+
+		int leipzig = trie.find("leipzig");
+		assertEquals(2, trie.getSubsumedCities(leipzig));
+		assertArrayEquals(new int[] { 0, 3 }, trie.getCityIds(leipzig));
+		assertEquals("leipzig", trie.getCityName(3));
+		assertEquals(50.03f, trie.getLatitude(3), 1e-6);
+
+		assertEquals(-1, trie.find("dorf"));
+		assertEquals(-1, trie.find("ezig"));
+	}
+
+	/**
+	 * The clustering of the suffix trie has to find the same cluster
+	 * candidates as the clustering of the graph.
+	 */
+	@Test
+	public void testClusteringEqualsGraphClustering() throws IOException, NoSuchFieldException {
+		List<Map<String, String>> data = CityRows.createRows(CityRows.createNames());
+
+		// in-memory
+		SuffixTrie trie = SuffixTrie.build(data);
+		SuffixClustering trieClustering = new SuffixClustering(new Statistics(trie), 0.1f, 0f, 0f);
+		Set<String> expectedByNGrams = new TreeSet<String>();
+		for (int node : trieClustering.determineClusterCandidatesByNGrams(trie))
+			expectedByNGrams.add(trie.getStr(node));
+		Set<String> expectedByProportion = new TreeSet<String>();
+		for (int node : trieClustering.determineClusterCandidatesByProportion(trie))
+			expectedByProportion.add(trie.getStr(node));
+		assertFalse(expectedByNGrams.isEmpty());
+		assertFalse(expectedByProportion.isEmpty());
+
+		// graph
+		GraphDatabaseService db = this.graph.load(data);
+		GraphProperties prop = new GraphProperties(db);
+		prop.addPropertySubsumedCities();
+		SuffixClustering graphClustering = new SuffixClustering(db, prop, new Statistics(prop), 0.1f, 0f, 0f);
+		graphClustering.removeClusterCandidateProperty();
+		graphClustering.determineClusterCandidatesByNGrams();
+		Set<String> actualByNGrams = new TreeSet<String>();
+		for (Suffix s : graphClustering.getClusterCandidates())
+			actualByNGrams.add(s.getStr());
+		Set<String> actualByProportion = new TreeSet<String>();
+		for (Suffix s : graphClustering.determineClusterCandidatesByProportion())
+			actualByProportion.add(s.getStr());
+
+		assertEquals(expectedByNGrams, actualByNGrams);
+		assertEquals(expectedByProportion, actualByProportion);
+	}
+
+}